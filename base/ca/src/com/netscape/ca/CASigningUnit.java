@@ -37,6 +37,7 @@ import com.netscape.certsrv.ca.CAMissingKeyException;
 import com.netscape.certsrv.ca.ECAException;
 import com.netscape.certsrv.security.SigningUnit;
 import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.metrics.MetricsRegistry;
 import com.netscape.cmsutil.crypto.CryptoUtil;
 
 /**
@@ -49,6 +50,11 @@ public final class CASigningUnit extends SigningUnit {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CASigningUnit.class);
 
+    public static final String PROP_CONTEXT_POOL_SIZE = "contextPoolSize";
+    public static final String PROP_CONTEXT_POOL_TIMEOUT = "contextPoolTimeout";
+
+    private SigningContextPool contextPool;
+
     public CASigningUnit() {
     }
 
@@ -114,6 +120,21 @@ public final class CASigningUnit extends SigningUnit {
             mDefSigningAlgorithm = checkSigningAlgorithmFromName(mDefSigningAlgname);
             logger.debug("SigningUnit: signing algorithm: " + mDefSigningAlgorithm);
 
+            // number of signing contexts per algorithm, 0 to disable pooling
+            int poolSize = config.getInteger(PROP_CONTEXT_POOL_SIZE, 8);
+            int poolTimeout = config.getInteger(PROP_CONTEXT_POOL_TIMEOUT, 30);
+            logger.debug("SigningUnit: signing context pool size: " + poolSize);
+
+            contextPool = poolSize > 0 ? new SigningContextPool(mToken, mPrivk, poolSize, poolTimeout * 1000L) : null;
+
+            if (contextPool != null) {
+                MetricsRegistry.getInstance().registerGauge(
+                        "pki_signing_queue_depth",
+                        "Number of signing operations waiting for a signing context",
+                        contextPool::getQueueDepth,
+                        "key", mNickname);
+            }
+
             mInited = true;
 
         } catch (java.security.cert.CertificateException e) {
@@ -155,9 +176,46 @@ public final class CASigningUnit extends SigningUnit {
             signAlg = checkSigningAlgorithmFromName(algname);
         }
 
-        // XXX use a pool of signers based on alg ?
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        long startTime = System.nanoTime();
+
+        try {
+            byte[] signature = sign(data, signAlg);
+
+            metrics.getTimer(
+                    "pki_signing_seconds",
+                    "Duration of signing operations",
+                    "key", mNickname,
+                    "algorithm", signAlg.toString()).recordSince(startTime);
+
+            return signature;
+
+        } catch (Exception e) {
+            metrics.getCounter(
+                    "pki_signing_failures_total",
+                    "Number of failed signing operations",
+                    "key", mNickname,
+                    "algorithm", signAlg.toString()).increment();
+            throw e;
+        }
+    }
+
+    byte[] sign(byte[] data, SignatureAlgorithm signAlg) throws Exception {
+
+        boolean testSignatureFailure = mConfig.getBoolean("testSignatureFailure", false);
+
+        SigningContextPool pool = contextPool;
+        if (pool != null) {
+            if (testSignatureFailure) {
+                throw new SignatureException("SignatureException forced for testing");
+            }
+
+            logger.info("CASigningUnit: Signing with pooled " + signAlg + " context");
+            return pool.sign(signAlg, data);
+        }
+
         // XXX Map algor. name to id. hack: use hardcoded define for now.
-        logger.info("CASigningUnit: Getting algorithm context for " + algname + " " + signAlg);
+        logger.info("CASigningUnit: Getting algorithm context for " + signAlg);
         Signature signer = mToken.getSignatureContext(signAlg);
 
         signer.initSign(mPrivk);
@@ -174,7 +232,6 @@ public final class CASigningUnit extends SigningUnit {
 
         logger.info("CASigningUnit: Signing Certificate");
 
-        boolean testSignatureFailure = mConfig.getBoolean("testSignatureFailure", false);
         if (testSignatureFailure) {
             throw new SignatureException("SignatureException forced for testing");
         }
@@ -182,6 +239,13 @@ public final class CASigningUnit extends SigningUnit {
         return signer.sign();
     }
 
+    /**
+     * Returns the signing context pool, or null if pooling is disabled.
+     */
+    public SigningContextPool getContextPool() {
+        return contextPool;
+    }
+
     public boolean verify(byte[] data, byte[] signature, String algname) throws Exception {
 
         if (!mInited) {
@@ -28,6 +28,7 @@ import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 
 import org.dogtagpki.server.ca.CAEngine;
 import org.dogtagpki.server.ca.ICMSCRLExtensions;
@@ -79,6 +80,7 @@ import com.netscape.cmscore.dbs.CertRecordList;
 import com.netscape.cmscore.dbs.CertificateRepository;
 import com.netscape.cmscore.ldap.LdapRule;
 import com.netscape.cmscore.ldap.PublisherProcessor;
+import com.netscape.cmscore.metrics.MetricsRegistry;
 
 /**
  * This class encapsulates CRL issuing mechanism. CertificateAuthority
@@ -351,6 +353,11 @@ public class CRLIssuingPoint implements ICRLIssuingPoint, Runnable {
     private boolean mPublishOnStart = false;
     private long[] mSplits = new long[10];
 
+    // names of the CRL generation phases timed in mSplits
+    private static final String[] SPLIT_NAMES = {
+            "clone", "delta_prepare", "delta_sign", "delta_store", "delta_publish",
+            "cache_rebuild", "prepare", "sign", "store", "publish" };
+
     private boolean mSaveMemory = false;
 
     /**
@@ -2543,6 +2550,20 @@ public class CRLIssuingPoint implements ICRLIssuingPoint, Runnable {
         return splits;
     }
 
+    /**
+     * Records the CRL generation phases timed in mSplits in MetricsRegistry.
+     */
+    void recordSplitTimes(int... splits) {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        for (int i : splits) {
+            metrics.getTimer(
+                    "pki_crl_generation_seconds",
+                    "Duration of CRL generation phases",
+                    "issuing_point", mId,
+                    "phase", SPLIT_NAMES[i]).record(mSplits[i], TimeUnit.MILLISECONDS);
+        }
+    }
+
     public synchronized int isCRLUpdateInProgress() {
         return mUpdatingCRL;
     }
@@ -2910,6 +2931,8 @@ public class CRLIssuingPoint implements ICRLIssuingPoint, Runnable {
             logger.debug("CRLIssuingPoint: - delta CRL size: " + mDeltaCRLSize);
             logger.debug("CRLIssuingPoint: - total time: " + totalTime + splitTimes);
 
+            recordSplitTimes(1, 2, 3);
+
             signedAuditLogger.log(DeltaCRLGenerationEvent.createSuccessEvent(
                     getAuditSubjectID(),
                     mCRLNumber));
@@ -2938,6 +2961,8 @@ public class CRLIssuingPoint implements ICRLIssuingPoint, Runnable {
             publishCRL(newX509DeltaCRL, true);
             mSplits[4] += System.currentTimeMillis();
 
+            recordSplitTimes(4);
+
             signedAuditLogger.log(new DeltaCRLPublishingEvent(getAuditSubjectID(), mCRLNumber));
 
         } catch (Throwable e) {
@@ -3058,6 +3083,13 @@ public class CRLIssuingPoint implements ICRLIssuingPoint, Runnable {
 
             logger.debug("CRLIssuingPoint: Finished Logging CRL Update to transaction log");
 
+            recordSplitTimes(0, 6, 7, 8);
+
+            // the cache is only rebuilt when it is out of date
+            if (mSplits[5] > 0) {
+                recordSplitTimes(5);
+            }
+
             signedAuditLogger.log(FullCRLGenerationEvent.createSuccessEvent(
                     getAuditSubjectID(),
                     mCRLNumber));
@@ -3087,6 +3119,8 @@ public class CRLIssuingPoint implements ICRLIssuingPoint, Runnable {
             publishCRL(newX509CRL);
             mSplits[9] += System.currentTimeMillis();
 
+            recordSplitTimes(9);
+
             signedAuditLogger.log(new FullCRLPublishingEvent(getAuditSubjectID(), mCRLNumber));
 
         } catch (Throwable e) {
@@ -0,0 +1,217 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.ca;
+
+import java.security.SignatureException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.PrivateKey;
+import org.mozilla.jss.crypto.Signature;
+import org.mozilla.jss.crypto.SignatureAlgorithm;
+
+/**
+ * This class keeps a pool of signature contexts per algorithm that
+ * have already been initialized with the signing key.
+ *
+ * Every context has its own PKCS #11 session, so concurrent signing
+ * requests are spread over up to the configured number of sessions
+ * per algorithm instead of setting up a new context for each
+ * signature. A context is returned to the pool after a successful
+ * signature and discarded after a failure.
+ */
+public class SigningContextPool {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SigningContextPool.class);
+
+    CryptoToken token;
+    PrivateKey privateKey;
+
+    int size;
+    long timeout; // milliseconds
+
+    Map<SignatureAlgorithm, ContextPool> pools = new ConcurrentHashMap<>();
+
+    public SigningContextPool(CryptoToken token, PrivateKey privateKey, int size, long timeout) {
+        this.token = token;
+        this.privateKey = privateKey;
+        this.size = size;
+        this.timeout = timeout;
+    }
+
+    public byte[] sign(SignatureAlgorithm algorithm, byte[] data) throws Exception {
+        ContextPool pool = pools.computeIfAbsent(algorithm, ContextPool::new);
+        return pool.sign(data);
+    }
+
+    /**
+     * Returns the pool statistics keyed by algorithm name.
+     */
+    public Map<String, ContextPool> getStatistics() {
+        Map<String, ContextPool> stats = new ConcurrentHashMap<>();
+        for (ContextPool pool : pools.values()) {
+            stats.put(pool.algorithm.toString(), pool);
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * Returns the number of signing requests waiting for a context.
+     */
+    public int getQueueDepth() {
+        int waiting = 0;
+        for (ContextPool pool : pools.values()) {
+            waiting += pool.waiting.get();
+        }
+        return waiting;
+    }
+
+    public void clear() {
+        pools.clear();
+    }
+
+    /**
+     * Signature contexts for a single algorithm.
+     */
+    public class ContextPool {
+
+        SignatureAlgorithm algorithm;
+
+        LinkedBlockingQueue<Signature> idle = new LinkedBlockingQueue<>();
+        AtomicInteger contexts = new AtomicInteger();
+        AtomicInteger waiting = new AtomicInteger();
+
+        LongAdder signatures = new LongAdder();
+        LongAdder failures = new LongAdder();
+        LongAdder totalTime = new LongAdder();
+        AtomicLong maxTime = new AtomicLong();
+
+        ContextPool(SignatureAlgorithm algorithm) {
+            this.algorithm = algorithm;
+        }
+
+        byte[] sign(byte[] data) throws Exception {
+
+            long start = System.nanoTime();
+            Signature signer = acquire();
+
+            boolean success = false;
+            try {
+                signer.update(data);
+                byte[] signature = signer.sign();
+                success = true;
+                return signature;
+
+            } finally {
+                if (success) {
+                    // the context is ready for the next signature
+                    idle.offer(signer);
+                } else {
+                    contexts.decrementAndGet();
+                    failures.increment();
+                }
+
+                long time = System.nanoTime() - start;
+                signatures.increment();
+                totalTime.add(time);
+                maxTime.accumulateAndGet(time, Math::max);
+            }
+        }
+
+        Signature acquire() throws Exception {
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+            while (true) {
+
+                Signature signer = idle.poll();
+                if (signer != null) {
+                    return signer;
+                }
+
+                if (contexts.incrementAndGet() <= size) {
+                    try {
+                        logger.info("SigningContextPool: Creating signing context for " + algorithm);
+                        signer = token.getSignatureContext(algorithm);
+                        signer.initSign(privateKey);
+                        return signer;
+
+                    } catch (Exception e) {
+                        contexts.decrementAndGet();
+                        throw e;
+                    }
+                }
+
+                contexts.decrementAndGet();
+
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new SignatureException("Timed out waiting for " + algorithm + " signing context");
+                }
+
+                // wake up periodically in case a failed context has
+                // been discarded and a new one can be created
+                waiting.incrementAndGet();
+                try {
+                    signer = idle.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(100)), TimeUnit.NANOSECONDS);
+                } finally {
+                    waiting.decrementAndGet();
+                }
+
+                if (signer != null) {
+                    return signer;
+                }
+            }
+        }
+
+        public String getAlgorithm() {
+            return algorithm.toString();
+        }
+
+        public int getContexts() {
+            return contexts.get();
+        }
+
+        public int getIdleContexts() {
+            return idle.size();
+        }
+
+        public int getWaiting() {
+            return waiting.get();
+        }
+
+        public long getSignatures() {
+            return signatures.sum();
+        }
+
+        public long getFailures() {
+            return failures.sum();
+        }
+
+        /**
+         * Returns the average signing time in nanoseconds, including
+         * the time spent waiting for a context.
+         */
+        public long getAverageTime() {
+            long count = signatures.sum();
+            return count == 0 ? 0 : totalTime.sum() / count;
+        }
+
+        /**
+         * Returns the longest signing time in nanoseconds.
+         */
+        public long getMaxTime() {
+            return maxTime.get();
+        }
+    }
+}
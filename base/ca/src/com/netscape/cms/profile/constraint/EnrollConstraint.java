@@ -17,9 +17,14 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.profile.constraint;
 
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import org.mozilla.jss.netscape.security.x509.CertificateExtensions;
 import org.mozilla.jss.netscape.security.x509.Extension;
@@ -50,6 +55,12 @@ public abstract class EnrollConstraint extends PolicyConstraint {
     protected IConfigStore mConfig = null;
     protected Vector<String> mConfigNames = new Vector<String>();
 
+    // compiled parameters, null if not compiled
+    protected volatile Map<String, String> mParams;
+
+    // compiled regular expressions keyed by parameter name
+    protected Map<String, Pattern> mPatterns = new ConcurrentHashMap<>();
+
     public EnrollConstraint() {
     }
 
@@ -86,6 +97,8 @@ public abstract class EnrollConstraint extends PolicyConstraint {
         } else {
             mConfig.getSubStore(CONFIG_PARAMS).putString(name, value);
         }
+        mParams = null;
+        mPatterns.clear();
     }
 
     public String getConfig(String name) {
@@ -101,6 +114,12 @@ public abstract class EnrollConstraint extends PolicyConstraint {
      */
     public String getConfig(String name, String defval) {
 
+        Map<String, String> compiledParams = mParams;
+        if (compiledParams != null) {
+            String value = compiledParams.get(name);
+            return value == null ? defval : value;
+        }
+
         if (mConfig == null) {
             logger.warn("Error: Missing profile configuration");
             return null;
@@ -125,6 +144,64 @@ public abstract class EnrollConstraint extends PolicyConstraint {
         mConfig = config;
     }
 
+    /**
+     * Loads the parameters into memory so that getConfig() does
+     * not have to go through the configuration store.
+     */
+    @Override
+    public void compile() throws EProfileException {
+
+        if (mConfig == null) {
+            return;
+        }
+
+        IConfigStore params = mConfig.getSubStore(CONFIG_PARAMS);
+        if (params == null) {
+            return;
+        }
+
+        Map<String, String> compiledParams = new HashMap<>();
+
+        try {
+            Enumeration<String> names = params.keys();
+            while (names.hasMoreElements()) {
+                String name = names.nextElement();
+                compiledParams.put(name, params.getString(name));
+            }
+
+        } catch (EBaseException e) {
+            throw new EProfileException("Unable to compile constraint parameters: " + e.getMessage(), e);
+        }
+
+        mParams = Collections.unmodifiableMap(compiledParams);
+        mPatterns.clear();
+    }
+
+    /**
+     * Get constraint parameter as a compiled regular expression.
+     * The expression is compiled once and reused until the
+     * parameter is changed.
+     *
+     * @param name parameter name
+     * @return compiled expression, or null if the parameter cannot be read
+     */
+    protected Pattern getConfigPattern(String name) {
+
+        Pattern pattern = mPatterns.get(name);
+        if (pattern != null) {
+            return pattern;
+        }
+
+        String value = getConfig(name);
+        if (value == null) {
+            return null;
+        }
+
+        pattern = Pattern.compile(value);
+        mPatterns.put(name, pattern);
+        return pattern;
+    }
+
     public IConfigStore getConfigStore() {
         return mConfig;
     }
@@ -112,7 +112,7 @@ public class SubjectNameConstraint extends EnrollConstraint {
                     CertificateSubjectName.DN_NAME + " = " +
                     sn500.toString());
         }
-        if (!sn500.toString().matches(getConfig(CONFIG_PATTERN))) {
+        if (!getConfigPattern(CONFIG_PATTERN).matcher(sn500.toString()).matches()) {
             logger.error("SubjectNameConstraint: validate() - sn500 not matching pattern " + getConfig(CONFIG_PATTERN));
             throw new ERejectException(
                     CMS.getUserMessage(getLocale(request),
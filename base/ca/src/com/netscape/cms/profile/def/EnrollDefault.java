@@ -20,8 +20,11 @@ package com.netscape.cms.profile.def;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import java.util.Vector;
@@ -83,6 +86,9 @@ public abstract class EnrollDefault extends PolicyDefault {
     protected Vector<String> mConfigNames = new Vector<String>();
     protected Vector<String> mValueNames = new Vector<String>();
 
+    // compiled parameters, null if not compiled
+    protected volatile Map<String, String> mParams;
+
     public EnrollDefault() {
     }
 
@@ -105,6 +111,7 @@ public abstract class EnrollDefault extends PolicyDefault {
         } else {
             mConfig.getSubStore("params").putString(name, value);
         }
+        mParams = null;
     }
 
     public String getConfig(String name) {
@@ -120,6 +127,12 @@ public abstract class EnrollDefault extends PolicyDefault {
      */
     public String getConfig(String name, String defval) {
 
+        Map<String, String> compiledParams = mParams;
+        if (compiledParams != null) {
+            String value = compiledParams.get(name);
+            return value == null ? defval : value;
+        }
+
         if (mConfig == null) {
             logger.error("Missing profile configuration");
             return null;
@@ -144,6 +157,38 @@ public abstract class EnrollDefault extends PolicyDefault {
         mConfig = config;
     }
 
+    /**
+     * Loads the parameters into memory so that getConfig() does
+     * not have to go through the configuration store.
+     */
+    @Override
+    public void compile() throws EProfileException {
+
+        if (mConfig == null) {
+            return;
+        }
+
+        IConfigStore params = mConfig.getSubStore("params");
+        if (params == null) {
+            return;
+        }
+
+        Map<String, String> compiledParams = new HashMap<>();
+
+        try {
+            Enumeration<String> names = params.keys();
+            while (names.hasMoreElements()) {
+                String name = names.nextElement();
+                compiledParams.put(name, params.getString(name));
+            }
+
+        } catch (EBaseException e) {
+            throw new EProfileException("Unable to compile default parameters: " + e.getMessage(), e);
+        }
+
+        mParams = Collections.unmodifiableMap(compiledParams);
+    }
+
     /**
      * Retrieves the localizable description of this policy.
      *
@@ -187,6 +187,15 @@ public class CAPresence
                                    "CMS_SELFTESTS_CA_PRESENCE_DESCRIPTION");
     }
 
+    /**
+     * This self test only reads the CA certificate, so it can run
+     * concurrently with other self tests.
+     */
+    @Override
+    protected boolean isSelfTestIndependentByDefault() {
+        return true;
+    }
+
     /**
      * Execute an individual self test.
      * <P>
@@ -187,6 +187,15 @@ public class CAValidity
                                    "CMS_SELFTESTS_CA_VALIDITY_DESCRIPTION");
     }
 
+    /**
+     * This self test only checks the validity of the CA certificate, so it can run
+     * concurrently with other self tests.
+     */
+    @Override
+    protected boolean isSelfTestIndependentByDefault() {
+        return true;
+    }
+
     /**
      * Execute an individual self test.
      * <P>
@@ -0,0 +1,279 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.servlet.cert;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang3.StringUtils;
+import org.dogtagpki.server.ca.CAEngine;
+
+import com.netscape.certsrv.authentication.IAuthToken;
+import com.netscape.certsrv.base.BadRequestDataException;
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.EPropertyNotFound;
+import com.netscape.certsrv.base.SessionContext;
+import com.netscape.certsrv.ca.AuthorityID;
+import com.netscape.certsrv.cert.CertEnrollmentRequest;
+import com.netscape.certsrv.request.IRequest;
+import com.netscape.cms.profile.ProfileAuthenticator;
+import com.netscape.cms.profile.common.EnrollProfile;
+import com.netscape.cms.profile.common.Profile;
+import com.netscape.cms.servlet.common.AuthCredentials;
+import com.netscape.cms.servlet.common.CMSTemplate;
+import com.netscape.cms.servlet.profile.SSLClientCertProvider;
+import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.EngineConfig;
+
+/**
+ * This class processes multiple enrollment requests for a single
+ * profile. The caller is authenticated and authorized once for the
+ * whole batch, then the requests are populated and submitted to the
+ * request queue in parallel on a shared pool of worker threads.
+ */
+public class BatchEnrollmentProcessor extends EnrollmentProcessor {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(BatchEnrollmentProcessor.class);
+
+    public final static String PROP_MAX_SIZE = "ca.enrollment.batch.maxSize";
+    public final static String PROP_THREADS = "ca.enrollment.batch.threads";
+
+    private static ExecutorService executorService;
+
+    protected String batchProfileId;
+    protected Profile profile;
+    protected ProfileAuthenticator authenticator;
+    protected IAuthToken authToken;
+    protected AuthorityID aid;
+    protected HttpServletRequest request;
+    protected AuthCredentials credentials;
+
+    // session context of the authenticated caller
+    protected SessionContext sessionContext;
+
+    public BatchEnrollmentProcessor(String id, Locale locale) throws EPropertyNotFound, EBaseException {
+        super(id, locale);
+    }
+
+    public static int getMaxSize() throws EBaseException {
+        EngineConfig config = CAEngine.getInstance().getConfig();
+        return config.getInteger(PROP_MAX_SIZE, 1000);
+    }
+
+    static synchronized ExecutorService getExecutorService() throws EBaseException {
+
+        if (executorService != null) {
+            return executorService;
+        }
+
+        EngineConfig config = CAEngine.getInstance().getConfig();
+        int threads = config.getInteger(PROP_THREADS, Runtime.getRuntime().availableProcessors());
+        logger.info("BatchEnrollmentProcessor: Creating pool with " + threads + " thread(s)");
+
+        AtomicInteger counter = new AtomicInteger();
+        executorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BatchEnrollment-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        return executorService;
+    }
+
+    /**
+     * Looks up the profile, then authenticates and authorizes the
+     * caller for the whole batch.
+     */
+    public void authenticateBatch(
+            String profileId,
+            HttpServletRequest request,
+            AuthorityID aid,
+            AuthCredentials credentials)
+            throws Exception {
+
+        try {
+            // if we did not configure profileId in xml file,
+            // then accept the user-provided one
+            batchProfileId = (this.profileID == null) ? profileId : this.profileID;
+            logger.info("BatchEnrollmentProcessor: Profile: " + batchProfileId);
+
+            profile = ps.getProfile(batchProfileId);
+            if (profile == null) {
+                logger.error(CMS.getUserMessage(locale, "CMS_PROFILE_NOT_FOUND", CMSTemplate.escapeJavaScriptStringHTML(batchProfileId)));
+                throw new BadRequestDataException(CMS.getUserMessage(locale, "CMS_PROFILE_NOT_FOUND", CMSTemplate.escapeJavaScriptStringHTML(batchProfileId)));
+            }
+            if (!ps.isProfileEnable(batchProfileId)) {
+                logger.error("BatchEnrollmentProcessor: Profile " + batchProfileId + " not enabled");
+                throw new BadRequestDataException("Profile " + batchProfileId + " not enabled");
+            }
+
+            this.request = request;
+            this.aid = aid;
+            this.credentials = credentials;
+
+            Map<String, String> ctx = createContext();
+
+            SessionContext context = SessionContext.getContext();
+            context.put("profileContext", ctx);
+            context.put("sslClientCertProvider", new SSLClientCertProvider(request));
+
+            authenticator = ps.getProfileAuthenticator(profile);
+            if (authenticator != null) {
+                logger.info("BatchEnrollmentProcessor: Authenticating with " + authenticator.getName());
+                authToken = authenticate(request, null, authenticator, context, false, credentials);
+            }
+
+            // authentication success, now authorize
+            authorize(batchProfileId, profile, authToken);
+
+            sessionContext = new SessionContext();
+            sessionContext.putAll(context);
+
+        } finally {
+            SessionContext.releaseContext();
+        }
+    }
+
+    Map<String, String> createContext() {
+
+        Map<String, String> ctx = new HashMap<>();
+
+        if (aid != null)
+            ctx.put(EnrollProfile.REQUEST_AUTHORITY_ID, aid.toString());
+
+        if (authenticator != null) {
+            setCredentialsIntoContext(request, credentials, authenticator, ctx);
+        }
+
+        return ctx;
+    }
+
+    /**
+     * Processes the requests in parallel. The results are passed to
+     * the consumer on the calling thread in order of completion.
+     */
+    public void processBatchEnrollment(
+            List<CertEnrollmentRequest> items,
+            Consumer<BatchEnrollmentResult> consumer)
+            throws Exception {
+
+        CompletionService<BatchEnrollmentResult> completionService =
+                new ExecutorCompletionService<>(getExecutorService());
+
+        for (int i = 0; i < items.size(); i++) {
+            int index = i;
+            CertEnrollmentRequest item = items.get(i);
+            completionService.submit(() -> processItem(index, item));
+        }
+
+        for (int i = 0; i < items.size(); i++) {
+            consumer.accept(completionService.take().get());
+        }
+    }
+
+    BatchEnrollmentResult processItem(int index, CertEnrollmentRequest data) {
+
+        BatchEnrollmentResult result = new BatchEnrollmentResult();
+        result.index = index;
+
+        // each worker gets its own copy of the caller's session
+        SessionContext context = new SessionContext();
+        context.putAll(sessionContext);
+        SessionContext.setContext(context);
+
+        try {
+            if (data.getProfileId() != null && !data.getProfileId().equals(batchProfileId)) {
+                throw new BadRequestDataException("Request profile " + data.getProfileId()
+                        + " does not match batch profile " + batchProfileId);
+            }
+
+            Map<String, String> ctx = createContext();
+            setInputsIntoContext(data, profile, ctx);
+            context.put("profileContext", ctx);
+
+            IRequest[] reqs = profile.createRequests(ctx, locale);
+            populateRequests(data, false, locale, null, null, null, batchProfileId, profile,
+                    ctx, authenticator, authToken, reqs);
+
+            // validate realm (if present)
+            for (IRequest req : reqs) {
+                String realm = req.getRealm();
+                if (StringUtils.isNotBlank(realm)) {
+                    authz.checkRealm(realm, authToken, null,
+                            "certServer.ca.request.enrollment", "submit");
+                }
+            }
+
+            String errorCode = submitRequests(locale, profile, authToken, reqs);
+
+            if (errorCode != null) {
+                List<String> errors = new ArrayList<>();
+                for (IRequest req : reqs) {
+                    String error = req.getError(locale);
+                    if (error != null) {
+                        String code = req.getErrorCode(locale);
+                        errors.add(codeToReason(locale, code, error, req.getRequestId()));
+                    }
+                }
+                result.errorReason = StringUtils.join(errors, '\n');
+            }
+
+            result.requests = reqs;
+            result.errorCode = errorCode;
+
+        } catch (Exception e) {
+            logger.warn("BatchEnrollmentProcessor: Unable to process request " + index + ": " + e.getMessage(), e);
+            result.errorCode = "1";
+            result.errorReason = e.getMessage();
+
+        } finally {
+            SessionContext.releaseContext();
+        }
+
+        return result;
+    }
+
+    /**
+     * The outcome of a single request in the batch.
+     */
+    public static class BatchEnrollmentResult {
+
+        int index;
+        IRequest[] requests;
+        String errorCode;
+        String errorReason;
+
+        public int getIndex() {
+            return index;
+        }
+
+        public IRequest[] getRequests() {
+            return requests;
+        }
+
+        public String getErrorCode() {
+            return errorCode;
+        }
+
+        public String getErrorReason() {
+            return errorReason;
+        }
+    }
+}
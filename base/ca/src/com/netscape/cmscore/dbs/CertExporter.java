@@ -0,0 +1,605 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.dbs;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mozilla.jss.netscape.security.util.Utils;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.dbs.certdb.CertId;
+
+/**
+ * This class exports certificate records from the certificate
+ * repository as a stream of newline-delimited JSON objects or as
+ * concatenated DER certificates with a separate index.
+ *
+ * The repository is read through the allCerts virtual list view
+ * sorted by serial number, one page at a time, so memory usage does
+ * not depend on the number of exported records. For file exports the
+ * serial number space is split into partitions of similar size which
+ * are exported in parallel, each with its own checkpoint so that an
+ * interrupted export can be resumed.
+ */
+public class CertExporter {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CertExporter.class);
+
+    public final static String FORMAT_JSON = "json";
+    public final static String FORMAT_DER = "der";
+
+    public final static String ATTR_SERIAL_NUMBER = "serialNumber";
+    public final static String ATTR_STATUS = "status";
+    public final static String ATTR_SUBJECT_DN = "subjectDN";
+    public final static String ATTR_ISSUER_DN = "issuerDN";
+    public final static String ATTR_NOT_BEFORE = "notBefore";
+    public final static String ATTR_NOT_AFTER = "notAfter";
+    public final static String ATTR_ISSUED_BY = "issuedBy";
+    public final static String ATTR_ISSUED_ON = "issuedOn";
+    public final static String ATTR_REVOKED_BY = "revokedBy";
+    public final static String ATTR_REVOKED_ON = "revokedOn";
+    public final static String ATTR_CERTIFICATE = "certificate";
+
+    public final static String[] ATTRS = {
+            ATTR_SERIAL_NUMBER,
+            ATTR_STATUS,
+            ATTR_SUBJECT_DN,
+            ATTR_ISSUER_DN,
+            ATTR_NOT_BEFORE,
+            ATTR_NOT_AFTER,
+            ATTR_ISSUED_BY,
+            ATTR_ISSUED_ON,
+            ATTR_REVOKED_BY,
+            ATTR_REVOKED_ON,
+            ATTR_CERTIFICATE
+    };
+
+    public final static String FILTER = "(" + CertRecord.ATTR_CERT_STATUS + "=*)";
+
+    public final static String CHECKPOINT_FILE_SUFFIX = ".checkpoint";
+    public final static String INDEX_FILE_SUFFIX = ".idx";
+
+    CertificateRepository repository;
+
+    String format = FORMAT_JSON;
+    Set<String> attributes = new LinkedHashSet<>();
+    int pageSize = 200;
+    int threads = 1;
+
+    ObjectMapper mapper = new ObjectMapper();
+
+    public CertExporter(CertificateRepository repository) {
+        this.repository = repository;
+        for (String attr : ATTRS) {
+            attributes.add(attr);
+        }
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) throws EBaseException {
+        if (!FORMAT_JSON.equals(format) && !FORMAT_DER.equals(format)) {
+            throw new EBaseException("Unsupported export format: " + format);
+        }
+        this.format = format;
+    }
+
+    public Collection<String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Selects the attributes included in JSON output. The serial
+     * number is always included.
+     */
+    public void setAttributes(Collection<String> attributes) throws EBaseException {
+
+        Set<String> attrs = new LinkedHashSet<>();
+        attrs.add(ATTR_SERIAL_NUMBER);
+
+        for (String attr : attributes) {
+            boolean valid = false;
+            for (String name : ATTRS) {
+                if (name.equals(attr)) {
+                    valid = true;
+                    break;
+                }
+            }
+            if (!valid) {
+                throw new EBaseException("Invalid attribute: " + attr);
+            }
+            attrs.add(attr);
+        }
+
+        this.attributes = attrs;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Returns the cert record attributes that need to be retrieved
+     * from the database for the selected output attributes.
+     */
+    String[] getRecordAttributes() {
+
+        Set<String> attrs = new LinkedHashSet<>();
+        attrs.add("objectclass");
+        attrs.add(CertRecord.ATTR_ID);
+
+        if (FORMAT_DER.equals(format)) {
+            attrs.add(CertRecord.ATTR_X509CERT);
+            return attrs.toArray(new String[attrs.size()]);
+        }
+
+        for (String attr : attributes) {
+            switch (attr) {
+            case ATTR_STATUS:
+                attrs.add(CertRecord.ATTR_CERT_STATUS);
+                break;
+            case ATTR_SUBJECT_DN:
+            case ATTR_ISSUER_DN:
+            case ATTR_NOT_BEFORE:
+            case ATTR_NOT_AFTER:
+            case ATTR_CERTIFICATE:
+                attrs.add(CertRecord.ATTR_X509CERT);
+                break;
+            case ATTR_ISSUED_BY:
+                attrs.add(CertRecord.ATTR_ISSUED_BY);
+                break;
+            case ATTR_ISSUED_ON:
+                attrs.add(CertRecord.ATTR_CREATE_TIME);
+                break;
+            case ATTR_REVOKED_BY:
+                attrs.add(CertRecord.ATTR_REVOKED_BY);
+                break;
+            case ATTR_REVOKED_ON:
+                attrs.add(CertRecord.ATTR_REVOKED_ON);
+                break;
+            }
+        }
+
+        return attrs.toArray(new String[attrs.size()]);
+    }
+
+    /**
+     * Exports certificate records with serial numbers in the
+     * range [from, to) into the output stream. A null boundary
+     * means the range is open on that side.
+     *
+     * @return number of exported records
+     */
+    public long export(BigInteger from, BigInteger to, OutputStream out) throws Exception {
+        Partition partition = new Partition(0, from, to);
+        export(partition, out, null, null);
+        return partition.count;
+    }
+
+    /**
+     * Exports all certificate records into the output directory
+     * using parallel partitions. Each partition writes
+     * certs-<n>.<format> (plus certs-<n>.idx for DER) and keeps
+     * its progress in certs-<n>.checkpoint. If checkpoints exist
+     * from a previous run, the export resumes from them.
+     */
+    public void export(File outputDir) throws Exception {
+
+        outputDir.mkdirs();
+
+        List<Partition> partitions = loadPartitions(outputDir);
+
+        if (partitions.isEmpty()) {
+            partitions = createPartitions();
+            for (Partition partition : partitions) {
+                partition.store(getCheckpointFile(outputDir, partition));
+            }
+        } else {
+            logger.info("CertExporter: Resuming export in " + outputDir);
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "CertExporter-" + counter.incrementAndGet());
+            }
+        });
+
+        long start = System.currentTimeMillis();
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (Partition partition : partitions) {
+                if (partition.done) {
+                    logger.info("CertExporter: Partition " + partition.id + " already exported");
+                    continue;
+                }
+                futures.add(executorService.submit(() -> {
+                    export(partition, outputDir);
+                    return null;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+        } finally {
+            executorService.shutdownNow();
+        }
+
+        long total = 0;
+        for (Partition partition : partitions) {
+            total += partition.count;
+        }
+
+        long time = System.currentTimeMillis() - start;
+        logger.info("CertExporter: Exported " + total + " records in " + time + " ms");
+    }
+
+    /**
+     * Splits the serial number space into partitions holding a similar
+     * number of records using positions in the virtual list view.
+     */
+    List<Partition> createPartitions() throws EBaseException {
+
+        List<Partition> partitions = new ArrayList<>();
+
+        CertRecordList list = repository.findCertRecordsInList(
+                FILTER,
+                new String[] { CertRecord.ATTR_ID, "objectclass" },
+                "serialno",
+                1);
+
+        int total = list.getSize();
+        logger.info("CertExporter: Total records: " + total);
+
+        int count = Math.max(1, Math.min(threads, total));
+        BigInteger from = null;
+
+        for (int i = 1; i < count; i++) {
+            CertRecord record = list.getCertRecord((int) ((long) i * total / count));
+            if (record == null) {
+                continue;
+            }
+
+            BigInteger to = record.getSerialNumber();
+            if (from != null && to.compareTo(from) <= 0) {
+                continue;
+            }
+
+            partitions.add(new Partition(partitions.size(), from, to));
+            from = to;
+        }
+
+        partitions.add(new Partition(partitions.size(), from, null));
+
+        for (Partition partition : partitions) {
+            logger.info("CertExporter: Partition " + partition.id + ": " + partition.from + " - " + partition.to);
+        }
+
+        return partitions;
+    }
+
+    List<Partition> loadPartitions(File outputDir) throws IOException {
+
+        List<Partition> partitions = new ArrayList<>();
+
+        for (int i = 0;; i++) {
+            File file = getCheckpointFile(outputDir, i);
+            if (!file.exists()) {
+                break;
+            }
+            partitions.add(Partition.load(i, file));
+        }
+
+        return partitions;
+    }
+
+    File getCheckpointFile(File outputDir, Partition partition) {
+        return getCheckpointFile(outputDir, partition.id);
+    }
+
+    File getCheckpointFile(File outputDir, int id) {
+        return new File(outputDir, "certs-" + id + CHECKPOINT_FILE_SUFFIX);
+    }
+
+    void export(Partition partition, File outputDir) throws Exception {
+
+        File checkpointFile = getCheckpointFile(outputDir, partition);
+        File dataFile = new File(outputDir, "certs-" + partition.id + "." + format);
+        File indexFile = FORMAT_DER.equals(format) ? new File(outputDir, "certs-" + partition.id + INDEX_FILE_SUFFIX) : null;
+
+        // discard anything written after the last checkpoint
+        truncate(dataFile, partition.dataOffset);
+        if (indexFile != null) {
+            truncate(indexFile, partition.indexOffset);
+        }
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(dataFile, true));
+                OutputStream index = indexFile == null ? null
+                        : new BufferedOutputStream(new FileOutputStream(indexFile, true))) {
+
+            export(partition, out, index, checkpointFile);
+        }
+
+        partition.done = true;
+        partition.store(checkpointFile);
+
+        logger.info("CertExporter: Partition " + partition.id + " exported " + partition.count + " records");
+    }
+
+    void truncate(File file, long size) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() > size) {
+                raf.setLength(size);
+            }
+        }
+    }
+
+    /**
+     * Exports one partition page by page. After each page the output
+     * is flushed and, if a checkpoint file is given, the position of
+     * the next serial number and the output offsets are recorded.
+     */
+    void export(Partition partition, OutputStream out, OutputStream index, File checkpointFile) throws Exception {
+
+        String[] attrs = getRecordAttributes();
+        BigInteger next = partition.next;
+
+        while (true) {
+
+            CertRecordList list = next == null
+                    ? repository.findCertRecordsInList(FILTER, attrs, "serialno", pageSize)
+                    : repository.findCertRecordsInList(FILTER, attrs, next.toString(), "serialno", pageSize);
+
+            if (list.getSize() <= 0) {
+                break;
+            }
+
+            int exported = 0;
+            boolean finished = false;
+
+            for (int i = 0; i < pageSize; i++) {
+
+                CertRecord record = list.getCertRecord(i);
+                if (record == null) {
+                    finished = true;
+                    break;
+                }
+
+                BigInteger serialNumber = record.getSerialNumber();
+
+                // the virtual list starts at the closest entry which
+                // may precede the requested serial number
+                if (next != null && serialNumber.compareTo(next) < 0) {
+                    continue;
+                }
+
+                if (partition.to != null && serialNumber.compareTo(partition.to) >= 0) {
+                    finished = true;
+                    break;
+                }
+
+                if (FORMAT_DER.equals(format)) {
+                    writeDER(record, partition, out, index);
+                } else {
+                    writeJSON(record, partition, out);
+                }
+
+                partition.count++;
+                exported++;
+                next = serialNumber.add(BigInteger.ONE);
+            }
+
+            out.flush();
+            if (index != null) {
+                index.flush();
+            }
+
+            partition.next = next;
+
+            if (checkpointFile != null) {
+                partition.store(checkpointFile);
+            }
+
+            if (finished || exported == 0) {
+                break;
+            }
+        }
+    }
+
+    void writeJSON(CertRecord record, Partition partition, OutputStream out) throws Exception {
+
+        ObjectNode node = mapper.createObjectNode();
+        X509CertImpl cert = null;
+
+        for (String attr : attributes) {
+            switch (attr) {
+            case ATTR_SERIAL_NUMBER:
+                node.put(attr, new CertId(record.getSerialNumber()).toHexString());
+                break;
+            case ATTR_STATUS:
+                node.put(attr, record.getStatus());
+                break;
+            case ATTR_SUBJECT_DN:
+                cert = cert == null ? record.getCertificate() : cert;
+                if (cert != null) node.put(attr, cert.getSubjectDN().toString());
+                break;
+            case ATTR_ISSUER_DN:
+                cert = cert == null ? record.getCertificate() : cert;
+                if (cert != null) node.put(attr, cert.getIssuerDN().toString());
+                break;
+            case ATTR_NOT_BEFORE:
+                // validity dates are available without decoding the cert
+                if (record.getEncodedCertificate() != null) putDate(node, attr, record.getNotBefore());
+                break;
+            case ATTR_NOT_AFTER:
+                if (record.getEncodedCertificate() != null) putDate(node, attr, record.getNotAfter());
+                break;
+            case ATTR_ISSUED_BY:
+                node.put(attr, record.getIssuedBy());
+                break;
+            case ATTR_ISSUED_ON:
+                putDate(node, attr, record.getCreateTime());
+                break;
+            case ATTR_REVOKED_BY:
+                node.put(attr, record.getRevokedBy());
+                break;
+            case ATTR_REVOKED_ON:
+                putDate(node, attr, record.getRevokedOn());
+                break;
+            case ATTR_CERTIFICATE:
+                byte[] der = record.getEncodedCertificate();
+                if (der != null) node.put(attr, Utils.base64encodeSingleLine(der));
+                break;
+            }
+        }
+
+        byte[] bytes = (mapper.writeValueAsString(node) + "\n").getBytes(StandardCharsets.UTF_8);
+        out.write(bytes);
+        partition.dataOffset += bytes.length;
+    }
+
+    void putDate(ObjectNode node, String name, Date date) {
+        if (date != null) {
+            node.put(name, date.getTime());
+        }
+    }
+
+    void writeDER(CertRecord record, Partition partition, OutputStream out, OutputStream index) throws Exception {
+
+        byte[] der = record.getEncodedCertificate();
+        if (der == null) {
+            logger.warn("CertExporter: Missing certificate in record " + record.getSerialNumber());
+            return;
+        }
+
+        if (index != null) {
+            // <serial number> <offset> <length>
+            String entry = new CertId(record.getSerialNumber()).toHexString()
+                    + " " + partition.dataOffset + " " + der.length + "\n";
+            byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+            index.write(bytes);
+            partition.indexOffset += bytes.length;
+        }
+
+        out.write(der);
+        partition.dataOffset += der.length;
+    }
+
+    /**
+     * A range of serial numbers [from, to) exported by a single
+     * thread together with its progress.
+     */
+    static class Partition {
+
+        int id;
+        BigInteger from;
+        BigInteger to;
+
+        BigInteger next;
+        long count;
+        long dataOffset;
+        long indexOffset;
+        boolean done;
+
+        Partition(int id, BigInteger from, BigInteger to) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+            this.next = from;
+        }
+
+        static Partition load(int id, File file) throws IOException {
+
+            Properties props = new Properties();
+            try (InputStream is = new FileInputStream(file)) {
+                props.load(is);
+            }
+
+            Partition partition = new Partition(id, toBigInteger(props.getProperty("from")),
+                    toBigInteger(props.getProperty("to")));
+
+            partition.next = toBigInteger(props.getProperty("next"));
+            partition.count = Long.parseLong(props.getProperty("count", "0"));
+            partition.dataOffset = Long.parseLong(props.getProperty("dataOffset", "0"));
+            partition.indexOffset = Long.parseLong(props.getProperty("indexOffset", "0"));
+            partition.done = Boolean.parseBoolean(props.getProperty("done", "false"));
+
+            return partition;
+        }
+
+        static BigInteger toBigInteger(String value) {
+            return value == null || value.isEmpty() ? null : new BigInteger(value);
+        }
+
+        void store(File file) throws IOException {
+
+            Properties props = new Properties();
+            if (from != null) props.setProperty("from", from.toString());
+            if (to != null) props.setProperty("to", to.toString());
+            if (next != null) props.setProperty("next", next.toString());
+            props.setProperty("count", Long.toString(count));
+            props.setProperty("dataOffset", Long.toString(dataOffset));
+            props.setProperty("indexOffset", Long.toString(indexOffset));
+            props.setProperty("done", Boolean.toString(done));
+
+            // write to a temporary file first so that a crash never
+            // leaves a partially written checkpoint behind
+            File tmp = new File(file.getPath() + ".tmp");
+            try (OutputStream os = new FileOutputStream(tmp)) {
+                props.store(os, null);
+            }
+
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to update checkpoint " + file);
+            }
+        }
+    }
+}
@@ -69,7 +69,7 @@ public abstract class AbstractProfileSubsystem implements ISubsystem {
     }
 
     public boolean isProfileEnable(String id) throws EBaseException{
-        Profile profile = mProfiles.get(id);
+        Profile profile = getProfile(id);
         String enable = profile.getConfigStore().getString(PROP_ENABLE, null);
         return Boolean.valueOf(enable);
     }
@@ -77,7 +77,7 @@ public abstract class AbstractProfileSubsystem implements ISubsystem {
     public String getProfileEnableBy(String id) throws EBaseException {
         if (!isProfileEnable(id))
             return null;
-        Profile profile = mProfiles.get(id);
+        Profile profile = getProfile(id);
         return profile.getConfigStore().getString(PROP_ENABLE_BY, null);
     }
 
@@ -86,7 +86,7 @@ public abstract class AbstractProfileSubsystem implements ISubsystem {
      */
     public void enableProfile(String id, String enableBy)
             throws EProfileException {
-        Profile profile = mProfiles.get(id);
+        Profile profile = getProfile(id);
 
         profile.getConfigStore().putString(PROP_ENABLE, "true");
         profile.getConfigStore().putString(PROP_ENABLE_BY, enableBy);
@@ -105,7 +105,7 @@ public abstract class AbstractProfileSubsystem implements ISubsystem {
      */
     public void disableProfile(String id)
             throws EProfileException {
-        Profile profile = mProfiles.get(id);
+        Profile profile = getProfile(id);
 
         profile.getConfigStore().putString(PROP_ENABLE, "false");
     }
@@ -117,7 +117,7 @@ public abstract class AbstractProfileSubsystem implements ISubsystem {
             throws EProfileException {
 
         CAEngine engine = CAEngine.getInstance();
-        IConfigStore cs = mProfiles.get(id).getConfigStore();
+        IConfigStore cs = getProfile(id).getConfigStore();
 
         // first create a *new* profile object from the configStore
         // and initialise it with the updated configStore
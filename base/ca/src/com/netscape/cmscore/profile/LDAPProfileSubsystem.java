@@ -20,10 +20,25 @@ package com.netscape.cmscore.profile;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.dogtagpki.server.ca.CAEngine;
 import org.dogtagpki.server.ca.CAEngineConfig;
@@ -65,6 +80,11 @@ public class LDAPProfileSubsystem
 
     public final static Logger logger = LoggerFactory.getLogger(LDAPProfileSubsystem.class);
 
+    public final static String PROP_LOAD_THREADS = "loadThreads";
+    public final static String PROP_LAZY_LOAD = "lazyLoad";
+    public final static String PROP_RETRY_DELAY = "retryDelay";
+    public final static String PROP_MAX_RETRY_DELAY = "maxRetryDelay";
+
     private String profileContainerDNString;
     private DN profileContainerDN;
 
@@ -84,6 +104,22 @@ public class LDAPProfileSubsystem
 
     private AsyncLoader loader = new AsyncLoader(10 /*10s timeout*/);
 
+    /* Immutable snapshot of mProfiles which is replaced on every
+     * change, so profile lookups never wait for the monitor thread.
+     * Deferred profiles are mapped to null. */
+    private volatile Map<String, Profile> profiles = Collections.emptyMap();
+
+    /* Map of profileId -> LDAP entry of disabled profiles that have
+     * not been instantiated yet */
+    private Map<String, LDAPEntry> deferredProfiles = new HashMap<>();
+
+    /* Pool for parsing profiles during the initial load */
+    private ExecutorService loadExecutor;
+
+    private boolean lazyLoad;
+    private long retryDelay; // milliseconds
+    private long maxRetryDelay; // milliseconds
+
     /**
      * Initializes this subsystem with the given configuration
      * store.
@@ -120,6 +156,28 @@ public class LDAPProfileSubsystem
         profileContainerDNString = "ou=certificateProfiles,ou=ca," + basedn;
         profileContainerDN = new DN(profileContainerDNString);
 
+        int loadThreads = config.getInteger(PROP_LOAD_THREADS,
+                Math.min(8, Runtime.getRuntime().availableProcessors()));
+        logger.debug("LDAPProfileSubsystem: load threads: " + loadThreads);
+
+        if (loadThreads > 1) {
+            AtomicInteger counter = new AtomicInteger();
+            loadExecutor = Executors.newFixedThreadPool(loadThreads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "profileLoader-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        // disabled profiles are only instantiated when they are used
+        lazyLoad = config.getBoolean(PROP_LAZY_LOAD, true);
+        logger.debug("LDAPProfileSubsystem: lazy load: " + lazyLoad);
+
+        retryDelay = config.getInteger(PROP_RETRY_DELAY, 1) * 1000L;
+        maxRetryDelay = config.getInteger(PROP_MAX_RETRY_DELAY, 60) * 1000L;
+
         monitor = new Thread(this, "profileChangeMonitor");
         monitor.start();
         try {
@@ -141,7 +199,15 @@ public class LDAPProfileSubsystem
             logger.warn("LDAPProfileSubsystem.getProfile: caught InterruptedException "
                     + "while waiting for profiles to be loaded: " + e, e);
         }
-        return super.getProfile(id);
+
+        Map<String, Profile> snapshot = profiles;
+        Profile profile = snapshot.get(id);
+
+        if (profile == null && snapshot.containsKey(id)) {
+            profile = instantiateProfile(id);
+        }
+
+        return profile;
     }
 
     public Enumeration<String> getProfileIds() {
@@ -151,24 +217,31 @@ public class LDAPProfileSubsystem
             logger.warn("LDAPProfileSubsystem.getProfile: caught InterruptedException "
                     + "while waiting for profiles to be loaded: " + e, e);
         }
-        return super.getProfileIds();
+        return Collections.enumeration(profiles.keySet());
+    }
+
+    /**
+     * Publish a new snapshot of the profiles.
+     *
+     * Must be called while holding the subsystem lock.
+     */
+    private void publishProfiles() {
+        profiles = Collections.unmodifiableMap(new LinkedHashMap<>(mProfiles));
     }
 
     /**
      * Read the given LDAPEntry into the profile subsystem.
+     *
+     * The profile is parsed without holding the subsystem lock
+     * so that multiple profiles can be loaded in parallel.
      */
-    private synchronized void readProfile(LDAPEntry ldapProfile) {
+    private void readProfile(LDAPEntry ldapProfile, boolean initialLoad) {
 
         CAEngine engine = CAEngine.getInstance();
         PluginRegistry registry = engine.getPluginRegistry();
 
         String nsUniqueId =
             ldapProfile.getAttribute("nsUniqueId").getStringValueArray()[0];
-        if (deletedNsUniqueIds.contains(nsUniqueId)) {
-            logger.warn("readProfile: ignoring entry with nsUniqueId '"
-                    + nsUniqueId + "' due to deletion");
-            return;
-        }
 
         String profileId = null;
         String dn = ldapProfile.getDN();
@@ -182,49 +255,141 @@ public class LDAPProfileSubsystem
                 ldapProfile.getAttribute("entryUSN").getStringValueArray()[0]);
         logger.debug("readProfile: new entryUSN = " + newEntryUSN);
 
-        BigInteger knownEntryUSN = entryUSNs.get(profileId);
-        if (knownEntryUSN != null) {
-            logger.debug("readProfile: known entryUSN = " + knownEntryUSN);
-            if (newEntryUSN.compareTo(knownEntryUSN) <= 0) {
-                logger.info("readProfile: data is current");
-                return;
-            }
+        if (!isNewer(profileId, nsUniqueId, newEntryUSN)) {
+            return;
         }
 
         String classId = ldapProfile.getAttribute("classId").getStringValues().nextElement();
-
-        InputStream data = new ByteArrayInputStream(
-                ldapProfile.getAttribute("certProfileConfig").getByteValueArray()[0]);
+        byte[] data = ldapProfile.getAttribute("certProfileConfig").getByteValueArray()[0];
 
         IPluginInfo info = registry.getPluginInfo("profile", classId);
         if (info == null) {
             logger.error("Error loading profile: No plugins for type : profile, with classId " + classId);
-        } else {
-            try {
-                logger.debug("Start Profile Creation - " + profileId + " " + classId + " " + info.getClassName());
-                createProfile(profileId, classId, info.getClassName(), data);
+            return;
+        }
+
+        if (initialLoad && lazyLoad && !isEnabled(data)) {
+            logger.debug("Deferring Profile Creation - " + profileId);
+            synchronized (this) {
+                if (!isNewer(profileId, nsUniqueId, newEntryUSN)) {
+                    return;
+                }
+                deferredProfiles.put(profileId, ldapProfile);
+                mProfiles.put(profileId, null);
+                mProfileClassIds.put(profileId, classId);
                 entryUSNs.put(profileId, newEntryUSN);
                 nsUniqueIds.put(profileId, nsUniqueId);
-                logger.info("Done Profile Creation - " + profileId);
-            } catch (EProfileException e) {
-                logger.error("Error creating profile '" + profileId + "': " + e, e);
+                publishProfiles();
             }
+            return;
+        }
+
+        try {
+            logger.debug("Start Profile Creation - " + profileId + " " + classId + " " + info.getClassName());
+            Profile profile = newProfile(profileId, info.getClassName(), new ByteArrayInputStream(data));
+
+            synchronized (this) {
+                // the profile might have been changed while it was being parsed
+                if (!isNewer(profileId, nsUniqueId, newEntryUSN)) {
+                    return;
+                }
+                deferredProfiles.remove(profileId);
+                mProfiles.put(profileId, profile);
+                mProfileClassIds.put(profileId, classId);
+                entryUSNs.put(profileId, newEntryUSN);
+                nsUniqueIds.put(profileId, nsUniqueId);
+                publishProfiles();
+            }
+
+            logger.info("Done Profile Creation - " + profileId);
+
+        } catch (EProfileException e) {
+            logger.error("Error creating profile '" + profileId + "': " + e, e);
+        }
+    }
+
+    /**
+     * Check whether the given entry is newer than the known
+     * version of the profile.
+     */
+    private synchronized boolean isNewer(String profileId, String nsUniqueId, BigInteger newEntryUSN) {
+
+        if (deletedNsUniqueIds.contains(nsUniqueId)) {
+            logger.warn("readProfile: ignoring entry with nsUniqueId '"
+                    + nsUniqueId + "' due to deletion");
+            return false;
+        }
+
+        BigInteger knownEntryUSN = entryUSNs.get(profileId);
+        if (knownEntryUSN != null) {
+            logger.debug("readProfile: known entryUSN = " + knownEntryUSN);
+            if (newEntryUSN.compareTo(knownEntryUSN) <= 0) {
+                logger.info("readProfile: data is current");
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isEnabled(byte[] data) {
+        try {
+            PropConfigStore config = new PropConfigStore();
+            config.load(new ByteArrayInputStream(data));
+            return config.getBoolean(PROP_ENABLE, false);
+
+        } catch (Exception e) {
+            // let the full profile creation report the problem
+            return true;
         }
     }
 
+    /**
+     * Instantiate a profile whose creation was deferred.
+     */
+    private synchronized Profile instantiateProfile(String id) throws EProfileException {
+
+        LDAPEntry ldapProfile = deferredProfiles.get(id);
+        if (ldapProfile == null) {
+            // already instantiated or removed
+            return mProfiles.get(id);
+        }
+
+        String classId = mProfileClassIds.get(id);
+        byte[] data = ldapProfile.getAttribute("certProfileConfig").getByteValueArray()[0];
+
+        CAEngine engine = CAEngine.getInstance();
+        PluginRegistry registry = engine.getPluginRegistry();
+        IPluginInfo info = registry.getPluginInfo("profile", classId);
+
+        logger.info("LDAPProfileSubsystem: Creating deferred profile " + id);
+        Profile profile = newProfile(id, info.getClassName(), new ByteArrayInputStream(data));
+
+        deferredProfiles.remove(id);
+        mProfiles.put(id, profile);
+        publishProfiles();
+
+        return profile;
+    }
+
     public synchronized Profile createProfile(String id, String classid, String className)
             throws EProfileException {
-        return createProfile(id, classid, className, null);
+
+        Profile profile = newProfile(id, classid, className, null);
+        mProfiles.put(id, profile);
+        mProfileClassIds.put(id, classid);
+        publishProfiles();
+
+        return profile;
     }
 
     /**
      * Creates a profile instance.
      *
-     * createProfile could theoretically be called simultaneously
-     * with the same profileId from Monitor and ProfileService,
-     * so the method is synchronized.
+     * The instance is not registered in the subsystem yet,
+     * so multiple profiles can be created concurrently.
      */
-    private synchronized Profile createProfile(
+    private Profile newProfile(
             String id, String classid, String className, InputStream data)
             throws EProfileException {
 
@@ -250,8 +415,6 @@ public class LDAPProfileSubsystem
             Profile profile = (Profile) Class.forName(className).newInstance();
             profile.setId(id);
             profile.init(subStoreConfig);
-            mProfiles.put(id, profile);
-            mProfileClassIds.put(id, classid);
             return profile;
 
         } catch (Exception e) {
@@ -316,7 +479,14 @@ public class LDAPProfileSubsystem
             forgetProfile(oldDN.explodeDN(true)[0]);
 
         if ((new DN(entry.getDN())).isDescendantOf(profileContainerDN))
-            readProfile(entry);
+            readProfile(entry, false);
+    }
+
+    @Override
+    public synchronized void commitProfile(String id)
+            throws EProfileException {
+        super.commitProfile(id);
+        publishProfiles();
     }
 
     /**
@@ -362,11 +532,13 @@ public class LDAPProfileSubsystem
      * This method is used when the profile change monitor receives
      * notification that a profile was deleted.
      */
-    private void forgetProfile(String id) {
+    private synchronized void forgetProfile(String id) {
         mProfiles.remove(id);
         mProfileClassIds.remove(id);
         entryUSNs.remove(id);
         nsUniqueIds.remove(id);
+        deferredProfiles.remove(id);
+        publishProfiles();
     }
 
     /**
@@ -384,15 +556,28 @@ public class LDAPProfileSubsystem
     public void shutdown() {
         stopped = true;
         monitor = null;
+
+        if (loadExecutor != null) {
+            // cancel the loads that have not started so that the
+            // monitor does not wait for them
+            for (Runnable task : loadExecutor.shutdownNow()) {
+                if (task instanceof Future) {
+                    ((Future<?>) task).cancel(false);
+                }
+            }
+        }
+
         forgetAllProfiles();
     }
 
-    private void forgetAllProfiles() {
+    private synchronized void forgetAllProfiles() {
         mProfiles.clear();
         mProfileClassIds.clear();
         entryUSNs.clear();
         nsUniqueIds.clear();
         deletedNsUniqueIds.clear();
+        deferredProfiles.clear();
+        publishProfiles();
     }
 
     /**
@@ -434,6 +619,11 @@ public class LDAPProfileSubsystem
 
         LDAPConnection conn = null;
 
+        /* Profiles from the initial search that are still being parsed */
+        List<Future<?>> pendingLoads = new ArrayList<>();
+
+        long delay = retryDelay;
+
         logger.info("Profile change monitor: starting.");
 
         while (!stopped) {
@@ -449,6 +639,9 @@ public class LDAPProfileSubsystem
                     profileContainerDNString, LDAPConnection.SCOPE_SUB,
                     "(objectclass=*)", attrs, false, cons);
 
+                // connected, reset the retry delay
+                delay = retryDelay;
+
                 /* Wait until the last possible moment before taking
                  * the load lock and dropping all profiles, so that
                  * we can continue to service requests while LDAP is
@@ -461,6 +654,9 @@ public class LDAPProfileSubsystem
                 loader.startLoading();
                 forgetAllProfiles();
 
+                Integer numItems = null;
+                int numItemsRead = 0;
+
                 while (!stopped && results.hasMoreElements()) {
                     LDAPEntry entry = results.next();
                     DN entryDN = new DN(entry.getDN());
@@ -474,9 +670,13 @@ public class LDAPProfileSubsystem
                          * entries).  In that case AsyncLoader has a watchdog
                          * timer to interrupt waiting threads.
                          */
-                        loader.setNumItems(new Integer(
+                        numItems = new Integer(
                             entry.getAttribute("numSubordinates")
-                                .getStringValueArray()[0]));
+                                .getStringValueArray()[0]);
+                        if (numItemsRead >= numItems) {
+                            awaitInitialLoad(pendingLoads);
+                        }
+                        loader.setNumItems(numItems);
                         continue;
                     }
 
@@ -495,6 +695,10 @@ public class LDAPProfileSubsystem
                     if (!Arrays.asList(objectClasses).contains("certProfile")) {
                         /* It is not a certProfile; ignore it.  But it does
                          * contribute to numSubordinates so increment the loader. */
+                        numItemsRead++;
+                        if (numItems != null && numItemsRead >= numItems) {
+                            awaitInitialLoad(pendingLoads);
+                        }
                         loader.increment();
                         continue;
                     }
@@ -506,11 +710,15 @@ public class LDAPProfileSubsystem
                             LDAPEntryChangeControl.class, results.getResponseControls());
                     logger.debug("Profile change monitor: Processed change controls.");
                     if (changeControl != null) {
+                        /* Changes are only sent after the initial entries,
+                         * so make sure those have been loaded first. */
+                        awaitInitialLoad(pendingLoads);
+
                         int changeType = changeControl.getChangeType();
                         switch (changeType) {
                         case LDAPPersistSearchControl.ADD:
                             logger.debug("Profile change monitor: ADD");
-                            readProfile(entry);
+                            readProfile(entry, false);
                             break;
                         case LDAPPersistSearchControl.DELETE:
                             logger.debug("Profile change monitor: DELETE");
@@ -518,7 +726,7 @@ public class LDAPProfileSubsystem
                             break;
                         case LDAPPersistSearchControl.MODIFY:
                             logger.debug("Profile change monitor: MODIFY");
-                            readProfile(entry);
+                            readProfile(entry, false);
                             break;
                         case LDAPPersistSearchControl.MODDN:
                             logger.debug("Profile change monitor: MODDN");
@@ -530,20 +738,36 @@ public class LDAPProfileSubsystem
                         }
                     } else {
                         logger.debug("Profile change monitor: immediate result");
-                        readProfile(entry);
-                        loader.increment();
+                        numItemsRead++;
+
+                        if (loadExecutor == null) {
+                            readProfile(entry, true);
+                            loader.increment();
+
+                        } else {
+                            /* The loader is incremented on this thread
+                             * once the profile has been parsed. */
+                            pendingLoads.add(loadExecutor.submit(() -> readProfile(entry, true)));
+
+                            if (numItems != null && numItemsRead >= numItems) {
+                                awaitInitialLoad(pendingLoads);
+                            }
+                        }
                     }
                 }
             } catch (ELdapException e) {
-                logger.warn("Profile change monitor: failed to get LDAPConnection. Retrying in 1 second.");
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ex) {
-                    Thread.currentThread().interrupt();
-                }
+                logger.warn("Profile change monitor: failed to get LDAPConnection. Retrying in "
+                        + delay / 1000 + " second(s).");
+                delay = backoff(delay);
+
             } catch (LDAPException e) {
                 logger.error("Profile change monitor: Caught exception: " + e, e);
+                logger.warn("Profile change monitor: Retrying in " + delay / 1000 + " second(s).");
+                delay = backoff(delay);
+
             } finally {
+                awaitInitialLoad(pendingLoads);
+
                 if (conn != null) {
                     try {
                         dbFactory.returnConn(conn);
@@ -556,4 +780,67 @@ public class LDAPProfileSubsystem
         }
         logger.info("Profile change monitor: stopping.");
     }
+
+    /**
+     * Wait for the profiles from the initial search to be parsed
+     * and count them in the loader.
+     *
+     * Must be called on the monitor thread which holds the loader lock.
+     */
+    private void awaitInitialLoad(List<Future<?>> pendingLoads) {
+
+        for (Future<?> future : pendingLoads) {
+
+            if (!waitForLoad(future)) {
+                break;
+            }
+
+            loader.increment();
+        }
+
+        pendingLoads.clear();
+    }
+
+    /**
+     * Waits for a profile load to complete.
+     *
+     * @return false if the subsystem is shutting down
+     */
+    private boolean waitForLoad(Future<?> future) {
+
+        while (true) {
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                return true;
+
+            } catch (ExecutionException e) {
+                logger.error("Profile change monitor: Unable to load profile: " + e.getCause(), e.getCause());
+                return true;
+
+            } catch (CancellationException e) {
+                return !stopped;
+
+            } catch (TimeoutException e) {
+                if (stopped) {
+                    return false;
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Sleep for the given delay and return the next delay.
+     */
+    private long backoff(long delay) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return Math.min(delay * 2, maxRetryDelay);
+    }
 }
@@ -29,6 +29,7 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -70,6 +71,7 @@ import com.netscape.certsrv.util.AsyncLoader;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.apps.EngineConfig;
+import com.netscape.cmscore.apps.StartupTimeline.StartupTask;
 import com.netscape.cmscore.authentication.VerifiedCert;
 import com.netscape.cmscore.base.ConfigStorage;
 import com.netscape.cmscore.cert.CertUtils;
@@ -779,6 +781,9 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
         String schedulerClass = caConfig.getString("requestSchedulerClass", null);
         logger.info("CAEngine: - scheduler: " + schedulerClass);
 
+        boolean coalesceWrites = caConfig.getBoolean("coalesceRequestWrites", false);
+        logger.info("CAEngine: - coalesce writes: " + coalesceWrites);
+
         requestRepository = new RequestRepository(CertificateAuthority.ID, increment, dbSubsystem);
 
         requestQueue = new RequestQueue(
@@ -789,6 +794,7 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
                 requestNotifier,
                 pendingNotifier);
 
+        requestQueue.setCoalesceWrites(coalesceWrites);
         requestRepository.setRequestQueue(requestQueue);
 
         if (schedulerClass != null) {
@@ -817,8 +823,11 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
             ocspResponderByName = caConfig.getBoolean("byName", true);
             logger.info("CAEngine: - by name: " + ocspResponderByName);
 
-            initCRLPublisher();
-            initPublisherProcessor();
+            // the CRL publisher and the publisher processor are independent
+            Map<String, StartupTask> tasks = new LinkedHashMap<>();
+            tasks.put("crlPublisher", this::initCRLPublisher);
+            tasks.put("publisherProcessor", this::initPublisherProcessor);
+            runParallel("init", tasks);
         }
 
         super.initSubsystems();
@@ -838,10 +847,13 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
         super.initSubsystem(subsystem, subsystemConfig);
 
         if (subsystem instanceof CertificateAuthority) {
-            initCRLIssuingPoints();
-            initIssuanceProtectionCert();
-            initAuthorityMonitor();
+            Map<String, StartupTask> tasks = new LinkedHashMap<>();
+            tasks.put("crlIssuingPoints", this::initCRLIssuingPoints);
+            tasks.put("issuanceProtectionCert", this::initIssuanceProtectionCert);
+            runParallel("init", tasks);
 
+            // lightweight CAs are loaded after the host CA is complete
+            startupTimeline.run("authorityMonitor", "init", this::initAuthorityMonitor);
         }
     }
 
@@ -1698,6 +1710,18 @@ public class CAEngine extends CMSEngine implements ServletContextListener {
             certificateRepository.shutdown();
         }
 
+        if (requestRepository != null) {
+            requestRepository.shutdown();
+        }
+
+        if (requestNotifier != null) {
+            requestNotifier.shutdown();
+        }
+
+        if (pendingNotifier != null) {
+            pendingNotifier.shutdown();
+        }
+
         if (publisherProcessor != null) {
             publisherProcessor.shutdown();
         }
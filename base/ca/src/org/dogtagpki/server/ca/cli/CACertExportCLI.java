@@ -0,0 +1,121 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.ca.cli;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.tomcat.util.net.jss.TomcatJSS;
+import org.dogtagpki.cli.CLI;
+import org.dogtagpki.cli.CommandCLI;
+import org.dogtagpki.server.ca.CAConfig;
+import org.dogtagpki.server.ca.CAEngineConfig;
+import org.dogtagpki.util.logging.PKILogger;
+import org.dogtagpki.util.logging.PKILogger.Level;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.DatabaseConfig;
+import com.netscape.cmscore.base.ConfigStorage;
+import com.netscape.cmscore.base.FileConfigStore;
+import com.netscape.cmscore.dbs.CertExporter;
+import com.netscape.cmscore.dbs.CertificateRepository;
+import com.netscape.cmscore.dbs.DBSubsystem;
+import com.netscape.cmscore.ldapconn.PKISocketConfig;
+import com.netscape.cmsutil.password.IPasswordStore;
+import com.netscape.cmsutil.password.PasswordStoreConfig;
+
+public class CACertExportCLI extends CommandCLI {
+
+    public static Logger logger = LoggerFactory.getLogger(CACertExportCLI.class);
+
+    public CACertExportCLI(CLI parent) {
+        super("export", "Export certificates in CA", parent);
+    }
+
+    public void createOptions() {
+        options.addOption(null, "output-dir", true, "Output directory");
+        options.addOption(null, "format", true, "Output format: json (default), der");
+        options.addOption(null, "attributes", true, "Comma-separated JSON attributes to export (default: all)");
+        options.addOption(null, "threads", true, "Number of partitions exported in parallel (default: 4)");
+        options.addOption(null, "page-size", true, "Number of records retrieved per page (default: 200)");
+
+        options.addOption("v", "verbose", false, "Run in verbose mode.");
+        options.addOption(null, "debug", false, "Run in debug mode.");
+        options.addOption(null, "help", false, "Show help message.");
+    }
+
+    public void execute(CommandLine cmd) throws Exception {
+
+        if (cmd.hasOption("debug")) {
+            PKILogger.setLevel(PKILogger.Level.DEBUG);
+
+        } else if (cmd.hasOption("verbose")) {
+            PKILogger.setLevel(Level.INFO);
+        }
+
+        String outputDir = cmd.getOptionValue("output-dir");
+        if (outputDir == null) {
+            throw new Exception("Missing output directory");
+        }
+
+        String format = cmd.getOptionValue("format", CertExporter.FORMAT_JSON);
+        String attributes = cmd.getOptionValue("attributes");
+        int threads = Integer.parseInt(cmd.getOptionValue("threads", "4"));
+        int pageSize = Integer.parseInt(cmd.getOptionValue("page-size", "200"));
+
+        String catalinaBase = System.getProperty("catalina.base");
+
+        TomcatJSS tomcatjss = TomcatJSS.getInstance();
+        tomcatjss.loadConfig();
+        tomcatjss.init();
+
+        String subsystem = parent.getParent().getName();
+        String confDir = catalinaBase + File.separator + subsystem + File.separator + "conf";
+        String configFile = confDir + File.separator + CMS.CONFIG_FILE;
+
+        logger.info("Loading " + configFile);
+        ConfigStorage storage = new FileConfigStore(configFile);
+        CAEngineConfig cs = new CAEngineConfig(storage);
+        cs.load();
+
+        DatabaseConfig dbConfig = cs.getDatabaseConfig();
+        PKISocketConfig socketConfig = cs.getSocketConfig();
+
+        PasswordStoreConfig psc = cs.getPasswordStoreConfig();
+        IPasswordStore passwordStore = IPasswordStore.create(psc);
+
+        DBSubsystem dbSubsystem = new DBSubsystem();
+        dbSubsystem.init(dbConfig, socketConfig, passwordStore);
+
+        CAConfig caConfig = cs.getCAConfig();
+
+        logger.info("Initializing cert repository");
+
+        int increment = caConfig.getInteger(CertificateRepository.PROP_INCREMENT, 5);
+        logger.info("- increment: " + increment);
+
+        try {
+            CertificateRepository certificateRepository = new CertificateRepository(dbSubsystem, increment);
+
+            CertExporter exporter = new CertExporter(certificateRepository);
+            exporter.setFormat(format);
+            exporter.setThreads(threads);
+            exporter.setPageSize(pageSize);
+
+            if (attributes != null) {
+                exporter.setAttributes(Arrays.asList(attributes.split("\\s*,\\s*")));
+            }
+
+            exporter.export(new File(outputDir));
+
+        } finally {
+            dbSubsystem.shutdown();
+        }
+    }
+}
@@ -14,6 +14,7 @@ import org.dogtagpki.server.rest.CAInfoService;
 import org.dogtagpki.server.rest.FeatureService;
 import org.dogtagpki.server.rest.GroupService;
 import org.dogtagpki.server.rest.MessageFormatInterceptor;
+import org.dogtagpki.server.rest.MetricsService;
 import org.dogtagpki.server.rest.PKIExceptionMapper;
 import org.dogtagpki.server.rest.SecurityDomainHostService;
 import org.dogtagpki.server.rest.SecurityDomainService;
@@ -52,6 +53,9 @@ public class CAApplication extends Application {
         // profile management
         classes.add(ProfileService.class);
 
+        // metrics
+        classes.add(MetricsService.class);
+
         // selftests
         classes.add(SelfTestService.class);
 
@@ -106,8 +110,8 @@ public class CAApplication extends Application {
 
         // interceptors
         singletons.add(new SessionContextInterceptor());
-        singletons.add(new AuthMethodInterceptor());
-        singletons.add(new ACLInterceptor());
+        singletons.add(new AuthMethodInterceptor(classes));
+        singletons.add(new ACLInterceptor(classes));
         singletons.add(new MessageFormatInterceptor());
     }
 
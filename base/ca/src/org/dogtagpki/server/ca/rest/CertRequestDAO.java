@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.UriInfo;
@@ -34,6 +35,8 @@ import com.netscape.ca.CertificateAuthority;
 import com.netscape.certsrv.authentication.IAuthToken;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.ca.AuthorityID;
+import com.netscape.certsrv.cert.CertBatchEnrollmentRequest;
+import com.netscape.certsrv.cert.CertBatchEnrollmentResult;
 import com.netscape.certsrv.cert.CertEnrollmentRequest;
 import com.netscape.certsrv.cert.CertRequestInfo;
 import com.netscape.certsrv.cert.CertRequestInfos;
@@ -46,6 +49,8 @@ import com.netscape.certsrv.request.RequestId;
 import com.netscape.certsrv.request.RequestNotFoundException;
 import com.netscape.cms.profile.common.Profile;
 import com.netscape.cms.realm.PKIPrincipal;
+import com.netscape.cms.servlet.cert.BatchEnrollmentProcessor;
+import com.netscape.cms.servlet.cert.BatchEnrollmentProcessor.BatchEnrollmentResult;
 import com.netscape.cms.servlet.cert.CertRequestInfoFactory;
 import com.netscape.cms.servlet.cert.CertReviewResponseFactory;
 import com.netscape.cms.servlet.cert.EnrollmentProcessor;
@@ -233,6 +238,67 @@ public class CertRequestDAO extends CMSRequestDAO {
         return ret;
     }
 
+    /**
+     * Authenticates and authorizes a batch enrollment.
+     *
+     * @return processor for the batch
+     */
+    public BatchEnrollmentProcessor authenticateBatch(
+            AuthorityID aid,
+            CertBatchEnrollmentRequest data,
+            HttpServletRequest request,
+            Locale locale)
+        throws Exception {
+
+        AuthCredentials credentials = new AuthCredentials();
+        String uid = data.getAttribute("uid");
+        if (uid != null) {
+            credentials.set("uid", uid);
+        }
+        String password = data.getAttribute("pwd");
+        if (password != null) {
+            credentials.set("pwd", password);
+        }
+
+        BatchEnrollmentProcessor processor = new BatchEnrollmentProcessor("caProfileSubmit", locale);
+        processor.authenticateBatch(data.getProfileId(), request, aid, credentials);
+
+        return processor;
+    }
+
+    /**
+     * Submits the requests of a batch enrollment. The results are
+     * passed to the consumer in order of completion.
+     */
+    public void submitBatch(
+            BatchEnrollmentProcessor processor,
+            CertBatchEnrollmentRequest data,
+            UriInfo uriInfo,
+            Consumer<CertBatchEnrollmentResult> consumer)
+        throws Exception {
+
+        processor.processBatchEnrollment(data.getRequests(), (BatchEnrollmentResult result) -> {
+
+            CertBatchEnrollmentResult ret = new CertBatchEnrollmentResult();
+            ret.setIndex(result.getIndex());
+            ret.setErrorCode(result.getErrorCode());
+            ret.setErrorReason(result.getErrorReason());
+
+            IRequest[] reqs = result.getRequests();
+            if (reqs != null) {
+                for (IRequest req : reqs) {
+                    try {
+                        ret.addRequest(CertRequestInfoFactory.create(req, uriInfo));
+                    } catch (NoSuchMethodException e) {
+                        logger.warn("Error in creating certrequestinfo - no such method: " + e.getMessage(), e);
+                    }
+                }
+            }
+
+            consumer.accept(ret);
+        });
+    }
+
     public void changeRequestState(RequestId id, HttpServletRequest request, CertReviewResponse data,
             Locale locale, String op) throws EBaseException {
         IRequest ireq = queue.findRequest(id);
@@ -19,13 +19,18 @@
 package org.dogtagpki.server.ca.rest;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.List;
 
 import javax.ws.rs.PathParam;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.dogtagpki.server.ca.CAEngine;
 import org.jboss.resteasy.plugins.providers.atom.Link;
@@ -48,6 +53,9 @@ import com.netscape.certsrv.ca.CADisabledException;
 import com.netscape.certsrv.ca.CAMissingCertException;
 import com.netscape.certsrv.ca.CAMissingKeyException;
 import com.netscape.certsrv.ca.CANotFoundException;
+import com.netscape.certsrv.cert.CertBatchEnrollmentRequest;
+import com.netscape.certsrv.cert.CertBatchEnrollmentResult;
+import com.netscape.certsrv.cert.CertBatchEnrollmentResults;
 import com.netscape.certsrv.cert.CertEnrollmentRequest;
 import com.netscape.certsrv.cert.CertRequestInfo;
 import com.netscape.certsrv.cert.CertRequestInfos;
@@ -65,6 +73,7 @@ import com.netscape.certsrv.request.RequestId;
 import com.netscape.certsrv.request.RequestNotFoundException;
 import com.netscape.cms.profile.common.Profile;
 import com.netscape.cms.servlet.base.PKIService;
+import com.netscape.cms.servlet.cert.BatchEnrollmentProcessor;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.profile.ProfileSubsystem;
 import com.netscape.cmsutil.ldap.LDAPUtil;
@@ -124,6 +133,57 @@ public class CertRequestService extends PKIService implements CertRequestResourc
             throw new BadRequestException(message);
         }
 
+        AuthorityID aid = getAuthorityID(aidString, adnString);
+
+        data.setRemoteHost(servletRequest.getRemoteHost());
+        data.setRemoteAddr(servletRequest.getRemoteAddr());
+
+        CertRequestDAO dao = new CertRequestDAO();
+
+        CertRequestInfos infos;
+        try {
+            infos = dao.submitRequest(aid, data, servletRequest, uriInfo, getLocale(headers));
+
+        } catch (EAuthException e) {
+            String message = "Authentication failed: " + e.getMessage();
+            logger.error(message, e);
+            throw new UnauthorizedException(message, e);
+
+        } catch (EAuthzException e) {
+            String message = "Authorization failed: " + e.getMessage();
+            logger.error(message, e);
+            throw new UnauthorizedException(message, e);
+
+        } catch (BadRequestDataException e) {
+            String message = "Bad request data: " + e.getMessage();
+            logger.error(message, e);
+            throw new BadRequestException(message, e);
+
+        } catch (EBaseException e) {
+            String message = "Unable to create enrollment request: " + e.getMessage();
+            logger.error(message, e);
+            throw new PKIException(message, e);
+
+        } catch (Exception e) {
+            String message = "Unable to create enrollment request: " + e.getMessage();
+            logger.error(message, e);
+            throw new PKIException(message, e);
+        }
+
+        // this will return an error code of 200, instead of 201
+        // because it is possible to create more than one request
+        // as a result of this enrollment
+
+        return createOKResponse(infos);
+    }
+
+    /**
+     * Resolves the issuer of an enrollment and checks that it is enabled.
+     *
+     * @return authority ID, or null for the host CA
+     */
+    AuthorityID getAuthorityID(String aidString, String adnString) {
+
         if (aidString != null && adnString != null)
             throw new BadRequestException("Cannot provide both issuer-id and issuer-dn");
 
@@ -163,14 +223,46 @@ public class CertRequestService extends PKIService implements CertRequestResourc
         if (!ca.getAuthorityEnabled())
             throw new ConflictingOperationException("CA not enabled: " + aid.toString());
 
-        data.setRemoteHost(servletRequest.getRemoteHost());
-        data.setRemoteAddr(servletRequest.getRemoteAddr());
+        return aid;
+    }
+
+    @Override
+    public Response enrollCerts(CertBatchEnrollmentRequest data, String aidString, String adnString, Boolean stream) {
+
+        logger.info("CertRequestService: Receiving batch certificate request");
+
+        if (data == null || data.getRequests() == null || data.getRequests().isEmpty()) {
+            String message = "Unable to create enrollment requests: Missing input data";
+            logger.error(message);
+            throw new BadRequestException(message);
+        }
+
+        int maxSize;
+        try {
+            maxSize = BatchEnrollmentProcessor.getMaxSize();
+        } catch (EBaseException e) {
+            throw new PKIException("Unable to get batch size limit: " + e.getMessage(), e);
+        }
+
+        if (data.getRequests().size() > maxSize) {
+            String message = "Unable to create enrollment requests: Batch size exceeds " + maxSize;
+            logger.error(message);
+            throw new BadRequestException(message);
+        }
+
+        AuthorityID aid = getAuthorityID(aidString, adnString);
+
+        for (CertEnrollmentRequest request : data.getRequests()) {
+            request.setRemoteHost(servletRequest.getRemoteHost());
+            request.setRemoteAddr(servletRequest.getRemoteAddr());
+        }
 
         CertRequestDAO dao = new CertRequestDAO();
 
-        CertRequestInfos infos;
+        // authenticate once for the whole batch
+        BatchEnrollmentProcessor processor;
         try {
-            infos = dao.submitRequest(aid, data, servletRequest, uriInfo, getLocale(headers));
+            processor = dao.authenticateBatch(aid, data, servletRequest, getLocale(headers));
 
         } catch (EAuthException e) {
             String message = "Authentication failed: " + e.getMessage();
@@ -187,20 +279,61 @@ public class CertRequestService extends PKIService implements CertRequestResourc
             logger.error(message, e);
             throw new BadRequestException(message, e);
 
-        } catch (EBaseException e) {
-            String message = "Unable to create enrollment request: " + e.getMessage();
+        } catch (Exception e) {
+            String message = "Unable to create enrollment requests: " + e.getMessage();
             logger.error(message, e);
             throw new PKIException(message, e);
+        }
+
+        if (stream != null && stream) {
+
+            // each result is written as a line of JSON as soon as
+            // the request has been processed
+            StreamingOutput so = new StreamingOutput() {
+
+                @Override
+                public void write(OutputStream out) throws IOException, WebApplicationException {
+                    try {
+                        dao.submitBatch(processor, data, uriInfo, result -> {
+                            try {
+                                out.write(result.toJSON().getBytes(StandardCharsets.UTF_8));
+                                out.write('\n');
+                                out.flush();
+                            } catch (Exception e) {
+                                throw new WebApplicationException(e);
+                            }
+                        });
+
+                    } catch (WebApplicationException e) {
+                        throw e;
+
+                    } catch (Exception e) {
+                        logger.error("Unable to create enrollment requests: " + e.getMessage(), e);
+                        throw new WebApplicationException(e);
+                    }
+                }
+            };
+
+            return Response.ok(so).type("application/x-ndjson").build();
+        }
+
+        List<CertBatchEnrollmentResult> results = new ArrayList<>();
+        try {
+            dao.submitBatch(processor, data, uriInfo, results::add);
 
         } catch (Exception e) {
-            String message = "Unable to create enrollment request: " + e.getMessage();
+            String message = "Unable to create enrollment requests: " + e.getMessage();
             logger.error(message, e);
             throw new PKIException(message, e);
         }
 
-        // this will return an error code of 200, instead of 201
-        // because it is possible to create more than one request
-        // as a result of this enrollment
+        results.sort(Comparator.comparingInt(CertBatchEnrollmentResult::getIndex));
+
+        CertBatchEnrollmentResults infos = new CertBatchEnrollmentResults();
+        for (CertBatchEnrollmentResult result : results) {
+            infos.addEntry(result);
+        }
+        infos.setTotal(results.size());
 
         return createOKResponse(infos);
     }
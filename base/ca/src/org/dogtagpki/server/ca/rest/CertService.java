@@ -20,6 +20,7 @@ package org.dogtagpki.server.ca.rest;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.net.URI;
 import java.security.InvalidKeyException;
@@ -27,13 +28,13 @@ import java.security.Principal;
 import java.security.PublicKey;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.Enumeration;
-import java.util.List;
 import java.util.Map;
 
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 import org.apache.catalina.realm.GenericPrincipal;
 import org.dogtag.util.cert.CertUtil;
@@ -78,6 +79,7 @@ import com.netscape.cms.servlet.cert.RevocationProcessor;
 import com.netscape.cms.servlet.processors.CAProcessor;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.cert.CertPrettyPrint;
+import com.netscape.cmscore.dbs.CertExporter;
 import com.netscape.cmscore.dbs.CertRecord;
 import com.netscape.cmscore.dbs.CertRecordList;
 import com.netscape.cmscore.dbs.CertificateRepository;
@@ -408,26 +410,20 @@ public class CertService extends PKIService implements CertResource {
 
         CertDataInfos infos = new CertDataInfos();
         try {
-            Enumeration<CertRecord> e = repo.searchCertificates(filter, maxResults, maxTime);
-            if (e == null) {
-                throw new EBaseException("search results are null");
-            }
-
-            // store non-null results in a list
-            List<CertDataInfo> results = new ArrayList<CertDataInfo>();
-            while (e.hasMoreElements()) {
-                CertRecord rec = e.nextElement();
-                if (rec == null) continue;
-                results.add(createCertDataInfo(rec));
-            }
+            // Use a virtual list view so that only the requested page
+            // is retrieved from the database instead of materializing
+            // up to maxResults records on every request.
+            CertRecordList list = repo.findCertRecordsInList(filter, null, "serialno", size);
 
-            int total = results.size();
+            int total = Math.min(list.getSize(), maxResults);
             logger.info("Search results: " + total);
             infos.setTotal(total);
 
             // return entries in the requested page
-            for (int i = start; i < start + size && i < total ; i++) {
-                infos.addEntry(results.get(i));
+            for (int i = start; i < start + size && i < total; i++) {
+                CertRecord rec = list.getCertRecord(i);
+                if (rec == null) continue;
+                infos.addEntry(createCertDataInfo(rec));
             }
 
             if (start > 0) {
@@ -448,6 +444,52 @@ public class CertService extends PKIService implements CertResource {
         return createOKResponse(infos);
     }
 
+    @Override
+    public Response exportCerts(String format, String attributes, CertId from, CertId to) {
+
+        logger.info("Exporting certificates");
+
+        CertExporter exporter = new CertExporter(repo);
+
+        try {
+            if (format != null) {
+                exporter.setFormat(format);
+            }
+
+            if (attributes != null) {
+                exporter.setAttributes(Arrays.asList(attributes.split("\\s*,\\s*")));
+            }
+
+        } catch (EBaseException e) {
+            throw new BadRequestException(e.getMessage(), e);
+        }
+
+        BigInteger fromSerial = from == null ? null : from.toBigInteger();
+        BigInteger toSerial = to == null ? null : to.toBigInteger();
+
+        // records are written to the response as they are read
+        // so the whole repository is never held in memory
+        StreamingOutput so = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+                try {
+                    long count = exporter.export(fromSerial, toSerial, out);
+                    logger.info("Exported " + count + " certificates");
+
+                } catch (IOException e) {
+                    throw e;
+
+                } catch (Exception e) {
+                    logger.error("Unable to export certificates: " + e.getMessage(), e);
+                    throw new WebApplicationException(e);
+                }
+            }
+        };
+
+        return createOKResponse(so);
+    }
+
     @Override
     public Response searchCerts(CertSearchRequest data, Integer start, Integer size) {
 
@@ -30,6 +30,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.netscape.certsrv.authentication.EAuthException;
+import com.netscape.certsrv.cert.CertBatchEnrollmentRequest;
+import com.netscape.certsrv.cert.CertBatchEnrollmentResults;
 import com.netscape.certsrv.cert.CertData;
 import com.netscape.certsrv.cert.CertDataInfos;
 import com.netscape.certsrv.cert.CertEnrollmentRequest;
@@ -122,6 +124,20 @@ public class CACertClient extends Client {
         return client.getEntity(response, CertRequestInfos.class);
     }
 
+    public CertBatchEnrollmentResults enrollRequests(
+            CertBatchEnrollmentRequest data, AuthorityID aid, X500Name adn) throws Exception {
+        String aidString = aid != null ? aid.toString() : null;
+        String adnString = null;
+        if (adn != null) {
+            try {
+                adnString = adn.toLdapDNString();
+            } catch (IOException e) {
+            }
+        }
+        Response response = certRequestClient.enrollCerts(data, aidString, adnString, false);
+        return client.getEntity(response, CertBatchEnrollmentResults.class);
+    }
+
     public CertRequestInfo getRequest(RequestId id) throws Exception {
         Response response = certRequestClient.getRequestInfo(id);
         return client.getEntity(response, CertRequestInfo.class);
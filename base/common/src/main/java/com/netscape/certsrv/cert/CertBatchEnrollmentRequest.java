@@ -0,0 +1,111 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.cert;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.netscape.certsrv.base.ResourceMessage;
+
+/**
+ * Multiple enrollment requests for a single profile. The attributes
+ * of the batch (e.g. uid and pwd) are used to authenticate all
+ * requests at once.
+ */
+@XmlRootElement(name = "CertBatchEnrollmentRequest")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CertBatchEnrollmentRequest extends ResourceMessage {
+
+    @XmlElement(name = "ProfileID")
+    protected String profileId;
+
+    @XmlElement(name = "Request")
+    protected List<CertEnrollmentRequest> requests = new ArrayList<>();
+
+    public String getProfileId() {
+        return profileId;
+    }
+
+    public void setProfileId(String profileId) {
+        this.profileId = profileId;
+    }
+
+    public List<CertEnrollmentRequest> getRequests() {
+        return requests;
+    }
+
+    public void setRequests(List<CertEnrollmentRequest> requests) {
+        this.requests = requests;
+    }
+
+    public void addRequest(CertEnrollmentRequest request) {
+        requests.add(request);
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = super.hashCode();
+        result = prime * result + ((profileId == null) ? 0 : profileId.hashCode());
+        result = prime * result + ((requests == null) ? 0 : requests.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!super.equals(obj))
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        CertBatchEnrollmentRequest other = (CertBatchEnrollmentRequest) obj;
+        if (profileId == null) {
+            if (other.profileId != null)
+                return false;
+        } else if (!profileId.equals(other.profileId))
+            return false;
+        if (requests == null) {
+            if (other.requests != null)
+                return false;
+        } else if (!requests.equals(other.requests))
+            return false;
+        return true;
+    }
+
+    public String toXML() throws Exception {
+        JAXBContext context = JAXBContext.newInstance(CertBatchEnrollmentRequest.class);
+        Marshaller marshaller = context.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        StringWriter sw = new StringWriter();
+        marshaller.marshal(this, sw);
+        return sw.toString();
+    }
+
+    public static CertBatchEnrollmentRequest fromXML(String string) throws Exception {
+        JAXBContext context = JAXBContext.newInstance(CertBatchEnrollmentRequest.class);
+        Unmarshaller unmarshaller = context.createUnmarshaller();
+        return (CertBatchEnrollmentRequest) unmarshaller.unmarshal(new StringReader(string));
+    }
+
+    public String toString() {
+        try {
+            return toXML();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
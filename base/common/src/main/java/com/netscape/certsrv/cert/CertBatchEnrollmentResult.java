@@ -0,0 +1,156 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.cert;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.jaxb.JaxbAnnotationIntrospector;
+
+/**
+ * The result of a single request in a batch enrollment.
+ */
+@XmlRootElement(name = "CertBatchEnrollmentResult")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CertBatchEnrollmentResult {
+
+    // position of the request in the batch
+    @XmlElement(name = "Index")
+    protected int index;
+
+    @XmlElement(name = "CertRequestInfo")
+    protected List<CertRequestInfo> requests = new ArrayList<>();
+
+    @XmlElement(name = "ErrorCode")
+    protected String errorCode;
+
+    @XmlElement(name = "ErrorReason")
+    protected String errorReason;
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public List<CertRequestInfo> getRequests() {
+        return requests;
+    }
+
+    public void setRequests(List<CertRequestInfo> requests) {
+        this.requests = requests;
+    }
+
+    public void addRequest(CertRequestInfo request) {
+        requests.add(request);
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public void setErrorCode(String errorCode) {
+        this.errorCode = errorCode;
+    }
+
+    public String getErrorReason() {
+        return errorReason;
+    }
+
+    public void setErrorReason(String errorReason) {
+        this.errorReason = errorReason;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + index;
+        result = prime * result + ((requests == null) ? 0 : requests.hashCode());
+        result = prime * result + ((errorCode == null) ? 0 : errorCode.hashCode());
+        result = prime * result + ((errorReason == null) ? 0 : errorReason.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        CertBatchEnrollmentResult other = (CertBatchEnrollmentResult) obj;
+        if (index != other.index)
+            return false;
+        if (requests == null) {
+            if (other.requests != null)
+                return false;
+        } else if (!requests.equals(other.requests))
+            return false;
+        if (errorCode == null) {
+            if (other.errorCode != null)
+                return false;
+        } else if (!errorCode.equals(other.errorCode))
+            return false;
+        if (errorReason == null) {
+            if (other.errorReason != null)
+                return false;
+        } else if (!errorReason.equals(other.errorReason))
+            return false;
+        return true;
+    }
+
+    public String toXML() throws Exception {
+        JAXBContext context = JAXBContext.newInstance(CertBatchEnrollmentResult.class);
+        Marshaller marshaller = context.createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+        StringWriter sw = new StringWriter();
+        marshaller.marshal(this, sw);
+        return sw.toString();
+    }
+
+    public static CertBatchEnrollmentResult fromXML(String string) throws Exception {
+        JAXBContext context = JAXBContext.newInstance(CertBatchEnrollmentResult.class);
+        Unmarshaller unmarshaller = context.createUnmarshaller();
+        return (CertBatchEnrollmentResult) unmarshaller.unmarshal(new StringReader(string));
+    }
+
+    public String toJSON() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setAnnotationIntrospector(new JaxbAnnotationIntrospector(mapper.getTypeFactory()));
+        mapper.setSerializationInclusion(Include.NON_NULL);
+        return mapper.writeValueAsString(this);
+    }
+
+    public static CertBatchEnrollmentResult fromJSON(String json) throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.setAnnotationIntrospector(new JaxbAnnotationIntrospector(mapper.getTypeFactory()));
+        return mapper.readValue(json, CertBatchEnrollmentResult.class);
+    }
+
+    public String toString() {
+        try {
+            return toXML();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -38,6 +38,14 @@ public interface CertRequestResource {
         @QueryParam("issuer-id") String caIDString,
         @QueryParam("issuer-dn") String caDNString);
 
+    @POST
+    @Path("certrequests/batch")
+    public Response enrollCerts(
+        CertBatchEnrollmentRequest data,
+        @QueryParam("issuer-id") String caIDString,
+        @QueryParam("issuer-dn") String caDNString,
+        @QueryParam("stream") Boolean stream);
+
     /**
      * Used to retrieve cert request info for a specific request
      */
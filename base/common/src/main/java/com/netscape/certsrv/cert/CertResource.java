@@ -4,7 +4,9 @@ import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 import com.netscape.certsrv.acls.ACLMapping;
@@ -34,6 +36,17 @@ public interface CertResource {
     @Path("certs/{id}")
     public Response getCert(@PathParam("id") CertId id);
 
+    @GET
+    @Path("agent/certs/export")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    @ACLMapping("certs")
+    @AuthMethodMapping("certs")
+    public Response exportCerts(
+            @QueryParam("format") String format,
+            @QueryParam("attributes") String attributes,
+            @QueryParam("from") CertId from,
+            @QueryParam("to") CertId to);
+
     @GET
     @Path("agent/certs/{id}")
     @ACLMapping("certs")
@@ -60,6 +60,16 @@ public interface IRepository {
      */
     public void setMaxSerial(String serial) throws EBaseException;
 
+    /**
+     * Reduce the maximum serial number of the current range unless
+     * a serial number beyond it has already been issued.
+     *
+     * @param serial maximum number
+     * @return true if the maximum serial number was reduced
+     * @exception EBaseException failed to set maximum serial number
+     */
+    public boolean reduceMaxSerial(String serial) throws EBaseException;
+
     /**
      * Set the maximum serial number in next range.
      *
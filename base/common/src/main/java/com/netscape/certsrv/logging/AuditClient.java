@@ -63,4 +63,16 @@ public class AuditClient extends Client {
         Response response = resource.getAuditFile(filename);
         return client.getEntity(response, StreamingOutput.class);
     }
+
+    public AuditRecordCollection findAuditRecords(
+            String eventType,
+            String subjectID,
+            String outcome,
+            Long startTime,
+            Long endTime,
+            Integer start,
+            Integer size) throws Exception {
+        Response response = resource.findAuditRecords(eventType, subjectID, outcome, startTime, endTime, start, size);
+        return client.getEntity(response, AuditRecordCollection.class);
+    }
 }
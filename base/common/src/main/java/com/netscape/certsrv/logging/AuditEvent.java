@@ -139,6 +139,8 @@ public class AuditEvent extends LogEvent {
 
     public final static String AUDIT_LOG_SIGNING =
             "LOGGING_SIGNED_AUDIT_AUDIT_LOG_SIGNING_3";
+    public final static String AUDIT_LOG_CHAIN_SIGNING =
+            "LOGGING_SIGNED_AUDIT_AUDIT_LOG_CHAIN_SIGNING_3";
 
     private static final long serialVersionUID = -844306657733902324L;
 
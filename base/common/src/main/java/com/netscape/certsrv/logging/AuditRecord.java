@@ -0,0 +1,160 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.logging;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Objects;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlAttribute;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * This class represents an audit log entry returned by an audit
+ * log search.
+ */
+@XmlRootElement(name="AuditRecord")
+@XmlAccessorType(XmlAccessType.NONE)
+public class AuditRecord {
+
+    String file;
+    Long offset;
+    Long time;
+    String eventType;
+    String subjectID;
+    String outcome;
+    String entry;
+
+    @XmlAttribute(name="file")
+    public String getFile() {
+        return file;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    @XmlAttribute(name="offset")
+    public Long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(Long offset) {
+        this.offset = offset;
+    }
+
+    @XmlElement(name="Time")
+    public Long getTime() {
+        return time;
+    }
+
+    public void setTime(Long time) {
+        this.time = time;
+    }
+
+    @XmlElement(name="EventType")
+    public String getEventType() {
+        return eventType;
+    }
+
+    public void setEventType(String eventType) {
+        this.eventType = eventType;
+    }
+
+    @XmlElement(name="SubjectID")
+    public String getSubjectID() {
+        return subjectID;
+    }
+
+    public void setSubjectID(String subjectID) {
+        this.subjectID = subjectID;
+    }
+
+    @XmlElement(name="Outcome")
+    public String getOutcome() {
+        return outcome;
+    }
+
+    public void setOutcome(String outcome) {
+        this.outcome = outcome;
+    }
+
+    @XmlElement(name="Entry")
+    public String getEntry() {
+        return entry;
+    }
+
+    public void setEntry(String entry) {
+        this.entry = entry;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(file, offset, time, eventType, subjectID, outcome, entry);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        AuditRecord other = (AuditRecord) obj;
+        return Objects.equals(file, other.file)
+                && Objects.equals(offset, other.offset)
+                && Objects.equals(time, other.time)
+                && Objects.equals(eventType, other.eventType)
+                && Objects.equals(subjectID, other.subjectID)
+                && Objects.equals(outcome, other.outcome)
+                && Objects.equals(entry, other.entry);
+    }
+
+    public String toString() {
+        try {
+            Marshaller marshaller = JAXBContext.newInstance(AuditRecord.class).createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+
+            StringWriter sw = new StringWriter();
+            marshaller.marshal(this, sw);
+            return sw.toString();
+
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static AuditRecord valueOf(String string) throws Exception {
+        Unmarshaller unmarshaller = JAXBContext.newInstance(AuditRecord.class).createUnmarshaller();
+        return (AuditRecord)unmarshaller.unmarshal(new StringReader(string));
+    }
+
+    public static void main(String args[]) throws Exception {
+
+        AuditRecord before = new AuditRecord();
+        before.setFile("ca_audit");
+        before.setOffset(0l);
+        before.setTime(1577836800000l);
+        before.setEventType("AUTH");
+        before.setSubjectID("caadmin");
+        before.setOutcome("Success");
+        before.setEntry("0.http-bio-8443-exec-1 - [01/Jan/2020:00:00:00 UTC] [14] [6] [AuditEvent=AUTH]"
+                + "[SubjectID=caadmin][Outcome=Success] authentication success");
+
+        String string = before.toString();
+        System.out.println(string);
+
+        AuditRecord after = AuditRecord.valueOf(string);
+        System.out.println(before.equals(after));
+    }
+}
@@ -0,0 +1,22 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.logging;
+
+import java.util.Collection;
+
+import javax.xml.bind.annotation.XmlElementRef;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.netscape.certsrv.base.DataCollection;
+
+@XmlRootElement(name="AuditRecords")
+public class AuditRecordCollection extends DataCollection<AuditRecord> {
+
+    @XmlElementRef
+    public Collection<AuditRecord> getEntries() {
+        return super.getEntries();
+    }
+}
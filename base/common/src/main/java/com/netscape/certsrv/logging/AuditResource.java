@@ -61,4 +61,16 @@ public interface AuditResource {
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
     @ACLMapping("audit-log.read")
     public Response getAuditFile(@PathParam("filename") String filename);
+
+    @GET
+    @Path("records")
+    @ACLMapping("audit-log.read")
+    public Response findAuditRecords(
+            @QueryParam("eventType") String eventType,
+            @QueryParam("subjectID") String subjectID,
+            @QueryParam("outcome") String outcome,
+            @QueryParam("startTime") Long startTime,
+            @QueryParam("endTime") Long endTime,
+            @QueryParam("start") Integer start,
+            @QueryParam("size") Integer size);
 }
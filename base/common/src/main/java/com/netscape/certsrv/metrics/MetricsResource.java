@@ -0,0 +1,29 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.metrics;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.netscape.certsrv.acls.ACLMapping;
+import com.netscape.certsrv.authentication.AuthMethodMapping;
+
+/**
+ * This resource provides the subsystem metrics in Prometheus
+ * text exposition format.
+ */
+@Path("metrics")
+@AuthMethodMapping("metrics")
+public interface MetricsResource {
+
+    @GET
+    @Produces(MediaType.TEXT_PLAIN)
+    @ACLMapping("metrics.read")
+    public Response getMetrics();
+}
@@ -185,6 +185,15 @@ public class KRAPresence
                                    "CMS_SELFTESTS_KRA_PRESENCE_DESCRIPTION");
     }
 
+    /**
+     * This self test only reads the KRA transport certificate, so it can run
+     * concurrently with other self tests.
+     */
+    @Override
+    protected boolean isSelfTestIndependentByDefault() {
+        return true;
+    }
+
     /**
      * Execute an individual self test.
      * <P>
@@ -519,5 +519,6 @@ public class KeyRepository extends Repository implements IKeyRepository {
     }
 
     public void shutdown() {
+        super.shutdown();
     }
 }
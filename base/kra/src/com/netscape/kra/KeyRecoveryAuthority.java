@@ -395,6 +395,8 @@ public class KeyRecoveryAuthority implements IAuthority, IKeyService, IKeyRecove
         mPNotify = new RequestNotifier();
         RequestSubsystem reqSub = engine.getRequestSubsystem();
         int reqdb_inc = mConfig.getInteger("reqdbInc", 5);
+        boolean coalesceWrites = mConfig.getBoolean("coalesceRequestWrites", false);
+        logger.debug("KeyRecoveryAuthority: coalesce request writes: " + coalesceWrites);
 
         requestRepository = new RequestRepository(getId(), reqdb_inc, dbSubsystem);
 
@@ -406,6 +408,7 @@ public class KeyRecoveryAuthority implements IAuthority, IKeyService, IKeyRecove
                 mNotify,
                 mPNotify);
 
+        mRequestQueue.setCoalesceWrites(coalesceWrites);
         requestRepository.setRequestQueue(mRequestQueue);
 
         startKeyStatusUpdate();
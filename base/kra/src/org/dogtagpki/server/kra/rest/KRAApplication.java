@@ -13,6 +13,7 @@ import org.dogtagpki.server.rest.AuthMethodInterceptor;
 import org.dogtagpki.server.rest.GroupService;
 import org.dogtagpki.server.rest.KRAInfoService;
 import org.dogtagpki.server.rest.MessageFormatInterceptor;
+import org.dogtagpki.server.rest.MetricsService;
 import org.dogtagpki.server.rest.PKIExceptionMapper;
 import org.dogtagpki.server.rest.SecurityDomainHostService;
 import org.dogtagpki.server.rest.SecurityDomainService;
@@ -59,6 +60,9 @@ public class KRAApplication extends Application {
         classes.add(KeyService.class);
         classes.add(KeyRequestService.class);
 
+        // metrics
+        classes.add(MetricsService.class);
+
         // selftests
         classes.add(SelfTestService.class);
 
@@ -77,8 +81,8 @@ public class KRAApplication extends Application {
 
         // interceptors
         singletons.add(new SessionContextInterceptor());
-        singletons.add(new AuthMethodInterceptor());
-        singletons.add(new ACLInterceptor());
+        singletons.add(new AuthMethodInterceptor(classes));
+        singletons.add(new ACLInterceptor(classes));
         singletons.add(new MessageFormatInterceptor());
     }
 
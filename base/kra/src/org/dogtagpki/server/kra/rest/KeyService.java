@@ -22,12 +22,10 @@ package org.dogtagpki.server.kra.rest;
 import java.math.BigInteger;
 import java.net.URI;
 import java.security.Principal;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
-import java.util.List;
 
 import javax.ws.rs.Path;
 import javax.ws.rs.core.MultivaluedMap;
@@ -51,6 +49,7 @@ import com.netscape.certsrv.dbs.EDBRecordNotFoundException;
 import com.netscape.certsrv.dbs.Modification;
 import com.netscape.certsrv.dbs.ModificationSet;
 import com.netscape.certsrv.dbs.keydb.IKeyRecord;
+import com.netscape.certsrv.dbs.keydb.IKeyRecordList;
 import com.netscape.certsrv.dbs.keydb.KeyId;
 import com.netscape.certsrv.key.KeyData;
 import com.netscape.certsrv.key.KeyInfo;
@@ -512,35 +511,34 @@ public class KeyService extends SubsystemService implements KeyResource {
 
         KeyInfoCollection infos = new KeyInfoCollection();
         try {
-            Enumeration<IKeyRecord> e = repo.searchKeys(filter, maxResults, maxTime);
-            if (e == null) {
+            // Use a virtual list view so that only the requested page
+            // is retrieved from the database instead of materializing
+            // up to maxResults records on every request.
+            IKeyRecordList list = repo.findKeyRecordsInList(filter, null, size);
+            if (list == null) {
                 return infos;
             }
 
+            int total = Math.min(list.getSize(), maxResults);
+            logger.info("KeyService: Total: " + total);
+            infos.setTotal(total);
+
             logger.info("KeyService: Results:");
 
-            // store non-null results in a list
-            List<KeyInfo> results = new ArrayList<KeyInfo>();
+            // return entries in the requested page
+            int end = Math.min(start + size, total) - 1;
+            Enumeration<IKeyRecord> e = list.getKeyRecords(start, end);
             while (e.hasMoreElements()) {
                 IKeyRecord rec = e.nextElement();
                 if (rec == null) continue;
 
                 KeyInfo info = createKeyDataInfo(rec, false);
                 logger.info("KeyService: - key " + info.getKeyId());
-                results.add(info);
+                infos.addEntry(info);
 
                 auditKeyInfoSuccess(info.getKeyId(), null);
             }
 
-            int total = results.size();
-            logger.info("KeyService: Total: " + total);
-            infos.setTotal(total);
-
-            // return entries in the requested page
-            for (int i = start; i < start + size && i < total; i++) {
-                infos.addEntry(results.get(i));
-            }
-
             if (start > 0) {
                 URI uri = uriInfo.getRequestUriBuilder().replaceQueryParam("start", Math.max(start-size, 0)).build();
                 infos.addLink(new Link("prev", uri));
@@ -188,6 +188,15 @@ public class OCSPPresence
                                    "CMS_SELFTESTS_OCSP_PRESENCE_DESCRIPTION");
     }
 
+    /**
+     * This self test only reads the OCSP signing certificate, so it can run
+     * concurrently with other self tests.
+     */
+    @Override
+    protected boolean isSelfTestIndependentByDefault() {
+        return true;
+    }
+
     /**
      * Execute an individual self test.
      * <P>
@@ -188,6 +188,15 @@ public class OCSPValidity
                                    "CMS_SELFTESTS_OCSP_VALIDITY_DESCRIPTION");
     }
 
+    /**
+     * This self test only checks the validity of the OCSP signing certificate, so it can run
+     * concurrently with other self tests.
+     */
+    @Override
+    protected boolean isSelfTestIndependentByDefault() {
+        return true;
+    }
+
     /**
      * Execute an individual self test.
      * <P>
@@ -29,6 +29,7 @@ import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 
 import org.dogtagpki.server.ocsp.OCSPConfig;
 import org.dogtagpki.server.ocsp.OCSPEngine;
@@ -66,6 +67,9 @@ import com.netscape.cms.logging.Logger;
 import com.netscape.cms.logging.SignedAuditLogger;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.dbs.DBSubsystem;
+import com.netscape.cmscore.metrics.Counter;
+import com.netscape.cmscore.metrics.LatencyTimer;
+import com.netscape.cmscore.metrics.MetricsRegistry;
 import com.netscape.cmsutil.crypto.CryptoUtil;
 import com.netscape.cmsutil.ocsp.BasicOCSPResponse;
 import com.netscape.cmsutil.ocsp.KeyHashID;
@@ -111,6 +115,19 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, ISubsystem,
     public long mSignTime = 0;
     public long mLookupTime = 0;
 
+    private LatencyTimer mRequestTimer = MetricsRegistry.getInstance().getTimer(
+            "pki_ocsp_request_seconds",
+            "Duration of OCSP requests");
+    private LatencyTimer mLookupTimer = MetricsRegistry.getInstance().getTimer(
+            "pki_ocsp_lookup_seconds",
+            "Duration of certificate status lookups for OCSP requests");
+    private LatencyTimer mSignTimer = MetricsRegistry.getInstance().getTimer(
+            "pki_ocsp_signing_seconds",
+            "Duration of OCSP response signing");
+    private Counter mFailureCounter = MetricsRegistry.getInstance().getCounter(
+            "pki_ocsp_request_failures_total",
+            "Number of OCSP requests that could not be processed");
+
     /**
      * Retrieves the name of this subsystem.
      */
@@ -367,6 +384,7 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, ISubsystem,
 
         incNumOCSPRequest(1);
         long startTime = new Date().getTime();
+        long requestStartTime = System.nanoTime();
 
         logger.info("OCSPAuthority: Start OCSP request");
 
@@ -380,7 +398,7 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, ISubsystem,
                 statsSub.startTiming("lookup");
             }
 
-            long lookupStartTime = new Date().getTime();
+            long lookupStartTime = System.nanoTime();
 
             for (int i = 0; i < tbsReq.getRequestCount(); i++) {
                 Request req = tbsReq.getRequestAt(i);
@@ -388,8 +406,9 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, ISubsystem,
                 singleResponses.addElement(sr);
             }
 
-            long lookupEndTime = new Date().getTime();
-            incLookupTime(lookupEndTime - lookupStartTime);
+            long lookupTime = System.nanoTime() - lookupStartTime;
+            incLookupTime(TimeUnit.NANOSECONDS.toMillis(lookupTime));
+            mLookupTimer.record(lookupTime);
 
             if (statsSub != null) {
                 statsSub.endTiming("lookup");
@@ -432,12 +451,13 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, ISubsystem,
                 statsSub.startTiming("signing");
             }
 
-            long signStartTime = new Date().getTime();
+            long signStartTime = System.nanoTime();
 
             BasicOCSPResponse basicRes = sign(rd);
 
-            long signEndTime = new Date().getTime();
-            incSignTime(signEndTime - signStartTime);
+            long signTime = System.nanoTime() - signStartTime;
+            incSignTime(TimeUnit.NANOSECONDS.toMillis(signTime));
+            mSignTimer.record(signTime);
 
             if (statsSub != null) {
                 statsSub.endTiming("signing");
@@ -450,10 +470,12 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, ISubsystem,
 
         } catch (EBaseException e) {
             logger.error(CMS.getLogMessage("OCSP_REQUEST_FAILURE", e.toString()), e);
+            mFailureCounter.increment();
             throw e;
 
         } catch (Exception e) {
             logger.error(CMS.getLogMessage("OCSP_REQUEST_FAILURE", e.toString()), e);
+            mFailureCounter.increment();
             throw new EBaseException(e);
         }
 
@@ -461,6 +483,7 @@ public class OCSPAuthority implements IOCSPAuthority, IOCSPService, ISubsystem,
 
         long endTime = new Date().getTime();
         incTotalTime(endTime - startTime);
+        mRequestTimer.recordSince(requestStartTime);
 
         mServedTime = mServedTime + (endTime - startTime);
 
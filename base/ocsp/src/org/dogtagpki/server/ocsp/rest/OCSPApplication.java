@@ -12,6 +12,7 @@ import org.dogtagpki.server.rest.AuditService;
 import org.dogtagpki.server.rest.AuthMethodInterceptor;
 import org.dogtagpki.server.rest.GroupService;
 import org.dogtagpki.server.rest.MessageFormatInterceptor;
+import org.dogtagpki.server.rest.MetricsService;
 import org.dogtagpki.server.rest.PKIExceptionMapper;
 import org.dogtagpki.server.rest.SecurityDomainHostService;
 import org.dogtagpki.server.rest.SecurityDomainService;
@@ -54,6 +55,9 @@ public class OCSPApplication extends Application {
             throw new RuntimeException(e);
         }
 
+        // metrics
+        classes.add(MetricsService.class);
+
         // selftests
         classes.add(SelfTestService.class);
 
@@ -66,8 +70,8 @@ public class OCSPApplication extends Application {
 
         // interceptors
         singletons.add(new SessionContextInterceptor());
-        singletons.add(new AuthMethodInterceptor());
-        singletons.add(new ACLInterceptor());
+        singletons.add(new AuthMethodInterceptor(classes));
+        singletons.add(new ACLInterceptor(classes));
         singletons.add(new MessageFormatInterceptor());
     }
 
@@ -68,6 +68,7 @@ class CACertCLI(pki.cli.CLI):
             'cert', 'CA certificates management commands')
 
         self.add_module(CACertFindCLI())
+        self.add_module(CACertExportCLI())
         self.add_module(CACertRemoveCLI())
         self.add_module(CACertChainCLI())
         self.add_module(CACertRequestCLI())
@@ -136,6 +137,107 @@ class CACertFindCLI(pki.cli.CLI):
         subsystem.find_certs()
 
 
+class CACertExportCLI(pki.cli.CLI):
+
+    def __init__(self):
+        super(CACertExportCLI, self).__init__(
+            'export', 'Export certificates in CA')
+
+    def print_help(self):
+        print('Usage: pki-server ca-cert-export [OPTIONS]')
+        print()
+        print('  -i, --instance <instance ID>       Instance ID (default: pki-tomcat).')
+        print('      --output-dir <path>            Output directory.')
+        print('      --format <format>              Output format: json (default), der.')
+        print('      --attributes <names>           Comma-separated JSON attributes to export.')
+        print('      --threads <number>             Number of partitions exported in parallel '
+              '(default: 4).')
+        print('      --page-size <size>             Number of records retrieved per page '
+              '(default: 200).')
+        print('  -v, --verbose                      Run in verbose mode.')
+        print('      --debug                        Run in debug mode.')
+        print('      --help                         Show help message.')
+        print()
+
+    def execute(self, argv):
+
+        try:
+            opts, _ = getopt.gnu_getopt(argv, 'i:v', [
+                'instance=', 'output-dir=', 'format=', 'attributes=',
+                'threads=', 'page-size=',
+                'verbose', 'debug', 'help'])
+
+        except getopt.GetoptError as e:
+            logger.error(e)
+            self.print_help()
+            sys.exit(1)
+
+        instance_name = 'pki-tomcat'
+        output_dir = None
+        output_format = None
+        attributes = None
+        threads = None
+        page_size = None
+
+        for o, a in opts:
+            if o in ('-i', '--instance'):
+                instance_name = a
+
+            elif o == '--output-dir':
+                output_dir = a
+
+            elif o == '--format':
+                output_format = a
+
+            elif o == '--attributes':
+                attributes = a
+
+            elif o == '--threads':
+                threads = a
+
+            elif o == '--page-size':
+                page_size = a
+
+            elif o in ('-v', '--verbose'):
+                logging.getLogger().setLevel(logging.INFO)
+
+            elif o == '--debug':
+                logging.getLogger().setLevel(logging.DEBUG)
+
+            elif o == '--help':
+                self.print_help()
+                sys.exit()
+
+            else:
+                logger.error('Invalid option: %s', o)
+                self.print_help()
+                sys.exit(1)
+
+        if not output_dir:
+            logger.error('Missing output directory')
+            self.print_help()
+            sys.exit(1)
+
+        instance = pki.server.instance.PKIServerFactory.create(instance_name)
+        if not instance.exists():
+            logger.error('Invalid instance: %s', instance_name)
+            sys.exit(1)
+
+        instance.load()
+
+        subsystem = instance.get_subsystem('ca')
+        if not subsystem:
+            logger.error('No CA subsystem in instance %s', instance_name)
+            sys.exit(1)
+
+        subsystem.export_certs(
+            output_dir,
+            output_format=output_format,
+            attributes=attributes,
+            threads=threads,
+            page_size=page_size)
+
+
 class CACertRemoveCLI(pki.cli.CLI):
 
     def __init__(self):
@@ -35,6 +35,7 @@ import subprocess
 import tempfile
 import time
 import xml.etree.ElementTree as ET
+import zlib
 
 import ldap
 import ldap.filter
@@ -1687,6 +1688,37 @@ class CASubsystem(PKISubsystem):
 
         self.run(cmd, as_current_user=as_current_user)
 
+    def export_certs(
+            self,
+            output_dir,
+            output_format=None,
+            attributes=None,
+            threads=None,
+            page_size=None,
+            as_current_user=False):
+
+        cmd = ['ca-cert-export', '--output-dir', output_dir]
+
+        if output_format:
+            cmd.extend(['--format', output_format])
+
+        if attributes:
+            cmd.extend(['--attributes', attributes])
+
+        if threads:
+            cmd.extend(['--threads', str(threads)])
+
+        if page_size:
+            cmd.extend(['--page-size', str(page_size)])
+
+        if logger.isEnabledFor(logging.DEBUG):
+            cmd.append('--debug')
+
+        elif logger.isEnabledFor(logging.INFO):
+            cmd.append('--verbose')
+
+        self.run(cmd, as_current_user=as_current_user)
+
     def remove_cert(self, serial_number, as_current_user=False):
 
         cmd = ['ca-cert-del']
@@ -1753,8 +1785,16 @@ class CASubsystem(PKISubsystem):
         request['id'] = attrs['cn'][0].decode('utf-8')
         request['type'] = attrs['requestType'][0].decode('utf-8')
         request['status'] = attrs['requestState'][0].decode('utf-8')
-        request['request'] = attrs['extdata-cert--005frequest'][0] \
-            .decode('utf-8')
+
+        if 'extdata-cert--005frequest' in attrs:
+            request['request'] = attrs['extdata-cert--005frequest'][0] \
+                .decode('utf-8')
+
+        elif 'extDataBlob' in attrs:
+            # compact extData: version byte followed by deflated JSON
+            blob = attrs['extDataBlob'][0]
+            ext_data = json.loads(zlib.decompress(blob[1:]).decode('utf-8'))
+            request['request'] = ext_data['data'].get('cert_request')
 
         return request
 
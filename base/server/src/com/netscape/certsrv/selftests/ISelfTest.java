@@ -49,6 +49,7 @@ public interface ISelfTest {
     //////////////////////////
 
     public static final String PROP_PLUGIN = "plugin";
+    public static final String PROP_INDEPENDENT = "independent";
 
     /////////////////////
     // default methods //
@@ -121,6 +122,19 @@ public interface ISelfTest {
      */
     public String getSelfTestDescription(Locale locale);
 
+    /**
+     * Determine if this self test can run concurrently with other
+     * self tests, i.e. it does not depend on the outcome or side
+     * effects of any other self test. Self tests are dependent
+     * unless they declare otherwise.
+     * <P>
+     *
+     * @return true if this self test is independent
+     */
+    public default boolean isSelfTestIndependent() {
+        return false;
+    }
+
     /**
      * Execute an individual self test.
      * <P>
@@ -21,6 +21,7 @@
 package com.netscape.certsrv.selftests;
 
 import java.util.Collection;
+import java.util.List;
 
 ///////////////////////
 // import statements //
@@ -57,6 +58,9 @@ public interface ISelfTestSubsystem
     public static final String PROP_ORDER = "order";
     public static final String PROP_ON_DEMAND = "onDemand";
     public static final String PROP_STARTUP = "startup";
+    public static final String PROP_THREADS = "threads";
+    public static final String PROP_TIMEOUT = "timeout";
+    public static final String PROP_CACHE_TIME = "cacheTime";
 
     ///////////////////////////////////////
     // ISubsystem parameters (inherited) //
@@ -150,6 +154,20 @@ public interface ISelfTestSubsystem
      */
     public void runSelfTest(String instanceName) throws Exception;
 
+    /**
+     * Execute the specified self tests. Independent self tests are
+     * executed concurrently. If useCache is true, a result recorded
+     * within the configured cache time is returned instead of
+     * executing the self test again.
+     *
+     * @param instanceNames instance names of self tests
+     * @param useCache true to accept recent results
+     * @return results in the same order as the instance names
+     * @exception EMissingSelfTestException subsystem has missing name
+     */
+    public List<SelfTestRecord> runSelfTests(List<String> instanceNames, boolean useCache)
+            throws EMissingSelfTestException;
+
     //
     // methods associated with the list of startup self tests
     //
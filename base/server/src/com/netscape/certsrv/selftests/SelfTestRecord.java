@@ -0,0 +1,60 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.certsrv.selftests;
+
+/**
+ * This class records the outcome of a single self test execution.
+ */
+public class SelfTestRecord {
+
+    private String name;
+    private long time; // completion time in milliseconds since epoch
+    private long duration; // milliseconds
+    private Exception exception;
+
+    public SelfTestRecord(String name, long time, long duration, Exception exception) {
+        this.name = name;
+        this.time = time;
+        this.duration = duration;
+        this.exception = exception;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns the exception thrown by the self test, or null if
+     * the self test passed.
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    public boolean isPassed() {
+        return exception == null;
+    }
+
+    /**
+     * Determine if the self test completed within the given number
+     * of milliseconds.
+     */
+    public boolean isFresh(long maxAge) {
+        return System.currentTimeMillis() - time <= maxAge;
+    }
+
+    public String toString() {
+        return name + ": " + (exception == null ? "PASSED" : "FAILED") + " in " + duration + " ms";
+    }
+}
@@ -76,6 +76,7 @@ public abstract class AAclAuthz implements IAuthzManager {
     protected static final String PROP_CLASS = "class";
     protected static final String PROP_IMPL = "impl";
     protected static final String PROP_EVAL = "accessEvaluator";
+    protected static final String PROP_CACHE_SIZE = "cacheSize";
 
     protected static final String ACLS_ATTR = "aclResources";
 
@@ -90,6 +91,12 @@ public abstract class AAclAuthz implements IAuthzManager {
     private Hashtable<String, IACL> mACLs = new Hashtable<>();
     private Hashtable<String, IAccessEvaluator> mEvaluators = new Hashtable<String, IAccessEvaluator>();
 
+    /* compiled ACLs, rebuilt on first use after the ACLs or evaluators change */
+    private volatile ACLTable mTable;
+
+    /* maximum number of cached authorization decisions (0 = disabled) */
+    private int mCacheSize = 10000;
+
     /* Vector of extendedPluginInfo strings */
     protected static Vector<String> mExtendedPluginInfo = null;
 
@@ -116,6 +123,9 @@ public abstract class AAclAuthz implements IAuthzManager {
 
         logger.debug("AAclAuthz: init begins");
 
+        mCacheSize = config.getInteger(PROP_CACHE_SIZE, 10000);
+        logger.debug("AAclAuthz: cache size: " + mCacheSize);
+
         // load access evaluators specified in the config file
         CMSEngine engine = CMS.getCMSEngine();
         EngineConfig mainConfig = engine.getConfig();
@@ -187,7 +197,7 @@ public abstract class AAclAuthz implements IAuthzManager {
      * @param resACLs same format as the resourceACLs attribute
      * @throws EBaseException parsing error from <code>parseACL</code>
      */
-    public void addACLs(String resACLs) throws EBaseException {
+    public synchronized void addACLs(String resACLs) throws EBaseException {
         ACL acl = ACL.parseACL(resACLs);
 
         if (acl != null) {
@@ -197,6 +207,7 @@ public abstract class AAclAuthz implements IAuthzManager {
             } else {
                 curACL.merge(acl);
             }
+            mTable = null;
         } else {
             logger.warn("AAclAuthz: parseACL failed");
         }
@@ -252,8 +263,9 @@ public abstract class AAclAuthz implements IAuthzManager {
      * Registers new handler for the given attribute type
      * in the expressions.
      */
-    public void registerEvaluator(String type, IAccessEvaluator evaluator) {
+    public synchronized void registerEvaluator(String type, IAccessEvaluator evaluator) {
         mEvaluators.put(type, evaluator);
+        mTable = null;
         logger.info("AAclAuthz: " + type + " evaluator registered");
     }
 
@@ -285,7 +297,7 @@ public abstract class AAclAuthz implements IAuthzManager {
      * @param perm permission requested
      * @exception EACLsException access permission denied
      */
-    protected synchronized void checkPermission(String name, String perm)
+    protected void checkPermission(String name, String perm)
             throws EACLsException {
 
         String resource = "";
@@ -501,25 +513,20 @@ public abstract class AAclAuthz implements IAuthzManager {
      * @param perm permission requested
      * @exception EACLsException access permission denied
      */
-    public synchronized void checkPermission(IAuthToken authToken, String name,
+    public void checkPermission(IAuthToken authToken, String name,
             String perm)
             throws EACLsException {
 
         logger.debug("AAclAuthz.checkPermission(" + name + ", " + perm + ")");
 
-        Vector<String> nodes = getNodes(name);
-        EvaluationOrder order = getOrder();
+        ACLTable.Decision decision = getTable().evaluate(authToken, name, perm);
 
-        boolean permitted = false;
-        if (order == EvaluationOrder.DenyAllow) {
-            checkDenyEntries(authToken, nodes, perm);
-            permitted = checkAllowEntries(authToken, nodes, perm);
-        } else if (order == EvaluationOrder.AllowDeny) {
-            permitted = checkAllowEntries(authToken, nodes, perm);
-            checkDenyEntries(authToken, nodes, perm);
+        if (decision == ACLTable.Decision.Denied) {
+            logger.error("AAclAuthz: checkPermission(): permission denied");
+            throw new EACLsException(CMS.getUserMessage("CMS_ACL_PERMISSION_DENIED"));
         }
 
-        if (!permitted) {
+        if (decision == ACLTable.Decision.NotPermitted) {
             String[] params = new String[2];
             params[0] = name;
             params[1] = perm;
@@ -532,6 +539,25 @@ public abstract class AAclAuthz implements IAuthzManager {
         logger.info("AAclAuthz: Granting " + perm + " permission for " + name);
     }
 
+    /**
+     * Returns the compiled ACLs, compiling them first if the ACLs
+     * or the evaluators have changed since the last compilation.
+     */
+    protected ACLTable getTable() {
+
+        ACLTable table = mTable;
+        if (table != null) {
+            return table;
+        }
+
+        synchronized (this) {
+            if (mTable == null) {
+                mTable = new ACLTable(mACLs.elements(), mEvaluators, getOrder(), mCacheSize);
+            }
+            return mTable;
+        }
+    }
+
     protected boolean checkAllowEntries(
             IAuthToken authToken,
             Iterable<String> nodes,
@@ -748,7 +774,7 @@ public abstract class AAclAuthz implements IAuthzManager {
      * This one only updates the memory. Classes extend this class should
      * also update to a permanent storage
      */
-    public void updateACLs(String id, String rights, String strACLs,
+    public synchronized void updateACLs(String id, String rights, String strACLs,
             String desc) throws EACLsException {
         String resourceACLs = id;
 
@@ -765,6 +791,9 @@ public abstract class AAclAuthz implements IAuthzManager {
         }
 
         mACLs.put(ac.getName(), ac);
+
+        // discard compiled ACLs and cached decisions
+        mTable = null;
     }
 
     /**
@@ -0,0 +1,363 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.authorization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.netscape.certsrv.acls.ACLEntry;
+import com.netscape.certsrv.acls.IACL;
+import com.netscape.certsrv.authentication.IAuthToken;
+import com.netscape.certsrv.evaluators.IAccessEvaluator;
+import com.netscape.cms.authorization.AAclAuthz.EvaluationOrder;
+import com.netscape.cms.evaluators.GroupAccessEvaluator;
+import com.netscape.cms.evaluators.UserAccessEvaluator;
+import com.netscape.cmscore.apps.CMS;
+
+/**
+ * This class contains the ACLs of an authorization manager compiled
+ * into an immutable structure that can be evaluated without locking.
+ *
+ * The attribute expressions of every ACL entry are parsed once when
+ * the table is built. The allow and deny entries that apply to a
+ * resource and operation are collected on first use. If all of them
+ * only depend on the user ID and groups in the auth token, the
+ * decision is also cached by user, groups, resource, and operation.
+ *
+ * A new table is built whenever the ACLs or the evaluators change,
+ * which also discards the cached decisions.
+ */
+public class ACLTable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ACLTable.class);
+
+    public enum Decision { Granted, Denied, NotPermitted };
+
+    // maximum number of resource/operation pairs to keep
+    private static final int MAX_PLANS = 10000;
+
+    private EvaluationOrder order;
+    private Map<String, CompiledEntry[]> entries = new HashMap<>();
+
+    private Map<String, Plan> plans = new ConcurrentHashMap<>();
+    private Map<String, Decision> decisions = new ConcurrentHashMap<>();
+    private int cacheSize;
+
+    public ACLTable(
+            Enumeration<IACL> acls,
+            Map<String, IAccessEvaluator> evaluators,
+            EvaluationOrder order,
+            int cacheSize) {
+
+        this.order = order;
+        this.cacheSize = cacheSize;
+
+        while (acls.hasMoreElements()) {
+            ACL acl = (ACL) acls.nextElement();
+
+            List<CompiledEntry> list = new ArrayList<>();
+            Enumeration<ACLEntry> e = acl.entries();
+            while (e.hasMoreElements()) {
+                ACLEntry entry = e.nextElement();
+                list.add(new CompiledEntry(entry, Expression.compile(entry.getAttributeExpressions(), evaluators)));
+            }
+
+            entries.put(acl.getName(), list.toArray(new CompiledEntry[0]));
+        }
+
+        logger.debug("ACLTable: Compiled " + entries.size() + " ACL(s)");
+    }
+
+    /**
+     * Evaluates the permission for the given auth token.
+     */
+    public Decision evaluate(IAuthToken authToken, String resource, String operation) {
+
+        String planKey = resource + ":" + operation;
+        Plan plan = plans.get(planKey);
+
+        if (plan == null) {
+            plan = createPlan(resource, operation);
+            if (plans.size() >= MAX_PLANS) {
+                plans.clear();
+            }
+            plans.put(planKey, plan);
+        }
+
+        String cacheKey = plan.cacheable && cacheSize > 0 ? getCacheKey(authToken, planKey) : null;
+
+        if (cacheKey != null) {
+            Decision decision = decisions.get(cacheKey);
+            if (decision != null) {
+                logger.debug("ACLTable: Using cached decision for " + planKey + ": " + decision);
+                return decision;
+            }
+        }
+
+        Decision decision;
+        if (order == EvaluationOrder.AllowDeny) {
+            boolean permitted = matches(authToken, plan.allow);
+            decision = matches(authToken, plan.deny) ? Decision.Denied
+                    : permitted ? Decision.Granted : Decision.NotPermitted;
+        } else {
+            decision = matches(authToken, plan.deny) ? Decision.Denied
+                    : matches(authToken, plan.allow) ? Decision.Granted : Decision.NotPermitted;
+        }
+
+        if (cacheKey != null) {
+            if (decisions.size() >= cacheSize) {
+                decisions.clear();
+            }
+            decisions.put(cacheKey, decision);
+        }
+
+        return decision;
+    }
+
+    boolean matches(IAuthToken authToken, CompiledEntry[] list) {
+        for (CompiledEntry entry : list) {
+            if (entry.expression.evaluate(authToken)) {
+                logger.debug("ACLTable: Matched " + entry.entry.getType() + " entry: " + entry.entry.getAttributeExpressions());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collects the entries that apply to the operation on the resource
+     * and its parent nodes, starting from the resource itself.
+     */
+    Plan createPlan(String resource, String operation) {
+
+        List<CompiledEntry> allow = new ArrayList<>();
+        List<CompiledEntry> deny = new ArrayList<>();
+        boolean cacheable = true;
+
+        String node = resource;
+        while (node != null && !node.equals("")) {
+
+            CompiledEntry[] list = entries.get(node);
+            if (list != null) {
+                for (CompiledEntry entry : list) {
+                    if (!entry.entry.containPermission(operation)) {
+                        continue;
+                    }
+
+                    if (entry.entry.getType() == ACLEntry.Type.Allow) {
+                        allow.add(entry);
+                    } else {
+                        deny.add(entry);
+                    }
+
+                    cacheable &= entry.expression.cacheable;
+                }
+            }
+
+            int index = node.lastIndexOf(".");
+            node = index == -1 ? null : node.substring(0, index);
+        }
+
+        return new Plan(
+                allow.toArray(new CompiledEntry[0]),
+                deny.toArray(new CompiledEntry[0]),
+                cacheable);
+    }
+
+    /**
+     * Returns the decision cache key, or null if the auth token does
+     * not contain the groups so the decision cannot be cached.
+     */
+    String getCacheKey(IAuthToken authToken, String planKey) {
+
+        if (authToken == null) {
+            return null;
+        }
+
+        String[] groups = authToken.getInStringArray(IAuthToken.GROUPS);
+        if (groups == null) {
+            return null;
+        }
+
+        groups = groups.clone();
+        Arrays.sort(groups);
+
+        return authToken.getInString(IAuthToken.USER_ID) + "\n"
+                + authToken.getInString(IAuthToken.UID) + "\n"
+                + String.join("\n", groups) + "\n\n"
+                + planKey;
+    }
+
+    public int getCacheSize() {
+        return decisions.size();
+    }
+
+    static class CompiledEntry {
+
+        ACLEntry entry;
+        Expression expression;
+
+        CompiledEntry(ACLEntry entry, Expression expression) {
+            this.entry = entry;
+            this.expression = expression;
+        }
+    }
+
+    static class Plan {
+
+        CompiledEntry[] allow;
+        CompiledEntry[] deny;
+        boolean cacheable;
+
+        Plan(CompiledEntry[] allow, CompiledEntry[] deny, boolean cacheable) {
+            this.allow = allow;
+            this.deny = deny;
+            this.cacheable = cacheable;
+        }
+    }
+
+    /**
+     * A parsed attribute expression, e.g.:
+     * group="Administrators" || user="admin"
+     *
+     * The terms are combined from left to right without precedence.
+     */
+    static class Expression {
+
+        Term[] terms;
+        String[] operators; // "||" or "&&" between consecutive terms
+        boolean cacheable = true;
+
+        static Expression compile(String s, Map<String, IAccessEvaluator> evaluators) {
+
+            List<Term> terms = new ArrayList<>();
+            List<String> operators = new ArrayList<>();
+
+            while (s.length() > 0) {
+                int orIndex = s.indexOf("||");
+                int andIndex = s.indexOf("&&");
+
+                // this is the last expression
+                if (orIndex == -1 && andIndex == -1) {
+                    terms.add(Term.compile(s.trim(), evaluators));
+                    break;
+
+                    // || first
+                } else if (andIndex == -1 || (orIndex != -1 && orIndex < andIndex)) {
+                    terms.add(Term.compile(s.substring(0, orIndex).trim(), evaluators));
+                    operators.add("||");
+                    s = s.substring(orIndex + 2);
+
+                    // && first
+                } else {
+                    terms.add(Term.compile(s.substring(0, andIndex).trim(), evaluators));
+                    operators.add("&&");
+                    s = s.substring(andIndex + 2);
+                }
+            }
+
+            // ignore dangling operator
+            if (operators.size() >= terms.size() && !operators.isEmpty()) {
+                operators.remove(operators.size() - 1);
+            }
+
+            Expression expression = new Expression();
+            expression.terms = terms.toArray(new Term[0]);
+            expression.operators = operators.toArray(new String[0]);
+
+            for (Term term : expression.terms) {
+                expression.cacheable &= term.isCacheable();
+            }
+
+            return expression;
+        }
+
+        boolean evaluate(IAuthToken authToken) {
+
+            if (terms.length == 0) {
+                return false;
+            }
+
+            boolean result = terms[0].evaluate(authToken);
+
+            for (int i = 1; i < terms.length; i++) {
+                boolean right = terms[i].evaluate(authToken);
+                result = "||".equals(operators[i - 1]) ? result || right : result && right;
+            }
+
+            return result;
+        }
+    }
+
+    static class Term {
+
+        String expression;
+        String type;
+        String op;
+        String value;
+        IAccessEvaluator evaluator;
+
+        static Term compile(String expression, Map<String, IAccessEvaluator> evaluators) {
+
+            Term term = new Term();
+            term.expression = expression;
+            term.op = getOp(expression);
+            term.type = "";
+            term.value = "";
+
+            if (!term.op.equals("")) {
+                int i = expression.indexOf(term.op);
+                term.type = expression.substring(0, i).trim();
+                term.value = expression.substring(i + term.op.length()).trim();
+            }
+
+            term.evaluator = evaluators.get(term.type);
+
+            if (term.evaluator == null) {
+                logger.warn("ACLTable: " + CMS.getLogMessage("AUTHZ_EVALUATOR_NOT_FOUND", term.type));
+            }
+
+            return term;
+        }
+
+        static String getOp(String exp) {
+            for (String op : new String[] { "!=", "=", ">", "<" }) {
+                if (exp.indexOf(op) != -1) {
+                    return op;
+                }
+            }
+            logger.warn("ACLTable: " + CMS.getLogMessage("AUTHZ_OP_NOT_SUPPORTED", exp));
+            return "";
+        }
+
+        /**
+         * Only the user and group evaluators are known to depend on
+         * nothing but the user ID and groups in the auth token.
+         */
+        boolean isCacheable() {
+            return evaluator == null
+                    || evaluator.getClass() == UserAccessEvaluator.class
+                    || evaluator.getClass() == GroupAccessEvaluator.class;
+        }
+
+        boolean evaluate(IAuthToken authToken) {
+
+            if (evaluator == null) {
+                return false;
+            }
+
+            boolean passed = evaluator.evaluate(authToken, type, op, value);
+            logger.debug("ACLTable: evaluated expression: " + expression + " to be " + passed);
+
+            return passed;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.logging;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class implements a bounded lock-free ring buffer with multiple
+ * producers and a single consumer.
+ *
+ * Producers claim a slot by advancing the tail sequence, then publish
+ * the element into the slot. The consumer takes the elements in
+ * sequence order and stops at a slot that has been claimed but not
+ * published yet, so the elements are consumed in the order in which
+ * the slots were claimed.
+ */
+public class LogBuffer<E> {
+
+    // how long a producer waits before checking for free space again
+    static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private int capacity;
+    private int mask;
+    private AtomicReferenceArray<E> slots;
+
+    // next sequence to be claimed by a producer
+    private AtomicLong tail = new AtomicLong();
+
+    // next sequence to be taken by the consumer
+    private volatile long head;
+
+    private volatile Thread consumer;
+    private volatile boolean waiting;
+
+    /**
+     * Creates a buffer that can hold at least the given number of
+     * elements. The capacity is rounded up to a power of two.
+     */
+    public LogBuffer(int size) {
+        capacity = Integer.highestOneBit(Math.max(size, 2) - 1) << 1;
+        mask = capacity - 1;
+        slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the approximate number of elements in the buffer.
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    /**
+     * Adds an element if there is free space.
+     *
+     * @return true if the element was added, false if the buffer is full
+     */
+    public boolean offer(E element) {
+
+        while (true) {
+            long sequence = tail.get();
+
+            if (sequence - head >= capacity) {
+                return false;
+            }
+
+            if (tail.compareAndSet(sequence, sequence + 1)) {
+                slots.set((int) (sequence & mask), element);
+
+                if (waiting) {
+                    LockSupport.unpark(consumer);
+                }
+
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Adds an element, waiting for free space if necessary.
+     */
+    public void put(E element) throws InterruptedException {
+
+        while (!offer(element)) {
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+    }
+
+    /**
+     * Moves up to the given number of published elements into the list.
+     * Must only be called by one thread at a time.
+     *
+     * @return the number of elements moved
+     */
+    public int drainTo(List<E> list, int max) {
+
+        long sequence = head;
+        int count = 0;
+
+        while (count < max) {
+            int index = (int) (sequence & mask);
+
+            E element = slots.get(index);
+            if (element == null) {
+                break;
+            }
+
+            slots.set(index, null);
+            list.add(element);
+
+            sequence++;
+            count++;
+        }
+
+        head = sequence;
+
+        return count;
+    }
+
+    /**
+     * Waits until an element is published or the timeout expires.
+     * Must only be called by the consumer thread.
+     */
+    public void await(long timeout, TimeUnit unit) {
+
+        consumer = Thread.currentThread();
+        waiting = true;
+
+        try {
+            if (slots.get((int) (head & mask)) == null) {
+                LockSupport.parkNanos(this, unit.toNanos(timeout));
+            }
+
+        } finally {
+            waiting = false;
+        }
+    }
+
+    /**
+     * Wakes up the consumer thread.
+     */
+    public void signal() {
+        Thread thread = consumer;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
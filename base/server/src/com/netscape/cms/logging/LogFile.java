@@ -35,6 +35,7 @@ import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
@@ -43,15 +44,19 @@ import java.security.Signature;
 import java.security.SignatureException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 
@@ -81,6 +86,7 @@ import com.netscape.certsrv.logging.SignedAuditEvent;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.apps.EngineConfig;
+import com.netscape.cmscore.metrics.MetricsRegistry;
 
 import netscape.ldap.client.JDAPAVA;
 import netscape.ldap.client.JDAPFilter;
@@ -106,6 +112,9 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
     public static final String PROP_ON = "enable";
     public static final String PROP_TRACE = "trace";
     public static final String PROP_SIGNED_AUDIT_LOG_SIGNING = "logSigning";
+    public static final String PROP_SIGNED_AUDIT_LOG_SIGNING_MODE = "logSigningMode";
+    public static final String PROP_SIGNED_AUDIT_LOG_SIGNING_INTERVAL = "logSigningInterval";
+    public static final String PROP_SIGNED_AUDIT_LOG_SIGNING_BLOCK_SIZE = "logSigningBlockSize";
     public static final String PROP_SIGNED_AUDIT_CERT_NICKNAME =
                               "signedAuditCertNickname";
     public static final String PROP_SIGNED_AUDIT_SELECTED_EVENTS = "events";
@@ -117,6 +126,9 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
     static final String PROP_LAST_HASH_FILE_NAME = "lastHashFileName";
     static final String PROP_BUFFER_SIZE = "bufferSize";
     static final String PROP_FLUSH_INTERVAL = "flushInterval";
+    static final String PROP_ASYNC = "async";
+    static final String PROP_ASYNC_OVERFLOW = "async.overflow";
+    static final String PROP_ASYNC_QUEUE_SIZE = "async.queueSize";
 
     private final static String LOG_SIGNED_AUDIT_EXCEPTION =
                                "LOG_SIGNED_AUDIT_EXCEPTION_1";
@@ -141,6 +153,16 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
      */
     static final int FLUSH_INTERVAL = 5;
 
+    /**
+     * The default number of events that can be queued in asynchronous mode
+     */
+    static final int ASYNC_QUEUE_SIZE = 8192;
+
+    /**
+     * The maximum number of events written between flushes in asynchronous mode
+     */
+    static final int ASYNC_BATCH_SIZE = 1024;
+
     /**
      * The log file
      */
@@ -196,6 +218,27 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
      */
     private Thread mFlushThread = null;
 
+    /**
+     * The events waiting to be written in asynchronous mode
+     */
+    protected LogBuffer<QueuedEvent> mQueue = null;
+
+    /**
+     * Wait for free space (true) or reject the event (false) when
+     * the queue is full
+     */
+    protected boolean mBlockWhenFull = true;
+
+    /**
+     * The writer thread is running
+     */
+    private volatile boolean mWriterRunning = false;
+
+    /**
+     * The queue is being written
+     */
+    private boolean mDraining = false;
+
     /**
      * The mandatory log event types
      */
@@ -233,6 +276,32 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
      */
     protected boolean mLogSigning = false;
 
+    /**
+     * Sign a SHA-256 hash chain of the entries in blocks (true)
+     * or all entries on every flush (false)
+     */
+    protected boolean mChainSigning = false;
+
+    /**
+     * The maximum time in milliseconds between block signatures
+     */
+    protected long mSigningInterval = 60000;
+
+    /**
+     * The maximum number of entries in a signed block
+     */
+    protected int mSigningBlockSize = 1000;
+
+    /**
+     * The number of entries written since the last signature
+     */
+    protected int mBlockEntries = 0;
+
+    /**
+     * The time of the last signature
+     */
+    protected long mLastSigningTime = 0;
+
     /**
      * Nickname of certificate to use to sign log.
      */
@@ -292,6 +361,20 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
                         config.getName() + "."
                                 + PROP_SIGNED_AUDIT_CERT_NICKNAME));
             }
+
+            String signingMode = config.getString(PROP_SIGNED_AUDIT_LOG_SIGNING_MODE, "flush");
+            if (signingMode.equals("chain")) {
+                mChainSigning = true;
+            } else if (!signingMode.equals("flush")) {
+                throw new ELogException("Invalid " + config.getName() + "."
+                        + PROP_SIGNED_AUDIT_LOG_SIGNING_MODE + ": " + signingMode);
+            }
+
+            mSigningInterval = config.getInteger(PROP_SIGNED_AUDIT_LOG_SIGNING_INTERVAL, 60) * 1000L;
+            mSigningBlockSize = config.getInteger(PROP_SIGNED_AUDIT_LOG_SIGNING_BLOCK_SIZE, 1000);
+
+            logger.debug("LogFile: audit log signing mode: " + signingMode);
+        }
         }
 
         // mandatory events
@@ -491,7 +574,80 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
         if (mOn) {
             init(fileName, config.getInteger(PROP_BUFFER_SIZE, BUFFER_SIZE),
                     config.getInteger(PROP_FLUSH_INTERVAL, FLUSH_INTERVAL));
+
+            if (config.getBoolean(PROP_ASYNC, false)) {
+                String overflow = config.getString(PROP_ASYNC_OVERFLOW, "block");
+                if (!overflow.equals("block") && !overflow.equals("fail")) {
+                    throw new ELogException("Invalid " + config.getName() + "." + PROP_ASYNC_OVERFLOW + ": " + overflow);
+                }
+                startWriter(config.getInteger(PROP_ASYNC_QUEUE_SIZE, ASYNC_QUEUE_SIZE), overflow.equals("block"));
+            }
+        }
+    }
+
+    /**
+     * Start writing the log asynchronously. The events will be queued
+     * by the threads that log them, and formatted, signed, and written
+     * by a dedicated writer thread.
+     *
+     * @param queueSize The maximum number of queued events
+     * @param blockWhenFull Wait for free space (true) or reject the event
+     *            (false) when the queue is full
+     */
+    public synchronized void startWriter(int queueSize, boolean blockWhenFull) {
+
+        if (mWriterRunning) {
+            return;
+        }
+
+        if (mTrace) {
+            // the stack trace has to be captured by the logging thread
+            logger.warn("LogFile: Asynchronous logging not available with trace enabled");
+            return;
+        }
+
+        logger.info("LogFile: Writing " + mFileName + " asynchronously with queue size " + queueSize
+                + (blockWhenFull ? "" : ", rejecting events when full"));
+
+        mQueue = new LogBuffer<>(queueSize);
+        mBlockWhenFull = blockWhenFull;
+        mWriterRunning = true;
+
+        Thread thread = new WriterThread();
+        thread.setDaemon(true);
+        thread.start();
+
+        MetricsRegistry.getInstance().registerGauge(
+                "pki_log_queue_depth",
+                "Number of log events waiting to be written",
+                this::getQueueDepth,
+                "log", new File(mFileName).getName());
+    }
+
+    /**
+     * Stop the writer thread after writing the queued events.
+     */
+    public synchronized void stopWriter() {
+
+        if (!mWriterRunning) {
+            return;
         }
+
+        mWriterRunning = false;
+        drainQueue();
+        mQueue.signal();
+    }
+
+    public boolean isAsync() {
+        return mWriterRunning;
+    }
+
+    /**
+     * Returns the number of queued events.
+     */
+    public int getQueueDepth() {
+        LogBuffer<QueuedEvent> queue = mQueue;
+        return queue == null ? 0 : queue.size();
     }
 
     /**
@@ -524,6 +680,20 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
     private PrivateKey mSigningKey = null;
     private Signature mSignature = null;
 
+    /**
+     * The hash chain of the entries since the last signature. Each entry
+     * is hashed together with the previous value of the chain:
+     *
+     *   chain = SHA-256(chain || entry || 0x0a)
+     *
+     * starting with zeros after each signature. The block signature is
+     * computed over the final value of the chain.
+     */
+    private MessageDigest mChainDigest = null;
+    private byte[] mChain = new byte[CHAIN_LENGTH];
+
+    static final int CHAIN_LENGTH = 32;
+
     private void setupSigning() throws EBaseException {
         try {
 
@@ -567,11 +737,20 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
 
             mSignature.initSign(mSigningKey);
 
+            if (mChainSigning) {
+                mChainDigest = MessageDigest.getInstance("SHA-256");
+                mChain = new byte[CHAIN_LENGTH];
+            }
+
             // get the last signature from the currently-opened file
             String entry = getLastSignature(mFile);
             if (entry != null) {
-                mSignature.update(entry.getBytes("UTF-8"));
-                mSignature.update(LINE_SEP_BYTE);
+                if (mChainSigning) {
+                    updateChain(entry.getBytes("UTF-8"));
+                } else {
+                    mSignature.update(entry.getBytes("UTF-8"));
+                    mSignature.update(LINE_SEP_BYTE);
+                }
             }
 
             // Always start off with a signature. That way, even if there
@@ -679,6 +858,12 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
             return;
         }
 
+        if (mChainSigning) {
+            // sign the block root instead of the entries
+            mSignature.update(mChain);
+            mChain = new byte[CHAIN_LENGTH];
+        }
+
         sigBytes = mSignature.sign();
         mSignature.initSign(mSigningKey);
 
@@ -689,7 +874,7 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
         // so as to avoid infinite recursiveness of calling
         // the log() method
         String auditMessage = CMS.getLogMessage(
-                AuditEvent.AUDIT_LOG_SIGNING,
+                mChainSigning ? AuditEvent.AUDIT_LOG_CHAIN_SIGNING : AuditEvent.AUDIT_LOG_SIGNING,
                 ILogger.SYSTEM_UID,
                 ILogger.SUCCESS,
                 base64Encode(sigBytes));
@@ -700,7 +885,41 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
                 o,
                 ILogger.L_SINGLELINE);
 
-        doLog(ev, true);
+        // the signature entry starts the next block
+        doLog(ev, Thread.currentThread().getName(), true);
+
+        mBlockEntries = 0;
+        mLastSigningTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Add an entry (without the line separator) to the hash chain.
+     */
+    private void updateChain(byte[] bytes) {
+        mChainDigest.update(mChain);
+        mChainDigest.update(bytes);
+        mChainDigest.update(LINE_SEP_BYTE);
+        mChain = mChainDigest.digest();
+    }
+
+    /**
+     * Determine whether the entries written since the last signature
+     * should be signed now. Without hash chain signing the log is signed
+     * on every flush.
+     */
+    private boolean isSigningDue(boolean force) {
+
+        if (!mChainSigning) {
+            return true;
+        }
+
+        if (mBlockEntries == 0) {
+            return false;
+        }
+
+        return force
+                || mBlockEntries >= mSigningBlockSize
+                || System.currentTimeMillis() - mLastSigningTime >= mSigningInterval;
     }
 
     private static String getLastSignature(File f) throws IOException {
@@ -774,8 +993,24 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
      *
      */
     public synchronized void flush() {
+        flush(false);
+    }
+
+    /**
+     * Flush the log file. With hash chain signing, the pending entries
+     * are signed if the block is full, the signing interval has passed,
+     * or if forced.
+     *
+     * @param forceSigning Sign the pending entries regardless of the block
+     *            size and signing interval
+     */
+    protected synchronized void flush(boolean forceSigning) {
+
+        // write the queued events first
+        drainQueue();
+
         try {
-            if (mLogSigning) {
+            if (mLogSigning && isSigningDue(forceSigning)) {
                 pushSignature();
             }
 
@@ -802,7 +1037,7 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
      */
     protected synchronized void close() {
         try {
-            flush();
+            flush(true);
             if (mLogWriter != null) {
                 mLogWriter.close();
             }
@@ -836,6 +1071,7 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
 
         signedAuditLogger.log(auditMessage);
 
+        stopWriter();
         close();
     }
 
@@ -891,7 +1127,7 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
                     break;
                 }
 
-                if (mBytesUnflushed > 0) {
+                if (mBytesUnflushed > 0 || mBlockEntries > 0) {
                     flush();
                 }
             }
@@ -900,12 +1136,143 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
     }
 
     /**
-     * Synchronized method to write an event to the log file.
+     * Log writer thread. Waits for queued events and writes them to
+     * the log. Stopping the writer will cause this thread to exit.
+     */
+    final class WriterThread extends Thread {
+
+        /**
+         * Writer thread constructor including thread name
+         */
+        public WriterThread() {
+            super();
+            super.setName(mFileName + ".writer-" + (Thread.activeCount() + 1));
+        }
+
+        public void run() {
+            while (mWriterRunning) {
+                mQueue.await(1, TimeUnit.SECONDS);
+
+                synchronized (LogFile.this) {
+                    if (!mWriterRunning) {
+                        break;
+                    }
+                    drainQueue();
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the queued events in batches, flushing the log (and
+     * updating the signature) at most once per batch. The caller
+     * must hold the lock on this object.
+     */
+    private void drainQueue() {
+
+        LogBuffer<QueuedEvent> queue = mQueue;
+        if (queue == null || mDraining) {
+            return;
+        }
+
+        mDraining = true;
+
+        try {
+            List<QueuedEvent> batch = new ArrayList<>();
+
+            while (queue.drainTo(batch, ASYNC_BATCH_SIZE) > 0) {
+
+                for (QueuedEvent entry : batch) {
+                    try {
+                        doLog(entry.event, entry.threadName, true);
+                    } catch (ELogException e) {
+                        // already reported
+                    }
+                }
+
+                batch.clear();
+
+                if (mBufferSize > 0 && mBytesUnflushed > mBufferSize) {
+                    flush();
+                }
+
+                try {
+                    afterWrite();
+                } catch (ELogException e) {
+                    logger.error("LogFile: " + e.getMessage(), e);
+                }
+            }
+
+        } finally {
+            mDraining = false;
+        }
+    }
+
+    /**
+     * Called after events have been written by the writer thread.
+     */
+    protected void afterWrite() throws ELogException {
+    }
+
+    /**
+     * Queue an event to be written by the writer thread.
+     */
+    void enqueue(ILogEvent event) throws ELogException {
+
+        QueuedEvent entry = new QueuedEvent(event, Thread.currentThread().getName());
+        LogBuffer<QueuedEvent> queue = mQueue;
+
+        if (!queue.offer(entry)) {
+
+            if (!mBlockWhenFull) {
+                String message = CMS.getUserMessage("CMS_LOG_WRITE_FAILED", mFileName, event.toString(), "Log queue full");
+                logger.error("LogFile: " + message);
+                System.err.println(message);
+                if (mLogSigning) {
+                    // Failed to write to audit log, shut down CMS
+                    shutdownCMS();
+                }
+                throw new ELogException(message);
+            }
+
+            try {
+                queue.put(entry);
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                String message = CMS.getUserMessage("CMS_LOG_WRITE_FAILED", mFileName, event.toString(), e.toString());
+                logger.error("LogFile: " + message);
+                throw new ELogException(message, e);
+            }
+        }
+
+        if (!mWriterRunning) {
+            // the writer stopped while the event was being queued
+            synchronized (this) {
+                drainQueue();
+            }
+        }
+    }
+
+    /**
+     * Method to write an event to the log file. In asynchronous mode
+     * the event is queued for the writer thread, unless the calling
+     * thread is already holding the lock on this object.
      *
      * @param event The log event
      */
-    protected synchronized void doLog(ILogEvent event) throws ELogException {
-        doLog(event, false);
+    protected void doLog(ILogEvent event) throws ELogException {
+
+        if (mWriterRunning && !Thread.holdsLock(this)) {
+            enqueue(event);
+            return;
+        }
+
+        synchronized (this) {
+            // keep the events in order
+            drainQueue();
+            doLog(event, Thread.currentThread().getName(), false);
+        }
     }
 
     // Standard line separator byte. We always sign this line separator,
@@ -918,10 +1285,10 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
      * by subclasses, so you can call it and know that it will do exactly
      * what you see below.
      */
-    private synchronized void doLog(ILogEvent event, boolean noFlush)
+    private synchronized void doLog(ILogEvent event, String threadName, boolean noFlush)
             throws ELogException {
 
-        String entry = logEvt2String(event);
+        String entry = logEvt2String(event, threadName);
 
         if (mLogWriter == null) {
             String[] params = { mFileName, entry };
@@ -940,7 +1307,11 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
                 mLogWriter.write(entry, 0/*offset*/, entry.length());
 
                 if (mLogSigning == true) {
-                    if (mSignature != null) {
+                    if (mChainSigning && mChainDigest != null) {
+                        // one hash per entry, including the newline
+                        updateChain(entry.getBytes("UTF-8"));
+                        mBlockEntries++;
+                    } else if (mSignature != null) {
                         // include newline for calculating MAC
                         mSignature.update(entry.getBytes("UTF-8"));
                     } else {
@@ -980,7 +1351,7 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
                 }
                 mLogWriter.newLine();
 
-                if (mLogSigning == true) {
+                if (mLogSigning == true && !mChainSigning) {
                     if (mSignature != null) {
                         mSignature.update(LINE_SEP_BYTE);
                     } else {
@@ -1222,6 +1593,13 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
     }
 
     public String logEvt2String(ILogEvent ev) {
+        return logEvt2String(ev, Thread.currentThread().getName());
+    }
+
+    /**
+     * Format a log event logged by the given thread.
+     */
+    public String logEvt2String(ILogEvent ev, String threadName) {
         String entry = null;
 
         // Hmm.. multiple threads could hit this and reset the time.
@@ -1234,12 +1612,12 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
         // This should follow the Common Log Format which still needs
         // some work.
         if (ev.getMultiline() == ILogger.L_MULTILINE) {
-            entry = engine.getPID() + "." + Thread.currentThread().getName() + " - ["
+            entry = engine.getPID() + "." + threadName + " - ["
                     + mLogDateFormat.format(mDate) + "] [" +
                     ev.getSource().value() + "] [" + Integer.toString(ev.getLevel())
                     + "] " + prepareMultiline(ev.toString());
         } else {
-            entry = engine.getPID() + "." + Thread.currentThread().getName() + " - ["
+            entry = engine.getPID() + "." + threadName + " - ["
                     + mLogDateFormat.format(mDate) + "] [" +
                     ev.getSource().value() + "] [" + Integer.toString(ev.getLevel())
                     + "] " + ev.toString();
@@ -1296,6 +1674,18 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
 
         if (fName != null) {
             fileName = fName;
+
+            // read rotated log file from its index if available
+            if (source != null) {
+                try {
+                    LogIndex index = LogIndex.getExistingIndex(new File(fName));
+                    if (index != null) {
+                        return readEntry(index, maxLine, lowLevel, source);
+                    }
+                } catch (Exception e) {
+                    logger.warn("LogFile: Unable to read " + fName + " from index: " + e.getMessage(), e);
+                }
+            }
         }
         try {
             //XXX think about this
@@ -1425,6 +1815,44 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
         return mEntries;
     }
 
+    /**
+     * Read the last maxLine entries whose logLevel>=lowLevel && log source = source
+     * by seeking to their offsets in the log index.
+     */
+    Vector<LogEntry> readEntry(LogIndex index, int maxLine, int lowLevel, LogSource source)
+            throws IOException, ParseException {
+
+        List<LogIndex.Entry> indexEntries = index.getEntries();
+        LinkedList<Integer> matches = new LinkedList<>();
+
+        for (int i = indexEntries.size() - 1; i >= 0; i--) {
+
+            if (maxLine != -1 && matches.size() >= maxLine) {
+                break;
+            }
+
+            LogIndex.Entry indexEntry = indexEntries.get(i);
+
+            if (indexEntry.getLevel() >= lowLevel &&
+                    (indexEntry.getSource() == source.value() || source == ILogger.S_ALL)) {
+                matches.addFirst(i);
+            }
+        }
+
+        Vector<LogEntry> entries = new Vector<LogEntry>();
+
+        try (RandomAccessFile file = new RandomAccessFile(index.getLogFile(), "r")) {
+            for (int i : matches) {
+                String text = index.read(file, indexEntries.get(i).getOffset(), index.getNextOffset(i));
+
+                // remove the leading space of continuation lines
+                entries.addElement(new LogEntry(text.replace("\n ", "\n")));
+            }
+        }
+
+        return entries;
+    }
+
     /**
      * Retrieves the configuration store of this subsystem.
      * <P>
@@ -1631,4 +2059,18 @@ public class LogFile implements ILogEventListener, IExtendedPluginInfo {
             return params;
         }
     }
+
+    /**
+     * An event waiting to be written in asynchronous mode.
+     */
+    static class QueuedEvent {
+
+        ILogEvent event;
+        String threadName;
+
+        QueuedEvent(ILogEvent event, String threadName) {
+            this.event = event;
+            this.threadName = threadName;
+        }
+    }
 }
@@ -0,0 +1,639 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.logging;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class contains the index of a log file. The index stores the
+ * offset, timestamp, level, and source of each log entry, and the event
+ * type, subject ID, and outcome of audit events, so the log can be
+ * searched without parsing it and the matching entries can be read
+ * directly from their offsets.
+ *
+ * The index of a log file that has been rotated is stored in a sidecar
+ * file in a directory next to the log directory, e.g. the index of
+ * logs/ca/signedAudit/ca_audit.20200101000000 is stored in
+ * logs/ca/signedAudit.index/ca_audit.20200101000000.idx.
+ * Rotated log files do not change, so their indexes are also cached.
+ * The index of the current log file is built in memory when needed.
+ *
+ * The header of the index file contains the time range and the number
+ * of entries and audit events of the log file, so a log file can be
+ * skipped or counted without loading its entries. The entries are only
+ * loaded when they are needed.
+ */
+public class LogIndex {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LogIndex.class);
+
+    public static final String INDEX_SUFFIX = ".idx";
+
+    static final String HEADER = "# LogIndex 2";
+    static final String EVENTS_HEADER = "# Events";
+    static final String DATE_PATTERN = "dd/MMM/yyyy:HH:mm:ss z";
+
+    // maximum number of indexes to keep in memory
+    static final int MAX_CACHE_SIZE = 100;
+
+    // least recently used indexes are evicted first
+    private static Map<String, LogIndex> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, LogIndex>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<String, LogIndex> eldest) {
+                    return size() > MAX_CACHE_SIZE;
+                }
+            });
+
+    private static ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "LogIndex");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    File logFile;
+    long length;
+    long lastModified;
+
+    long minTime = Long.MAX_VALUE;
+    long maxTime = Long.MIN_VALUE;
+    int size;
+
+    // number of audit events of each event type
+    Map<String, Integer> eventTypes = new TreeMap<>();
+
+    // null if the entries have not been loaded from the index file
+    List<Entry> entries = new ArrayList<>();
+
+    LogIndex(File logFile, long length, long lastModified) {
+        this.logFile = logFile;
+        this.length = length;
+        this.lastModified = lastModified;
+    }
+
+    public static File getIndexFile(File logFile) {
+        File logDir = logFile.getAbsoluteFile().getParentFile();
+        File indexDir = new File(logDir.getParentFile(), logDir.getName() + ".index");
+        return new File(indexDir, logFile.getName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Returns the index of a log file. The index of a rotated log
+     * file is loaded from its index file, which is created if it does
+     * not exist or is out of date. The index of the current log file
+     * is built in memory.
+     */
+    public static LogIndex getIndex(File logFile, boolean current) throws IOException {
+
+        if (current) {
+            return scan(logFile);
+        }
+
+        String key = logFile.getAbsolutePath();
+        LogIndex index = cache.get(key);
+
+        if (index != null && index.isFresh()) {
+            return index;
+        }
+
+        index = load(logFile);
+
+        if (index == null) {
+            index = scan(logFile);
+            index.store();
+        }
+
+        cache.put(key, index);
+
+        return index;
+    }
+
+    /**
+     * Returns the index of a rotated log file if it has already been
+     * created, or null otherwise.
+     */
+    public static LogIndex getExistingIndex(File logFile) throws IOException {
+
+        String key = logFile.getAbsolutePath();
+        LogIndex index = cache.get(key);
+
+        if (index != null && index.isFresh()) {
+            return index;
+        }
+
+        return load(logFile);
+    }
+
+    /**
+     * Creates the index of a rotated log file in the background.
+     */
+    public static void createIndex(File logFile) {
+        executor.submit(() -> {
+            try {
+                logger.info("LogIndex: Indexing " + logFile);
+                scan(logFile).store();
+            } catch (Exception e) {
+                logger.warn("LogIndex: Unable to index " + logFile + ": " + e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Removes the index of a log file.
+     */
+    public static void removeIndex(File logFile) {
+        cache.remove(logFile.getAbsolutePath());
+        File indexFile = getIndexFile(logFile);
+        if (indexFile.exists() && !indexFile.delete()) {
+            logger.warn("LogIndex: Unable to remove " + indexFile);
+        }
+    }
+
+    boolean isFresh() {
+        return logFile.length() == length && logFile.lastModified() == lastModified;
+    }
+
+    /**
+     * Builds the index by reading the log file.
+     */
+    public static LogIndex scan(File logFile) throws IOException {
+
+        long lastModified = logFile.lastModified();
+        LogIndex index = new LogIndex(logFile, 0, lastModified);
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN);
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(logFile), 65536)) {
+
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long offset = 0;
+            long lineOffset = 0;
+            int b;
+
+            while ((b = in.read()) >= 0) {
+                offset++;
+
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+
+                index.add(lineOffset, new String(line.toByteArray(), Charset.defaultCharset()), dateFormat);
+                line.reset();
+                lineOffset = offset;
+            }
+
+            // index the last line even if it does not end with a line
+            // separator, e.g. if the server stopped while writing it
+            if (line.size() > 0) {
+                index.add(lineOffset, new String(line.toByteArray(), Charset.defaultCharset()), dateFormat);
+            }
+
+            index.length = offset;
+        }
+
+        // the file was modified while being indexed
+        if (index.length != logFile.length() || lastModified != logFile.lastModified()) {
+            index.length = -1;
+        }
+
+        return index;
+    }
+
+    /**
+     * Adds a log line to the index if it starts a new entry, i.e.
+     * <pid>.<thread> - [<date>] [<source>] [<level>] <message>
+     */
+    void add(long offset, String line, SimpleDateFormat dateFormat) {
+
+        if (line.length() == 0 || line.charAt(0) == ' ') {
+            return; // continuation line
+        }
+
+        int i = line.indexOf("[");
+        if (i < 0) return;
+
+        int j = line.indexOf("]", i);
+        if (j < 0) return;
+
+        Date date = dateFormat.parse(line.substring(i + 1, j), new ParsePosition(0));
+        if (date == null) return;
+
+        // [<source>] [<level>]
+        int k = line.indexOf("[", j);
+        int l = k < 0 ? -1 : line.indexOf("]", k);
+        int m = l < 0 ? -1 : line.indexOf("[", l);
+        int n = m < 0 ? -1 : line.indexOf("]", m);
+        if (n < 0) return;
+
+        Entry entry = new Entry();
+        entry.offset = offset;
+        entry.time = date.getTime();
+
+        try {
+            entry.source = Integer.parseInt(line.substring(k + 1, l));
+            entry.level = Integer.parseInt(line.substring(m + 1, n));
+        } catch (NumberFormatException e) {
+            return;
+        }
+
+        entry.eventType = getAttribute(line, "AuditEvent");
+        entry.subjectID = getAttribute(line, "SubjectID");
+        entry.outcome = getAttribute(line, "Outcome");
+
+        add(entry);
+    }
+
+    void add(Entry entry) {
+        entries.add(entry);
+        size++;
+        minTime = Math.min(minTime, entry.time);
+        maxTime = Math.max(maxTime, entry.time);
+        if (entry.eventType != null) {
+            eventTypes.merge(entry.eventType, 1, Integer::sum);
+        }
+    }
+
+    static String getAttribute(String line, String name) {
+
+        String prefix = "[" + name + "=";
+        int i = line.indexOf(prefix);
+        if (i < 0) return null;
+
+        int j = line.indexOf("]", i);
+        if (j < 0) return null;
+
+        return line.substring(i + prefix.length(), j);
+    }
+
+    /**
+     * Loads the header of the index file of a log file. The entries
+     * are loaded when they are needed.
+     *
+     * @return the index, or null if the index file does not exist or
+     * is out of date
+     */
+    static LogIndex load(File logFile) throws IOException {
+
+        File indexFile = getIndexFile(logFile);
+        if (!indexFile.exists()) {
+            return null;
+        }
+
+        try (BufferedReader in = new BufferedReader(new FileReader(indexFile))) {
+
+            LogIndex index = readHeader(logFile, in);
+
+            if (index == null) {
+                logger.debug("LogIndex: Index of " + logFile + " is out of date");
+            }
+
+            return index;
+
+        } catch (RuntimeException e) {
+            logger.warn("LogIndex: Invalid index " + indexFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the index header, i.e.
+     * # LogIndex 2 <length> <last modified> <min time> <max time> <size>
+     * # Events <event type>=<count> ...
+     *
+     * @return the index without entries, or null if the index is
+     * from a different version or the log file has changed
+     */
+    static LogIndex readHeader(File logFile, BufferedReader in) throws IOException {
+
+        String line = in.readLine();
+        if (line == null || !line.startsWith(HEADER + " ")) {
+            return null;
+        }
+
+        String[] header = line.split(" ");
+        long length = Long.parseLong(header[3]);
+        long lastModified = Long.parseLong(header[4]);
+
+        if (length != logFile.length() || lastModified != logFile.lastModified()) {
+            return null;
+        }
+
+        LogIndex index = new LogIndex(logFile, length, lastModified);
+        index.minTime = Long.parseLong(header[5]);
+        index.maxTime = Long.parseLong(header[6]);
+        index.size = Integer.parseInt(header[7]);
+        index.entries = null;
+
+        line = in.readLine();
+        if (line == null || !line.startsWith(EVENTS_HEADER)) {
+            throw new IllegalArgumentException("Missing events header");
+        }
+
+        for (String event : line.substring(EVENTS_HEADER.length()).trim().split(" ")) {
+            if (event.isEmpty()) continue;
+            int i = event.lastIndexOf('=');
+            index.eventTypes.put(event.substring(0, i), Integer.valueOf(event.substring(i + 1)));
+        }
+
+        return index;
+    }
+
+    /**
+     * Reads the entries from the index file.
+     *
+     * @return the entries, or null if the index file has changed
+     */
+    List<Entry> readEntries() throws IOException {
+
+        File indexFile = getIndexFile(logFile);
+        if (!indexFile.exists()) {
+            return null;
+        }
+
+        try (BufferedReader in = new BufferedReader(new FileReader(indexFile))) {
+
+            LogIndex index = readHeader(logFile, in);
+            if (index == null || index.length != length || index.lastModified != lastModified) {
+                return null;
+            }
+
+            List<Entry> entries = new ArrayList<>(index.size);
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+
+                Entry entry = new Entry();
+                entry.offset = Long.parseLong(fields[0]);
+                entry.time = Long.parseLong(fields[1]);
+                entry.source = Integer.parseInt(fields[2]);
+                entry.level = Integer.parseInt(fields[3]);
+                entry.eventType = decode(fields[4]);
+                entry.subjectID = decode(fields[5]);
+                entry.outcome = decode(fields[6]);
+
+                entries.add(entry);
+            }
+
+            if (entries.size() != size) {
+                return null;
+            }
+
+            return entries;
+
+        } catch (RuntimeException e) {
+            logger.warn("LogIndex: Invalid index " + indexFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    void store() throws IOException {
+
+        if (length < 0) {
+            return; // incomplete index
+        }
+
+        File indexFile = getIndexFile(logFile);
+        File indexDir = indexFile.getParentFile();
+
+        if (!indexDir.exists() && !indexDir.mkdirs()) {
+            throw new IOException("Unable to create " + indexDir);
+        }
+
+        File tmpFile = new File(indexDir, indexFile.getName() + ".tmp");
+
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(tmpFile))) {
+
+            out.write(HEADER + " " + length + " " + lastModified + " " + minTime + " " + maxTime + " " + size);
+            out.newLine();
+
+            out.write(EVENTS_HEADER);
+            for (Map.Entry<String, Integer> event : eventTypes.entrySet()) {
+                out.write(" " + event.getKey().replace(' ', '_') + "=" + event.getValue());
+            }
+            out.newLine();
+
+            for (Entry entry : entries) {
+                out.write(entry.offset + "\t" + entry.time + "\t" + entry.source + "\t" + entry.level
+                        + "\t" + encode(entry.eventType)
+                        + "\t" + encode(entry.subjectID)
+                        + "\t" + encode(entry.outcome));
+                out.newLine();
+            }
+        }
+
+        // replace the index atomically
+        Files.move(tmpFile.toPath(), indexFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String encode(String value) {
+        return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ');
+    }
+
+    static String decode(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * Returns the entries of the log, loading them from the index file
+     * if necessary.
+     */
+    public synchronized List<Entry> getEntries() throws IOException {
+
+        if (entries != null) {
+            return entries;
+        }
+
+        List<Entry> entries = readEntries();
+
+        if (entries == null) {
+            // the index file has changed since the header was loaded
+            logger.debug("LogIndex: Reindexing " + logFile);
+            entries = scan(logFile).entries;
+        }
+
+        this.entries = entries;
+        return entries;
+    }
+
+    /**
+     * Returns the number of entries in the log.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Determine whether the log may contain entries in the time range.
+     */
+    public boolean overlaps(Long startTime, Long endTime) {
+
+        if (size == 0) return false;
+        if (startTime != null && maxTime < startTime) return false;
+        if (endTime != null && minTime > endTime) return false;
+
+        return true;
+    }
+
+    /**
+     * Determine whether all entries of the log are in the time range.
+     */
+    public boolean isWithin(Long startTime, Long endTime) {
+
+        if (startTime != null && minTime < startTime) return false;
+        if (endTime != null && maxTime > endTime) return false;
+
+        return true;
+    }
+
+    /**
+     * Returns the number of audit events of the given type in the log,
+     * or the number of all audit events if the type is null.
+     */
+    public int getAuditEventCount(String eventType) {
+
+        int count = 0;
+
+        for (Map.Entry<String, Integer> event : eventTypes.entrySet()) {
+            if (eventType == null || eventType.equalsIgnoreCase(event.getKey())) {
+                count += event.getValue();
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads the log entry at the given offset up to the next offset,
+     * or to the end of the line if the next offset is unknown.
+     */
+    public String read(RandomAccessFile file, long offset, long nextOffset) throws IOException {
+
+        file.seek(offset);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long end = nextOffset < 0 ? Long.MAX_VALUE : nextOffset;
+        long position = offset;
+        int b;
+
+        while (position < end && (b = file.read()) >= 0) {
+            position++;
+            if (b == '\n' && nextOffset < 0) break;
+            bytes.write(b);
+        }
+
+        String entry = new String(bytes.toByteArray(), Charset.defaultCharset());
+
+        // remove the trailing line separator
+        if (entry.endsWith("\n")) {
+            entry = entry.substring(0, entry.length() - 1);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Returns the offset of the entry following the given entry,
+     * or -1 if it is the last entry.
+     */
+    public long getNextOffset(int i) {
+        return i + 1 < entries.size() ? entries.get(i + 1).offset : length > 0 ? length : -1;
+    }
+
+    /**
+     * An indexed log entry.
+     */
+    public static class Entry {
+
+        long offset;
+        long time;
+        int source;
+        int level;
+        String eventType;
+        String subjectID;
+        String outcome;
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public int getSource() {
+            return source;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+
+        public String getEventType() {
+            return eventType;
+        }
+
+        public String getSubjectID() {
+            return subjectID;
+        }
+
+        public String getOutcome() {
+            return outcome;
+        }
+
+        /**
+         * Determine whether the entry matches the search criteria.
+         * Null criteria match any value.
+         */
+        public boolean matches(
+                String eventType,
+                String subjectID,
+                String outcome,
+                Long startTime,
+                Long endTime) {
+
+            if (startTime != null && time < startTime) return false;
+            if (endTime != null && time > endTime) return false;
+            if (eventType != null && !eventType.equalsIgnoreCase(this.eventType)) return false;
+            if (subjectID != null && !subjectID.equalsIgnoreCase(this.subjectID)) return false;
+            if (outcome != null && !outcome.equalsIgnoreCase(this.outcome)) return false;
+
+            return true;
+        }
+    }
+}
@@ -17,7 +17,7 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cms.logging;
 
-import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.netscape.certsrv.logging.ILogEvent;
 import com.netscape.certsrv.logging.ILogEventListener;
@@ -35,7 +35,8 @@ import com.netscape.cmscore.apps.CMS;
 public class LogQueue implements ILogQueue {
 
     private static LogQueue mLogQueue = new LogQueue();
-    protected Vector<ILogEventListener> mListeners = new Vector<ILogEventListener>();
+    // listeners are rarely changed, so the list can be traversed without locking
+    protected CopyOnWriteArrayList<ILogEventListener> mListeners = new CopyOnWriteArrayList<ILogEventListener>();
 
     /**
      * Constructs a log queue.
@@ -62,8 +63,7 @@ public class LogQueue implements ILogQueue {
      * <P>
      */
     public void shutdown() {
-        for (int i = 0; i < mListeners.size(); i++) {
-            ILogEventListener listener = mListeners.elementAt(i);
+        for (ILogEventListener listener : mListeners) {
             listener.shutdown();
         }
     }
@@ -75,9 +75,7 @@ public class LogQueue implements ILogQueue {
      */
     public void addLogEventListener(ILogEventListener listener) {
         //Make sure we don't have duplicated listener
-        if (!mListeners.contains(listener)) {
-            mListeners.addElement(listener);
-        }
+        mListeners.addIfAbsent(listener);
     }
 
     /**
@@ -86,16 +84,17 @@ public class LogQueue implements ILogQueue {
      * @param listener the log event listener
      */
     public void removeLogEventListener(ILogEventListener listener) {
-        mListeners.removeElement(listener);
+        mListeners.remove(listener);
     }
 
     /**
      * Logs an event, and notifies logger to reuse the event.
+     * Listeners configured for asynchronous writing only queue the event.
      *
      * @param event the log event
      */
     public void log(ILogEvent event) {
-        for (int i = 0; i < mListeners.size(); i++) {
+        for (ILogEventListener listener : mListeners) {
 
             boolean isAudit = false;
 
@@ -103,7 +102,7 @@ public class LogQueue implements ILogQueue {
                 isAudit = true;
             }
             try {
-                mListeners.elementAt(i).log(event);
+                listener.log(event);
             } catch (Exception e) {//Try to catch ELogException or possible RuntimeExceptions if thrown
                 //Last resort log to the system for failed audit log attempt
                 if(isAudit == true) {
@@ -117,8 +116,8 @@ public class LogQueue implements ILogQueue {
      * Flushes the log buffers (if any)
      */
     public void flush() {
-        for (int i = 0; i < mListeners.size(); i++) {
-            mListeners.elementAt(i).flush();
+        for (ILogEventListener listener : mListeners) {
+            listener.flush();
         }
     }
 }
@@ -68,6 +68,8 @@ public class RollingLogFile extends LogFile {
      */
     static final String EXPIRATION_TIME = "0";
 
+    static final String PROP_INDEX = "index";
+
     /**
      * The maximum file size in bytes
      */
@@ -98,6 +100,11 @@ public class RollingLogFile extends LogFile {
      */
     private Object mExpLock = new Object();
 
+    /**
+     * Whether to index the log files after rotation
+     */
+    protected boolean mIndex;
+
     /**
      * Construct a RollingLogFile
      */
@@ -116,6 +123,9 @@ public class RollingLogFile extends LogFile {
         rl_init(config.getInteger(Constants.PR_LOG_MAXFILESIZE, MAX_FILE_SIZE),
                 config.getString(Constants.PR_LOG_ROLLEROVER_INTERVAL, ROLLOVER_INTERVAL),
                 config.getString(Constants.PR_LOG_EXPIRED_TIME, EXPIRATION_TIME));
+
+        // index signed audit logs by default
+        mIndex = config.getBoolean(PROP_INDEX, ILogger.PROP_SIGNED_AUDIT.equals(mType));
     }
 
     /**
@@ -260,6 +270,10 @@ public class RollingLogFile extends LogFile {
                 } catch (FileNotFoundException e) {
                     logger.warn("Unable to zeroize " + mFile + ": " + e.getMessage(), e);
                 }
+
+                if (mIndex) {
+                    LogIndex.createIndex(backupFile);
+                }
             } else {
                 logger.warn("Unable to backup " + mFile + " to " + backupFile);
             }
@@ -351,6 +365,8 @@ public class RollingLogFile extends LogFile {
                                 ILogger.FAILURE,
                                 fullname);
                 } else {
+                    LogIndex.removeIndex(file);
+
                     // log success in deleting an expired signed audit log file
                     auditMessage = CMS.getLogMessage(
                                 AuditEvent.AUDIT_LOG_DELETE,
@@ -488,9 +504,25 @@ public class RollingLogFile extends LogFile {
      *
      * @param ev The event to be logged.
      **/
-    public synchronized void log(ILogEvent ev) throws ELogException {
-        //xxx, Shall we log first without checking if it exceed the maximum?
-        super.log(ev); // Will increment mBytesWritten
+    public void log(ILogEvent ev) throws ELogException {
+
+        if (isAsync()) {
+            // the writer thread will rotate the log
+            super.log(ev);
+            return;
+        }
+
+        synchronized (this) {
+            //xxx, Shall we log first without checking if it exceed the maximum?
+            super.log(ev); // Will increment mBytesWritten
+            afterWrite();
+        }
+    }
+
+    /**
+     * Rotate the log if it exceeds the maximum file size.
+     */
+    protected synchronized void afterWrite() throws ELogException {
 
         if ((0 != mMaxFileSize) && (mBytesWritten > mMaxFileSize)) {
             flush();
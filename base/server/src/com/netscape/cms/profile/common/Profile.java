@@ -114,6 +114,9 @@ public abstract class Profile {
 
     protected Hashtable<String, Vector<ProfilePolicy>> mPolicySet = new Hashtable<String, Vector<ProfilePolicy>>();
 
+    // compiled execution plan, null if it needs to be (re)compiled
+    protected volatile ProfilePlan mPlan;
+
     public Profile() {
     }
 
@@ -382,6 +385,9 @@ public abstract class Profile {
                         constraintClassId, false);
             }
         }
+
+        compile();
+
         logger.debug("Profile: done init");
     }
 
@@ -394,6 +400,33 @@ public abstract class Profile {
      */
     public abstract IRequestQueue getRequestQueue();
 
+    /**
+     * Compiles the inputs and policies of this profile into
+     * an execution plan.
+     *
+     * @exception EProfileException failed to compile
+     */
+    public void compile() throws EProfileException {
+        mPlan = ProfilePlan.compile(this);
+    }
+
+    /**
+     * Returns the execution plan of this profile. The plan will be
+     * compiled if the profile has been modified since the last
+     * compilation.
+     *
+     * @return execution plan
+     * @exception EProfileException failed to compile
+     */
+    public ProfilePlan getPlan() throws EProfileException {
+        ProfilePlan plan = mPlan;
+        if (plan == null) {
+            plan = ProfilePlan.compile(this);
+            mPlan = plan;
+        }
+        return plan;
+    }
+
     /**
      * Retrieves the configuration store of this profile.
      *
@@ -553,6 +586,7 @@ public abstract class Profile {
         } catch (Exception e) {
         }
 
+        mPlan = null;
     }
 
     /**
@@ -569,6 +603,7 @@ public abstract class Profile {
         }
 
         mPolicySet.clear();
+        mPlan = null;
     }
 
     /**
@@ -615,6 +650,8 @@ public abstract class Profile {
             mConfig.commit(false);
         } catch (Exception e) {
         }
+
+        mPlan = null;
     }
 
     /**
@@ -839,6 +876,7 @@ public abstract class Profile {
 
             mInputs.put(id, input);
             mInputIds.addElement(id);
+            mPlan = null;
         }
 
         if (createConfig) {
@@ -1104,6 +1142,7 @@ public abstract class Profile {
             constraint.init(conStore);
             policy = new ProfilePolicy(id, def, constraint);
             policies.addElement(policy);
+            mPlan = null;
             logger.debug(method + " constraint class initialized.");
         }
 
@@ -1260,12 +1299,7 @@ public abstract class Profile {
      */
     public void populateInput(Map<String, String> ctx, IRequest request) throws Exception {
 
-        Enumeration<String> ids = getProfileInputIds();
-
-        while (ids.hasMoreElements()) {
-            String id = ids.nextElement();
-            ProfileInput input = getProfileInput(id);
-
+        for (ProfileInput input : getPlan().getInputs()) {
             input.populate(ctx, request);
         }
     }
@@ -1295,13 +1329,11 @@ public abstract class Profile {
             throws EProfileException {
         String method = "Profile: populate: ";
         String setId = getPolicySetId(request);
-        Vector<ProfilePolicy> policies = getPolicies(setId);
+        PolicyDefault[] defaults = getPlan().getDefaults(setId);
         logger.debug(method + "policy setid =" + setId);
 
-        for (int i = 0; i < policies.size(); i++) {
-            ProfilePolicy policy = policies.elementAt(i);
-
-            policy.getDefault().populate(request);
+        for (PolicyDefault def : defaults) {
+            def.populate(request);
         }
     }
 
@@ -1316,12 +1348,16 @@ public abstract class Profile {
             throws ERejectException {
         String setId = getPolicySetId(request);
         logger.debug("Profile: validate start on setId=" + setId);
-        Vector<ProfilePolicy> policies = getPolicies(setId);
 
-        for (int i = 0; i < policies.size(); i++) {
-            ProfilePolicy policy = policies.elementAt(i);
+        PolicyConstraint[] constraints;
+        try {
+            constraints = getPlan().getConstraints(setId);
+        } catch (EProfileException e) {
+            throw new ERejectException(e.getMessage(), e);
+        }
 
-            policy.getConstraint().validate(request);
+        for (PolicyConstraint constraint : constraints) {
+            constraint.validate(request);
         }
         logger.debug("Profile: change to pending state");
         request.setRequestStatus(RequestStatus.PENDING);
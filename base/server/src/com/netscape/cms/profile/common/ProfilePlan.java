@@ -0,0 +1,119 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.profile.common;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import com.netscape.certsrv.profile.EProfileException;
+import com.netscape.cms.profile.constraint.PolicyConstraint;
+import com.netscape.cms.profile.def.PolicyDefault;
+
+/**
+ * This class represents the compiled execution plan of a profile.
+ *
+ * The plan is built once when the profile is loaded and contains
+ * the inputs, defaults, and constraints of each policy set in
+ * execution order. The plugins are compiled as part of the plan
+ * so their parameters do not have to be read from the profile
+ * configuration for every request.
+ *
+ * The plan is immutable. Any change to the profile's inputs or
+ * policies discards the plan and a new one is compiled on the
+ * next request.
+ */
+public class ProfilePlan {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ProfilePlan.class);
+
+    private ProfileInput[] inputs;
+    private Map<String, PolicyDefault[]> defaults;
+    private Map<String, PolicyConstraint[]> constraints;
+
+    private ProfilePlan(
+            ProfileInput[] inputs,
+            Map<String, PolicyDefault[]> defaults,
+            Map<String, PolicyConstraint[]> constraints) {
+        this.inputs = inputs;
+        this.defaults = defaults;
+        this.constraints = constraints;
+    }
+
+    public static ProfilePlan compile(Profile profile) throws EProfileException {
+
+        logger.debug("ProfilePlan: Compiling profile " + profile.getId());
+
+        Vector<ProfileInput> inputList = new Vector<>();
+        Enumeration<String> inputIds = profile.getProfileInputIds();
+        while (inputIds.hasMoreElements()) {
+            ProfileInput input = profile.getProfileInput(inputIds.nextElement());
+            if (input != null) {
+                inputList.add(input);
+            }
+        }
+
+        Map<String, PolicyDefault[]> defaults = new HashMap<>();
+        Map<String, PolicyConstraint[]> constraints = new HashMap<>();
+
+        Enumeration<String> setIds = profile.getProfilePolicySetIds();
+        while (setIds.hasMoreElements()) {
+            String setId = setIds.nextElement();
+
+            Vector<ProfilePolicy> policies = profile.getPolicies(setId);
+            if (policies == null) {
+                continue;
+            }
+
+            ProfilePolicy[] list = policies.toArray(new ProfilePolicy[0]);
+            PolicyDefault[] defs = new PolicyDefault[list.length];
+            PolicyConstraint[] cons = new PolicyConstraint[list.length];
+
+            for (int i = 0; i < list.length; i++) {
+                defs[i] = list[i].getDefault();
+                cons[i] = list[i].getConstraint();
+
+                defs[i].compile();
+                cons[i].compile();
+            }
+
+            logger.debug("ProfilePlan: Policy set " + setId + ": " + list.length + " policies");
+
+            defaults.put(setId, defs);
+            constraints.put(setId, cons);
+        }
+
+        return new ProfilePlan(
+                inputList.toArray(new ProfileInput[0]),
+                Collections.unmodifiableMap(defaults),
+                Collections.unmodifiableMap(constraints));
+    }
+
+    /**
+     * Returns the profile inputs in configuration order.
+     */
+    public ProfileInput[] getInputs() {
+        return inputs;
+    }
+
+    /**
+     * Returns the defaults of the given policy set in execution order,
+     * or null if the policy set does not exist.
+     */
+    public PolicyDefault[] getDefaults(String setId) {
+        return defaults.get(setId);
+    }
+
+    /**
+     * Returns the constraints of the given policy set in execution order,
+     * or null if the policy set does not exist.
+     */
+    public PolicyConstraint[] getConstraints(String setId) {
+        return constraints.get(setId);
+    }
+}
@@ -52,6 +52,16 @@ public abstract class PolicyConstraint implements IConfigTemplate {
      */
     public abstract IConfigStore getConfigStore();
 
+    /**
+     * Prepares this constraint for execution after the profile has
+     * been loaded, e.g. by pre-parsing its parameters. The constraint
+     * must still behave correctly if it has not been compiled.
+     *
+     * @exception EProfileException failed to compile
+     */
+    public void compile() throws EProfileException {
+    }
+
     /**
      * Validates the request. The request is not modified
      * during the validation.
@@ -65,6 +65,16 @@ public abstract class PolicyDefault implements IConfigTemplate {
      */
     public abstract IConfigStore getConfigStore();
 
+    /**
+     * Prepares this default for execution after the profile has
+     * been loaded, e.g. by pre-parsing its parameters. The default
+     * must still behave correctly if it has not been compiled.
+     *
+     * @exception EProfileException failed to compile
+     */
+    public void compile() throws EProfileException {
+    }
+
     /**
      * Populates the request with this policy default.
      *
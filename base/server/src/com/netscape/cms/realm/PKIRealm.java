@@ -9,6 +9,7 @@ import java.util.List;
 import org.apache.catalina.realm.RealmBase;
 import org.apache.commons.lang3.StringUtils;
 import org.dogtagpki.server.authentication.AuthManager;
+import org.dogtagpki.server.authentication.AuthenticationConfig;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
 
 import com.netscape.certsrv.authentication.EInvalidCredentials;
@@ -44,6 +45,14 @@ public class PKIRealm extends RealmBase {
 
     private static Logger signedAuditLogger = SignedAuditLogger.getLogger();
 
+    public final static String PROP_PRINCIPAL_CACHE_SIZE = "principalCache.size";
+    public final static String PROP_PRINCIPAL_CACHE_TTL = "principalCache.ttl";
+
+    // initialized on first use since the engine is not available
+    // when the realm is started
+    private volatile PrincipalCache principalCache;
+    private volatile boolean principalCacheInitialized;
+
     protected String getName() {
         return "PKIRealm";
     }
@@ -118,15 +127,44 @@ public class PKIRealm extends RealmBase {
         String attemptedAuditUID = auditSubjectID;
 
         try {
+            AuthSubsystem authSub = engine.getAuthSubsystem();
+            AuthManager authMgr = authSub.getAuthManager(AuthSubsystem.CERTUSERDB_AUTHMGR_ID);
+
+            PrincipalCache cache = getPrincipalCache();
+            String fingerprint = null;
+
+            // read the change count before the user and roles are retrieved
+            // so any change made in the meantime discards the new entry
+            long changeCount = engine.getUGSubsystem().getChangeCount();
+
+            if (cache != null) {
+                fingerprint = PrincipalCache.getFingerprint(certs[0]);
+                PrincipalCache.Entry entry = cache.get(fingerprint, changeCount);
+
+                if (entry != null && isRevoked(authMgr, entry.getCerts())) {
+                    // let the authentication manager reject the certificate
+                    cache.remove(fingerprint);
+
+                } else if (entry != null) {
+                    PKIPrincipal principal = entry.getPrincipal();
+                    auditSubjectID = principal.getAuthToken().getInString(IAuthToken.USER_ID);
+
+                    logger.info("PKIRealm: Using cached principal for " + principal.getName());
+
+                    signedAuditLogger.log(AuthEvent.createSuccessEvent(
+                                auditSubjectID,
+                                AuthSubsystem.CERTUSERDB_AUTHMGR_ID));
+
+                    return principal;
+                }
+            }
+
             X509CertImpl certImpls[] = new X509CertImpl[certs.length];
             for (int i=0; i<certs.length; i++) {
                 X509Certificate cert = certs[i];
                 certImpls[i] = new X509CertImpl(cert.getEncoded());
             }
 
-            AuthSubsystem authSub = engine.getAuthSubsystem();
-            AuthManager authMgr = authSub.getAuthManager(AuthSubsystem.CERTUSERDB_AUTHMGR_ID);
-
             AuthCredentials creds = new AuthCredentials();
             creds.set(CertUserDBAuthentication.CRED_CERT, certImpls);
 
@@ -143,7 +181,13 @@ public class PKIRealm extends RealmBase {
                         auditSubjectID,
                         AuthSubsystem.CERTUSERDB_AUTHMGR_ID));
 
-            return getPrincipal(username, authToken);
+            Principal principal = getPrincipal(username, authToken);
+
+            if (cache != null && principal instanceof PKIPrincipal) {
+                cache.put(fingerprint, certImpls, (PKIPrincipal) principal, changeCount);
+            }
+
+            return principal;
 
         } catch (EMissingCredential | EInvalidCredentials e) { // authentication failure
 
@@ -169,6 +213,56 @@ public class PKIRealm extends RealmBase {
         }
     }
 
+    /**
+     * Returns the principal cache, or null if caching is disabled
+     * (auths.principalCache.size=0).
+     */
+    public PrincipalCache getPrincipalCache() throws Exception {
+
+        if (principalCacheInitialized) {
+            return principalCache;
+        }
+
+        synchronized (this) {
+
+            if (principalCacheInitialized) {
+                return principalCache;
+            }
+
+            CMSEngine engine = CMS.getCMSEngine();
+            AuthenticationConfig authsConfig = engine.getConfig().getAuthenticationConfig();
+
+            int size = authsConfig.getInteger(PROP_PRINCIPAL_CACHE_SIZE, 1000);
+            int ttl = authsConfig.getInteger(PROP_PRINCIPAL_CACHE_TTL, 300);
+            logger.info("PKIRealm: Principal cache size: " + size + ", TTL: " + ttl + " second(s)");
+
+            if (size > 0) {
+                principalCache = new PrincipalCache(ttl * 1000L, size);
+            }
+
+            principalCacheInitialized = true;
+            return principalCache;
+        }
+    }
+
+    /**
+     * Checks the cached certificate chain for revocation the same way
+     * the authentication manager would.
+     */
+    protected boolean isRevoked(AuthManager authMgr, X509CertImpl[] certs) {
+
+        if (!(authMgr instanceof CertUserDBAuthentication)) {
+            return false;
+        }
+
+        if (!((CertUserDBAuthentication) authMgr).isRevocationCheckingEnabled()) {
+            return false;
+        }
+
+        CMSEngine engine = CMS.getCMSEngine();
+        return engine.isRevoked(certs);
+    }
+
     private String getAuditUserfromCert(X509Certificate clientCert) {
         String certUID = clientCert.getSubjectDN().getName();
         return StringUtils.stripToNull(certUID);
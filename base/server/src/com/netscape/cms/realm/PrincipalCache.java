@@ -0,0 +1,117 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.realm;
+
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.binary.Hex;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+
+/**
+ * This class caches the principals of clients authenticated with
+ * a certificate, keyed by the SHA-256 fingerprint of the client
+ * certificate.
+ *
+ * An entry expires after the configured time to live or when the
+ * certificate expires, whichever comes first. An entry is also
+ * discarded when users or groups have changed since it was created,
+ * based on the change count maintained by UGSubsystem.
+ */
+public class PrincipalCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PrincipalCache.class);
+
+    private long ttl; // milliseconds
+    private int maxSize;
+
+    private Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public PrincipalCache(long ttl, int maxSize) {
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+    }
+
+    public static String getFingerprint(X509Certificate cert) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return Hex.encodeHexString(digest.digest(cert.getEncoded()));
+    }
+
+    /**
+     * Returns the cached entry for the certificate fingerprint, or null
+     * if there is no valid entry.
+     */
+    public Entry get(String fingerprint, long changeCount) {
+
+        Entry entry = entries.get(fingerprint);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expiration < System.currentTimeMillis() || entry.changeCount != changeCount) {
+            logger.debug("PrincipalCache: Discarding principal for " + entry.principal.getName());
+            entries.remove(fingerprint, entry);
+            return null;
+        }
+
+        return entry;
+    }
+
+    public void put(String fingerprint, X509CertImpl[] certs, PKIPrincipal principal, long changeCount) {
+
+        long expiration = Math.min(
+                System.currentTimeMillis() + ttl,
+                certs[0].getNotAfter().getTime());
+
+        if (entries.size() >= maxSize) {
+            long now = System.currentTimeMillis();
+            entries.values().removeIf(e -> e.expiration < now);
+
+            if (entries.size() >= maxSize) {
+                entries.clear();
+            }
+        }
+
+        entries.put(fingerprint, new Entry(certs, principal, expiration, changeCount));
+    }
+
+    public void remove(String fingerprint) {
+        entries.remove(fingerprint);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public static class Entry {
+
+        X509CertImpl[] certs;
+        PKIPrincipal principal;
+        long expiration;
+        long changeCount;
+
+        Entry(X509CertImpl[] certs, PKIPrincipal principal, long expiration, long changeCount) {
+            this.certs = certs;
+            this.principal = principal;
+            this.expiration = expiration;
+            this.changeCount = changeCount;
+        }
+
+        public X509CertImpl[] getCerts() {
+            return certs;
+        }
+
+        public PKIPrincipal getPrincipal() {
+            return principal;
+        }
+    }
+}
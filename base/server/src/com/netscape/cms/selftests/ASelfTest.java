@@ -26,6 +26,7 @@ package com.netscape.cms.selftests;
 
 import java.util.Locale;
 
+import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IConfigStore;
 import com.netscape.certsrv.logging.ILogEventListener;
 import com.netscape.certsrv.selftests.EDuplicateSelfTestException;
@@ -50,6 +51,9 @@ import com.netscape.cmscore.apps.CMS;
  */
 public abstract class ASelfTest
         implements ISelfTest {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ASelfTest.class);
+
     ////////////////////////
     // default parameters //
     ////////////////////////
@@ -181,6 +185,35 @@ public abstract class ASelfTest
      */
     public abstract String getSelfTestDescription(Locale locale);
 
+    /**
+     * Determine if this self test is independent by default, i.e.
+     * if the instance does not configure the "independent" parameter.
+     * Self tests are dependent unless they override this method.
+     * <P>
+     *
+     * @return true if this self test is independent by default
+     */
+    protected boolean isSelfTestIndependentByDefault() {
+        return false;
+    }
+
+    /**
+     * Determine if this self test can run concurrently with other
+     * self tests. The default can be overridden with the instance's
+     * "independent" parameter.
+     * <P>
+     *
+     * @return true if this self test is independent
+     */
+    public boolean isSelfTestIndependent() {
+        try {
+            return mConfig.getBoolean(PROP_INDEPENDENT, isSelfTestIndependentByDefault());
+        } catch (EBaseException e) {
+            logger.warn("ASelfTest: Invalid " + mPrefix + "." + PROP_INDEPENDENT + ": " + e.getMessage(), e);
+            return false;
+        }
+    }
+
     /**
      * Execute an individual self test.
      * <P>
@@ -190,6 +190,15 @@ public class SystemCertsVerification
                                    "CMS_SELFTESTS_SYSTEM_CERTS_VERIFICATION_DESCRIPTION");
     }
 
+    /**
+     * This self test only verifies the system certificates, so it can run
+     * concurrently with other self tests.
+     */
+    @Override
+    protected boolean isSelfTestIndependentByDefault() {
+        return true;
+    }
+
     /**
      * Execute an individual self test.
      * <P>
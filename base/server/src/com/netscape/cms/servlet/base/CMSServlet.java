@@ -105,6 +105,7 @@ import com.netscape.cmscore.authorization.AuthzSubsystem;
 import com.netscape.cmscore.base.ArgBlock;
 import com.netscape.cmscore.dbs.CertRecord;
 import com.netscape.cmscore.dbs.CertificateRepository;
+import com.netscape.cmscore.metrics.MetricsRegistry;
 import com.netscape.cmscore.security.JssSubsystem;
 import com.netscape.cmscore.usrgrp.Group;
 import com.netscape.cmscore.usrgrp.UGSubsystem;
@@ -482,9 +483,12 @@ public abstract class CMSServlet extends HttpServlet {
 
         // process request.
         CommandQueue iCommandQueue = new CommandQueue();
+        long requestStartTime = System.nanoTime();
+        String outcome = "failure";
 
         try {
             if (iCommandQueue.registerProcess(cmsRequest, this) == false) {
+                outcome = "rejected";
                 cmsRequest.setStatus(ICMSRequest.ERROR);
                 renderResult(cmsRequest);
                 SessionContext.releaseContext();
@@ -497,6 +501,7 @@ public abstract class CMSServlet extends HttpServlet {
             long endTime = endDate.getTime();
             logger.debug("CMSServlet: curDate: " + endDate + " id: " + mId + " time: " + (endTime - startTime));
             iCommandQueue.unRegisterProccess(cmsRequest, this);
+            outcome = "success";
 
         } catch (EBaseException e) {
             iCommandQueue.unRegisterProccess(cmsRequest, this);
@@ -513,6 +518,13 @@ public abstract class CMSServlet extends HttpServlet {
             ex.printStackTrace(ps);
             log(os.toString());
             renderFinalError(cmsRequest, ex);
+
+        } finally {
+            MetricsRegistry.getInstance().getTimer(
+                    "pki_servlet_request_seconds",
+                    "Duration of servlet requests",
+                    "servlet", mId == null ? getServletName() : mId,
+                    "outcome", outcome).recordSince(requestStartTime);
         }
 
         // destroy SessionContext
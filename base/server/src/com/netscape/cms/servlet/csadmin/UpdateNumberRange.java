@@ -174,8 +174,12 @@ public abstract class UpdateNumberRange extends CMSServlet {
 
             /* We need to synchronise on repo because we peek the next
              * serial number, then set the max serial of the current or
-             * next range.  If we don't synchronize, we could end up
-             * using serial numbers that were transferred.
+             * next range, and the range must not be switched meanwhile.
+             * Serial numbers are dispensed from the current range without
+             * taking this lock, so the current range is only reduced if
+             * no serial number beyond the new end has been issued in the
+             * meantime; otherwise the range is transferred from the next
+             * range instead.
              */
             synchronized (repo) {
 
@@ -191,7 +195,26 @@ public abstract class UpdateNumberRange extends CMSServlet {
                 logger.info("UpdateNumberRange: Current range: " + nextSerial + ".." + endNum);
                 logger.info("UpdateNumberRange: Size: " + endNum.subtract(nextSerial).add(BigInteger.ONE));
 
-                if (beginNum.compareTo(nextSerial) < 0) {
+                boolean transferred = false;
+
+                if (beginNum.compareTo(nextSerial) >= 0) {
+
+                    logger.info("UpdateNumberRange: Transferring from the end of the current range");
+
+                    BigInteger newEndNum = beginNum.subtract(BigInteger.ONE);
+                    String newValStr = newEndNum.toString(radix);
+
+                    if (repo.reduceMaxSerial(newValStr)) {
+                        dbConfig.putString(endNumConfig, newValStr);
+                        logger.info("UpdateNumberRange: New current range: " + nextSerial + ".." + newEndNum);
+                        transferred = true;
+
+                    } else {
+                        logger.info("UpdateNumberRange: Current range has been used in the meantime");
+                    }
+                }
+
+                if (!transferred) {
                     /* beginNum = the start of the range to transfer.
                      * nextSerial = the next number that would given out.
                      *
@@ -232,17 +255,6 @@ public abstract class UpdateNumberRange extends CMSServlet {
                     repo.setNextMaxSerial(newEndNum.toString(radix));
                     dbConfig.putString(nextEndConfig, newEndNum.toString(radix));
                     beginNum = newEndNum.add(BigInteger.ONE);
-
-                } else {
-
-                    logger.info("UpdateNumberRange: Transferring from the end of the current range");
-
-                    BigInteger newEndNum = beginNum.subtract(BigInteger.ONE);
-                    String newValStr = newEndNum.toString(radix);
-                    repo.setMaxSerial(newEndNum.toString(radix));
-                    dbConfig.putString(endNumConfig, newValStr);
-
-                    logger.info("UpdateNumberRange: New current range: " + nextSerial + ".." + newEndNum);
                 }
 
                 logger.info("UpdateNumberRange: Transferring range: " + beginNum + ".." + endNum);
@@ -30,10 +30,18 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
@@ -67,6 +75,7 @@ import com.netscape.certsrv.request.RequestStatus;
 import com.netscape.cms.realm.PKIRealm;
 import com.netscape.cms.servlet.csadmin.Configurator;
 import com.netscape.cms.tomcat.ProxyRealm;
+import com.netscape.cmscore.apps.StartupTimeline.StartupTask;
 import com.netscape.cmscore.authentication.AuthSubsystem;
 import com.netscape.cmscore.authentication.VerifiedCert;
 import com.netscape.cmscore.authentication.VerifiedCerts;
@@ -159,6 +168,10 @@ public class CMSEngine implements ServletContextListener {
     public final Map<String, SubsystemInfo> subsystemInfos = new LinkedHashMap<>();
     public final Map<String, ISubsystem> subsystems = new LinkedHashMap<>();
 
+    protected StartupTimeline startupTimeline = new StartupTimeline();
+    private boolean parallelStartup = true;
+    private ExecutorService startupExecutor;
+
     public String unsecurePort;
     public String securePort;
 
@@ -710,6 +723,100 @@ public class CMSEngine implements ServletContextListener {
         return subsystems.get(name);
     }
 
+    /**
+     * Returns the time each subsystem took to initialize and start.
+     */
+    public StartupTimeline getStartupTimeline() {
+        return startupTimeline;
+    }
+
+    /**
+     * Runs independent startup tasks. If parallel startup is enabled
+     * the tasks run concurrently, otherwise they run in the given order.
+     * All tasks are completed before the first failure is thrown.
+     */
+    public void runParallel(String phase, Map<String, StartupTask> tasks) throws Exception {
+
+        if (!parallelStartup || startupExecutor == null || tasks.size() <= 1) {
+            for (Map.Entry<String, StartupTask> entry : tasks.entrySet()) {
+                startupTimeline.run(entry.getKey(), phase, entry.getValue());
+            }
+            return;
+        }
+
+        logger.info("CMSEngine: Running " + phase + " in parallel: " + tasks.keySet());
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (Map.Entry<String, StartupTask> entry : tasks.entrySet()) {
+            futures.add(startupExecutor.submit(() -> {
+                startupTimeline.run(entry.getKey(), phase, entry.getValue());
+                return null;
+            }));
+        }
+
+        Exception failure = null;
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                logger.error("CMSEngine: Unable to " + phase + " subsystem: " + cause.getMessage(), cause);
+                if (failure == null) {
+                    failure = cause instanceof Exception ? (Exception) cause : new Exception(cause);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Groups the subsystems into waves. Each subsystem only depends on
+     * subsystems in earlier waves, so subsystems in the same wave can
+     * be initialized and started in parallel.
+     */
+    public List<List<String>> getSubsystemWaves() throws EBaseException {
+
+        List<List<String>> waves = new ArrayList<>();
+        Set<String> done = new HashSet<>();
+        List<String> remaining = new ArrayList<>(subsystems.keySet());
+
+        while (!remaining.isEmpty()) {
+
+            List<String> wave = new ArrayList<>();
+
+            for (String id : remaining) {
+                SubsystemInfo subsystemInfo = subsystemInfos.get(id);
+                boolean ready = true;
+
+                for (String dependency : subsystemInfo.getDependencies()) {
+                    if (subsystems.containsKey(dependency) && !done.contains(dependency)) {
+                        ready = false;
+                        break;
+                    }
+                }
+
+                if (ready) {
+                    wave.add(id);
+                }
+            }
+
+            if (wave.isEmpty()) {
+                throw new EBaseException("Circular subsystem dependencies: " + remaining);
+            }
+
+            waves.add(wave);
+            done.addAll(wave);
+            remaining.removeAll(wave);
+        }
+
+        return waves;
+    }
+
     public void setSubsystemEnabled(String id, boolean enabled) {
         SubsystemInfo si = subsystemInfos.get(id);
         si.enabled = enabled;
@@ -739,6 +846,15 @@ public class CMSEngine implements ServletContextListener {
             subsystemInfo.setEnabled(enabled);
             subsystemInfo.setUpdateIdOnInit(true);
 
+            // without explicit dependencies the subsystem
+            // depends on all subsystems listed before it
+            List<String> dependencies = subsystemConfig.getDependencies();
+            if (dependencies == null) {
+                dependencies = new ArrayList<>(subsystems.keySet());
+            }
+            logger.info("CMSEngine: - dependencies: " + dependencies);
+            subsystemInfo.setDependencies(dependencies);
+
             subsystems.put(id, subsystem);
             subsystemInfos.put(id, subsystemInfo);
         }
@@ -756,24 +872,35 @@ public class CMSEngine implements ServletContextListener {
 
     public void initSubsystems() throws Exception {
 
-        for (String id : subsystems.keySet()) {
-            logger.info("CMSEngine: Initializing " + id + " subsystem");
-
-            ISubsystem subsystem = subsystems.get(id);
-            SubsystemInfo subsystemInfo = subsystemInfos.get(id);
+        for (List<String> wave : getSubsystemWaves()) {
 
-            if (subsystemInfo.updateIdOnInit) {
-                subsystem.setId(id);
+            Map<String, StartupTask> tasks = new LinkedHashMap<>();
+            for (String id : wave) {
+                tasks.put(id, () -> initSubsystem(id));
             }
 
-            if (!subsystemInfo.enabled) {
-                logger.info("CMSEngine: " + id + " subsystem is disabled");
-                continue;
-            }
+            runParallel("init", tasks);
+        }
+    }
 
-            IConfigStore subsystemConfig = mConfig.getSubStore(id);
-            initSubsystem(subsystem, subsystemConfig);
+    protected void initSubsystem(String id) throws Exception {
+
+        logger.info("CMSEngine: Initializing " + id + " subsystem");
+
+        ISubsystem subsystem = subsystems.get(id);
+        SubsystemInfo subsystemInfo = subsystemInfos.get(id);
+
+        if (subsystemInfo.updateIdOnInit) {
+            subsystem.setId(id);
         }
+
+        if (!subsystemInfo.enabled) {
+            logger.info("CMSEngine: " + id + " subsystem is disabled");
+            return;
+        }
+
+        IConfigStore subsystemConfig = mConfig.getSubStore(id);
+        initSubsystem(subsystem, subsystemConfig);
     }
 
     public void configureAutoShutdown() throws Exception {
@@ -963,9 +1090,18 @@ public class CMSEngine implements ServletContextListener {
 
     protected void startupSubsystems() throws Exception {
 
-        for (ISubsystem subsystem : subsystems.values()) {
-            logger.info("CMSEngine: Starting " + subsystem.getId() + " subsystem");
-            subsystem.startup();
+        for (List<String> wave : getSubsystemWaves()) {
+
+            Map<String, StartupTask> tasks = new LinkedHashMap<>();
+            for (String id : wave) {
+                ISubsystem subsystem = subsystems.get(id);
+                tasks.put(id, () -> {
+                    logger.info("CMSEngine: Starting " + subsystem.getId() + " subsystem");
+                    subsystem.startup();
+                });
+            }
+
+            runParallel("startup", tasks);
         }
 
         // global admin servlet. (anywhere else more fit for this ?)
@@ -986,29 +1122,63 @@ public class CMSEngine implements ServletContextListener {
 
         CMS.setCMSEngine(this);
 
-        initDebug();
-        initPasswordStore();
-        initStartupNotifiers();
-        initSecurityProvider();
-        initPluginRegistry();
-        initDatabase();
-        initLogSubsystem();
-        initJssSubsystem();
-        initDBSubsystem();
-        initUGSubsystem();
-        initOIDLoaderSubsystem();
-        initX500NameSubsystem();
-        // skip TP subsystem;
-        // problem in needing dbsubsystem in constructor. and it's not used.
-        initRequestSubsystem();
-
-        init();
-
-        startupSubsystems();
-
-        initAuthSubsystem();
-        initAuthzSubsystem();
-        initJobsScheduler();
+        startupTimeline.reset();
+
+        parallelStartup = mConfig.getBoolean("parallelStartup", true);
+        logger.info("CMSEngine: Parallel startup: " + parallelStartup);
+
+        if (parallelStartup) {
+            AtomicInteger counter = new AtomicInteger();
+            startupExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Startup-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+
+        try {
+            initDebug();
+            initPasswordStore();
+            initStartupNotifiers();
+            initSecurityProvider();
+            initPluginRegistry();
+            initDatabase();
+            startupTimeline.run(LogSubsystem.ID, "init", this::initLogSubsystem);
+            startupTimeline.run(JssSubsystem.ID, "init", this::initJssSubsystem);
+
+            // these subsystems only need logging and JSS
+            Map<String, StartupTask> tasks = new LinkedHashMap<>();
+            tasks.put(DBSubsystem.ID, this::initDBSubsystem);
+            tasks.put("usrgrp", this::initUGSubsystem);
+            tasks.put(OidLoaderSubsystem.ID, this::initOIDLoaderSubsystem);
+            tasks.put(X500NameSubsystem.ID, this::initX500NameSubsystem);
+            runParallel("init", tasks);
+
+            // skip TP subsystem;
+            // problem in needing dbsubsystem in constructor. and it's not used.
+            startupTimeline.run(RequestSubsystem.ID, "init", this::initRequestSubsystem);
+
+            init();
+
+            startupSubsystems();
+
+            tasks = new LinkedHashMap<>();
+            tasks.put(AuthSubsystem.ID, this::initAuthSubsystem);
+            tasks.put(AuthzSubsystem.ID, this::initAuthzSubsystem);
+            runParallel("init", tasks);
+
+            startupTimeline.run(JobsScheduler.ID, "init", this::initJobsScheduler);
+
+        } finally {
+            if (startupExecutor != null) {
+                startupExecutor.shutdown();
+                startupExecutor = null;
+            }
+        }
+
+        startupTimeline.log();
 
         configureAutoShutdown();
         configureServerCertNickname();
@@ -0,0 +1,121 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.apps;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class records when each subsystem was initialized and started
+ * during engine startup.
+ */
+public class StartupTimeline {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(StartupTimeline.class);
+
+    private long origin = System.currentTimeMillis();
+    private List<Event> events = new ArrayList<>();
+
+    /**
+     * Runs the task and records its start time and duration.
+     */
+    public void run(String name, String phase, StartupTask task) throws Exception {
+
+        Event event = new Event();
+        event.name = name;
+        event.phase = phase;
+        event.thread = Thread.currentThread().getName();
+        event.start = System.currentTimeMillis() - origin;
+
+        try {
+            task.run();
+
+        } catch (Exception e) {
+            event.failed = true;
+            throw e;
+
+        } finally {
+            event.duration = System.currentTimeMillis() - origin - event.start;
+            synchronized (events) {
+                events.add(event);
+            }
+        }
+    }
+
+    public void reset() {
+        synchronized (events) {
+            origin = System.currentTimeMillis();
+            events.clear();
+        }
+    }
+
+    public List<Event> getEvents() {
+        synchronized (events) {
+            return new ArrayList<>(events);
+        }
+    }
+
+    public void log() {
+
+        logger.info("Startup timeline:");
+
+        List<Event> list = getEvents();
+        list.sort((e1, e2) -> Long.compare(e1.start, e2.start));
+
+        for (Event event : list) {
+            logger.info("- " + event);
+        }
+    }
+
+    /**
+     * A unit of work performed during startup.
+     */
+    public interface StartupTask {
+        void run() throws Exception;
+    }
+
+    /**
+     * The timing of a single startup task.
+     */
+    public static class Event {
+
+        String name;
+        String phase;
+        String thread;
+        long start; // milliseconds since the beginning of startup
+        long duration; // milliseconds
+        boolean failed;
+
+        public String getName() {
+            return name;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        public String toString() {
+            return name + " " + phase + ": start: " + start + " ms, duration: " + duration + " ms"
+                    + ", thread: " + thread + (failed ? " (failed)" : "");
+        }
+    }
+}
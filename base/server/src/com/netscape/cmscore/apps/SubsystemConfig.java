@@ -17,6 +17,9 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.apps;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.cmscore.base.ConfigStorage;
 import com.netscape.cmscore.base.PropConfigStore;
@@ -47,4 +50,27 @@ public class SubsystemConfig extends PropConfigStore {
     public void setEnabled(boolean enabled) throws EBaseException {
         putBoolean("enabled", enabled);
     }
+
+    /**
+     * Returns the IDs of the subsystems that have to be initialized
+     * before this subsystem, or null if the dependencies are not
+     * specified.
+     */
+    public List<String> getDependencies() throws EBaseException {
+
+        String value = getString("dependsOn", null);
+        if (value == null) {
+            return null;
+        }
+
+        List<String> dependencies = new ArrayList<>();
+        for (String dependency : value.split(",")) {
+            dependency = dependency.trim();
+            if (!dependency.isEmpty()) {
+                dependencies.add(dependency);
+            }
+        }
+
+        return dependencies;
+    }
 }
@@ -17,11 +17,15 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.apps;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class SubsystemInfo {
 
     public String id;
     public boolean enabled;
     public boolean updateIdOnInit;
+    public List<String> dependencies = new ArrayList<>();
 
     public SubsystemInfo(String id) {
         this.id = id;
@@ -52,4 +56,12 @@ public class SubsystemInfo {
     public void setUpdateIdOnInit(boolean updateIdOnInit) {
         this.updateIdOnInit = updateIdOnInit;
     }
+
+    public List<String> getDependencies() {
+        return dependencies;
+    }
+
+    public void setDependencies(List<String> dependencies) {
+        this.dependencies = dependencies;
+    }
 }
@@ -124,6 +124,10 @@ public class CertUserDBAuthentication implements AuthManager {
         mCULocator = new ExactMatchCertUserLocator();
     }
 
+    public boolean isRevocationCheckingEnabled() {
+        return mRevocationCheckingEnabled;
+    }
+
     /**
      * Gets the name of this authentication manager.
      */
@@ -19,6 +19,7 @@ package com.netscape.cmscore.dbs;
 
 import java.math.BigInteger;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Vector;
@@ -120,7 +121,12 @@ public class CertRecord implements IDBObj {
             ATTR_X509CERT + "." + X509CERT_PUBLIC_KEY_DATA;
 
     private BigInteger mId = null;
-    private X509CertImpl mX509Certificate = null;
+    private volatile X509CertImpl mX509Certificate = null;
+    // raw DER image of the certificate, decoded on first access
+    private volatile byte[] mEncodedCertificate = null;
+    // validity period as stored in the searchable LDAP attributes
+    private volatile Date mNotBefore = null;
+    private volatile Date mNotAfter = null;
     private String mStatus = null;
     private String mAutoRenew = null;
     private MetaInfo mMetaInfo = null;
@@ -179,7 +185,11 @@ public class CertRecord implements IDBObj {
         } else if (name.equalsIgnoreCase(ATTR_META_INFO)) {
             mMetaInfo = (MetaInfo) obj;
         } else if (name.equalsIgnoreCase(ATTR_X509CERT)) {
-            mX509Certificate = (X509CertImpl) obj;
+            if (obj instanceof byte[]) {
+                setEncodedCertificate((byte[]) obj);
+            } else {
+                setCertificate((X509CertImpl) obj);
+            }
         } else if (name.equalsIgnoreCase(ATTR_CERT_STATUS)) {
             mStatus = (String) obj;
         } else if (name.equalsIgnoreCase(ATTR_AUTO_RENEW)) {
@@ -210,7 +220,7 @@ public class CertRecord implements IDBObj {
         } else if (name.equalsIgnoreCase(ATTR_META_INFO)) {
             return mMetaInfo;
         } else if (name.equalsIgnoreCase(ATTR_X509CERT)) {
-            return mX509Certificate;
+            return getCertificate();
         } else if (name.equalsIgnoreCase(ATTR_CERT_STATUS)) {
             return mStatus;
         } else if (name.equalsIgnoreCase(ATTR_AUTO_RENEW)) {
@@ -251,7 +261,79 @@ public class CertRecord implements IDBObj {
      * @return certificate
      */
     public X509CertImpl getCertificate() {
-        return mX509Certificate;
+
+        X509CertImpl cert = mX509Certificate;
+        if (cert != null || mEncodedCertificate == null) {
+            return cert;
+        }
+
+        synchronized (this) {
+            cert = mX509Certificate;
+            if (cert != null || mEncodedCertificate == null) {
+                return cert;
+            }
+
+            try {
+                logger.debug("CertRecord: Decoding certificate " + mId);
+                cert = new X509CertImpl(mEncodedCertificate);
+            } catch (Exception e) {
+                logger.warn("CertRecord: Unable to decode certificate " + mId + ": " + e.getMessage(), e);
+            }
+
+            // the encoded image is no longer needed once decoded;
+            // on failure keep returning null like the eager mapper did
+            mEncodedCertificate = null;
+            mX509Certificate = cert;
+            return cert;
+        }
+    }
+
+    /**
+     * Sets certificate of this record.
+     *
+     * @param cert certificate
+     */
+    public synchronized void setCertificate(X509CertImpl cert) {
+        mX509Certificate = cert;
+        mEncodedCertificate = null;
+        mNotBefore = null;
+        mNotAfter = null;
+    }
+
+    /**
+     * Sets the DER-encoded certificate of this record. The
+     * certificate is decoded lazily by getCertificate().
+     *
+     * @param der DER-encoded certificate
+     */
+    public synchronized void setEncodedCertificate(byte[] der) {
+        mX509Certificate = null;
+        mEncodedCertificate = der;
+    }
+
+    /**
+     * Retrieves the DER-encoded certificate without decoding it
+     * if it has not been decoded yet.
+     *
+     * @return DER-encoded certificate
+     */
+    public synchronized byte[] getEncodedCertificate() throws CertificateEncodingException {
+        if (mEncodedCertificate != null) {
+            return mEncodedCertificate;
+        }
+        if (mX509Certificate != null) {
+            return mX509Certificate.getEncoded();
+        }
+        return null;
+    }
+
+    /**
+     * Sets the validity period of the certificate as stored in the
+     * database so it can be retrieved without decoding the certificate.
+     */
+    synchronized void setValidity(Date notBefore, Date notAfter) {
+        mNotBefore = notBefore;
+        mNotAfter = notAfter;
     }
 
     /**
@@ -332,18 +414,26 @@ public class CertRecord implements IDBObj {
      * @return certificate serial number
      */
     public BigInteger getCertificateSerialNumber() {
-        return mX509Certificate.getSerialNumber();
+        return getCertificate().getSerialNumber();
     }
 
     /**
      * Retrieves not after.
      */
     public Date getNotAfter() {
-        return mX509Certificate.getNotAfter();
+        Date notAfter = mNotAfter;
+        if (notAfter != null) {
+            return notAfter;
+        }
+        return getCertificate().getNotAfter();
     }
 
     public Date getNotBefore() {
-        return mX509Certificate.getNotBefore();
+        Date notBefore = mNotBefore;
+        if (notBefore != null) {
+            return notBefore;
+        }
+        return getCertificate().getNotBefore();
     }
 
     /**
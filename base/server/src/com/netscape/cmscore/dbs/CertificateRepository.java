@@ -20,10 +20,15 @@ package com.netscape.cmscore.dbs;
 import java.math.BigInteger;
 import java.security.SecureRandom;
 import java.security.cert.Certificate;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Set;
 import java.util.Vector;
 
 import org.mozilla.jss.netscape.security.x509.CertificateValidity;
@@ -80,6 +85,9 @@ public class CertificateRepository extends Repository {
     private static final String PROP_COLLISION_RECOVERY_STEPS = "collisionRecoverySteps";
     private static final String PROP_COLLISION_RECOVERY_REGENERATIONS = "collisionRecoveryRegenerations";
     private static final String PROP_MINIMUM_RANDOM_BITS = "minimumRandomBits";
+    private static final String PROP_RANDOM_SERIAL_NUMBER_POOL_SIZE = "randomSerialNumberPoolSize";
+    private static final String PROP_RANDOM_SERIAL_NUMBER_BATCH_SIZE = "randomSerialNumberBatchSize";
+    private static final String PROP_RANDOM_SERIAL_NUMBER_FILTER_SIZE = "randomSerialNumberFilterSize";
     private static final BigInteger BI_MINUS_ONE = (BigInteger.ZERO).subtract(BigInteger.ONE);
 
     private boolean mConsistencyCheck = false;
@@ -91,6 +99,7 @@ public class CertificateRepository extends Repository {
     private int mMaxCollisionRecoveryRegenerations = 3;
     private IConfigStore mDBConfig = null;
     private boolean mForceModeChange = false;
+    private volatile RandomSerialNumberPool mSerialNumberPool;
 
     /**
      * Constructs a certificate repository.
@@ -145,6 +154,11 @@ public class CertificateRepository extends Repository {
             }
             mDBConfig.putBoolean(PROP_ENABLE_RANDOM_SERIAL_NUMBERS, mEnableRandomSerialNumbers);
 
+            RandomSerialNumberPool pool = mSerialNumberPool;
+            if (pool != null) {
+                pool.clear();
+            }
+
             BigInteger lastSerialNumber = null;
             try {
                 lastSerialNumber = getLastSerialNumberInRange(mMinSerialNo,mMaxSerialNo);
@@ -255,20 +269,203 @@ public class CertificateRepository extends Repository {
         return nextSerialNumber;
     }
 
+    /**
+     * Generates random serial numbers in the current range without
+     * checking them against the database.
+     *
+     * @param count number of serial numbers
+     * @return random serial numbers
+     * @exception EBaseException failed to generate serial numbers
+     */
+    synchronized List<BigInteger> generateRandomSerialNumbers(int count) throws EBaseException {
+
+        List<BigInteger> serialNumbers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            serialNumbers.add(getRandomSerialNumber(getRandomNumber()));
+        }
+
+        return serialNumbers;
+    }
+
+    /**
+     * Finds which of the given serial numbers are already in use
+     * with a single search.
+     *
+     * @param serialNumbers serial numbers to check
+     * @return serial numbers that already exist in the repository
+     * @exception EBaseException failed to search the repository
+     */
+    public Set<BigInteger> findExistingSerialNumbers(Collection<BigInteger> serialNumbers)
+            throws EBaseException {
+
+        Set<BigInteger> existing = new HashSet<>();
+        if (serialNumbers.isEmpty()) {
+            return existing;
+        }
+
+        StringBuilder filter = new StringBuilder("(|");
+        for (BigInteger serialNumber : serialNumbers) {
+            filter.append("(" + CertRecord.ATTR_ID + "=" + serialNumber + ")");
+        }
+        filter.append(")");
+
+        Enumeration<Object> e = findCertRecs(filter.toString(), new String[] {CertRecord.ATTR_ID, "objectclass"});
+        while (e != null && e.hasMoreElements()) {
+            CertRecord rec = (CertRecord) e.nextElement();
+            if (rec != null && rec.getSerialNumber() != null) {
+                existing.add(rec.getSerialNumber());
+            }
+        }
+
+        return existing;
+    }
+
+    /**
+     * Retrieves up to the given number of serial numbers already
+     * issued in the given range.
+     *
+     * @param minSerialNo start of the range
+     * @param maxSerialNo end of the range
+     * @param maxSize max number of serial numbers
+     * @return serial numbers in the range
+     * @exception EBaseException failed to search the repository
+     */
+    Collection<BigInteger> getSerialNumbersInRange(
+            BigInteger minSerialNo,
+            BigInteger maxSerialNo,
+            int maxSize) throws EBaseException {
+
+        List<BigInteger> serialNumbers = new ArrayList<>();
+
+        if (minSerialNo == null || maxSerialNo == null) {
+            return serialNumbers;
+        }
+
+        String filter = "(&("+CertRecord.ATTR_ID+">="+minSerialNo+")("+
+                CertRecord.ATTR_ID+"<="+maxSerialNo+"))";
+
+        DBSSession s = dbSubsystem.createSession();
+        try {
+            IDBSearchResults sr = s.search(mBaseDN, filter, maxSize,
+                    new String[] {CertRecord.ATTR_ID, "objectclass"});
+            while (sr.hasMoreElements()) {
+                CertRecord rec = (CertRecord) sr.nextElement();
+                if (rec != null && rec.getSerialNumber() != null) {
+                    serialNumbers.add(rec.getSerialNumber());
+                }
+            }
+        } finally {
+            if (s != null)
+                s.close();
+        }
+
+        return serialNumbers;
+    }
+
+    /**
+     * Returns the pool of validated random serial numbers, creating
+     * it on first use. Returns null if the pool is disabled.
+     */
+    private RandomSerialNumberPool getSerialNumberPool() throws EBaseException {
+
+        RandomSerialNumberPool pool = mSerialNumberPool;
+        if (pool != null) {
+            return pool;
+        }
+
+        CMSEngine engine = CMS.getCMSEngine();
+        if (engine.isPreOpMode()) {
+            return null;
+        }
+
+        synchronized (this) {
+            if (mSerialNumberPool != null) {
+                return mSerialNumberPool;
+            }
+
+            int size = mDBConfig.getInteger(PROP_RANDOM_SERIAL_NUMBER_POOL_SIZE, 100);
+            if (size <= 0) {
+                return null;
+            }
+
+            int batchSize = mDBConfig.getInteger(PROP_RANDOM_SERIAL_NUMBER_BATCH_SIZE, 20);
+            int filterSize = mDBConfig.getInteger(PROP_RANDOM_SERIAL_NUMBER_FILTER_SIZE, 100000);
+
+            logger.info("CertificateRepository: Starting random serial number pool");
+            logger.info("CertificateRepository: - size: " + size);
+            logger.info("CertificateRepository: - batch size: " + batchSize);
+            logger.info("CertificateRepository: - filter size: " + filterSize);
+
+            pool = new RandomSerialNumberPool(this, size, batchSize, filterSize);
+            pool.start();
+
+            mSerialNumberPool = pool;
+            return pool;
+        }
+    }
+
     /**
      * Retrieves the next certificate serial number, and also increases
      * the serial number by one.
      *
+     * In random mode the serial number is taken from a pool of serial
+     * numbers that have been validated in the background. The
+     * repository lock is only held for the counter and range update.
+     *
      * @return serial number
      * @exception EBaseException failed to retrieve next serial number
      */
-    public synchronized BigInteger getNextSerialNumber()
+    public BigInteger getNextSerialNumber()
+            throws EBaseException {
+
+        super.initCacheIfNeeded();
+
+        if (!mEnableRandomSerialNumbers) {
+            return super.getNextSerialNumber();
+        }
+
+        RandomSerialNumberPool pool = getSerialNumberPool();
+        BigInteger nextSerialNumber = pool == null ? null : pool.take();
+
+        if (nextSerialNumber == null) {
+            return getNextRandomSerialNumber();
+        }
+
+        synchronized (this) {
+
+            if (!mEnableRandomSerialNumbers ||
+                mMinSerialNo == null || mMaxSerialNo == null ||
+                nextSerialNumber.compareTo(mMinSerialNo) < 0 ||
+                nextSerialNumber.compareTo(mMaxSerialNo) > 0) {
+
+                // mode or range has changed since the pool was filled
+                logger.debug("CertificateRepository: getNextSerialNumber  discarding pooled serial number "+nextSerialNumber);
+                pool.clear();
+                return getNextRandomSerialNumber();
+            }
+
+            if (mCounter.compareTo(BigInteger.ZERO) >= 0) {
+                mCounter = mCounter.add(BigInteger.ONE);
+            }
+            logger.debug("CertificateRepository: getNextSerialNumber  nextSerialNumber="+
+                      nextSerialNumber+"  mCounter="+mCounter);
+
+            super.checkRange();
+        }
+
+        return nextSerialNumber;
+    }
+
+    /**
+     * Generates a random serial number and checks it against the
+     * database one candidate at a time.
+     */
+    private synchronized BigInteger getNextRandomSerialNumber()
             throws EBaseException {
 
         BigInteger nextSerialNumber = null;
         BigInteger randomNumber = null;
 
-        super.initCacheIfNeeded();
         logger.debug("CertificateRepository: getNextSerialNumber  mEnableRandomSerialNumbers="+mEnableRandomSerialNumbers);
 
         if (mEnableRandomSerialNumbers) {
@@ -2225,5 +2422,11 @@ public class CertificateRepository extends Repository {
     }
 
     public void shutdown() {
+        super.shutdown();
+
+        RandomSerialNumberPool pool = mSerialNumberPool;
+        if (pool != null) {
+            pool.stop();
+        }
     }
 }
@@ -211,6 +211,26 @@ public class DBSSession implements AutoCloseable {
         return null;
     }
 
+    /**
+     * Retrieves up to the given number of objects that satisfy the
+     * given filter.
+     *
+     * @param base starting point of the search
+     * @param filter search filter
+     * @param maxSize max number of entries
+     * @param attrs selected attributes
+     * @return search results
+     * @exception EBaseException failed to search
+     */
+    public IDBSearchResults search(
+            String base,
+            String filter,
+            int maxSize,
+            String[] attrs
+            ) throws EBaseException {
+        return null;
+    }
+
     /**
      * Sets persistent search to retrieve modified
      * certificate records.
@@ -17,12 +17,18 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.dbs;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,6 +71,15 @@ public class LDAPRegistry extends DBRegistry {
     private IFilterConverter mConverter = null;
     private Vector<DBDynAttrMapper> mDynAttrMappers = new Vector<>();
 
+    // maximum number of distinct object class value lists to remember
+    private final static int MAX_FINGERPRINTS = 256;
+
+    // binders by record class
+    private ConcurrentHashMap<Class<?>, RecordBinder> mBinders = new ConcurrentHashMap<>();
+
+    // binders by object class values as returned by the server
+    private ConcurrentHashMap<String, RecordBinder> mFingerprints = new ConcurrentHashMap<>();
+
     /**
      * Constructs registry.
      */
@@ -118,6 +133,15 @@ public class LDAPRegistry extends DBRegistry {
         mOCclassNames.clear();
         mOCldapNames.clear();
         mAttrufNames.clear();
+        clearBinders();
+    }
+
+    /**
+     * Discards the compiled binders after the schema has changed.
+     */
+    private void clearBinders() {
+        mBinders.clear();
+        mFingerprints.clear();
     }
 
     /**
@@ -132,6 +156,7 @@ public class LDAPRegistry extends DBRegistry {
             mOCldapNames.put(sortAndConcate(
                     ldapNames).toLowerCase(),
                     new NameAndObject(className, c));
+            clearBinders();
         } catch (ClassNotFoundException e) {
 
             /*LogDoc
@@ -160,6 +185,7 @@ public class LDAPRegistry extends DBRegistry {
         // should not allows 'objectclass' as attribute; it has
         // special meaning
         mAttrufNames.put(ufName.toLowerCase(), mapper);
+        clearBinders();
     }
 
     /**
@@ -448,7 +474,7 @@ public class LDAPRegistry extends DBRegistry {
      */
     public LDAPAttributeSet createLDAPAttributeSet(IDBObj obj) throws EBaseException {
 
-        Enumeration<String> e = obj.getSerializableAttrNames();
+        RecordBinder binder = getBinder(((Object) obj).getClass(), obj);
         LDAPAttributeSet attrs = new LDAPAttributeSet();
 
         // add object class to attribute set
@@ -459,15 +485,20 @@ public class LDAPRegistry extends DBRegistry {
         }
         attrs.add(new LDAPAttribute("objectclass", ocNames));
 
-        while (e.hasMoreElements()) {
-            String name = e.nextElement();
+        String[] names = binder.names;
+        DBAttrMapper[] mappers = binder.mappers;
+
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i];
             Object value = obj.get(name);
 
             if (value == null) {
                 logger.debug("LDAPRegistry: Skipping empty attribute " + name);
+            } else if (mappers[i] == null) {
+                // no mapper found, just skip this attribute
             } else {
                 logger.debug("LDAPRegistry: Mapping attribute " + name);
-                mapObject(obj, name, value, attrs);
+                mappers[i].mapObjectToLDAPAttributeSet(obj, name, value, attrs);
             }
         }
 
@@ -487,35 +518,25 @@ public class LDAPRegistry extends DBRegistry {
 
         attrs.remove("objectclass");
 
-        // sort the object class values
-
-        String[] s = attr.getStringValueArray();
-        String sorted = sortAndConcate(s).toLowerCase();
-        NameAndObject no = mOCldapNames.get(sorted);
-
-        if (no == null) {
-            throw new EDBException(
-                    CMS.getUserMessage("CMS_DBS_INVALID_CLASS_NAME", sorted));
-        }
-        Class<?> c = (Class<?>) no.getObject();
+        RecordBinder binder = getBinder(attr.getStringValueArray());
 
         try {
-            IDBObj obj = (IDBObj) c.newInstance();
-            Enumeration<String> ee = obj.getSerializableAttrNames();
+            IDBObj obj = binder.newInstance();
 
-            while (ee.hasMoreElements()) {
-                String oname = ee.nextElement();
-                DBAttrMapper mapper = mAttrufNames.get(oname.toLowerCase());
+            String[] names = binder.names;
+            DBAttrMapper[] mappers = binder.mappers;
 
-                if (mapper == null) {
+            for (int i = 0; i < names.length; i++) {
+                if (mappers[i] == null) {
                     throw new EDBException(
-                            CMS.getUserMessage("CMS_DBS_NO_MAPPER_FOUND", oname));
+                            CMS.getUserMessage("CMS_DBS_NO_MAPPER_FOUND", names[i]));
                 }
-                mapper.mapLDAPAttributeSetToObject(attrs,
-                        oname, obj);
+                mappers[i].mapLDAPAttributeSetToObject(attrs,
+                        names[i], obj);
             }
             return obj;
-        } catch (Exception e) {
+
+        } catch (Throwable e) {
 
             /*LogDoc
              *
@@ -528,6 +549,57 @@ public class LDAPRegistry extends DBRegistry {
         }
     }
 
+    /**
+     * Finds the binder for the given object class values. The values
+     * are only sorted the first time a particular list is seen.
+     */
+    private RecordBinder getBinder(String[] ocValues) throws EDBException {
+
+        String fingerprint = ocValues.length == 1 ? ocValues[0] : String.join("\0", ocValues);
+
+        RecordBinder binder = mFingerprints.get(fingerprint);
+        if (binder != null) {
+            return binder;
+        }
+
+        // sort the object class values
+        String sorted = sortAndConcate(ocValues).toLowerCase();
+        NameAndObject no = mOCldapNames.get(sorted);
+
+        if (no == null) {
+            throw new EDBException(
+                    CMS.getUserMessage("CMS_DBS_INVALID_CLASS_NAME", sorted));
+        }
+
+        binder = getBinder((Class<?>) no.getObject(), null);
+
+        if (mFingerprints.size() >= MAX_FINGERPRINTS) {
+            mFingerprints.clear();
+        }
+        mFingerprints.put(fingerprint, binder);
+
+        return binder;
+    }
+
+    /**
+     * Finds or compiles the binder for the given record class.
+     *
+     * @param c record class
+     * @param obj an instance of the class, or null to create one
+     */
+    private RecordBinder getBinder(Class<?> c, IDBObj obj) throws EDBException {
+
+        RecordBinder binder = mBinders.get(c);
+        if (binder != null) {
+            return binder;
+        }
+
+        binder = new RecordBinder(c, obj, mAttrufNames);
+        RecordBinder current = mBinders.putIfAbsent(c, binder);
+
+        return current == null ? binder : current;
+    }
+
     /**
      * Sorts and concate given strings.
      */
@@ -552,6 +624,70 @@ public class LDAPRegistry extends DBRegistry {
     }
 }
 
+/**
+ * This class holds the precomputed mapping between a record class
+ * and its attribute mappers, so that records can be created without
+ * reflection or per-attribute map lookups.
+ */
+class RecordBinder {
+
+    final Class<?> recordClass;
+
+    // null if the class has no accessible default constructor
+    final MethodHandle constructor;
+
+    // serializable attribute names and the matching mappers;
+    // a mapper is null if the attribute is not registered
+    final String[] names;
+    final DBAttrMapper[] mappers;
+
+    RecordBinder(Class<?> c, IDBObj obj, Hashtable<String, DBAttrMapper> mappers) throws EDBException {
+
+        recordClass = c;
+
+        MethodHandle handle = null;
+        try {
+            handle = MethodHandles.lookup()
+                    .findConstructor(c, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(IDBObj.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            LDAPRegistry.logger.debug("LDAPRegistry: No default constructor for " + c.getName());
+        }
+        constructor = handle;
+
+        if (obj == null) {
+            obj = newInstance();
+        }
+
+        List<String> list = new ArrayList<>();
+        Enumeration<String> e = obj.getSerializableAttrNames();
+        while (e != null && e.hasMoreElements()) {
+            list.add(e.nextElement());
+        }
+
+        this.names = list.toArray(new String[list.size()]);
+        this.mappers = new DBAttrMapper[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            this.mappers[i] = mappers.get(names[i].toLowerCase());
+        }
+    }
+
+    IDBObj newInstance() throws EDBException {
+
+        if (constructor == null) {
+            throw new EDBException(CMS.getUserMessage("CMS_DBS_INVALID_CLASS_NAME", recordClass.getName()));
+        }
+
+        try {
+            return (IDBObj) constructor.invokeExact();
+
+        } catch (Throwable e) {
+            throw new EDBException(CMS.getUserMessage("CMS_DBS_INVALID_CLASS_NAME", recordClass.getName()), e);
+        }
+    }
+}
+
 /**
  * Just a convenient container class.
  */
@@ -456,6 +456,43 @@ public class LDAPSession extends DBSSession {
         }
     }
 
+    /**
+     * Retrieves up to the given number of objects that satisfy the
+     * given filter.
+     */
+    @SuppressWarnings("unchecked")
+    public IDBSearchResults search(String base, String filter, int maxSize,
+            String attrs[]) throws EBaseException {
+
+        logger.debug("LDAPSession: search(" + base + ", " + filter + ", " + maxSize + ")");
+
+        try {
+            String ldapattrs[] = null;
+
+            if (attrs != null) {
+                ldapattrs = dbSubsystem.getRegistry(
+                        ).getLDAPAttributes(attrs);
+            }
+            String ldapfilter =
+                    dbSubsystem.getRegistry().getFilter(filter);
+
+            LDAPSearchConstraints cons = new LDAPSearchConstraints();
+
+            cons.setMaxResults(maxSize);
+
+            LDAPSearchResults res = mConn.search(base,
+                    LDAPv2.SCOPE_ONE, ldapfilter, ldapattrs, false, cons);
+
+            return new DBSearchResults(dbSubsystem.getRegistry(),
+                    res);
+        } catch (LDAPException e) {
+            if (e.getLDAPResultCode() == LDAPException.UNAVAILABLE)
+                throw new EDBNotAvailException(
+                        CMS.getUserMessage("CMS_DBS_INTERNAL_DIR_UNAVAILABLE"));
+            throw new EDBException("Unable to search LDAP record: " + e.getMessage(), e);
+        }
+    }
+
     public LDAPSearchResults persistentSearch(String base, String filter, String attrs[])
             throws EBaseException {
 
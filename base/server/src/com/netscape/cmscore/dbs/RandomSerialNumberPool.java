@@ -0,0 +1,351 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netscape.certsrv.base.EBaseException;
+
+/**
+ * This class keeps a pool of random certificate serial numbers that
+ * have already been checked against the certificate repository.
+ *
+ * Candidates are generated in the background in batches. A candidate
+ * that hits the local filter of known serial numbers is discarded
+ * without a database lookup; the remaining candidates of a batch are
+ * checked with a single LDAP search. Issuing threads take validated
+ * serial numbers from a lock-free queue and only fall back to the
+ * synchronous collision check if the pool is empty.
+ *
+ * The filter is built for the current serial number range and is
+ * rebuilt when the range changes. At most the configured number of
+ * serial numbers is added to the filter, so its false positive rate
+ * stays bounded. Once the filter is full, e.g. because the range
+ * already holds more certificates, serial numbers that are not in
+ * the filter are only found by the LDAP check, and new candidates
+ * are remembered in a smaller filter of recently pooled serial
+ * numbers instead.
+ */
+public class RandomSerialNumberPool implements Runnable {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RandomSerialNumberPool.class);
+
+    CertificateRepository repository;
+
+    int size;
+    int batchSize;
+
+    ConcurrentLinkedQueue<BigInteger> queue = new ConcurrentLinkedQueue<>();
+    AtomicInteger available = new AtomicInteger();
+    AtomicBoolean filling = new AtomicBoolean();
+    AtomicInteger generation = new AtomicInteger();
+
+    int filterSize;
+
+    // set when the filter has to be rebuilt
+    AtomicBoolean reset = new AtomicBoolean(true);
+
+    // only accessed by the pool thread
+    SerialNumberFilter filter;
+    SerialNumberFilter recent;
+    SerialNumberFilter previous;
+    BigInteger filterMin;
+    BigInteger filterMax;
+
+    ExecutorService executorService;
+
+    public RandomSerialNumberPool(
+            CertificateRepository repository,
+            int size,
+            int batchSize,
+            int filterSize) {
+
+        this.repository = repository;
+        this.size = size;
+        this.batchSize = batchSize;
+        this.filterSize = filterSize;
+    }
+
+    public void start() {
+        executorService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "RandomSerialNumberPool");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        fill();
+    }
+
+    /**
+     * Returns a validated serial number, or null if the pool is
+     * currently empty.
+     */
+    public BigInteger take() {
+
+        BigInteger serialNumber = queue.poll();
+
+        if (serialNumber != null && available.decrementAndGet() < size / 2) {
+            fill();
+        } else if (serialNumber == null) {
+            fill();
+        }
+
+        return serialNumber;
+    }
+
+    /**
+     * Discards all pooled serial numbers, e.g. after the serial number
+     * range or mode has changed.
+     */
+    public void clear() {
+        generation.incrementAndGet();
+        reset.set(true);
+        queue.clear();
+        available.set(0);
+        fill();
+    }
+
+    public int getAvailable() {
+        return available.get();
+    }
+
+    /**
+     * Schedules a refill unless one is already in progress.
+     */
+    void fill() {
+        if (executorService == null || executorService.isShutdown()) {
+            return;
+        }
+        if (filling.compareAndSet(false, true)) {
+            executorService.submit(this);
+        }
+    }
+
+    public void run() {
+        try {
+            BigInteger minSerialNo = repository.mMinSerialNo;
+            BigInteger maxSerialNo = repository.mMaxSerialNo;
+
+            if (reset.getAndSet(false)
+                    || filter == null
+                    || !Objects.equals(minSerialNo, filterMin)
+                    || !Objects.equals(maxSerialNo, filterMax)) {
+
+                // build the filter for the current range
+                filter = null;
+                preload(minSerialNo, maxSerialNo);
+                filterMin = minSerialNo;
+                filterMax = maxSerialNo;
+            }
+
+            while (available.get() < size) {
+                if (!fillBatch()) {
+                    break;
+                }
+            }
+
+        } catch (Throwable e) {
+            logger.warn("RandomSerialNumberPool: Unable to fill pool: " + e.getMessage(), e);
+
+        } finally {
+            filling.set(false);
+        }
+    }
+
+    /**
+     * Creates the local filter for the given range and adds the serial
+     * numbers already in the range. If the range holds more serial
+     * numbers than the filter can hold, only the first ones are loaded
+     * and the filter is marked full.
+     */
+    void preload(BigInteger minSerialNo, BigInteger maxSerialNo) throws EBaseException {
+
+        logger.info("RandomSerialNumberPool: Loading existing serial numbers in range " + minSerialNo + ".." + maxSerialNo);
+
+        SerialNumberFilter filter = new SerialNumberFilter(filterSize);
+
+        Collection<BigInteger> serialNumbers =
+                repository.getSerialNumbersInRange(minSerialNo, maxSerialNo, filterSize + 1);
+
+        for (BigInteger serialNumber : serialNumbers) {
+            filter.add(serialNumber);
+        }
+
+        logger.info("RandomSerialNumberPool: Loaded " + serialNumbers.size() + " serial numbers");
+
+        if (filter.isFull()) {
+            logger.warn("RandomSerialNumberPool: Range has more than " + filterSize
+                    + " serial numbers, relying on the database check");
+        }
+
+        this.filter = filter;
+        this.recent = null;
+        this.previous = null;
+    }
+
+    boolean mightContain(BigInteger serialNumber) {
+        return filter.mightContain(serialNumber)
+                || recent != null && recent.mightContain(serialNumber)
+                || previous != null && previous.mightContain(serialNumber);
+    }
+
+    /**
+     * Remembers a serial number that exists or is about to be issued.
+     */
+    void add(BigInteger serialNumber) {
+
+        if (!filter.isFull()) {
+            filter.add(serialNumber);
+            return;
+        }
+
+        // keep the serial numbers pooled since the filter became full
+        // in two generations so that recently pooled serial numbers are
+        // not forgotten when a new generation is started
+        if (recent == null || recent.isFull()) {
+            previous = recent;
+            recent = new SerialNumberFilter(Math.max(size, filterSize / 10));
+        }
+
+        recent.add(serialNumber);
+    }
+
+    /**
+     * Generates, validates, and queues one batch of serial numbers.
+     *
+     * @return false if no serial number could be added
+     */
+    boolean fillBatch() throws EBaseException {
+
+        int gen = generation.get();
+
+        Set<BigInteger> candidates = new LinkedHashSet<>();
+        for (BigInteger candidate : repository.generateRandomSerialNumbers(batchSize)) {
+            if (mightContain(candidate)) {
+                logger.debug("RandomSerialNumberPool: Possible collision for " + candidate);
+                continue;
+            }
+            candidates.add(candidate);
+        }
+
+        if (candidates.isEmpty()) {
+            logger.debug("RandomSerialNumberPool: No candidates left after filtering");
+            return false;
+        }
+
+        Set<BigInteger> existing = repository.findExistingSerialNumbers(candidates);
+
+        List<BigInteger> serialNumbers = new ArrayList<>();
+        for (BigInteger candidate : candidates) {
+
+            // remember every candidate, either it exists already
+            // or it is about to be issued
+            add(candidate);
+
+            if (existing.contains(candidate)) {
+                logger.debug("RandomSerialNumberPool: Collision detected for " + candidate);
+                continue;
+            }
+
+            serialNumbers.add(candidate);
+        }
+
+        if (gen != generation.get()) {
+            // the pool was cleared while validating this batch
+            return true;
+        }
+
+        queue.addAll(serialNumbers);
+        available.addAndGet(serialNumbers.size());
+
+        logger.debug("RandomSerialNumberPool: Added " + serialNumbers.size() + " serial numbers");
+        return !serialNumbers.isEmpty();
+    }
+
+    public void stop() {
+        if (executorService != null) executorService.shutdownNow();
+    }
+
+    /**
+     * Bloom filter of serial numbers known to be in use.
+     */
+    static class SerialNumberFilter {
+
+        static final int HASHES = 7;
+
+        long[] bits;
+        int numBits;
+
+        int capacity;
+        int size;
+
+        SerialNumberFilter(int capacity) {
+            // about 10 bits per entry gives a false positive rate of ~1%
+            this.capacity = Math.max(1, capacity);
+            numBits = Math.max(64, this.capacity * 10);
+            bits = new long[(numBits + 63) / 64];
+        }
+
+        /**
+         * Returns true if the filter holds more entries than it was
+         * sized for. No more entries should be added to a full filter
+         * to keep its false positive rate bounded.
+         */
+        boolean isFull() {
+            return size > capacity;
+        }
+
+        void add(BigInteger serialNumber) {
+            size++;
+            long hash = hash(serialNumber);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= HASHES; i++) {
+                int index = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+                bits[index >>> 6] |= 1L << index;
+            }
+        }
+
+        boolean mightContain(BigInteger serialNumber) {
+            long hash = hash(serialNumber);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 1; i <= HASHES; i++) {
+                int index = ((h1 + i * h2) & Integer.MAX_VALUE) % numBits;
+                if ((bits[index >>> 6] & (1L << index)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long hash(BigInteger serialNumber) {
+            // 64-bit mix of the serial number bytes
+            long h = 0xcbf29ce484222325L;
+            for (byte b : serialNumber.toByteArray()) {
+                h ^= b;
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
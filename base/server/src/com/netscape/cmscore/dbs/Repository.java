@@ -18,6 +18,11 @@
 package com.netscape.cmscore.dbs;
 
 import java.math.BigInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.dbs.EDBException;
@@ -62,10 +67,10 @@ public abstract class Repository implements IRepository {
 
     protected boolean mEnableRandomSerialNumbers = false;
     protected BigInteger mCounter = null;
-    protected BigInteger mMinSerialNo = null;
-    protected BigInteger mMaxSerialNo = null;
-    private BigInteger mNextMinSerialNo = null;
-    private BigInteger mNextMaxSerialNo = null;
+    protected volatile BigInteger mMinSerialNo = null;
+    protected volatile BigInteger mMaxSerialNo = null;
+    private volatile BigInteger mNextMinSerialNo = null;
+    private volatile BigInteger mNextMaxSerialNo = null;
 
     private BigInteger mIncrementNo = null;
     private BigInteger mLowWaterMarkNo = null;
@@ -76,7 +81,16 @@ public abstract class Repository implements IRepository {
     private int mRadix = 10;
     private int mRepo = -1;
 
-    private BigInteger mLastSerialNo = null;
+    // the current range, null until the cache is initialized
+    private volatile SerialNumberRange mRange = null;
+
+    // serializes range requests from checkRanges() and the prefetch
+    private final Object mRangeRequestLock = new Object();
+    private final AtomicBoolean mPrefetching = new AtomicBoolean();
+    private ExecutorService mPrefetchService;
+
+    // number of times the repository ran low without a next range
+    private final AtomicLong mRangeExhaustionWarnings = new AtomicLong();
 
     /**
      * Constructs a repository.
@@ -205,7 +219,42 @@ public abstract class Repository implements IRepository {
         if (maxSerial != null) {
             mMaxSerial = serial;
             mMaxSerialNo = maxSerial;
+
+            SerialNumberRange range = mRange;
+            if (range != null) {
+                range.setMax(maxSerial, mLowWaterMarkNo);
+            }
+        }
+    }
+
+    /**
+     * Moves the end of the current range down to the given serial
+     * number, e.g. to transfer the rest of the range to a clone.
+     * The range is atomically checked and updated against serial
+     * numbers issued concurrently, so it is only reduced if no serial
+     * number beyond the new end has been issued.
+     *
+     * @param serial new maximum number
+     * @return true if the range was reduced
+     * @exception EBaseException failed to set maximum serial number
+     */
+    public synchronized boolean reduceMaxSerial(String serial) throws EBaseException {
+
+        logger.debug("Repository: reduceMaxSerial " + serial);
+
+        initCacheIfNeeded();
+
+        BigInteger maxSerial = new BigInteger(serial, mRadix);
+
+        if (!mRange.reduceMax(maxSerial, mLowWaterMarkNo)) {
+            logger.info("Repository: Serial numbers beyond " + serial + " have already been issued");
+            return false;
         }
+
+        mMaxSerial = serial;
+        mMaxSerialNo = maxSerial;
+
+        return true;
     }
 
     /**
@@ -245,8 +294,16 @@ public abstract class Repository implements IRepository {
         return mMinSerial;
     }
 
-    protected void setLastSerialNo(BigInteger lastSN) {
-        mLastSerialNo = lastSN;
+    protected synchronized void setLastSerialNo(BigInteger lastSN) {
+        mRange = new SerialNumberRange(lastSN, mMaxSerialNo, mLowWaterMarkNo);
+    }
+
+    /**
+     * Returns the last serial number issued from the current range.
+     */
+    private BigInteger getLastSerialNo() {
+        SerialNumberRange range = mRange;
+        return range == null ? null : range.getLast();
     }
 
     /**
@@ -333,8 +390,8 @@ public abstract class Repository implements IRepository {
         }
 
         if (theSerialNo != null) {
-            mLastSerialNo = new BigInteger(theSerialNo.toString());
-            logger.debug("Repository: Last serial number: " + mLastSerialNo);
+            mRange = new SerialNumberRange(theSerialNo, mMaxSerialNo, mLowWaterMarkNo);
+            logger.debug("Repository: Last serial number: " + theSerialNo);
 
         } else {
             throw new EBaseException("Error in obtaining the last serial number in the repository!");
@@ -342,8 +399,13 @@ public abstract class Repository implements IRepository {
     }
 
     protected void initCacheIfNeeded() throws EBaseException {
-        if (mLastSerialNo == null)
-            initCache();
+        if (mRange != null)
+            return;
+
+        synchronized (this) {
+            if (mRange == null)
+                initCache();
+        }
     }
 
     /**
@@ -360,9 +422,9 @@ public abstract class Repository implements IRepository {
     public synchronized BigInteger peekNextSerialNumber() throws EBaseException {
 
         logger.debug("Repository:In getTheSerialNumber ");
-        if (mLastSerialNo == null)
+        if (mRange == null)
             initCache();
-        BigInteger serial = mLastSerialNo.add(BigInteger.ONE);
+        BigInteger serial = getLastSerialNo().add(BigInteger.ONE);
 
         if (mMaxSerialNo != null && serial.compareTo(mMaxSerialNo) > 0)
             return hasNextRange() ? mNextMinSerialNo : null;
@@ -380,8 +442,7 @@ public abstract class Repository implements IRepository {
         // mSerialNo is already set. But just in case
 
         logger.debug("Repository:In setTheSerialNumber " + num);
-        if (mLastSerialNo == null)
-            initCache();
+        initCacheIfNeeded();
 
         if (num.compareTo(mSerialNo) <= 0) {
             throw new EDBException(CMS.getUserMessage("CMS_DBS_SETBACK_SERIAL",
@@ -400,34 +461,144 @@ public abstract class Repository implements IRepository {
      * Retrieves the next serial number, and also increase the
      * serial number by one.
      * <P>
+     * Serial numbers are dispensed from the current range without
+     * locking. The repository lock is only taken to switch to the
+     * next range once the current range is exhausted. When the low
+     * water mark is crossed the next range is requested in the
+     * background.
      *
      * @return serial number
      */
-    public synchronized BigInteger getNextSerialNumber() throws
+    public BigInteger getNextSerialNumber() throws
             EBaseException {
 
-        logger.debug("Repository: in getNextSerialNumber. ");
+        initCacheIfNeeded();
 
-        if (mLastSerialNo == null) {
-            initCache();
+        while (true) {
+            SerialNumberRange range = mRange;
+
+            BigInteger serial = range.next();
+            if (serial != null) {
+                if (range.shouldPrefetch(serial)) {
+                    prefetchNextRange();
+                }
+                return serial;
+            }
+
+            switchRange(range);
         }
-        if (mLastSerialNo == null) {
-            logger.error("Repository::getNextSerialNumber() " +
-                       "- mLastSerialNo is null!");
-            throw new EBaseException("mLastSerialNo is null");
+    }
+
+    /**
+     * Switches to the next range if the given range is still the
+     * current range.
+     *
+     * @exception EDBException thrown when the next range is not allocated
+     */
+    private synchronized void switchRange(SerialNumberRange range) throws EBaseException {
+
+        if (mRange != range) {
+            // another thread has already switched the range
+            return;
         }
 
-        /* Advance the serial number.  checkRange() will check if it exceeds
-         * the current range and, if so, rolls to the next range and resets
-         * mLastSerialNo to the start of the new range.  Hence we return
-         * mLastSerialNo below, after the call to checkRange().
-         */
-        mLastSerialNo = mLastSerialNo.add(BigInteger.ONE);
+        logger.debug("Repository: getNextSerialNumber: range " + mMinSerialNo + ".." + mMaxSerialNo + " exhausted");
 
-        checkRange();
+        if (!dbSubsystem.getEnableSerialMgmt() || !hasNextRange()) {
+            mRangeExhaustionWarnings.incrementAndGet();
+            throw new EDBException(CMS.getUserMessage("CMS_DBS_LIMIT_REACHED",
+                    range.getLast().toString()));
+        }
 
-        logger.debug("Repository: getNextSerialNumber: returning " + mLastSerialNo);
-        return mLastSerialNo;
+        logger.debug("Reached the end of the range.  Attempting to move to next range");
+        switchToNextRange();
+    }
+
+    /**
+     * Requests the next range in the background unless a request is
+     * already in progress.
+     */
+    private void prefetchNextRange() {
+
+        if (!dbSubsystem.getEnableSerialMgmt() || hasNextRange()) {
+            return;
+        }
+
+        if (!mPrefetching.compareAndSet(false, true)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (mPrefetchService == null) {
+                mPrefetchService = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "RangePrefetch-" + mRepo);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+        }
+
+        logger.info("Repository: Low water mark reached, requesting next range");
+
+        mPrefetchService.submit(new Runnable() {
+            public void run() {
+                try {
+                    checkRanges();
+
+                } catch (Exception e) {
+                    logger.warn("Repository: Unable to prefetch next range: " + e.getMessage(), e);
+
+                } finally {
+                    mPrefetching.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the number of serial numbers left in the current and
+     * next range, or null if the cache is not initialized.
+     */
+    public BigInteger getAvailableSerialNumbers() {
+
+        SerialNumberRange range = mRange;
+        if (range == null || mMaxSerialNo == null) {
+            return null;
+        }
+
+        BigInteger available;
+        if ((this instanceof CertificateRepository) && mEnableRandomSerialNumbers && mCounter != null) {
+            available = mMaxSerialNo.subtract(mMinSerialNo).subtract(mCounter);
+        } else {
+            available = mMaxSerialNo.subtract(range.getLast());
+        }
+
+        BigInteger nextMin = mNextMinSerialNo;
+        BigInteger nextMax = mNextMaxSerialNo;
+        if (nextMin != null && nextMax != null) {
+            available = available.add(nextMax.subtract(nextMin).add(BigInteger.ONE));
+        }
+
+        return available.signum() < 0 ? BigInteger.ZERO : available;
+    }
+
+    /**
+     * Returns the number of times the repository has run below the
+     * low water mark without a next range, or has run out of serial
+     * numbers.
+     */
+    public long getRangeExhaustionWarnings() {
+        return mRangeExhaustionWarnings.get();
+    }
+
+    /**
+     * Stops the background range prefetch.
+     */
+    public void shutdown() {
+        // shutdown executorService without interrupting running task
+        if (mPrefetchService != null) mPrefetchService.shutdown();
     }
 
     /**
@@ -438,11 +609,12 @@ public abstract class Repository implements IRepository {
      *
      * Precondition: the serial number should already have been advanced.
      * This method will detect that and switch to the next range, including
-     * resetting mLastSerialNo to the start of the new (now current) range.
+     * resetting the last serial number to the start of the new (now current)
+     * range.
      *
-     * Postcondition: the caller should again read mLastSerialNo after
-     * calling checkRange(), in case checkRange switched the range and the
-     * new range is not adjacent to the current range.
+     * Postcondition: the caller should again read the last serial number
+     * after calling checkRange(), in case checkRange switched the range and
+     * the new range is not adjacent to the current range.
      *
      * @exception EDBException thrown when range switch is needed
      *                           but next range is not allocated
@@ -461,24 +633,26 @@ public abstract class Repository implements IRepository {
             logger.debug("Repository: checkRange  rangeLength=" + rangeLength);
             logger.debug("Repository: checkRange  randomLimit=" + randomLimit);
         }
-        logger.debug("Repository: checkRange  mLastSerialNo="+mLastSerialNo);
-        if (mLastSerialNo.compareTo( mMaxSerialNo ) > 0 ||
+        BigInteger lastSerialNo = getLastSerialNo();
+        logger.debug("Repository: checkRange  mLastSerialNo="+lastSerialNo);
+        if (lastSerialNo.compareTo( mMaxSerialNo ) > 0 ||
             ((!engine.isPreOpMode()) && randomLimit != null && mCounter.compareTo(randomLimit) > 0)) {
 
             if (dbSubsystem.getEnableSerialMgmt()) {
                 logger.debug("Reached the end of the range.  Attempting to move to next range");
                 if (!hasNextRange()) {
+                    mRangeExhaustionWarnings.incrementAndGet();
                     if (rangeLength != null && mCounter.compareTo(rangeLength) < 0) {
                         return;
                     } else {
                         throw new EDBException(CMS.getUserMessage("CMS_DBS_LIMIT_REACHED",
-                                                                  mLastSerialNo.toString()));
+                                                                  lastSerialNo.toString()));
                     }
                 }
                 switchToNextRange();
             } else {
                 throw new EDBException(CMS.getUserMessage("CMS_DBS_LIMIT_REACHED",
-                        mLastSerialNo.toString()));
+                        lastSerialNo.toString()));
             }
         }
     }
@@ -493,11 +667,11 @@ public abstract class Repository implements IRepository {
     /**
      * Switch to the next range and persist the changes.
      */
-    private void switchToNextRange()
+    private synchronized void switchToNextRange()
             throws EBaseException {
         mMinSerialNo = mNextMinSerialNo;
         mMaxSerialNo = mNextMaxSerialNo;
-        mLastSerialNo = mMinSerialNo;
+        mRange = new SerialNumberRange(mMinSerialNo.subtract(BigInteger.ONE), mMaxSerialNo, mLowWaterMarkNo);
         mNextMinSerialNo  = null;
         mNextMaxSerialNo  = null;
         mCounter = BigInteger.ZERO;
@@ -528,60 +702,75 @@ public abstract class Repository implements IRepository {
             return;
         }
 
-        if (mLastSerialNo == null)
-            initCache();
+        initCacheIfNeeded();
 
-        BigInteger numsInRange = null;
-        if ((this instanceof CertificateRepository) &&
-            dbSubsystem.getEnableSerialMgmt() && mEnableRandomSerialNumbers) {
-            numsInRange = (mMaxSerialNo.subtract(mMinSerialNo)).subtract(mCounter);
-        } else {
-            numsInRange = mMaxSerialNo.subtract(mLastSerialNo);
-        }
+        // the range request runs without holding the repository lock
+        // so that serial numbers can still be issued in the meantime
+        synchronized (mRangeRequestLock) {
 
-        logger.debug("Repository: Serial numbers left in range: " + numsInRange);
-        logger.debug("Repository: Last serial number: " + mLastSerialNo);
+            BigInteger lastSerialNo = getLastSerialNo();
+            BigInteger numsInRange = null;
+            if ((this instanceof CertificateRepository) &&
+                dbSubsystem.getEnableSerialMgmt() && mEnableRandomSerialNumbers) {
+                numsInRange = (mMaxSerialNo.subtract(mMinSerialNo)).subtract(mCounter);
+            } else {
+                numsInRange = mMaxSerialNo.subtract(lastSerialNo);
+            }
 
-        BigInteger numsInNextRange = null;
-        BigInteger numsAvail = null;
+            logger.debug("Repository: Serial numbers left in range: " + numsInRange);
+            logger.debug("Repository: Last serial number: " + lastSerialNo);
 
-        if ((mNextMaxSerialNo != null) && (mNextMinSerialNo != null)) {
-            numsInNextRange = mNextMaxSerialNo.subtract(mNextMinSerialNo).add(BigInteger.ONE);
-            numsAvail = numsInRange.add(numsInNextRange);
-            logger.debug("Repository: Serial numbers in next range: " + numsInNextRange);
-        } else {
-            numsAvail = numsInRange;
-        }
+            BigInteger numsInNextRange = null;
+            BigInteger numsAvail = null;
 
-        logger.debug("Repository: Serial numbers available: " + numsAvail);
-        logger.debug("Repository: Low water mark: " + mLowWaterMarkNo);
+            if (hasNextRange()) {
+                numsInNextRange = mNextMaxSerialNo.subtract(mNextMinSerialNo).add(BigInteger.ONE);
+                numsAvail = numsInRange.add(numsInNextRange);
+                logger.debug("Repository: Serial numbers in next range: " + numsInNextRange);
+            } else {
+                numsAvail = numsInRange;
+            }
 
-        if ((numsAvail.compareTo(mLowWaterMarkNo) < 0) && (!engine.isPreOpMode())) {
-            logger.debug("Repository: Requesting next range");
-            String nextRange = dbSubsystem.getNextRange(mRepo);
-            logger.debug("Repository: next range: " + nextRange);
+            logger.debug("Repository: Serial numbers available: " + numsAvail);
+            logger.debug("Repository: Low water mark: " + mLowWaterMarkNo);
 
-            mNextMinSerialNo = new BigInteger(nextRange, mRadix);
-            if (mNextMinSerialNo == null) {
-                logger.debug("Repository: Next range not available");
-            } else {
-                logger.debug("Repository: Next min serial number: " + mNextMinSerialNo.toString(mRadix));
-                mNextMaxSerialNo = mNextMinSerialNo.add(mIncrementNo).subtract(BigInteger.ONE);
-                numsAvail = numsAvail.add(mIncrementNo);
-                dbSubsystem.setNextMinSerialConfig(mRepo, mNextMinSerialNo.toString(mRadix));
-                dbSubsystem.setNextMaxSerialConfig(mRepo, mNextMaxSerialNo.toString(mRadix));
+            if ((numsAvail.compareTo(mLowWaterMarkNo) < 0) && (!engine.isPreOpMode())) {
+                logger.debug("Repository: Requesting next range");
+                String nextRange = dbSubsystem.getNextRange(mRepo);
+                logger.debug("Repository: next range: " + nextRange);
+
+                if (nextRange == null) {
+                    logger.warn("Repository: Next range not available");
+                    mRangeExhaustionWarnings.incrementAndGet();
+
+                } else {
+                    BigInteger nextMinSerialNo = new BigInteger(nextRange, mRadix);
+                    BigInteger nextMaxSerialNo = nextMinSerialNo.add(mIncrementNo).subtract(BigInteger.ONE);
+                    logger.debug("Repository: Next min serial number: " + nextMinSerialNo.toString(mRadix));
+
+                    synchronized (this) {
+                        mNextMinSerialNo = nextMinSerialNo;
+                        mNextMaxSerialNo = nextMaxSerialNo;
+                        dbSubsystem.setNextMinSerialConfig(mRepo, nextMinSerialNo.toString(mRadix));
+                        dbSubsystem.setNextMaxSerialConfig(mRepo, nextMaxSerialNo.toString(mRadix));
+                    }
+
+                    numsAvail = numsAvail.add(mIncrementNo);
+                }
             }
-        }
 
-        if (numsInRange.compareTo(mLowWaterMarkNo) < 0) {
-            // check for a replication error
-            logger.debug("Checking for a range conflict");
-            if (dbSubsystem.hasRangeConflict(mRepo)) {
-                logger.debug("Range Conflict found! Removing next range.");
-                mNextMaxSerialNo = null;
-                mNextMinSerialNo = null;
-                dbSubsystem.setNextMinSerialConfig(mRepo, null);
-                dbSubsystem.setNextMaxSerialConfig(mRepo, null);
+            if (numsInRange.compareTo(mLowWaterMarkNo) < 0) {
+                // check for a replication error
+                logger.debug("Checking for a range conflict");
+                if (dbSubsystem.hasRangeConflict(mRepo)) {
+                    logger.debug("Range Conflict found! Removing next range.");
+                    synchronized (this) {
+                        mNextMaxSerialNo = null;
+                        mNextMinSerialNo = null;
+                        dbSubsystem.setNextMinSerialConfig(mRepo, null);
+                        dbSubsystem.setNextMaxSerialConfig(mRepo, null);
+                    }
+                }
             }
         }
     }
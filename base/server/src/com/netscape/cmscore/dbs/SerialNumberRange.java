@@ -0,0 +1,136 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class dispenses sequential serial numbers from a single range
+ * without locking. A new instance is created whenever the repository
+ * switches to another range.
+ *
+ * The number of serial numbers issued and the end of the range are
+ * kept in a single immutable state that is replaced atomically, so
+ * a serial number is never issued beyond an end that has been moved
+ * down concurrently, e.g. to transfer part of the range to a clone.
+ */
+class SerialNumberRange {
+
+    // the last serial number issued before this range was installed
+    final BigInteger last;
+
+    private final AtomicReference<State> state;
+
+    // serial number at which the next range should be prefetched
+    volatile BigInteger prefetchAt;
+
+    final AtomicBoolean prefetchRequested = new AtomicBoolean();
+
+    SerialNumberRange(BigInteger last, BigInteger max, BigInteger lowWaterMark) {
+        this.last = last;
+        this.state = new AtomicReference<>(new State(0, max));
+        this.prefetchAt = getPrefetchAt(max, lowWaterMark);
+    }
+
+    static BigInteger getPrefetchAt(BigInteger max, BigInteger lowWaterMark) {
+        return max == null || lowWaterMark == null ? null : max.subtract(lowWaterMark);
+    }
+
+    BigInteger getMax() {
+        return state.get().max;
+    }
+
+    /**
+     * Updates the end of the range regardless of the serial numbers
+     * already issued.
+     */
+    void setMax(BigInteger max, BigInteger lowWaterMark) {
+
+        while (true) {
+            State current = state.get();
+            if (state.compareAndSet(current, new State(current.issued, max))) {
+                break;
+            }
+        }
+
+        prefetchAt = getPrefetchAt(max, lowWaterMark);
+    }
+
+    /**
+     * Moves the end of the range down to the given serial number
+     * unless a serial number beyond it has already been issued.
+     *
+     * @return true if the end of the range was updated
+     */
+    boolean reduceMax(BigInteger max, BigInteger lowWaterMark) {
+
+        while (true) {
+            State current = state.get();
+
+            if (last.add(BigInteger.valueOf(current.issued)).compareTo(max) > 0) {
+                return false;
+            }
+
+            if (state.compareAndSet(current, new State(current.issued, max))) {
+                break;
+            }
+        }
+
+        prefetchAt = getPrefetchAt(max, lowWaterMark);
+        return true;
+    }
+
+    /**
+     * Returns the next serial number in this range, or null if the
+     * range is exhausted.
+     */
+    BigInteger next() {
+
+        while (true) {
+            State current = state.get();
+            BigInteger serial = last.add(BigInteger.valueOf(current.issued + 1));
+
+            if (current.max != null && serial.compareTo(current.max) > 0) {
+                return null;
+            }
+
+            if (state.compareAndSet(current, new State(current.issued + 1, current.max))) {
+                return serial;
+            }
+        }
+    }
+
+    /**
+     * Returns the last serial number issued from this range.
+     */
+    BigInteger getLast() {
+        return last.add(BigInteger.valueOf(state.get().issued));
+    }
+
+    /**
+     * Returns true exactly once when the given serial number crosses
+     * the low water mark.
+     */
+    boolean shouldPrefetch(BigInteger serial) {
+        BigInteger prefetchAt = this.prefetchAt;
+        return prefetchAt != null
+                && serial.compareTo(prefetchAt) >= 0
+                && prefetchRequested.compareAndSet(false, true);
+    }
+
+    static class State {
+
+        final long issued;
+        final BigInteger max;
+
+        State(long issued, BigInteger max) {
+            this.issued = issued;
+            this.max = max;
+        }
+    }
+}
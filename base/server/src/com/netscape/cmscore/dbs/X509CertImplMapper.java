@@ -303,12 +303,33 @@ public class X509CertImplMapper extends DBAttrMapper {
                 attr = attrs.getAttribute(
                             CertDBSchema.LDAP_ATTR_SIGNED_CERT + ";binary");
             }
-            if (attr != null) {
-                byte der[] = attr.getByteValues().nextElement();
-                X509CertImpl impl = new X509CertImpl(der);
+            if (attr == null) {
+                return;
+            }
+
+            byte der[] = attr.getByteValues().nextElement();
+
+            if (parent instanceof CertRecord) {
+                // defer ASN.1 decoding until the certificate is
+                // actually needed; most scans only use the
+                // searchable attributes below
+                CertRecord record = (CertRecord) parent;
+                record.setEncodedCertificate(der);
 
-                parent.set(name, impl);
+                LDAPAttribute notBefore = attrs.getAttribute(CertDBSchema.LDAP_ATTR_NOT_BEFORE);
+                LDAPAttribute notAfter = attrs.getAttribute(CertDBSchema.LDAP_ATTR_NOT_AFTER);
+
+                if (notBefore != null && notAfter != null) {
+                    record.setValidity(
+                            DateMapper.dateFromDB(notBefore.getStringValues().nextElement()),
+                            DateMapper.dateFromDB(notAfter.getStringValues().nextElement()));
+                }
+                return;
             }
+
+            X509CertImpl impl = new X509CertImpl(der);
+
+            parent.set(name, impl);
         } catch (CertificateException e) {
             //throw new EDBException(
             //	DBResources.FAILED_TO_DESERIALIZE_1, name);
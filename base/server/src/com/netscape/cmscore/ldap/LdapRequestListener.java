@@ -219,7 +219,12 @@ class LdapEnrollmentListener implements IRequestListener {
             if (xcert == null)
                 continue;
             try {
-                mProcessor.publishCert(xcert, r);
+                PublishingOutbox outbox = mProcessor.getOutbox();
+                if (outbox != null) {
+                    outbox.publish(xcert.getSerialNumber(), r);
+                } else {
+                    mProcessor.publishCert(xcert, r);
+                }
 
                 results[i] = IRequest.RES_SUCCESS;
                 logger.debug("acceptX509: Published cert serial no 0x" +
@@ -278,7 +283,12 @@ class LdapRenewalListener implements IRequestListener {
             if (cert == null)
                 continue; // there was an error issuing this cert.
             try {
-                mProcessor.publishCert(cert, r);
+                PublishingOutbox outbox = mProcessor.getOutbox();
+                if (outbox != null) {
+                    outbox.publish(cert.getSerialNumber(), r);
+                } else {
+                    mProcessor.publishCert(cert, r);
+                }
                 results[i] = IRequest.RES_SUCCESS;
                 logger.info("Published cert serial no 0x" +
                                 cert.getSerialNumber().toString(16));
@@ -337,6 +347,14 @@ class LdapRevocationListener implements IRequestListener {
 
             results[i] = IRequest.RES_ERROR;
             try {
+                PublishingOutbox outbox = mProcessor.getOutbox();
+                if (outbox != null) {
+                    // the outbox looks up the enrollment request
+                    outbox.unpublish(cert.getSerialNumber());
+                    results[i] = IRequest.RES_SUCCESS;
+                    continue;
+                }
+
                 // We need the enrollment request to sort out predicate
                 BigInteger serial = cert.getSerialNumber();
                 CertRecord certRecord = null;
@@ -441,6 +459,14 @@ class LdapUnrevocationListener implements IRequestListener {
             results[i] = IRequest.RES_ERROR;
             xcert = (X509CertImpl) certs[i];
             try {
+                PublishingOutbox outbox = mProcessor.getOutbox();
+                if (outbox != null) {
+                    // the outbox looks up the enrollment request
+                    outbox.publish(xcert.getSerialNumber(), null);
+                    results[i] = IRequest.RES_SUCCESS;
+                    continue;
+                }
+
                 // We need the enrollment request to sort out predicate
                 BigInteger serial = xcert.getSerialNumber();
                 CertRecord certRecord = null;
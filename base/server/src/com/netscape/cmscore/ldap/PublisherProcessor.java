@@ -17,6 +17,7 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.ldap;
 
+import java.io.File;
 import java.math.BigInteger;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
@@ -49,8 +50,10 @@ import com.netscape.certsrv.publish.RulePlugin;
 import com.netscape.certsrv.request.IRequest;
 import com.netscape.certsrv.request.IRequestNotifier;
 import com.netscape.cmscore.apps.CMS;
+import com.netscape.cmscore.apps.CMSEngine;
 import com.netscape.cmscore.dbs.CertRecord;
 import com.netscape.cmscore.dbs.CertificateRepository;
+import com.netscape.cmscore.request.RequestNotifier;
 
 import netscape.ldap.LDAPConnection;
 
@@ -65,6 +68,7 @@ public class PublisherProcessor implements IXcertPublisherProcessor {
     public final static String PROP_PUBLISH_SUBSTORE = "publish";
     public final static String PROP_LDAP_PUBLISH_SUBSTORE = "ldappublish";
     public final static String PROP_QUEUE_PUBLISH_SUBSTORE = "queue";
+    public final static String PROP_OUTBOX_SUBSTORE = "outbox";
 
     public final static String PROP_LOCAL_CA = "cacert";
     public final static String PROP_LOCAL_CRL = "crl";
@@ -102,6 +106,10 @@ public class PublisherProcessor implements IXcertPublisherProcessor {
 
     protected ICertAuthority mAuthority = null;
     protected LdapRequestListener mLdapRequestListener = null;
+    protected PublishingOutbox mOutbox = null;
+
+    // connection shared by the operations of a publishing batch
+    private ThreadLocal<LDAPConnection> mBatchConn = new ThreadLocal<>();
     private boolean mCreateOwnDNEntry = false;
     private boolean mInited = false;
 
@@ -416,19 +424,113 @@ public class PublisherProcessor implements IXcertPublisherProcessor {
                           "  Maximum Number of Threads: " + maxNumberOfPublishingThreads +
                           "  Page Size: " + publishingQueuePageSize);
                 IRequestNotifier reqNotifier = ((ICertificateAuthority) mAuthority).getRequestNotifier();
+
+                if (reqNotifier instanceof RequestNotifier) {
+                    int dispatchThreads = queueConfig.getInteger("dispatchThreads", 0);
+                    int dispatchQueueSize = queueConfig.getInteger("dispatchQueueSize", 1000);
+                    boolean virtualThreads = queueConfig.getBoolean("virtualThreads", false);
+                    ((RequestNotifier) reqNotifier).setDispatchPool(
+                            dispatchThreads,
+                            dispatchQueueSize,
+                            virtualThreads);
+                }
+
                 reqNotifier.setPublishingQueue(isPublishingQueueEnabled,
                                                 publishingQueuePriorityLevel,
                                                 maxNumberOfPublishingThreads,
                                                 publishingQueuePageSize,
                                                 savePublishingStatus);
+
+                IConfigStore outboxConfig = queueConfig.getSubStore(PROP_OUTBOX_SUBSTORE);
+                if (outboxConfig.getBoolean(PROP_ENABLE, false)) {
+                    startOutbox(outboxConfig);
+                }
             }
         }
 
         mLdapRequestListener = listener;
     }
 
+    private void startOutbox(IConfigStore config) throws EBaseException {
+
+        CMSEngine engine = CMS.getCMSEngine();
+
+        String defaultJournal = engine.getInstanceDir() + File.separator + "ca" + File.separator
+                + "publish" + File.separator + "outbox.journal";
+        String journal = config.getString(PublishingOutbox.PROP_JOURNAL, defaultJournal);
+        int workers = config.getInteger(PublishingOutbox.PROP_WORKERS, 4);
+
+        logger.info("PublisherProcessor: Starting publishing outbox with " + workers + " worker(s)");
+
+        PublishingOutbox outbox = new PublishingOutbox(this, new File(journal), workers);
+        outbox.setBatchSize(config.getInteger(PublishingOutbox.PROP_BATCH_SIZE, 50));
+        outbox.setMaxAttempts(config.getInteger(PublishingOutbox.PROP_MAX_ATTEMPTS, 5));
+        outbox.setRetryDelay(config.getInteger(PublishingOutbox.PROP_RETRY_DELAY, 5) * 1000L);
+        outbox.setSync(config.getBoolean(PublishingOutbox.PROP_SYNC, true));
+        outbox.start();
+
+        mOutbox = outbox;
+    }
+
+    /**
+     * Returns the publishing outbox, or null if certificates are
+     * published synchronously.
+     */
+    public PublishingOutbox getOutbox() {
+        return mOutbox;
+    }
+
+    /**
+     * Binds a single LDAP connection to the current thread so that
+     * subsequent publishing operations can share it.
+     */
+    void beginBatch() throws ELdapException {
+        if (mLdapConnModule != null) {
+            mBatchConn.set(mLdapConnModule.getConn());
+        }
+    }
+
+    /**
+     * Releases the connection bound by beginBatch().
+     */
+    void endBatch() {
+        LDAPConnection conn = mBatchConn.get();
+        mBatchConn.remove();
+        if (conn == null) {
+            return;
+        }
+        try {
+            mLdapConnModule.returnConn(conn);
+        } catch (ELdapException e) {
+            logger.warn("PublisherProcessor: Unable to return connection: " + e.getMessage(), e);
+        }
+    }
+
+    private LDAPConnection getConn() throws ELdapException {
+        LDAPConnection conn = mBatchConn.get();
+        if (conn != null) {
+            return conn;
+        }
+        if (mLdapConnModule != null) {
+            return mLdapConnModule.getConn();
+        }
+        return null;
+    }
+
+    private void returnConn(LDAPConnection conn) throws ELdapException {
+        if (conn != mBatchConn.get()) {
+            mLdapConnModule.returnConn(conn);
+        }
+    }
+
     public void shutdown() {
         logger.debug("Shuting down publishing.");
+
+        if (mOutbox != null) {
+            mOutbox.shutdown();
+            mOutbox = null;
+        }
+
         try {
             if (mLdapConnModule != null) {
                 mLdapConnModule.getLdapConnFactory().reset();
@@ -1409,13 +1511,7 @@ public class PublisherProcessor implements IXcertPublisherProcessor {
             Object dirdn = null;
 
             if (mapper != null) {
-                if (mLdapConnModule != null) {
-                    try {
-                        conn = mLdapConnModule.getConn();
-                    } catch (ELdapException e) {
-                        throw e;
-                    }
-                }
+                conn = getConn();
                 try {
                     if ((mapper instanceof com.netscape.cms.publish.mappers.LdapCertSubjMap) &&
                             ((com.netscape.cms.publish.mappers.LdapCertSubjMap) mapper).useAllEntries()) {
@@ -1455,7 +1551,7 @@ public class PublisherProcessor implements IXcertPublisherProcessor {
             throw new ELdapException(CMS.getUserMessage("CMS_LDAP_NO_MATCH", e.toString()));
         } finally {
             if (conn != null) {
-                mLdapConnModule.returnConn(conn);
+                returnConn(conn);
             }
         }
     }
@@ -1477,9 +1573,7 @@ public class PublisherProcessor implements IXcertPublisherProcessor {
             String dirdn = null;
 
             if (mapper != null) {
-                if (mLdapConnModule != null) {
-                    conn = mLdapConnModule.getConn();
-                }
+                conn = getConn();
                 try {
                     dirdn = mapper.map(conn, r, caCert);
                     logger.debug("PublisherProcessor: dirdn=" + dirdn);
@@ -1507,7 +1601,7 @@ public class PublisherProcessor implements IXcertPublisherProcessor {
             throw new ELdapException(CMS.getUserMessage("CMS_LDAP_NO_MATCH", e.toString()));
         } finally {
             if (conn != null) {
-                mLdapConnModule.returnConn(conn);
+                returnConn(conn);
             }
         }
     }
@@ -1522,9 +1616,7 @@ public class PublisherProcessor implements IXcertPublisherProcessor {
             String dirdn = null;
 
             if (mapper != null) {
-                if (mLdapConnModule != null) {
-                    conn = mLdapConnModule.getConn();
-                }
+                conn = getConn();
                 dirdn = mapper.map(conn, r, obj);
             }
             X509Certificate cert = (X509Certificate) obj;
@@ -1538,7 +1630,7 @@ public class PublisherProcessor implements IXcertPublisherProcessor {
             throw e;
         } finally {
             if (conn != null) {
-                mLdapConnModule.returnConn(conn);
+                returnConn(conn);
             }
         }
     }
@@ -0,0 +1,649 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.ldap;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.dogtagpki.server.ca.ICertificateAuthority;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.certsrv.base.MetaInfo;
+import com.netscape.certsrv.ldap.ELdapException;
+import com.netscape.certsrv.request.IRequest;
+import com.netscape.certsrv.request.RequestId;
+import com.netscape.cmscore.dbs.CertRecord;
+import com.netscape.cmscore.dbs.CertificateRepository;
+
+/**
+ * This class implements a persistent outbox for certificate publishing.
+ *
+ * Publishing operations are appended to a local journal and processed
+ * asynchronously by a set of workers. Operations for the same certificate
+ * are coalesced, so only the latest pending operation is published, and
+ * always handled by the same worker to preserve their order. Each worker
+ * processes operations in batches over a single LDAP connection.
+ *
+ * Operations that have not completed are replayed from the journal on
+ * startup, so the request repository does not have to be rescanned.
+ * A superseded operation is only removed from the journal when the
+ * operation that superseded it completes.
+ *
+ * Operations that still fail after the maximum number of attempts are
+ * marked as failed in the journal. They are kept in the journal and
+ * reported on startup, but not retried, until a newer operation for
+ * the same certificate completes.
+ */
+public class PublishingOutbox {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(PublishingOutbox.class);
+
+    public final static String PUBLISH = "P";
+    public final static String UNPUBLISH = "U";
+
+    public final static String PROP_JOURNAL = "journal";
+    public final static String PROP_WORKERS = "workers";
+    public final static String PROP_BATCH_SIZE = "batchSize";
+    public final static String PROP_MAX_ATTEMPTS = "maxAttempts";
+    public final static String PROP_RETRY_DELAY = "retryDelay";
+    public final static String PROP_SYNC = "sync";
+
+    PublisherProcessor processor;
+    File journalFile;
+
+    int batchSize = 50;
+    int maxAttempts = 5;
+    long retryDelay = 5000; // milliseconds
+    boolean sync = true;
+
+    Partition[] partitions;
+
+    // journaled operations that have not completed yet
+    Map<Long, Operation> openOperations = new ConcurrentHashMap<>();
+
+    // journaled operations that failed after the maximum number of attempts
+    Map<Long, Operation> failedOperations = new ConcurrentHashMap<>();
+
+    Object journalLock = new Object();
+    FileOutputStream journalStream;
+    Writer journal;
+    long nextSeq = 1;
+    long journalEntries;
+
+    ExecutorService executorService;
+    volatile boolean running;
+
+    public PublishingOutbox(PublisherProcessor processor, File journalFile, int workers) {
+        this.processor = processor;
+        this.journalFile = journalFile;
+
+        partitions = new Partition[Math.max(1, workers)];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(i);
+        }
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * Replays the journal and starts the workers.
+     */
+    public void start() throws ELdapException {
+
+        logger.info("PublishingOutbox: Journal: " + journalFile);
+
+        try {
+            File dir = journalFile.getParentFile();
+            if (dir != null && !dir.exists()) {
+                dir.mkdirs();
+            }
+
+            replay();
+            compact();
+
+        } catch (IOException e) {
+            logger.error("PublishingOutbox: Unable to open journal: " + e.getMessage(), e);
+            throw new ELdapException("Unable to open publishing journal: " + e.getMessage(), e);
+        }
+
+        running = true;
+
+        AtomicInteger counter = new AtomicInteger();
+        executorService = Executors.newFixedThreadPool(partitions.length, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "PublishingOutbox-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        for (Partition partition : partitions) {
+            executorService.execute(partition);
+        }
+    }
+
+    /**
+     * Queues a certificate to be published.
+     *
+     * @param serialNumber certificate serial number
+     * @param request request which provides the publishing criteria, or null
+     */
+    public void publish(BigInteger serialNumber, IRequest request) throws ELdapException {
+        add(PUBLISH, serialNumber, request == null ? null : request.getRequestId());
+    }
+
+    /**
+     * Queues a certificate to be unpublished.
+     *
+     * @param serialNumber certificate serial number
+     */
+    public void unpublish(BigInteger serialNumber) throws ELdapException {
+        add(UNPUBLISH, serialNumber, null);
+    }
+
+    void add(String action, BigInteger serialNumber, RequestId requestId) throws ELdapException {
+
+        Operation op = new Operation();
+        op.action = action;
+        op.serialNumber = serialNumber;
+        op.requestId = requestId == null ? null : requestId.toString();
+
+        synchronized (journalLock) {
+            op.seq = nextSeq++;
+            try {
+                writeJournal("+ " + op);
+                flushJournal();
+            } catch (IOException e) {
+                logger.error("PublishingOutbox: Unable to write journal: " + e.getMessage(), e);
+                throw new ELdapException("Unable to write publishing journal: " + e.getMessage(), e);
+            }
+            openOperations.put(op.seq, op);
+
+            // queue the operation while holding the lock so that the
+            // operations of a certificate are queued in sequence order
+            getPartition(serialNumber).add(op);
+        }
+
+        logger.debug("PublishingOutbox: Queued " + op);
+    }
+
+    /**
+     * Returns the number of operations waiting to be published.
+     */
+    public int getPendingOperations() {
+        return openOperations.size();
+    }
+
+    /**
+     * Returns the number of operations that failed after the maximum
+     * number of attempts.
+     */
+    public int getFailedOperations() {
+        return failedOperations.size();
+    }
+
+    Partition getPartition(BigInteger serialNumber) {
+        int index = (serialNumber.hashCode() & Integer.MAX_VALUE) % partitions.length;
+        return partitions[index];
+    }
+
+    /**
+     * Processes a batch of operations over a single LDAP connection.
+     */
+    void process(List<Operation> batch) {
+
+        List<Operation> completed = new ArrayList<>();
+        List<Operation> failed = new ArrayList<>();
+
+        try {
+            processor.beginBatch();
+
+        } catch (ELdapException e) {
+            logger.warn("PublishingOutbox: Unable to get LDAP connection: " + e.getMessage(), e);
+            for (Operation op : batch) {
+                retry(op, completed, failed);
+            }
+            complete(completed, failed);
+            return;
+        }
+
+        try {
+            for (Operation op : batch) {
+                try {
+                    processOperation(op);
+                    completed.add(op);
+
+                } catch (Exception e) {
+                    logger.warn("PublishingOutbox: Unable to process " + op + ": " + e.getMessage(), e);
+                    retry(op, completed, failed);
+                }
+            }
+
+        } finally {
+            processor.endBatch();
+        }
+
+        complete(completed, failed);
+    }
+
+    void processOperation(Operation op) throws EBaseException {
+
+        ICertificateAuthority ca = (ICertificateAuthority) processor.getAuthority();
+        CertificateRepository certdb = ca.getCertificateRepository();
+        CertRecord certRecord = certdb.readCertificateRecord(op.serialNumber);
+        X509CertImpl cert = certRecord.getCertificate();
+
+        String requestId = op.requestId;
+        if (requestId == null) {
+            // we need the enrollment request to sort out predicate
+            MetaInfo metaInfo = (MetaInfo) certRecord.get(CertRecord.ATTR_META_INFO);
+            if (metaInfo != null) {
+                requestId = (String) metaInfo.get(CertRecord.META_REQUEST_ID);
+            }
+        }
+
+        IRequest request = null;
+        if (requestId != null) {
+            request = ca.getRequestQueue().findRequest(new RequestId(requestId));
+        }
+
+        if (PUBLISH.equals(op.action)) {
+            processor.publishCert(cert, request);
+        } else {
+            processor.unpublishCert(cert, request);
+        }
+
+        logger.debug("PublishingOutbox: Processed " + op);
+    }
+
+    void retry(Operation op, List<Operation> completed, List<Operation> failed) {
+
+        op.attempts++;
+
+        if (op.attempts >= maxAttempts) {
+            logger.error("PublishingOutbox: Giving up on " + op + " after " + op.attempts + " attempts");
+            failed.add(op);
+            return;
+        }
+
+        op.notBefore = System.currentTimeMillis() + (retryDelay << Math.min(op.attempts - 1, 10));
+
+        if (!getPartition(op.serialNumber).requeue(op)) {
+            // superseded by a newer operation for the same certificate
+            completed.add(op);
+        }
+    }
+
+    void complete(List<Operation> ops, List<Operation> failed) {
+
+        if (ops.isEmpty() && failed.isEmpty()) {
+            return;
+        }
+
+        synchronized (journalLock) {
+            try {
+                for (Operation op : ops) {
+                    writeJournal("- " + op.seq);
+                    openOperations.remove(op.seq);
+
+                    // retire the operations that this operation superseded
+                    for (Long seq : op.superseded) {
+                        writeJournal("- " + seq);
+                    }
+
+                    // and the failed operations for the same certificate
+                    Iterator<Operation> i = failedOperations.values().iterator();
+                    while (i.hasNext()) {
+                        Operation failedOp = i.next();
+                        if (failedOp.serialNumber.equals(op.serialNumber) && failedOp.seq < op.seq) {
+                            writeJournal("- " + failedOp.seq);
+                            i.remove();
+                        }
+                    }
+                }
+
+                for (Operation op : failed) {
+                    writeJournal("! " + op.seq);
+                    openOperations.remove(op.seq);
+                    failedOperations.put(op.seq, op);
+                }
+
+                flushJournal();
+
+                if (journalEntries > 10000 && journalEntries > 4L * openOperations.size()) {
+                    compact();
+                }
+
+            } catch (IOException e) {
+                logger.warn("PublishingOutbox: Unable to write journal: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Loads operations that have not completed from the journal.
+     */
+    void replay() throws IOException {
+
+        if (!journalFile.exists()) {
+            return;
+        }
+
+        Map<Long, Operation> ops = new TreeMap<>();
+        Map<Long, Operation> failed = new TreeMap<>();
+
+        try (BufferedReader in = Files.newBufferedReader(journalFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                try {
+                    if (line.startsWith("+ ")) {
+                        Operation op = Operation.parse(line.substring(2));
+                        ops.put(op.seq, op);
+                        nextSeq = Math.max(nextSeq, op.seq + 1);
+
+                    } else if (line.startsWith("! ")) {
+                        Long seq = Long.valueOf(line.substring(2).trim());
+                        Operation op = ops.remove(seq);
+                        if (op != null) {
+                            failed.put(seq, op);
+                        }
+
+                    } else if (line.startsWith("- ")) {
+                        Long seq = Long.valueOf(line.substring(2).trim());
+                        ops.remove(seq);
+                        failed.remove(seq);
+                    }
+
+                } catch (RuntimeException e) {
+                    // a partially written entry at the end of the journal
+                    logger.warn("PublishingOutbox: Ignoring invalid journal entry: " + line);
+                }
+            }
+        }
+
+        for (Operation op : ops.values()) {
+            openOperations.put(op.seq, op);
+            getPartition(op.serialNumber).add(op);
+        }
+
+        for (Operation op : failed.values()) {
+            logger.warn("PublishingOutbox: Failed operation in journal: " + op);
+            failedOperations.put(op.seq, op);
+        }
+
+        logger.info("PublishingOutbox: Recovered " + ops.size() + " pending operation(s)");
+    }
+
+    /**
+     * Rewrites the journal with the operations that have not completed.
+     * Must be called with the journal lock held.
+     */
+    void compact() throws IOException {
+
+        closeJournal();
+
+        File tmpFile = new File(journalFile.getPath() + ".tmp");
+
+        Map<Long, Operation> ops = new TreeMap<>(openOperations);
+        ops.putAll(failedOperations);
+
+        try (FileOutputStream out = new FileOutputStream(tmpFile);
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+
+            for (Operation op : ops.values()) {
+                writer.write("+ " + op + "\n");
+                if (failedOperations.containsKey(op.seq)) {
+                    writer.write("! " + op.seq + "\n");
+                }
+            }
+
+            writer.flush();
+            out.getFD().sync();
+        }
+
+        Files.move(tmpFile.toPath(), journalFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journalStream = new FileOutputStream(journalFile, true);
+        journal = new OutputStreamWriter(journalStream, StandardCharsets.UTF_8);
+        journalEntries = ops.size();
+    }
+
+    void writeJournal(String entry) throws IOException {
+        journal.write(entry);
+        journal.write('\n');
+        journalEntries++;
+    }
+
+    void flushJournal() throws IOException {
+        journal.flush();
+        if (sync) {
+            journalStream.getFD().sync();
+        }
+    }
+
+    void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.warn("PublishingOutbox: Unable to close journal: " + e.getMessage(), e);
+        }
+        journal = null;
+        journalStream = null;
+    }
+
+    public void shutdown() {
+
+        running = false;
+
+        for (Partition partition : partitions) {
+            partition.wakeUp();
+        }
+
+        if (executorService != null) {
+            executorService.shutdown();
+            try {
+                executorService.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized (journalLock) {
+            closeJournal();
+        }
+
+        logger.info("PublishingOutbox: " + openOperations.size() + " operation(s) left in journal");
+    }
+
+    /**
+     * A single publishing operation.
+     */
+    static class Operation {
+
+        long seq;
+        String action;
+        BigInteger serialNumber;
+        String requestId;
+
+        // not journaled
+        int attempts;
+        long notBefore;
+
+        // sequence numbers of the operations superseded by this operation
+        List<Long> superseded = new ArrayList<>();
+
+        void supersede(Operation op) {
+            superseded.add(op.seq);
+            superseded.addAll(op.superseded);
+        }
+
+        static Operation parse(String value) {
+            String[] fields = value.trim().split(" ");
+            Operation op = new Operation();
+            op.seq = Long.parseLong(fields[0]);
+            op.action = fields[1];
+            op.serialNumber = new BigInteger(fields[2], 16);
+            op.requestId = "-".equals(fields[3]) ? null : fields[3];
+            return op;
+        }
+
+        public String toString() {
+            return seq + " " + action + " " + serialNumber.toString(16) + " " + (requestId == null ? "-" : requestId);
+        }
+    }
+
+    /**
+     * Pending operations handled by a single worker, keyed by
+     * certificate serial number.
+     */
+    class Partition implements Runnable {
+
+        int index;
+        LinkedHashMap<BigInteger, Operation> pending = new LinkedHashMap<>();
+
+        Partition(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Queues an operation unless a newer operation for the same
+         * certificate is already pending.
+         */
+        synchronized void add(Operation op) {
+
+            Operation previous = pending.get(op.serialNumber);
+
+            if (previous != null && previous.seq > op.seq) {
+                logger.debug("PublishingOutbox: " + previous + " supersedes " + op);
+                previous.supersede(op);
+                openOperations.remove(op.seq);
+                return;
+            }
+
+            pending.put(op.serialNumber, op);
+
+            if (previous != null) {
+                logger.debug("PublishingOutbox: " + op + " supersedes " + previous);
+                op.supersede(previous);
+                openOperations.remove(previous.seq);
+            }
+
+            notifyAll();
+        }
+
+        /**
+         * Puts back a failed operation unless a newer operation for
+         * the same certificate has been queued in the meantime.
+         */
+        synchronized boolean requeue(Operation op) {
+
+            Operation current = pending.get(op.serialNumber);
+
+            if (current != null && current.seq > op.seq) {
+                return false;
+            }
+
+            pending.put(op.serialNumber, op);
+
+            if (current != null) {
+                op.supersede(current);
+                openOperations.remove(current.seq);
+            }
+
+            return true;
+        }
+
+        synchronized void wakeUp() {
+            notifyAll();
+        }
+
+        synchronized List<Operation> takeBatch() throws InterruptedException {
+
+            while (running) {
+
+                List<Operation> batch = new ArrayList<>();
+                long now = System.currentTimeMillis();
+                long wait = 0;
+
+                Iterator<Operation> i = pending.values().iterator();
+                while (i.hasNext() && batch.size() < batchSize) {
+                    Operation op = i.next();
+                    if (op.notBefore > now) {
+                        long delay = op.notBefore - now;
+                        wait = wait == 0 ? delay : Math.min(wait, delay);
+                        continue;
+                    }
+                    i.remove();
+                    batch.add(op);
+                }
+
+                if (!batch.isEmpty()) {
+                    return batch;
+                }
+
+                wait(wait);
+            }
+
+            return null;
+        }
+
+        public void run() {
+            logger.debug("PublishingOutbox: Starting worker " + index);
+            try {
+                List<Operation> batch;
+                while ((batch = takeBatch()) != null) {
+                    process(batch);
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+            } catch (Throwable e) {
+                logger.error("PublishingOutbox: Worker " + index + " failed: " + e.getMessage(), e);
+            }
+            logger.debug("PublishingOutbox: Stopping worker " + index);
+        }
+    }
+}
@@ -21,6 +21,9 @@ import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.ldap.ELdapException;
 import com.netscape.certsrv.ldap.ELdapServerDownException;
 import com.netscape.certsrv.ldap.ILdapConnFactory;
+import com.netscape.cmscore.metrics.Gauge;
+import com.netscape.cmscore.metrics.LatencyTimer;
+import com.netscape.cmscore.metrics.MetricsRegistry;
 import com.netscape.cmsutil.password.IPasswordStore;
 
 import netscape.ldap.LDAPConnection;
@@ -69,6 +72,11 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
     private int mNumConns = 0; // number of available conns in array
     private int mTotal = 0; // total num conns
 
+    // pool metrics shared by the factories with the same ID
+    private Gauge mTotalGauge;
+    private Gauge mInUseGauge;
+    private LatencyTimer mWaitTimer;
+
     private boolean doCloning = true;
     private LdapBoundConnection mMasterConn = null; // master connection object.
     private LdapBoundConnection[] mConns;
@@ -256,6 +264,22 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
 
         mConns = new LdapBoundConnection[mMaxConns];
 
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        String pool = String.valueOf(id);
+
+        mTotalGauge = metrics.getGauge(
+                "pki_ldap_connections",
+                "Number of connections in LDAP connection pools",
+                "pool", pool);
+        mInUseGauge = metrics.getGauge(
+                "pki_ldap_connections_in_use",
+                "Number of connections obtained from LDAP connection pools",
+                "pool", pool);
+        mWaitTimer = metrics.getTimer(
+                "pki_ldap_connection_wait_seconds",
+                "Time spent obtaining connections from LDAP connection pools",
+                "pool", pool);
+
         // Create connection handle and make initial connection
         makeConnection(mErrorIfDown);
 
@@ -372,6 +396,7 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
 
             mTotal += increment;
             mNumConns += increment;
+            mTotalGauge.add(increment);
 
             logger.debug("LdapBoundConnFactory: total connections: " + mTotal);
             logger.debug("LdapBoundConnFactory: number of connections: " + mNumConns);
@@ -426,6 +451,7 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
      */
     public synchronized LdapBoundConnection getConn(boolean waitForConn)
             throws ELdapException {
+        long startTime = System.nanoTime();
         boolean waited = false;
 
         logger.debug("LdapBoundConnFactory: getting a connection");
@@ -507,6 +533,9 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
             throw new ELdapException("Unable to set LDAP size limit: " + e.getMessage(), e);
         }
 
+        mInUseGauge.increment();
+        mWaitTimer.recordSince(startTime);
+
         return conn;
     }
 
@@ -552,6 +581,7 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
         }
 
         mConns[mNumConns++] = boundconn;
+        mInUseGauge.decrement();
         logger.debug("LdapBoundConnFactory: number of connections: " + mNumConns);
 
         notify();
@@ -590,6 +620,9 @@ public class LdapBoundConnFactory implements ILdapConnFactory {
                 }
             }
             mMasterConn = null;
+            if (mTotalGauge != null) {
+                mTotalGauge.add(-mTotal);
+            }
             mTotal = 0;
             mNumConns = 0;
         } else {
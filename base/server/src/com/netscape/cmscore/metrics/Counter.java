@@ -0,0 +1,42 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class implements a monotonically increasing counter.
+ */
+public class Counter extends Metric {
+
+    private LongAdder value = new LongAdder();
+
+    public Counter(String name, String labels) {
+        super(name, labels);
+    }
+
+    public String getType() {
+        return "counter";
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long getValue() {
+        return value.sum();
+    }
+
+    public void write(Writer out) throws IOException {
+        writeSample(out, name, labels, getValue());
+    }
+}
@@ -0,0 +1,70 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * This class implements a gauge. The value is either updated by the
+ * component that owns it, or obtained from a supplier when the gauge
+ * is read.
+ */
+public class Gauge extends Metric {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(Gauge.class);
+
+    private AtomicLong value = new AtomicLong();
+    private DoubleSupplier supplier;
+
+    public Gauge(String name, String labels) {
+        super(name, labels);
+    }
+
+    public Gauge(String name, String labels, DoubleSupplier supplier) {
+        super(name, labels);
+        this.supplier = supplier;
+    }
+
+    public String getType() {
+        return "gauge";
+    }
+
+    public void set(long value) {
+        this.value.set(value);
+    }
+
+    public void add(long amount) {
+        value.addAndGet(amount);
+    }
+
+    public void increment() {
+        value.incrementAndGet();
+    }
+
+    public void decrement() {
+        value.decrementAndGet();
+    }
+
+    public double getValue() {
+        return supplier == null ? value.get() : supplier.getAsDouble();
+    }
+
+    public void write(Writer out) throws IOException {
+
+        double value;
+        try {
+            value = getValue();
+        } catch (RuntimeException e) {
+            logger.warn("Gauge: Unable to get " + name + labels + ": " + e.getMessage(), e);
+            return;
+        }
+
+        writeSample(out, name, labels, value);
+    }
+}
@@ -0,0 +1,248 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class records operation durations in a log-linear histogram
+ * like HdrHistogram: each power of two microseconds is divided into
+ * 16 buckets, so the percentiles are accurate to about 6% from one
+ * microsecond up to about 12 days.
+ *
+ * The percentiles are calculated over a sliding window of one to two
+ * intervals. The window is rotated by the first thread that records
+ * or reads the timer after the interval has elapsed. The total count
+ * and sum cover all operations since the timer was created.
+ */
+public class LatencyTimer extends Metric {
+
+    public static final long DEFAULT_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    public static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // largest recorded value is 2^(MAX_EXPONENT+1)-1 microseconds
+    static final int MAX_EXPONENT = 40;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private long interval; // nanoseconds
+
+    private LongAdder count = new LongAdder();
+    private LongAdder sum = new LongAdder(); // nanoseconds
+
+    private volatile Histogram current = new Histogram();
+    private volatile Histogram previous = new Histogram();
+    private AtomicLong nextRotation;
+
+    public LatencyTimer(String name, String labels) {
+        this(name, labels, DEFAULT_INTERVAL);
+    }
+
+    public LatencyTimer(String name, String labels, long interval) {
+        super(name, labels);
+        this.interval = interval;
+        this.nextRotation = new AtomicLong(System.nanoTime() + interval);
+    }
+
+    public String getType() {
+        return "summary";
+    }
+
+    /**
+     * Records the duration of an operation.
+     *
+     * @param duration duration in nanoseconds
+     */
+    public void record(long duration) {
+
+        if (duration < 0) duration = 0;
+
+        count.increment();
+        sum.add(duration);
+
+        rotate(System.nanoTime());
+        current.record(duration / 1000);
+    }
+
+    public void record(long duration, TimeUnit unit) {
+        record(unit.toNanos(duration));
+    }
+
+    /**
+     * Records the time elapsed since the given System.nanoTime().
+     */
+    public void recordSince(long startTime) {
+        record(System.nanoTime() - startTime);
+    }
+
+    void rotate(long now) {
+
+        long rotation = nextRotation.get();
+        if (now < rotation) return;
+
+        if (!nextRotation.compareAndSet(rotation, now + interval)) {
+            return; // rotated by another thread
+        }
+
+        // discard the current histogram too if it has not been
+        // rotated for more than a whole interval
+        previous = now - rotation >= interval ? new Histogram() : current;
+        current = new Histogram();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the total duration in nanoseconds.
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the duration at the given quantile in the current window
+     * in nanoseconds, or -1 if there are no recorded operations.
+     */
+    public long getPercentile(double quantile) {
+        return getSnapshot().getPercentile(quantile);
+    }
+
+    public Snapshot getSnapshot() {
+
+        rotate(System.nanoTime());
+
+        Histogram current = this.current;
+        Histogram previous = this.previous;
+
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = current.counts.get(i) + previous.counts.get(i);
+            total += counts[i];
+        }
+
+        long max = Math.max(current.max.get(), previous.max.get());
+
+        return new Snapshot(counts, total, max);
+    }
+
+    public void write(Writer out) throws IOException {
+
+        Snapshot snapshot = getSnapshot();
+        String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+
+        for (double quantile : QUANTILES) {
+            long value = snapshot.getPercentile(quantile);
+            writeSample(out, name, prefix + "quantile=\"" + quantile + "\"}",
+                    value < 0 ? Double.NaN : value / 1e9);
+        }
+
+        writeSample(out, name + "_sum", labels, getSum() / 1e9);
+        writeSample(out, name + "_count", labels, getCount());
+    }
+
+    static int getBucket(long micros) {
+
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(micros, 0);
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+
+        int mantissa = (int) (micros >>> (exponent - SUB_BUCKET_BITS));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the highest value in microseconds that falls into the bucket.
+     */
+    static long getUpperBound(int bucket) {
+
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((mantissa + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    static class Histogram {
+
+        AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long micros) {
+            counts.incrementAndGet(getBucket(micros));
+            max.accumulate(micros);
+        }
+    }
+
+    /**
+     * The histogram of the current window.
+     */
+    public static class Snapshot {
+
+        long[] counts;
+        long total;
+        long max; // microseconds
+
+        Snapshot(long[] counts, long total, long max) {
+            this.counts = counts;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        /**
+         * Returns the maximum duration in nanoseconds.
+         */
+        public long getMax() {
+            return max * 1000;
+        }
+
+        /**
+         * Returns the duration at the given quantile in nanoseconds,
+         * or -1 if there are no recorded operations.
+         */
+        public long getPercentile(double quantile) {
+
+            if (total == 0) return -1;
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * total));
+            long cumulative = 0;
+
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                if (cumulative >= rank) {
+                    return Math.min(getUpperBound(i), max) * 1000;
+                }
+            }
+
+            return max * 1000;
+        }
+    }
+}
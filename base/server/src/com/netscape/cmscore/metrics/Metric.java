@@ -0,0 +1,66 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * This class is the base class of the metrics in MetricsRegistry.
+ */
+public abstract class Metric {
+
+    String name;
+    String labels;
+
+    protected Metric(String name, String labels) {
+        this.name = name;
+        this.labels = labels;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the labels in Prometheus format, e.g. {pool="DBSubsystem"},
+     * or an empty string if the metric has no labels.
+     */
+    public String getLabels() {
+        return labels;
+    }
+
+    /**
+     * Returns the Prometheus metric type.
+     */
+    public abstract String getType();
+
+    /**
+     * Writes the samples of the metric in Prometheus text format.
+     */
+    public abstract void write(Writer out) throws IOException;
+
+    static void writeSample(Writer out, String name, String labels, double value) throws IOException {
+        out.write(name);
+        out.write(labels);
+        out.write(' ');
+        out.write(format(value));
+        out.write('\n');
+    }
+
+    static String format(double value) {
+
+        if (Double.isNaN(value)) return "NaN";
+        if (value == Double.POSITIVE_INFINITY) return "+Inf";
+        if (value == Double.NEGATIVE_INFINITY) return "-Inf";
+
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+
+        return Double.toString(value);
+    }
+}
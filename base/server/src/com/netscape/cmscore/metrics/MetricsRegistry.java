@@ -0,0 +1,182 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Function;
+
+/**
+ * This class keeps the counters, gauges, and timers of the subsystem
+ * and writes them in Prometheus text format.
+ *
+ * Metrics are identified by a name and optional label pairs, e.g.
+ *
+ * <pre>
+ * LatencyTimer timer = MetricsRegistry.getInstance().getTimer(
+ *         "pki_ldap_connection_wait_seconds",
+ *         "Time spent waiting for LDAP connections",
+ *         "pool", "DBSubsystem");
+ * </pre>
+ *
+ * The metrics are created on first use and kept in concurrent maps,
+ * so looking up and updating a metric never blocks. Callers on hot
+ * paths should keep the returned metric instead of looking it up for
+ * every operation.
+ */
+public class MetricsRegistry {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(MetricsRegistry.class);
+
+    private static MetricsRegistry instance = new MetricsRegistry();
+
+    private Map<String, Family> families = new ConcurrentHashMap<>();
+
+    public static MetricsRegistry getInstance() {
+        return instance;
+    }
+
+    public Counter getCounter(String name, String help, String... labels) {
+        return getMetric(name, help, "counter", labels, l -> new Counter(name, l));
+    }
+
+    public Gauge getGauge(String name, String help, String... labels) {
+        return getMetric(name, help, "gauge", labels, l -> new Gauge(name, l));
+    }
+
+    public LatencyTimer getTimer(String name, String help, String... labels) {
+        return getMetric(name, help, "summary", labels, l -> new LatencyTimer(name, l));
+    }
+
+    /**
+     * Registers a gauge whose value is obtained from the supplier when
+     * the metrics are read. The gauge replaces any existing gauge with
+     * the same name and labels.
+     */
+    public Gauge registerGauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        Family family = getFamily(name, help, "gauge");
+        String key = formatLabels(labels);
+        Gauge gauge = new Gauge(name, key, supplier);
+        family.metrics.put(key, gauge);
+        return gauge;
+    }
+
+    public void remove(String name, String... labels) {
+        Family family = families.get(name);
+        if (family == null) return;
+        family.metrics.remove(formatLabels(labels));
+    }
+
+    @SuppressWarnings("unchecked")
+    <T extends Metric> T getMetric(
+            String name,
+            String help,
+            String type,
+            String[] labels,
+            Function<String, T> factory) {
+
+        Family family = getFamily(name, help, type);
+        String key = formatLabels(labels);
+
+        Metric metric = family.metrics.get(key);
+        if (metric == null) {
+            metric = family.metrics.computeIfAbsent(key, factory);
+        }
+
+        return (T) metric;
+    }
+
+    Family getFamily(String name, String help, String type) {
+
+        Family family = families.get(name);
+        if (family == null) {
+            family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        }
+
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type + ", not a " + type);
+        }
+
+        return family;
+    }
+
+    /**
+     * Formats label pairs in Prometheus format, e.g. {name1="value1",name2="value2"}.
+     */
+    static String formatLabels(String... labels) {
+
+        if (labels.length == 0) return "";
+
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name and value pairs");
+        }
+
+        StringBuilder sb = new StringBuilder("{");
+
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) sb.append(',');
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+
+        return sb.append('}').toString();
+    }
+
+    static String escape(String value) {
+
+        if (value == null) return "";
+
+        return value
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n");
+    }
+
+    public List<Metric> getMetrics() {
+        List<Metric> metrics = new ArrayList<>();
+        for (Family family : new TreeMap<>(families).values()) {
+            metrics.addAll(new TreeMap<>(family.metrics).values());
+        }
+        return metrics;
+    }
+
+    /**
+     * Writes all metrics in Prometheus text exposition format.
+     */
+    public void write(Writer out) throws IOException {
+
+        for (Family family : new TreeMap<>(families).values()) {
+
+            if (family.metrics.isEmpty()) continue;
+
+            out.write("# HELP " + family.name + " " + family.help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+            out.write("# TYPE " + family.name + " " + family.type + "\n");
+
+            for (Metric metric : new TreeMap<>(family.metrics).values()) {
+                metric.write(out);
+            }
+        }
+    }
+
+    static class Family {
+
+        String name;
+        String help;
+        String type;
+        Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
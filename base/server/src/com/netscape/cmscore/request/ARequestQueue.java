@@ -19,6 +19,8 @@ package com.netscape.cmscore.request;
 
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.SessionContext;
@@ -35,6 +37,7 @@ import com.netscape.certsrv.request.RequestId;
 import com.netscape.certsrv.request.RequestStatus;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
+import com.netscape.cmscore.metrics.MetricsRegistry;
 
 /**
  * The ARequestQueue class is an abstract class that implements
@@ -51,6 +54,12 @@ import com.netscape.cmscore.apps.CMSEngine;
  * <p>
  * This class also implements the locking operations specified by the IRequestQueue interface.
  * <p>
+ * If write coalescing is enabled, the state engine runs each request as a unit of work:
+ * calls to updateRequest() only mark the request as modified, and the request is written
+ * once at the durability points, i.e. before the request is handed to a notifier, when
+ * it is read back from the database, and when the unit of work ends. Requests that become
+ * PENDING are always written through so agents can see them immediately.
+ * <p>
  *
  * @author thayes
  * @version $Revision$ $Date$
@@ -269,6 +278,11 @@ public abstract class ARequestQueue
         // used with predicate
         r.setExtData("requestId", rId.toString());
 
+        MetricsRegistry.getInstance().getCounter(
+                "pki_requests_created_total",
+                "Number of requests created",
+                "type", requestType).increment();
+
         return r;
     }
 
@@ -313,6 +327,9 @@ public abstract class ARequestQueue
             throws EBaseException {
         IRequest r;
 
+        // make pending changes visible to the reader
+        flushRequest(id);
+
         // mTable.lock(id);
 
         r = readRequest(id);
@@ -348,6 +365,10 @@ public abstract class ARequestQueue
             scheduler.requestIn(r);
         }
 
+        long startTime = System.nanoTime();
+        boolean processed = false;
+        boolean unitOfWork = beginUnitOfWork();
+
         try {
             // 1. Check for valid state
             RequestStatus rs = r.getRequestStatus();
@@ -356,10 +377,19 @@ public abstract class ARequestQueue
                 throw new EBaseException("Invalid Status");
 
             stateEngine(r);
+            processed = true;
         } finally {
+            endUnitOfWork(unitOfWork);
+
             if (scheduler != null) {
                 scheduler.requestOut(r);
             }
+
+            MetricsRegistry.getInstance().getTimer(
+                    "pki_request_processing_seconds",
+                    "Duration of request processing by status",
+                    "type", String.valueOf(r.getRequestType()),
+                    "status", processed ? String.valueOf(r.getRequestStatus()) : "error").recordSince(startTime);
         }
     }
 
@@ -438,11 +468,20 @@ public abstract class ARequestQueue
                 pr == PolicyResult.REJECTED) {
         }
 
-        // Always update. The policy code may have made changes to the
-        // request that we want to keep.
-        updateRequest(r);
+        boolean unitOfWork = beginUnitOfWork();
 
-        stateEngine(r);
+        try {
+            // Always update. The policy code may have made changes to the
+            // request that we want to keep.
+            updateRequest(r);
+
+            // write the agent approval before the request is serviced
+            flushRequest(r.getRequestId());
+
+            stateEngine(r);
+        } finally {
+            endUnitOfWork(unitOfWork);
+        }
     }
 
     /**
@@ -490,8 +529,10 @@ public abstract class ARequestQueue
         setRequestStatus(r, RequestStatus.COMPLETE);
         updateRequest(r);
 
-        if (mNotify != null)
+        if (mNotify != null) {
+            flushRequest(r.getRequestId());
             mNotify.notify(r);
+        }
 
         return;
     }
@@ -544,12 +585,87 @@ public abstract class ARequestQueue
 
         // by default, write request to LDAP
         if (delayLDAPCommit == null || !delayLDAPCommit.equals("true")) {
+
+            Map<RequestId, IRequest> unitOfWork = mUnitOfWork.get();
+
+            if (unitOfWork != null && r.getRequestStatus() != RequestStatus.PENDING) {
+                // write at the next durability point
+                unitOfWork.put(r.getRequestId(), r);
+                return;
+            }
+
+            if (unitOfWork != null) {
+                unitOfWork.remove(r.getRequestId());
+            }
+
             // TODO: use a state flag to determine whether to call
             // addRequest or modifyRequest (see newRequest as well)
             modifyRequest(r);
         } // else: delay the write to ldap
     }
 
+    /**
+     * Enables or disables write coalescing in the state engine.
+     * Write coalescing is disabled unless the subsystem enables it.
+     */
+    public void setCoalesceWrites(boolean coalesceWrites) {
+        mCoalesceWrites = coalesceWrites;
+    }
+
+    public boolean getCoalesceWrites() {
+        return mCoalesceWrites;
+    }
+
+    /**
+     * Starts a unit of work on the current thread unless one is already
+     * active.
+     *
+     * @return true if the caller owns the unit of work and must end it
+     */
+    protected boolean beginUnitOfWork() {
+        if (!mCoalesceWrites || mUnitOfWork.get() != null) {
+            return false;
+        }
+        mUnitOfWork.set(new LinkedHashMap<RequestId, IRequest>());
+        return true;
+    }
+
+    /**
+     * Writes all modified requests and ends the unit of work.
+     *
+     * @param owner value returned by beginUnitOfWork()
+     */
+    protected void endUnitOfWork(boolean owner) {
+        if (!owner) {
+            return;
+        }
+
+        Map<RequestId, IRequest> unitOfWork = mUnitOfWork.get();
+        try {
+            for (IRequest r : unitOfWork.values()) {
+                modifyRequest(r);
+            }
+        } finally {
+            mUnitOfWork.remove();
+        }
+    }
+
+    /**
+     * Writes the request if it has pending changes in the current unit
+     * of work.
+     */
+    protected void flushRequest(RequestId id) {
+        Map<RequestId, IRequest> unitOfWork = mUnitOfWork.get();
+        if (unitOfWork == null || id == null) {
+            return;
+        }
+
+        IRequest r = unitOfWork.remove(id);
+        if (r != null) {
+            modifyRequest(r);
+        }
+    }
+
     // PRIVATE functions
 
     private final void stateEngine(IRequest r)
@@ -581,6 +697,9 @@ public abstract class ARequestQueue
                     updateRequest(r);
                 }
             } else if (rs == RequestStatus.PENDING) {
+                // agents must be able to see the request right away
+                flushRequest(r.getRequestId());
+
                 if (mPendingNotify != null)
                     mPendingNotify.notify(r);
 
@@ -602,16 +721,22 @@ public abstract class ARequestQueue
             } else if (rs == RequestStatus.SVC_PENDING) {
                 complete = true;
             } else if (rs == RequestStatus.CANCELED) {
+                flushRequest(r.getRequestId());
+
                 if (mNotify != null)
                     mNotify.notify(r);
 
                 complete = true;
             } else if (rs == RequestStatus.REJECTED) {
+                flushRequest(r.getRequestId());
+
                 if (mNotify != null)
                     mNotify.notify(r);
 
                 complete = true;
             } else if (rs == RequestStatus.COMPLETE) {
+                flushRequest(r.getRequestId());
+
                 if (mNotify != null)
                     mNotify.notify(r);
 
@@ -679,7 +804,12 @@ public abstract class ARequestQueue
 
                 // Recheck the status - should be the same!!
                 if (request.getRequestStatus() == RequestStatus.APPROVED) {
-                    stateEngine(request);
+                    boolean unitOfWork = beginUnitOfWork();
+                    try {
+                        stateEngine(request);
+                    } finally {
+                        endUnitOfWork(unitOfWork);
+                    }
                 }
 
                 releaseRequest(request);
@@ -709,6 +839,11 @@ public abstract class ARequestQueue
     IService mService;
     INotify mNotify;
     INotify mPendingNotify;
+
+    boolean mCoalesceWrites;
+
+    // requests modified in the unit of work of the current thread
+    private final ThreadLocal<Map<RequestId, IRequest>> mUnitOfWork = new ThreadLocal<>();
 }
 
 //
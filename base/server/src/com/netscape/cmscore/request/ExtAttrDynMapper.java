@@ -17,10 +17,23 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.request;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.dbs.IDBObj;
 import com.netscape.certsrv.request.IRequestRecord;
@@ -51,6 +64,20 @@ import netscape.ldap.LDAPAttributeSet;
  *
  * These can be mixed, but each top-level key can only be associated with
  * a String value or a Hashtable value.
+ *
+ * If compact storage is enabled, all keys except the searchable keys
+ * are stored in a single extDataBlob attribute instead. The blob
+ * consists of a version byte followed by deflated JSON:
+ *
+ * { "attributes": [ searchable keys ], "data": { other keys } }
+ *
+ * The searchable keys are still stored as extData- attributes so they
+ * can be used in search filters. The blob is only written when compact
+ * storage is enabled, but both forms are accepted when reading. With
+ * compact storage, only the keys listed in the blob are taken from the
+ * extData- attributes, so attributes left over from the old form are
+ * ignored. Without it, the extData- attributes take precedence over a
+ * blob left over from compact storage.
  */
 public class ExtAttrDynMapper extends DBDynAttrMapper {
 
@@ -64,6 +91,34 @@ public class ExtAttrDynMapper extends DBDynAttrMapper {
         mAttrs.add(Schema.LDAP_ATTR_EXT_ATTR);
     }
 
+    public final static byte BLOB_VERSION_1 = 1;
+
+    public final static String BLOB_ATTRIBUTES = "attributes";
+    public final static String BLOB_DATA = "data";
+
+    protected static ObjectMapper jsonMapper = new ObjectMapper();
+
+    protected boolean compact;
+    protected Set<String> searchableKeys = new HashSet<>();
+
+    public ExtAttrDynMapper() {
+    }
+
+    /**
+     * @param compact store extData in a single blob attribute
+     * @param searchableKeys keys that are always stored as extData- attributes
+     */
+    public ExtAttrDynMapper(boolean compact, Collection<String> searchableKeys) {
+        this.compact = compact;
+        if (searchableKeys != null) {
+            this.searchableKeys.addAll(searchableKeys);
+        }
+    }
+
+    public boolean isCompact() {
+        return compact;
+    }
+
     public boolean supportsLDAPAttributeName(String attrName) {
         return (attrName != null) &&
                 attrName.toLowerCase().startsWith(extAttrPrefix);
@@ -235,11 +290,20 @@ public class ExtAttrDynMapper extends DBDynAttrMapper {
         @SuppressWarnings("unchecked")
         Hashtable<String, Object> ht = (Hashtable<String, Object>) obj;
 
+        if (compact) {
+            logger.debug("ExtAttrDynMapper: Mapping " + name + " to " + Schema.LDAP_ATTR_EXT_DATA_BLOB);
+            attrs.add(new LDAPAttribute(Schema.LDAP_ATTR_EXT_DATA_BLOB, encodeBlob(ht)));
+        }
+
         Enumeration<String> e = ht.keys();
         while (e.hasMoreElements()) {
             String key = e.nextElement();
             Object value = ht.get(key);
 
+            if (compact && !searchableKeys.contains(key)) {
+                continue;
+            }
+
             if (value instanceof String) {
                 String stringValue = ((String) value).trim();
                 if ("".equals(stringValue)) continue;
@@ -276,6 +340,16 @@ public class ExtAttrDynMapper extends DBDynAttrMapper {
         Hashtable<String, Object> ht = new Hashtable<String, Object>();
         Hashtable<String, String> valueHashtable;
 
+        LDAPAttribute blobAttr = attrs.getAttribute(Schema.LDAP_ATTR_EXT_DATA_BLOB);
+        byte[][] blobValues = blobAttr == null ? null : blobAttr.getByteValueArray();
+        boolean hasBlob = blobValues != null && blobValues.length > 0;
+        Hashtable<String, Object> blobData = null;
+        Set<String> attributeKeys = new HashSet<>();
+
+        if (hasBlob) {
+            blobData = decodeBlob(blobValues[0], parent, attributeKeys);
+        }
+
         Enumeration<LDAPAttribute> attrEnum = attrs.getAttributes();
         while (attrEnum.hasMoreElements()) {
             LDAPAttribute attr = attrEnum.nextElement();
@@ -286,6 +360,12 @@ public class ExtAttrDynMapper extends DBDynAttrMapper {
             }
 
             String keyName = decodeKey(baseName.substring(extAttrPrefix.length()));
+
+            if (hasBlob && compact && !attributeKeys.contains(keyName)) {
+                // superseded by the blob
+                continue;
+            }
+
             String[] subTypes = attr.getSubtypes();
             String[] values = attr.getStringValueArray();
 
@@ -334,9 +414,159 @@ public class ExtAttrDynMapper extends DBDynAttrMapper {
             valueHashtable.put(decodeKey(subTypes[0]), values[0]);
         }
 
+        if (hasBlob) {
+            for (Map.Entry<String, Object> entry : blobData.entrySet()) {
+                if (compact) {
+                    ht.put(entry.getKey(), entry.getValue());
+                } else {
+                    // the attributes were written after the blob
+                    ht.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
         parent.set(name, ht);
     }
 
+    /**
+     * Encodes extData into the versioned blob format. The searchable
+     * keys are only listed in the blob; their values are stored as
+     * extData- attributes.
+     */
+    public byte[] encodeBlob(Hashtable<String, Object> ht) throws EBaseException {
+
+        List<String> attributeKeys = new ArrayList<>();
+        Map<String, Object> data = new HashMap<>();
+
+        for (Map.Entry<String, Object> entry : ht.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+
+            if (searchableKeys.contains(key)) {
+                attributeKeys.add(key);
+
+            } else if (value instanceof String) {
+                String stringValue = ((String) value).trim();
+                if ("".equals(stringValue)) continue;
+                data.put(key, stringValue);
+
+            } else if (value instanceof Hashtable) {
+                @SuppressWarnings("unchecked")
+                Hashtable<String, String> innerHash = (Hashtable<String, String>) value;
+                Map<String, String> innerData = new HashMap<>();
+
+                for (Map.Entry<String, String> innerEntry : innerHash.entrySet()) {
+                    String innerValue = innerEntry.getValue().trim();
+                    if ("".equals(innerValue)) continue;
+                    innerData.put(innerEntry.getKey(), innerValue);
+                }
+
+                data.put(key, innerData);
+            }
+        }
+
+        Map<String, Object> blob = new HashMap<>();
+        blob.put(BLOB_ATTRIBUTES, attributeKeys);
+        blob.put(BLOB_DATA, data);
+
+        try {
+            byte[] json = jsonMapper.writeValueAsBytes(blob);
+
+            Deflater deflater = new Deflater();
+            deflater.setInput(json);
+            deflater.finish();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 2 + 16);
+            out.write(BLOB_VERSION_1);
+
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            deflater.end();
+
+            return out.toByteArray();
+
+        } catch (IOException e) {
+            throw new EBaseException(CMS.getUserMessage("CMS_DBS_SERIALIZE_FAILED", Schema.LDAP_ATTR_EXT_DATA_BLOB), e);
+        }
+    }
+
+    /**
+     * Decodes extData from the versioned blob format.
+     *
+     * @param blob encoded blob
+     * @param parent request record
+     * @param attributeKeys receives the keys stored as extData- attributes
+     */
+    @SuppressWarnings("unchecked")
+    public Hashtable<String, Object> decodeBlob(
+            byte[] blob,
+            IDBObj parent,
+            Set<String> attributeKeys)
+            throws EBaseException {
+
+        if (blob.length == 0 || blob[0] != BLOB_VERSION_1) {
+            RequestId requestID = ((IRequestRecord) parent).getRequestId();
+            String message = "Output Mapping Error in request ID " +
+                    requestID + " : " +
+                    "unsupported extData blob version " +
+                    (blob.length == 0 ? "" : Byte.toString(blob[0]));
+            logger.error(message);
+            throw new EBaseException(message);
+        }
+
+        try {
+            Inflater inflater = new Inflater();
+            inflater.setInput(blob, 1, blob.length - 1);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(blob.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated data");
+                }
+                out.write(buffer, 0, n);
+            }
+            inflater.end();
+
+            Map<String, Object> values = jsonMapper.readValue(out.toByteArray(), Map.class);
+
+            List<String> keys = (List<String>) values.get(BLOB_ATTRIBUTES);
+            if (keys != null) {
+                attributeKeys.addAll(keys);
+            }
+
+            Hashtable<String, Object> ht = new Hashtable<>();
+            Map<String, Object> data = (Map<String, Object>) values.get(BLOB_DATA);
+            if (data == null) {
+                return ht;
+            }
+
+            for (Map.Entry<String, Object> entry : data.entrySet()) {
+                Object value = entry.getValue();
+
+                if (value instanceof Map) {
+                    ht.put(entry.getKey(), new Hashtable<String, String>((Map<String, String>) value));
+                } else {
+                    ht.put(entry.getKey(), value);
+                }
+            }
+
+            return ht;
+
+        } catch (DataFormatException | IOException e) {
+            RequestId requestID = ((IRequestRecord) parent).getRequestId();
+            String message = "Output Mapping Error in request ID " +
+                    requestID + " : " +
+                    "unable to decode extData blob: " + e.getMessage();
+            logger.error(message, e);
+            throw new EBaseException(message, e);
+        }
+    }
+
     public String mapSearchFilter(String name, String op, String value) throws EBaseException {
         return name + op + value;
     }
@@ -0,0 +1,66 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.request;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class keeps timing statistics for a request listener.
+ */
+public class ListenerStats {
+
+    LongAdder invocations = new LongAdder();
+    LongAdder failures = new LongAdder();
+    LongAdder totalTime = new LongAdder();
+    AtomicLong maxTime = new AtomicLong();
+
+    void record(long nanos, boolean failed) {
+        invocations.increment();
+        if (failed) {
+            failures.increment();
+        }
+        totalTime.add(nanos);
+        maxTime.accumulateAndGet(nanos, Math::max);
+    }
+
+    public long getInvocations() {
+        return invocations.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * Returns the total time spent in the listener in nanoseconds.
+     */
+    public long getTotalTime() {
+        return totalTime.sum();
+    }
+
+    /**
+     * Returns the longest single invocation in nanoseconds.
+     */
+    public long getMaxTime() {
+        return maxTime.get();
+    }
+
+    /**
+     * Returns the average invocation time in nanoseconds.
+     */
+    public long getAverageTime() {
+        long count = invocations.sum();
+        return count == 0 ? 0 : totalTime.sum() / count;
+    }
+
+    public String toString() {
+        return "invocations: " + getInvocations()
+                + ", failures: " + getFailures()
+                + ", average: " + getAverageTime() / 1000 + " us"
+                + ", max: " + getMaxTime() / 1000 + " us";
+    }
+}
@@ -17,10 +17,22 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.request;
 
+import java.lang.reflect.Method;
 import java.math.BigInteger;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.ldap.ILdapConnFactory;
@@ -37,6 +49,12 @@ import com.netscape.cmscore.ldap.PublisherProcessor;
  * The ARequestNotifier class implements the IRequestNotifier interface,
  * which notifies all registered request listeners.
  *
+ * Listeners are run on a bounded pool of named worker threads. All
+ * listeners for a single request run sequentially on the same worker
+ * in registration order. If the dispatch queue is full the listeners
+ * run on the calling thread, which throttles request processing to
+ * the rate at which listeners can keep up.
+ *
  * @version $Revision$, $Date$
  */
 public class RequestNotifier implements IRequestNotifier {
@@ -44,7 +62,7 @@ public class RequestNotifier implements IRequestNotifier {
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestNotifier.class);
 
     private Hashtable<String, IRequestListener> mListeners = new Hashtable<String, IRequestListener>();
-    private Vector<Thread> mNotifierThreads = new Vector<Thread>();
+    private AtomicInteger mNotifierThreads = new AtomicInteger();
     private Vector<String> mRequests = new Vector<String>();
     private int mMaxRequests = 100;
     private boolean mSearchForRequests = false;
@@ -57,6 +75,22 @@ public class RequestNotifier implements IRequestNotifier {
     private int mSavePublishingStatus = 0;
     private int mSavePublishingCounter = 0;
 
+    // number of dispatch threads, 0 means number of processors
+    private int mDispatchThreads = 0;
+    private int mDispatchQueueSize = 1000;
+    private boolean mVirtualThreads = false;
+
+    // pool for short notification tasks
+    private volatile ExecutorService mExecutor;
+
+    // dedicated threads for the long-running publishing queue workers
+    private ExecutorService mPublishingExecutor;
+    private volatile Semaphore mDispatchPermits;
+    private volatile boolean mShutdown;
+    private AtomicInteger mThreadCounter = new AtomicInteger();
+
+    private Map<String, ListenerStats> mListenerStats = new ConcurrentHashMap<>();
+
     public RequestNotifier() {
         mPublishingQueuePriority = Thread.currentThread().getPriority();
     }
@@ -96,6 +130,8 @@ public class RequestNotifier implements IRequestNotifier {
             mPublishingQueuePriority = Thread.currentThread().getPriority();
         }
 
+        resizeExecutor();
+
         IRequestQueue requestQueue = getRequestQueue();
 
         if (mIsPublishingQueueEnabled && mSavePublishingStatus > 0 && requestQueue != null) {
@@ -112,6 +148,277 @@ public class RequestNotifier implements IRequestNotifier {
 
     }
 
+    /**
+     * Sets listener dispatch parameters.
+     *
+     * @param threads number of dispatch threads, 0 for number of processors
+     * @param queueSize maximum number of requests waiting for dispatch
+     * @param virtualThreads run listeners on virtual threads if available
+     */
+    public synchronized void setDispatchPool(int threads, int queueSize, boolean virtualThreads) {
+        logger.debug("setDispatchPool: threads: " + threads +
+                "  queue size: " + queueSize +
+                "  virtual threads: " + virtualThreads);
+        mDispatchThreads = threads;
+        mDispatchQueueSize = queueSize;
+        mVirtualThreads = virtualThreads;
+
+        if (mExecutor != null) {
+            mExecutor.shutdown();
+            mExecutor = null;
+        }
+    }
+
+    private int getPoolSize() {
+        if (mDispatchThreads > 0) {
+            return mDispatchThreads;
+        }
+        return Math.max(mMaxThreads, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns the dispatch pool, or null after shutdown.
+     */
+    private ExecutorService getExecutor() {
+        ExecutorService executor = mExecutor;
+        if (executor != null) {
+            return executor;
+        }
+        return createExecutor();
+    }
+
+    private synchronized ExecutorService createExecutor() {
+
+        if (mShutdown) {
+            return null;
+        }
+
+        if (mExecutor != null) {
+            return mExecutor;
+        }
+
+        if (mVirtualThreads) {
+            ExecutorService executor = createVirtualThreadExecutor();
+            if (executor != null) {
+                // bound the number of outstanding notifications
+                mDispatchPermits = new Semaphore(mDispatchQueueSize + getPoolSize());
+                mExecutor = executor;
+                return mExecutor;
+            }
+        }
+
+        int poolSize = getPoolSize();
+        String name = getClass().getSimpleName();
+
+        logger.info("RequestNotifier: Creating " + name + " pool with " + poolSize + " thread(s)");
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize,
+                poolSize,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, mDispatchQueueSize)),
+                new ThreadFactory() {
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, name + "-" + mThreadCounter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+
+        mExecutor = executor;
+        mDispatchPermits = null;
+        return mExecutor;
+    }
+
+    /**
+     * Returns the executor for the publishing queue workers, or null
+     * after shutdown. Each worker gets its own thread; the number of
+     * workers is limited by the maximum number of publishing threads.
+     */
+    private synchronized ExecutorService getPublishingExecutor() {
+
+        if (mShutdown) {
+            return null;
+        }
+
+        if (mPublishingExecutor == null) {
+            String name = getClass().getSimpleName() + "-publishing";
+
+            mPublishingExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, name + "-" + mThreadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    if (mPublishingQueuePriority > 0) {
+                        thread.setPriority(mPublishingQueuePriority);
+                    }
+                    return thread;
+                }
+            });
+        }
+
+        return mPublishingExecutor;
+    }
+
+    /**
+     * Creates a virtual thread per task executor if the JVM supports it.
+     */
+    private ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method method = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            logger.info("RequestNotifier: Using virtual threads for " + getClass().getSimpleName());
+            return (ExecutorService) method.invoke(null);
+
+        } catch (Exception e) {
+            logger.warn("RequestNotifier: Virtual threads not available, using platform threads");
+            mVirtualThreads = false;
+            return null;
+        }
+    }
+
+    private synchronized void resizeExecutor() {
+        if (mExecutor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor executor = (ThreadPoolExecutor) mExecutor;
+            int poolSize = getPoolSize();
+            if (poolSize > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(poolSize);
+                executor.setCorePoolSize(poolSize);
+            } else {
+                executor.setCorePoolSize(poolSize);
+                executor.setMaximumPoolSize(poolSize);
+            }
+        }
+    }
+
+    /**
+     * Submits a task to the dispatch pool. If the pool is saturated
+     * the task runs on the calling thread.
+     */
+    private void dispatch(Runnable task) {
+
+        ExecutorService executor = getExecutor();
+        Semaphore permits = mDispatchPermits;
+
+        if (executor == null) {
+            task.run();
+            return;
+        }
+
+        if (permits == null) {
+            executor.execute(task);
+            return;
+        }
+
+        if (!permits.tryAcquire()) {
+            task.run();
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Stops the dispatch pool and waits briefly for pending
+     * notifications to complete.
+     */
+    public void shutdown() {
+
+        ExecutorService executor;
+        synchronized (this) {
+            mShutdown = true;
+            executor = mExecutor;
+            mExecutor = null;
+
+            if (mPublishingExecutor != null) {
+                // the workers stop once the publishing queue is drained
+                mPublishingExecutor.shutdown();
+                mPublishingExecutor = null;
+            }
+        }
+
+        if (executor == null) {
+            return;
+        }
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                logger.warn("RequestNotifier: Pending notifications did not complete");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs a listener and records its timing statistics.
+     *
+     * @param listener request listener
+     * @param r request
+     */
+    public void accept(IRequestListener listener, IRequest r) {
+
+        String name = listener.getClass().getName();
+        logger.debug("RunListeners: IRequestListener = " + name);
+
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            listener.accept(r);
+            failed = false;
+        } finally {
+            mListenerStats.computeIfAbsent(name, k -> new ListenerStats())
+                    .record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Gets timing statistics of the listeners keyed by listener class name.
+     *
+     * @return listener statistics
+     */
+    public Map<String, ListenerStats> getListenerStats() {
+        return Collections.unmodifiableMap(mListenerStats);
+    }
+
+    /**
+     * Gets number of requests waiting for listener dispatch.
+     *
+     * @return number of waiting requests
+     */
+    public int getDispatchQueueSize() {
+        ExecutorService executor = mExecutor;
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        Semaphore permits = mDispatchPermits;
+        if (permits != null) {
+            return Math.max(0, mDispatchQueueSize + getPoolSize() - permits.availablePermits());
+        }
+        return 0;
+    }
+
+    private void runListeners(IRequest r, Enumeration<IRequestListener> listeners) {
+        if (listeners != null && r != null) {
+            while (listeners.hasMoreElements()) {
+                accept(listeners.nextElement(), r);
+            }
+        }
+    }
+
     /**
      * Registers a request listener.
      *
@@ -321,14 +628,36 @@ public class RequestNotifier implements IRequestNotifier {
      * @param notifierThread Thread
      */
     public void removeNotifierThread(Thread notifierThread) {
-        if (mNotifierThreads.size() > 0) {
-            mNotifierThreads.remove(notifierThread);
-            if (mNotifierThreads.size() == 0) {
-                IRequestQueue requestQueue = getRequestQueue();
-                requestQueue.setPublishingStatus("-1");
+        int threads = mNotifierThreads.get();
+        while (threads > 0) {
+            if (mNotifierThreads.compareAndSet(threads, threads - 1)) {
+                if (threads == 1) {
+                    IRequestQueue requestQueue = getRequestQueue();
+                    requestQueue.setPublishingStatus("-1");
+                }
+                break;
+            }
+            threads = mNotifierThreads.get();
+        }
+        logger.debug("Number of publishing threads: " + mNotifierThreads.get());
+    }
+
+    /**
+     * Starts a publishing queue worker on its own thread.
+     */
+    private void startNotifierThread() {
+        mNotifierThreads.incrementAndGet();
+        logger.debug("Number of publishing threads: " + mNotifierThreads.get());
+        try {
+            ExecutorService executor = getPublishingExecutor();
+            if (executor == null) {
+                throw new IllegalStateException("Request notifier has been shut down");
             }
+            executor.execute(new RunListeners(this));
+        } catch (RuntimeException e) {
+            mNotifierThreads.decrementAndGet();
+            throw e;
         }
-        logger.debug("Number of publishing threads: " + mNotifierThreads.size());
     }
 
     /**
@@ -342,18 +671,18 @@ public class RequestNotifier implements IRequestNotifier {
         if (mIsPublishingQueueEnabled) {
             addToNotify(r);
         } else if (mMaxThreads == 0) {
-            Enumeration<IRequestListener> listeners = mListeners.elements();
-            if (listeners != null && r != null) {
-                while (listeners.hasMoreElements()) {
-                    IRequestListener l = listeners.nextElement();
-                    logger.debug("RunListeners: IRequestListener = " + l.getClass().getName());
-                    l.accept(r);
-                }
-            }
+            runListeners(r, mListeners.elements());
         } else {
-            // spawn a seperate thread to call the listeners and return.
+            // hand the listeners over to the dispatch pool and return.
+            Enumeration<IRequestListener> listeners = mListeners.elements();
             try {
-                new Thread(new RunListeners(r, mListeners.elements())).start();
+                dispatch(() -> {
+                    try {
+                        runListeners(r, listeners);
+                    } catch (Throwable e) {
+                        logger.warn("Could not run listeners for request " + r.getRequestId() + ": " + e.getMessage(), e);
+                    }
+                });
             } catch (Throwable e) {
                 logger.warn("Could not run listeners for request " + r.getRequestId() + ": " + e.getMessage(), e);
             }
@@ -402,14 +731,16 @@ public class RequestNotifier implements IRequestNotifier {
     private boolean morePublishingThreads() {
         boolean moreThreads = false;
 
-        if (mNotifierThreads.size() == 0) {
+        int threads = mNotifierThreads.get();
+
+        if (threads == 0) {
             moreThreads = true;
-        } else if (mNotifierThreads.size() < mMaxThreads) {
+        } else if (threads < mMaxThreads) {
             logger.debug("morePublishingThreads  (" + mRequests.size() + ">" +
-                      ((mMaxRequests * mNotifierThreads.size()) / mMaxThreads) +
-                      " " + "(" + mMaxRequests + "*" + mNotifierThreads.size() + "):" + mMaxThreads);
+                      ((mMaxRequests * threads) / mMaxThreads) +
+                      " " + "(" + mMaxRequests + "*" + threads + "):" + mMaxThreads);
             // gradually add new publishing threads
-            if (mRequests.size() > ((mMaxRequests * mNotifierThreads.size()) / mMaxThreads)) {
+            if (mRequests.size() > ((mMaxRequests * threads) / mMaxThreads)) {
                 // check for available publishing connections
                 if (checkAvailablePublishingConnections()) {
                     moreThreads = true;
@@ -434,15 +765,7 @@ public class RequestNotifier implements IRequestNotifier {
                           " requests by adding request " + r.getRequestId().toString());
                 if (morePublishingThreads()) {
                     try {
-                        Thread notifierThread = new Thread(new RunListeners(this));
-                        if (notifierThread != null) {
-                            mNotifierThreads.addElement(notifierThread);
-                            logger.debug("Number of publishing threads: " + mNotifierThreads.size());
-                            if (mPublishingQueuePriority > 0) {
-                                notifierThread.setPriority(mPublishingQueuePriority);
-                            }
-                            notifierThread.start();
-                        }
+                        startNotifierThread();
                     } catch (Throwable e) {
                         logger.warn("addToNotify  Exception: " + e.getMessage(), e);
                     }
@@ -470,15 +793,7 @@ public class RequestNotifier implements IRequestNotifier {
                     mSearchForRequests = true;
                 }
                 try {
-                    Thread notifierThread = new Thread(new RunListeners(this));
-                    if (notifierThread != null) {
-                        mNotifierThreads.addElement(notifierThread);
-                        logger.debug("Number of publishing threads: " + mNotifierThreads.size());
-                        if (mPublishingQueuePriority > 0) {
-                            notifierThread.setPriority(mPublishingQueuePriority);
-                        }
-                        notifierThread.start();
-                    }
+                    startNotifierThread();
                 } catch (Throwable e) {
                     logger.warn("recoverPublishingQueue  Exception: " + e.getMessage(), e);
                 }
@@ -17,9 +17,11 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.request;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Vector;
 
 import org.mozilla.jss.netscape.security.x509.CertificateSubjectName;
@@ -37,6 +39,7 @@ import com.netscape.certsrv.request.RequestStatus;
 import com.netscape.certsrv.request.ldap.IRequestMod;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
+import com.netscape.cmscore.apps.DatabaseConfig;
 import com.netscape.cmscore.dbs.DBRegistry;
 import com.netscape.cmscore.dbs.DBSubsystem;
 import com.netscape.cmscore.dbs.DateMapper;
@@ -54,6 +57,12 @@ public class RequestRecord
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(RequestRecord.class);
     private static final long serialVersionUID = 8044665107558872084L;
 
+    public final static String PROP_COMPACT_EXT_DATA = "compactRequestExtData";
+    public final static String PROP_SEARCHABLE_EXT_DATA = "searchableRequestExtData";
+
+    // extData keys used in search filters by default
+    public final static String DEFAULT_SEARCHABLE_EXT_DATA = "req_issued_cert,cert_request";
+
     public RequestId getRequestId() {
         return mRequestId;
     }
@@ -215,7 +224,27 @@ public class RequestRecord
                 new StringMapper(Schema.LDAP_ATTR_REQUEST_OWNER));
         reg.registerAttribute(IRequestRecord.ATTR_REALM,
                 new StringMapper(Schema.LDAP_ATTR_REALM));
-        ExtAttrDynMapper extAttrMapper = new ExtAttrDynMapper();
+        boolean compact = false;
+        List<String> searchableKeys = new ArrayList<>();
+
+        DatabaseConfig dbConfig = dbSubsystem.getDBConfigStore();
+        if (dbConfig != null) {
+            try {
+                compact = dbConfig.getBoolean(PROP_COMPACT_EXT_DATA, false);
+                String keys = dbConfig.getString(PROP_SEARCHABLE_EXT_DATA, DEFAULT_SEARCHABLE_EXT_DATA);
+                for (String key : keys.split(",")) {
+                    key = key.trim();
+                    if (!key.isEmpty()) searchableKeys.add(key);
+                }
+            } catch (EBaseException e) {
+                throw new EDBException("Unable to read extData configuration: " + e.getMessage(), e);
+            }
+        }
+
+        logger.debug("RequestRecord: compact extData: " + compact);
+        logger.debug("RequestRecord: searchable extData: " + searchableKeys);
+
+        ExtAttrDynMapper extAttrMapper = new ExtAttrDynMapper(compact, searchableKeys);
         reg.registerAttribute(IRequestRecord.ATTR_EXT_DATA, extAttrMapper);
         reg.registerDynamicMapper(extAttrMapper);
 
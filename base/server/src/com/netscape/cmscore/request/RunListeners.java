@@ -71,6 +71,11 @@ public class RunListeners implements Runnable {
             if (mListeners != null && mRequest != null) {
                 while (mListeners.hasMoreElements()) {
                     IRequestListener l = mListeners.nextElement();
+                    if (mRequestNotifier instanceof RequestNotifier) {
+                        // record listener statistics
+                        ((RequestNotifier) mRequestNotifier).accept(l, mRequest);
+                        continue;
+                    }
                     logger.debug("RunListeners: IRequestListener = " + l.getClass().getName());
                     l.accept(mRequest);
                 }
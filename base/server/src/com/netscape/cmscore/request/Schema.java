@@ -43,6 +43,9 @@ class Schema {
     // This attribute is a placeholder used by ExtAttrDynMapper
     public static final String LDAP_ATTR_EXT_ATTR = "extAttr";
 
+    // Holds the compact encoding of the request extData
+    public static final String LDAP_ATTR_EXT_DATA_BLOB = "extDataBlob";
+
     // Indicates a special state that may be searched for exactly
     // such as requiresAgentService.  The idea is to reduce the space
     // used in indexes to optimize common queries.
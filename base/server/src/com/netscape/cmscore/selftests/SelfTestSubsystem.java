@@ -24,13 +24,26 @@ package com.netscape.cmscore.selftests;
 // import statements //
 ///////////////////////
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.EPropertyNotFound;
@@ -46,6 +59,7 @@ import com.netscape.certsrv.selftests.EMissingSelfTestException;
 import com.netscape.certsrv.selftests.ESelfTestException;
 import com.netscape.certsrv.selftests.ISelfTest;
 import com.netscape.certsrv.selftests.ISelfTestSubsystem;
+import com.netscape.certsrv.selftests.SelfTestRecord;
 import com.netscape.cms.logging.Logger;
 import com.netscape.cms.logging.SignedAuditLogger;
 import com.netscape.cmscore.apps.CMS;
@@ -93,6 +107,15 @@ public class SelfTestSubsystem
     public Vector<SelfTestOrderedInstance> mOnDemandOrder = new Vector<SelfTestOrderedInstance>();
     public Vector<SelfTestOrderedInstance> mStartupOrder = new Vector<SelfTestOrderedInstance>();
 
+    // number of threads for independent self tests (0 = run sequentially)
+    private int mThreads;
+    private long mTimeout; // milliseconds (0 = no timeout)
+    private long mCacheTime; // milliseconds (0 = no caching)
+    private ExecutorService mExecutor;
+
+    // most recent result of each self test
+    private Map<String, SelfTestRecord> mResults = new ConcurrentHashMap<>();
+
     ///////////////////////////
     // ISubsystem parameters //
     ///////////////////////////
@@ -489,6 +512,8 @@ public class SelfTestSubsystem
 
         logger.debug("SelfTestSubsystem: runSelfTestsOnDemand()");
 
+        List<String> instanceNames = new ArrayList<>();
+
         // loop through all self test plugin instances
         // specified to be executed on demand
         Enumeration<SelfTestOrderedInstance> instances = mOnDemandOrder.elements();
@@ -520,10 +545,16 @@ public class SelfTestSubsystem
                 throw new EMissingSelfTestException(instanceFullName);
             }
 
-            try {
-                runSelfTest(instanceName);
+            instanceNames.add(instanceName);
+        }
 
-            } catch (Exception e) {
+        for (SelfTestRecord result : runSelfTests(instanceNames, false)) {
+
+            String instanceName = result.getName();
+            String instanceFullName = getFullName(mPrefix, instanceName);
+            Exception e = result.getException();
+
+            if (e != null) {
 
                 // Check to see if the self test was critical:
                 if (isSelfTestCriticalOnDemand(instanceName)) {
@@ -549,13 +580,173 @@ public class SelfTestSubsystem
 
         logger.debug("SelfTestSubsystem: runSelfTest(" + instanceName + ")");
 
-        ISelfTest test = mSelfTestInstances.get(instanceName);
+        SelfTestRecord result = runSelfTests(Collections.singletonList(instanceName), false).get(0);
 
-        if (test == null) {
-            throw new EMissingSelfTestException(instanceName);
+        if (!result.isPassed()) {
+            throw result.getException();
+        }
+    }
+
+    /**
+     * Execute the specified self tests.
+     * <P>
+     *
+     * Consecutive self tests that are independent are submitted to the
+     * self test pool together. A self test that is not independent is
+     * executed once the preceding self tests have completed, and the
+     * following self tests are started after it, so it keeps its
+     * place in the given order. A self test that does not complete
+     * within the configured timeout is reported as failed.
+     * <P>
+     *
+     * @param instanceNames instance names of self tests
+     * @param useCache true to return results recorded within the
+     *            configured cache time instead of executing the self tests
+     * @return results in the same order as the instance names
+     * @exception EMissingSelfTestException subsystem has missing name
+     */
+    public List<SelfTestRecord> runSelfTests(List<String> instanceNames, boolean useCache)
+            throws EMissingSelfTestException {
+
+        ExecutorService executor = getExecutor();
+
+        Map<String, SelfTestRecord> results = new HashMap<>();
+        Map<String, Future<SelfTestRecord>> futures = new LinkedHashMap<>();
+
+        for (String instanceName : instanceNames) {
+
+            ISelfTest test = mSelfTestInstances.get(instanceName);
+
+            if (test == null) {
+                awaitAll(futures, results);
+                throw new EMissingSelfTestException(instanceName);
+            }
+
+            if (useCache && mCacheTime > 0) {
+                SelfTestRecord result = mResults.get(instanceName);
+                if (result != null && result.isFresh(mCacheTime)) {
+                    logger.debug("SelfTestSubsystem: using cached result for " + instanceName);
+                    results.put(instanceName, result);
+                    continue;
+                }
+            }
+
+            if (executor != null && test.isSelfTestIndependent()) {
+                futures.put(instanceName, executor.submit(() -> execute(instanceName, test)));
+                continue;
+            }
+
+            // a dependent test runs after the preceding tests have completed
+            // and before the following tests are started
+            awaitAll(futures, results);
+
+            if (executor != null) {
+                results.put(instanceName, await(instanceName, executor.submit(() -> execute(instanceName, test))));
+            } else {
+                results.put(instanceName, execute(instanceName, test));
+            }
+        }
+
+        awaitAll(futures, results);
+
+        List<SelfTestRecord> list = new ArrayList<>();
+        for (String instanceName : instanceNames) {
+            list.add(results.get(instanceName));
+        }
+
+        return list;
+    }
+
+    /**
+     * Waits for the given self tests and clears the list.
+     */
+    void awaitAll(Map<String, Future<SelfTestRecord>> futures, Map<String, SelfTestRecord> results) {
+
+        for (Map.Entry<String, Future<SelfTestRecord>> entry : futures.entrySet()) {
+            String instanceName = entry.getKey();
+            results.put(instanceName, await(instanceName, entry.getValue()));
+        }
+
+        futures.clear();
+    }
+
+    SelfTestRecord execute(String instanceName, ISelfTest test) {
+
+        logger.debug("SelfTestSubsystem: running " + instanceName);
+
+        long start = System.currentTimeMillis();
+        Exception exception = null;
+
+        try {
+            test.runSelfTest(mLogger);
+
+        } catch (Exception e) {
+            exception = e;
         }
 
-        test.runSelfTest(mLogger);
+        long end = System.currentTimeMillis();
+        SelfTestRecord result = new SelfTestRecord(instanceName, end, end - start, exception);
+        logger.debug("SelfTestSubsystem: " + result);
+
+        mResults.put(instanceName, result);
+        return result;
+    }
+
+    SelfTestRecord await(String instanceName, Future<SelfTestRecord> future) {
+
+        long start = System.currentTimeMillis();
+        Exception exception;
+
+        try {
+            if (mTimeout > 0) {
+                return future.get(mTimeout, TimeUnit.MILLISECONDS);
+            }
+            return future.get();
+
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            exception = new ESelfTestException(
+                    "Selftest " + instanceName + " did not complete within " + mTimeout + " ms");
+
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            exception = new ESelfTestException("Selftest " + instanceName + " interrupted", e);
+
+        } catch (Exception e) {
+            exception = new ESelfTestException("Selftest " + instanceName + " failed: " + e.getMessage(), e);
+        }
+
+        long end = System.currentTimeMillis();
+        SelfTestRecord result = new SelfTestRecord(instanceName, end, end - start, exception);
+        logger.warn("SelfTestSubsystem: " + result + ": " + exception.getMessage());
+
+        mResults.put(instanceName, result);
+        return result;
+    }
+
+    synchronized ExecutorService getExecutor() {
+
+        if (mThreads <= 0) {
+            return null;
+        }
+
+        if (mExecutor != null) {
+            return mExecutor;
+        }
+
+        logger.info("SelfTestSubsystem: Creating pool with " + mThreads + " thread(s)");
+
+        AtomicInteger counter = new AtomicInteger();
+        mExecutor = Executors.newFixedThreadPool(mThreads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "SelfTest-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        return mExecutor;
     }
 
     //
@@ -811,6 +1002,8 @@ public class SelfTestSubsystem
                 CMS.getLogMessage(
                         "CMSCORE_SELFTESTS_RUN_AT_STARTUP"));
 
+        List<String> instanceNames = new ArrayList<>();
+
         // loop through all self test plugin instances
         // specified to be executed at server startup
         Enumeration<SelfTestOrderedInstance> instances = mStartupOrder.elements();
@@ -842,29 +1035,32 @@ public class SelfTestSubsystem
                 throw new EMissingSelfTestException(instanceFullName);
             }
 
-            ISelfTest test = mSelfTestInstances.get(instanceName);
+            instanceNames.add(instanceName);
+        }
 
-            try {
-                logger.debug("SelfTestSubsystem: running " + test.getSelfTestName());
-                test.runSelfTest(mLogger);
+        for (SelfTestRecord result : runSelfTests(instanceNames, false)) {
 
-            } catch (Exception e) {
+            String instanceName = result.getName();
+            Exception e = result.getException();
 
-                // Check to see if the self test was critical:
-                if (!isSelfTestCriticalAtStartup(instanceName)) {
-                    logger.warn("SelfTestSubsystem: selftest failed: " + e.getMessage(), e);
-                    continue;
-                }
+            if (e == null) {
+                continue;
+            }
 
-                logger.error("SelfTestSubsystem: selftest failed: " + e.getMessage(), e);
+            // Check to see if the self test was critical:
+            if (!isSelfTestCriticalAtStartup(instanceName)) {
+                logger.warn("SelfTestSubsystem: selftest failed: " + e.getMessage(), e);
+                continue;
+            }
 
-                log(mLogger,
-                        CMS.getLogMessage(
-                                "CMSCORE_SELFTESTS_RUN_AT_STARTUP_FAILED",
-                                instanceFullName));
+            logger.error("SelfTestSubsystem: selftest failed: " + e.getMessage(), e);
 
-                throw e;
-            }
+            log(mLogger,
+                    CMS.getLogMessage(
+                            "CMSCORE_SELFTESTS_RUN_AT_STARTUP_FAILED",
+                            getFullName(mPrefix, instanceName)));
+
+            throw e;
         }
 
         // log that execution of all "critical" startup self tests
@@ -1222,6 +1418,15 @@ public class SelfTestSubsystem
             mRootPrefix = mConfig.getName().trim();
         }
 
+        IConfigStore containerConfig = mConfig.getSubStore(PROP_CONTAINER);
+        mThreads = containerConfig.getInteger(PROP_THREADS, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        mTimeout = containerConfig.getInteger(PROP_TIMEOUT, 300) * 1000L;
+        mCacheTime = containerConfig.getInteger(PROP_CACHE_TIME, 0) * 1000L;
+
+        logger.debug("SelfTestSubsystem: threads: " + mThreads);
+        logger.debug("SelfTestSubsystem: timeout: " + mTimeout + " ms");
+        logger.debug("SelfTestSubsystem: cache time: " + mCacheTime + " ms");
+
         int loadStatus = 0;
 
         // NOTE:  Obviously, we must load the self test logger parameters
@@ -1832,6 +2037,15 @@ public class SelfTestSubsystem
             instance.shutdownSelfTest();
         }
 
+        synchronized (this) {
+            if (mExecutor != null) {
+                mExecutor.shutdownNow();
+                mExecutor = null;
+            }
+        }
+
+        mResults.clear();
+
         if (mLogger != null)
             mLogger.shutdown();
     }
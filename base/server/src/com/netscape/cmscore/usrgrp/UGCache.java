@@ -0,0 +1,164 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.usrgrp;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class caches users, certificate-to-user mappings, and group
+ * memberships read by UGSubsystem.
+ *
+ * Entries expire after the configured time to live. Each map holds
+ * at most the configured number of entries; expired entries are
+ * purged when a map is full, and the map is cleared if that does
+ * not free up any space.
+ *
+ * User IDs, DNs, and group names are compared case-insensitively
+ * like in the directory.
+ */
+public class UGCache {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(UGCache.class);
+
+    private long ttl; // milliseconds
+    private int maxSize;
+
+    // user ID or DN -> user
+    private Map<String, Entry<User>> users = new ConcurrentHashMap<>();
+
+    // certificate string or locator filter -> user ID
+    private Map<String, Entry<String>> certUsers = new ConcurrentHashMap<>();
+
+    // user DN + group name -> membership
+    private Map<String, Entry<Boolean>> memberships = new ConcurrentHashMap<>();
+
+    // user DN -> groups
+    private Map<String, Entry<List<Group>>> userGroups = new ConcurrentHashMap<>();
+
+    public UGCache(long ttl, int maxSize) {
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+    }
+
+    public User getUser(String userID) {
+        return get(users, userID.toLowerCase());
+    }
+
+    public void putUser(String userID, User user) {
+        put(users, userID.toLowerCase(), user);
+    }
+
+    public String getCertUser(String key) {
+        return get(certUsers, key);
+    }
+
+    public void putCertUser(String key, String userID) {
+        put(certUsers, key, userID);
+    }
+
+    public Boolean getMembership(String userDN, String groupName) {
+        return get(memberships, getMembershipKey(userDN, groupName));
+    }
+
+    public void putMembership(String userDN, String groupName, boolean member) {
+        put(memberships, getMembershipKey(userDN, groupName), member);
+    }
+
+    public List<Group> getUserGroups(String userDN) {
+        return get(userGroups, userDN.toLowerCase());
+    }
+
+    public void putUserGroups(String userDN, List<Group> groups) {
+        put(userGroups, userDN.toLowerCase(), groups);
+    }
+
+    /**
+     * Removes everything cached about the given user.
+     */
+    public void invalidateUser(String userID, String userDN) {
+
+        logger.debug("UGCache: Invalidating user " + userID);
+
+        String id = userID.toLowerCase();
+        String dn = userDN.toLowerCase();
+
+        users.entrySet().removeIf(e -> e.getKey().equals(id)
+                || e.getKey().equals(dn)
+                || id.equalsIgnoreCase(e.getValue().value.getUserID()));
+
+        certUsers.values().removeIf(e -> id.equalsIgnoreCase(e.value));
+        memberships.keySet().removeIf(key -> key.startsWith(dn + "\n"));
+        userGroups.remove(dn);
+    }
+
+    /**
+     * Removes the memberships of the given group.
+     */
+    public void invalidateGroup(String groupName) {
+
+        logger.debug("UGCache: Invalidating group " + groupName);
+
+        String suffix = "\n" + groupName.toLowerCase();
+        memberships.keySet().removeIf(key -> key.endsWith(suffix));
+
+        // the group may have been renamed or its description changed
+        userGroups.clear();
+    }
+
+    public void clear() {
+        logger.debug("UGCache: Clearing cache");
+        users.clear();
+        certUsers.clear();
+        memberships.clear();
+        userGroups.clear();
+    }
+
+    String getMembershipKey(String userDN, String groupName) {
+        return userDN.toLowerCase() + "\n" + groupName.toLowerCase();
+    }
+
+    <T> T get(Map<String, Entry<T>> map, String key) {
+
+        Entry<T> entry = map.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.expiration < System.currentTimeMillis()) {
+            map.remove(key, entry);
+            return null;
+        }
+
+        return entry.value;
+    }
+
+    <T> void put(Map<String, Entry<T>> map, String key, T value) {
+
+        if (map.size() >= maxSize) {
+            long now = System.currentTimeMillis();
+            map.values().removeIf(e -> e.expiration < now);
+
+            if (map.size() >= maxSize) {
+                map.clear();
+            }
+        }
+
+        map.put(key, new Entry<>(value, System.currentTimeMillis() + ttl));
+    }
+
+    static class Entry<T> {
+
+        T value;
+        long expiration;
+
+        Entry(T value, long expiration) {
+            this.value = value;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -25,6 +25,8 @@ import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.mozilla.jss.netscape.security.x509.X509CertImpl;
@@ -53,6 +55,8 @@ import netscape.ldap.LDAPModificationSet;
 import netscape.ldap.LDAPSearchConstraints;
 import netscape.ldap.LDAPSearchResults;
 import netscape.ldap.LDAPv2;
+import netscape.ldap.controls.LDAPEntryChangeControl;
+import netscape.ldap.controls.LDAPPersistSearchControl;
 
 /**
  * This class defines low-level LDAP usr/grp management
@@ -78,9 +82,24 @@ public class UGSubsystem {
     protected static final String LDAP_ATTR_USER_CERT = "userCertificate";
     protected static final String LDAP_ATTR_PROFILE_ID = "profileID";
 
+    public static final String PROP_CACHE_ENABLE = "cache.enable";
+    public static final String PROP_CACHE_TTL = "cache.ttl";
+    public static final String PROP_CACHE_MAX_SIZE = "cache.maxSize";
+    public static final String PROP_CACHE_PERSISTENT_SEARCH = "cache.persistentSearch";
+
     protected transient LdapBoundConnFactory mLdapConnFactory = null;
     protected String mBaseDN = null;
 
+    /* cache of users and group memberships (null = disabled) */
+    protected UGCache mCache;
+
+    /* threads invalidating the cache on replicated changes */
+    private List<Thread> monitors = new ArrayList<>();
+    private volatile boolean stopped;
+
+    /* number of user or group changes seen so far */
+    private AtomicLong changeCount = new AtomicLong();
+
     /**
      * Constructs LDAP based usr/grp management
      */
@@ -97,12 +116,203 @@ public class UGSubsystem {
 
         mLdapConnFactory = new LdapBoundConnFactory("UGSubsystem");
         mLdapConnFactory.init(socketConfig, ldapConfig, passwordStore);
+
+        if (!config.getBoolean(PROP_CACHE_ENABLE, true)) {
+            logger.info("UGSubsystem: Cache disabled");
+            return;
+        }
+
+        int ttl = config.getInteger(PROP_CACHE_TTL, 60);
+        int maxSize = config.getInteger(PROP_CACHE_MAX_SIZE, 10000);
+        logger.info("UGSubsystem: Cache TTL: " + ttl + " second(s), max size: " + maxSize);
+
+        mCache = new UGCache(ttl * 1000L, maxSize);
+
+        if (config.getBoolean(PROP_CACHE_PERSISTENT_SEARCH, false)) {
+            startMonitor("userChangeMonitor", getUserBaseDN());
+            startMonitor("groupChangeMonitor", getGroupBaseDN());
+        }
+    }
+
+    void startMonitor(String name, String baseDN) {
+        Thread monitor = new Thread(() -> monitor(name, baseDN), name);
+        monitor.setDaemon(true);
+        monitor.start();
+        monitors.add(monitor);
+    }
+
+    /**
+     * Runs a persistent search on the given subtree and invalidates
+     * the cache when an entry is changed, possibly on another replica.
+     */
+    void monitor(String name, String baseDN) {
+
+        int op = LDAPPersistSearchControl.ADD
+            | LDAPPersistSearchControl.MODIFY
+            | LDAPPersistSearchControl.DELETE
+            | LDAPPersistSearchControl.MODDN;
+        LDAPPersistSearchControl persistCtrl =
+            new LDAPPersistSearchControl(op, true, true, true);
+
+        logger.info("UGSubsystem: " + name + ": starting");
+
+        while (!stopped) {
+
+            LDAPConnection conn = null;
+
+            try {
+                conn = getConn();
+
+                LDAPSearchConstraints cons = conn.getSearchConstraints();
+                cons.setServerControls(persistCtrl);
+                cons.setBatchSize(1);
+                cons.setServerTimeLimit(0 /* seconds */);
+
+                String[] attrs = { "uid", "cn" };
+                LDAPSearchResults results = conn.search(
+                    baseDN, LDAPConnection.SCOPE_ONE,
+                    "(objectclass=*)", attrs, false, cons);
+
+                // changes may have been missed while disconnected
+                mCache.clear();
+                changeCount.incrementAndGet();
+
+                while (!stopped && results.hasMoreElements()) {
+                    LDAPEntry entry = results.next();
+
+                    LDAPEntryChangeControl changeControl = (LDAPEntryChangeControl)
+                        LDAPUtil.getControl(
+                            LDAPEntryChangeControl.class, results.getResponseControls());
+
+                    changeCount.incrementAndGet();
+
+                    if (changeControl != null && changeControl.getChangeType() == LDAPPersistSearchControl.MODDN) {
+                        logger.debug("UGSubsystem: " + name + ": MODDN " + entry.getDN());
+                        mCache.clear();
+                        continue;
+                    }
+
+                    logger.debug("UGSubsystem: " + name + ": changed " + entry.getDN());
+                    invalidateEntry(entry);
+                }
+
+            } catch (Exception e) {
+                if (stopped) {
+                    break;
+                }
+
+                logger.warn("UGSubsystem: " + name + ": " + e.getMessage() + ". Retrying in 1 minute.", e);
+
+                try {
+                    TimeUnit.MINUTES.sleep(1);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+
+            } finally {
+                if (conn != null) returnConn(conn);
+            }
+        }
+
+        logger.info("UGSubsystem: " + name + ": stopping");
+    }
+
+    void invalidateEntry(LDAPEntry entry) {
+
+        LDAPAttribute uid = entry.getAttribute("uid");
+        if (uid != null) {
+            for (String value : uid.getStringValueArray()) {
+                mCache.invalidateUser(value, entry.getDN());
+            }
+            return;
+        }
+
+        LDAPAttribute cn = entry.getAttribute("cn");
+        if (cn != null) {
+            for (String value : cn.getStringValueArray()) {
+                mCache.invalidateGroup(value);
+            }
+            return;
+        }
+
+        mCache.clear();
+    }
+
+    /**
+     * Removes everything cached about the given user.
+     */
+    protected void invalidateUser(String userID) {
+        changeCount.incrementAndGet();
+        if (mCache != null && userID != null) {
+            mCache.invalidateUser(userID, getUserDN(userID));
+        }
+    }
+
+    /**
+     * Removes the cached memberships of the given group.
+     */
+    protected void invalidateGroup(String groupName) {
+        changeCount.incrementAndGet();
+        if (mCache != null && groupName != null) {
+            mCache.invalidateGroup(groupName);
+        }
+    }
+
+    /**
+     * Returns the number of user or group changes made through this
+     * subsystem, or seen by the persistent searches. Components that
+     * keep data derived from users or groups can compare this value
+     * to detect that their data may be stale.
+     */
+    public long getChangeCount() {
+        return changeCount.get();
+    }
+
+    /**
+     * Returns a copy of the user so that callers modifying
+     * the returned object do not modify the cached one.
+     */
+    protected User copyUser(User user) {
+
+        User copy = new User();
+        copy.setUserID(user.getUserID());
+        copy.setUserDN(user.getUserDN());
+        copy.setFullName(user.getFullName());
+        copy.setPassword(user.getPassword());
+        copy.setEmail(user.getEmail());
+        copy.setPhone(user.getPhone());
+        copy.setState(user.getState());
+        copy.setCertDN(user.getCertDN());
+        copy.setUserType(user.getUserType());
+
+        X509Certificate[] certs = user.getX509Certificates();
+        if (certs != null) {
+            copy.setX509Certificates(certs.clone());
+        }
+
+        List<String> tpsProfiles = user.getTpsProfiles();
+        if (tpsProfiles != null) {
+            copy.setTpsProfiles(new ArrayList<>(tpsProfiles));
+        }
+
+        return copy;
     }
 
     /**
      * Disconnects usr/grp manager from the LDAP
      */
     public void shutdown() {
+
+        stopped = true;
+        for (Thread monitor : monitors) {
+            monitor.interrupt();
+        }
+        monitors.clear();
+
+        if (mCache != null) {
+            mCache.clear();
+        }
+
         try {
             if (mLdapConnFactory != null) {
                 mLdapConnFactory.reset();
@@ -141,6 +351,14 @@ public class UGSubsystem {
             userDN = userID;
         }
 
+        if (mCache != null) {
+            User user = mCache.getUser(userID);
+            if (user != null) {
+                logger.debug("UGSubsystem: found cached user " + userDN);
+                return copyUser(user);
+            }
+        }
+
         LDAPConnection ldapconn = null;
 
         try {
@@ -159,7 +377,13 @@ public class UGSubsystem {
             Enumeration<User> e = buildUsers(res);
 
             // user found
-            return e.nextElement();
+            User user = e.nextElement();
+
+            if (mCache != null) {
+                mCache.putUser(userID, copyUser(user));
+            }
+
+            return user;
 
         } catch (ELdapException e) {
             throw new EUsrGrpException("Unable to retrieve user: " + userID + ": " + e.getMessage(), e);
@@ -186,17 +410,23 @@ public class UGSubsystem {
             return null;
         }
 
+        String filter = LDAP_ATTR_USER_CERT_STRING + "=" + LDAPUtil.escapeFilter(getCertificateString(cert));
+
+        User user = findCachedUser(filter);
+        if (user != null) {
+            return user;
+        }
+
         LDAPConnection ldapconn = null;
 
         try {
             ldapconn = getConn();
-            String filter = LDAP_ATTR_USER_CERT_STRING + "=" + LDAPUtil.escapeFilter(getCertificateString(cert));
             LDAPSearchResults res =
                     ldapconn.search(getUserBaseDN(),
                             LDAPConnection.SCOPE_SUB, filter, null, false);
             Enumeration<User> e = buildUsers(res);
 
-            return e.nextElement();
+            return cacheUser(filter, e.nextElement());
 
         } catch (LDAPException e) {
             logger.warn("Unable to find user: " + e.getMessage(), e);
@@ -238,6 +468,11 @@ public class UGSubsystem {
             filter = stripped.toString() + up;
         }
 
+        User user = findCachedUser(filter);
+        if (user != null) {
+            return user;
+        }
+
         LDAPConnection ldapconn = null;
 
         try {
@@ -248,7 +483,7 @@ public class UGSubsystem {
 
             Enumeration<User> e = buildUsers(res);
 
-            return e.nextElement();
+            return cacheUser(filter, e.nextElement());
 
         } catch (LDAPException e) {
             logger.warn("Unable to find user by certificate: " + e.getMessage(), e);
@@ -264,6 +499,35 @@ public class UGSubsystem {
         return null;
     }
 
+    /**
+     * Returns the user previously found with the given certificate
+     * filter, or null if the mapping is not cached.
+     */
+    protected User findCachedUser(String filter) throws EUsrGrpException {
+
+        if (mCache == null) {
+            return null;
+        }
+
+        String userID = mCache.getCertUser(filter);
+        if (userID == null) {
+            return null;
+        }
+
+        logger.debug("UGSubsystem: found cached certificate mapping for " + userID);
+        return getUser(userID);
+    }
+
+    protected User cacheUser(String filter, User user) {
+
+        if (mCache != null && user != null) {
+            mCache.putCertUser(filter, user.getUserID());
+            mCache.putUser(user.getUserID(), copyUser(user));
+        }
+
+        return user;
+    }
+
     /**
      * Searchs for identities that matches the filter.
      */
@@ -730,6 +994,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add user: " + e.getMessage(), e);
 
         } finally {
+            invalidateUser(userID);
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
@@ -781,6 +1046,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add user certificate: " + e.getMessage(), e);
 
         } finally {
+            invalidateUser(userID);
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
@@ -823,6 +1089,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add seeAlso: " + e.getMessage(), e);
 
         } finally {
+            invalidateUser(userID);
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
@@ -865,6 +1132,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to remove seeAlso: " + e.getMessage(), e);
 
         } finally {
+            invalidateUser(userID);
             if (ldapconn != null) {
                 returnConn(ldapconn);
             }
@@ -977,6 +1245,7 @@ public class UGSubsystem {
                 throw new EUsrGrpException("Unable to remove user certificate: " + e.getMessage(), e);
 
             } finally {
+                invalidateUser(user.getUserID());
                 if (ldapconn != null)
                     returnConn(ldapconn);
             }
@@ -1010,6 +1279,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add user to group: " + e.getMessage(), e);
 
         } finally {
+            invalidateUser(userid);
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1038,6 +1308,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to remove user from group: " + e.getMessage(), e);
 
         } finally {
+            invalidateUser(userid);
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1073,6 +1344,7 @@ public class UGSubsystem {
             logger.error("Unable to remove user: " + e.getMessage(), e);
 
         } finally {
+            invalidateUser(userid);
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1209,6 +1481,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to modify user: " + e.getMessage(), e);
 
         } finally {
+            invalidateUser(user.getUserID());
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1327,6 +1600,16 @@ public class UGSubsystem {
             return null;
         }
 
+        boolean cacheable = mCache != null && StringUtils.isEmpty(filter);
+
+        if (cacheable) {
+            List<Group> groups = mCache.getUserGroups(userDn);
+            if (groups != null) {
+                logger.debug("UGSubsystem: found cached groups for " + userDn);
+                return Collections.enumeration(copyGroups(groups));
+            }
+        }
+
         // search groups where the user is a member
         String ldapFilter = "(&(objectclass=groupofuniquenames)(uniqueMember=" + LDAPUtil.escapeFilter(userDn) + ")";
 
@@ -1354,7 +1637,16 @@ public class UGSubsystem {
                     attrs,
                     false);
 
-            return buildGroups(res);
+            Enumeration<Group> groups = buildGroups(res);
+
+            if (!cacheable) {
+                return groups;
+            }
+
+            List<Group> list = Collections.list(groups);
+            mCache.putUserGroups(userDn, copyGroups(list));
+
+            return Collections.enumeration(list);
 
         } catch (LDAPException e) {
             logger.warn("Unable to find groups by user: " + e.getMessage(), e);
@@ -1370,6 +1662,29 @@ public class UGSubsystem {
         return null;
     }
 
+    protected List<Group> copyGroups(List<Group> groups) throws EUsrGrpException {
+
+        List<Group> copies = new ArrayList<>();
+
+        for (Group group : groups) {
+            Group copy = new Group(group.getGroupID());
+            try {
+                copy.set(Group.ATTR_DESCRIPTION, group.getDescription());
+            } catch (EBaseException e) {
+                throw new EUsrGrpException(e.getMessage(), e);
+            }
+
+            Enumeration<String> members = group.getMemberNames();
+            while (members.hasMoreElements()) {
+                copy.addMemberName(members.nextElement());
+            }
+
+            copies.add(copy);
+        }
+
+        return copies;
+    }
+
     /**
      * builds an instance of a Group entry
      * @throws EUsrGrpException
@@ -1562,6 +1877,15 @@ public class UGSubsystem {
      * by running an ldap search for the user in the group
      */
     protected boolean isMemberOfLdapGroup(String userid, String groupname) {
+
+        if (mCache != null) {
+            Boolean member = mCache.getMembership(userid, groupname);
+            if (member != null) {
+                logger.trace("authorization result (cached): " + member);
+                return member;
+            }
+        }
+
         String basedn = "cn=" + LDAPUtil.escapeRDNValue(groupname) + ",ou=groups," + mBaseDN;
         LDAPConnection ldapconn = null;
         boolean founduser = false;
@@ -1590,6 +1914,11 @@ public class UGSubsystem {
                 founduser = true;
             }
             logger.trace("authorization result: " + founduser);
+
+            if (mCache != null) {
+                mCache.putMembership(userid, groupname, founduser);
+            }
+
         } catch (LDAPException e) {
             String errMsg =
                     "isMemberOfLdapGroup: could not find group " + groupname + ". Error " + e;
@@ -1669,6 +1998,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to add group: " + e.getMessage(), e);
 
         } finally {
+            invalidateGroup(grp.getGroupID());
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1697,6 +2027,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to remove group: " + e.getMessage(), e);
 
         } finally {
+            invalidateGroup(name);
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -1757,6 +2088,7 @@ public class UGSubsystem {
             throw new EUsrGrpException("Unable to modify group: " + e.getMessage(), e);
 
         } finally {
+            invalidateGroup(grp.getGroupID());
             if (ldapconn != null)
                 returnConn(ldapconn);
         }
@@ -17,20 +17,24 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmscore.util;
 
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Hashtable;
-import java.util.Vector;
+import java.util.List;
 
 import com.netscape.certsrv.base.EBaseException;
 import com.netscape.certsrv.base.IConfigStore;
 import com.netscape.certsrv.util.IStatsSubsystem;
 import com.netscape.certsrv.util.StatsEvent;
+import com.netscape.cmscore.metrics.MetricsRegistry;
 
 /**
  * A class represents a internal subsystem. This subsystem
  * can be loaded into cert server kernel to perform
  * statistics collection.
  * <P>
+ * The duration of each timed operation is also recorded in
+ * MetricsRegistry so the percentiles can be scraped by Prometheus.
+ * <P>
  *
  * @author thomask
  * @version $Revision$, $Date$
@@ -39,7 +43,7 @@ public class StatsSubsystem implements IStatsSubsystem {
     private String mId = null;
     private StatsEvent mAllTrans = new StatsEvent(null);
     private Date mStartTime = new Date();
-    private Hashtable<String, Vector<StatsMilestone>> mHashtable = new Hashtable<String, Vector<StatsMilestone>>();
+    private ThreadLocal<List<StatsMilestone>> mMilestones = new ThreadLocal<List<StatsMilestone>>();
 
     /**
      * Constructs a certificate server.
@@ -85,18 +89,15 @@ public class StatsSubsystem implements IStatsSubsystem {
     }
 
     public void startTiming(String id, boolean mainAction) {
-        Thread t = Thread.currentThread();
-        Vector<StatsMilestone> milestones = null;
-        if (mHashtable.containsKey(t.toString())) {
-            milestones = mHashtable.get(t.toString());
-        } else {
-            milestones = new Vector<StatsMilestone>();
-            mHashtable.put(t.toString(), milestones);
+        List<StatsMilestone> milestones = mMilestones.get();
+        if (milestones == null) {
+            milestones = new ArrayList<StatsMilestone>();
+            mMilestones.set(milestones);
         }
         long startTime = new Date().getTime();
         StatsEvent currentST = null;
         for (int i = 0; i < milestones.size(); i++) {
-            StatsMilestone se = milestones.elementAt(i);
+            StatsMilestone se = milestones.get(i);
             if (currentST == null) {
                 currentST = mAllTrans.getSubEvent(se.getId());
             } else {
@@ -115,26 +116,24 @@ public class StatsSubsystem implements IStatsSubsystem {
             newST.setName(id);
             currentST.addSubEvent(newST);
         }
-        milestones.addElement(new StatsMilestone(id, startTime, newST));
+        milestones.add(new StatsMilestone(id, startTime, newST));
     }
 
     public void endTiming(String id) {
         long endTime = new Date().getTime();
-        Thread t = Thread.currentThread();
-        if (!mHashtable.containsKey(t.toString())) {
-            return; /* error */
-        }
-        Vector<StatsMilestone> milestones = mHashtable.get(t.toString());
-        if (milestones.size() == 0) {
+        List<StatsMilestone> milestones = mMilestones.get();
+        if (milestones == null || milestones.size() == 0) {
             return; /* error */
         }
         StatsMilestone last = milestones.remove(milestones.size() - 1);
         StatsEvent st = last.getStatsEvent();
         st.incNoOfOperations(1);
         st.incTimeTaken(endTime - last.getStartTime());
-        if (milestones.size() == 0) {
-            mHashtable.remove(t.toString());
-        }
+
+        MetricsRegistry.getInstance().getTimer(
+                "pki_operation_duration_seconds",
+                "Duration of timed subsystem operations",
+                "operation", last.getId()).recordSince(last.getNanoTime());
     }
 
     public void resetCounters() {
@@ -169,6 +168,7 @@ public class StatsSubsystem implements IStatsSubsystem {
 class StatsMilestone {
     private String mId = null;
     private long mStartTime = 0;
+    private long mNanoTime = System.nanoTime();
     private StatsEvent mST = null;
 
     public StatsMilestone(String id, long startTime, StatsEvent st) {
@@ -177,6 +177,10 @@ class StatsMilestone {
         mST = st;
     }
 
+    public long getNanoTime() {
+        return mNanoTime;
+    }
+
     public String getId() {
         return mId;
     }
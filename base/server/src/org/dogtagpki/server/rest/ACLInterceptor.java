@@ -17,12 +17,11 @@
 //--- END COPYRIGHT BLOCK ---
 package org.dogtagpki.server.rest;
 
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.security.Principal;
-import java.util.Properties;
+import java.util.Collection;
+import java.util.Collections;
 
 import javax.servlet.ServletContext;
 import javax.ws.rs.container.ContainerRequestContext;
@@ -68,7 +67,7 @@ public class ACLInterceptor implements ContainerRequestFilter {
     private final static String LOGGING_MISSING_ACL_MAPPING = "ACL mapping not found; OK";
     private final static String LOGGING_INVALID_ACL_MAPPING = "internal error: invalid ACL mapping";
 
-    Properties properties;
+    ResourceMethodTable<ACLValue> table;
 
     @Context
     ServletContext servletContext;
@@ -76,44 +75,47 @@ public class ACLInterceptor implements ContainerRequestFilter {
     @Context
     SecurityContext securityContext;
 
-    public synchronized void loadProperties() throws IOException {
+    public ACLInterceptor() {
+        this(Collections.emptySet());
+    }
 
-        if (properties != null)
-            return;
+    /**
+     * Creates an interceptor with the ACL mappings of the methods
+     * of the given resource classes resolved in advance.
+     */
+    public ACLInterceptor(Collection<Class<?>> resourceClasses) {
+        table = new ResourceMethodTable<ACLValue>("acl.properties", resourceClasses) {
 
-        properties = new Properties();
+            @Override
+            protected String getMappingName(Class<?> clazz, Method method) {
 
-        String context = servletContext.getContextPath();
-        String subsystem = context.startsWith("/") ? context.substring(1) : context;
+                ACLMapping aclMapping = method.getAnnotation(ACLMapping.class);
 
-        // load default mapping
-        String defaultMapping = "/usr/share/pki/" + subsystem + "/conf/acl.properties";
-        logger.debug("ACLInterceptor: loading " + defaultMapping);
-        try (FileReader in = new FileReader(defaultMapping)) {
-            properties.load(in);
-        }
+                // If not available, get ACL mapping for the class.
+                if (aclMapping == null) {
+                    aclMapping = clazz.getAnnotation(ACLMapping.class);
+                }
 
-        // load custom mapping
-        File customMapping = new File(System.getProperty("catalina.base")
-                + "/" + subsystem + "/conf/acl.properties");
-        logger.debug("ACLInterceptor: checking " + customMapping);
-        if (customMapping.exists()) {
-            logger.debug("ACLInterceptor: loading " + customMapping);
-            try (FileReader in = new FileReader(customMapping)) {
-                properties.load(in);
+                return aclMapping == null ? null : aclMapping.value();
             }
-        }
+
+            @Override
+            protected ACLValue parse(String value) {
+                return new ACLValue(value);
+            }
+        };
     }
 
     @Override
     public void filter(ContainerRequestContext requestContext) throws IOException {
         ResourceMethodInvoker methodInvoker = (ResourceMethodInvoker) requestContext
                 .getProperty("org.jboss.resteasy.core.ResourceMethodInvoker");
-        Method method = methodInvoker.getMethod();
-        Class<?> clazz = methodInvoker.getResourceClass();
-        String auditInfo =  clazz.getSimpleName() + "." + method.getName();
+        ResourceMethodTable.Binding binding = table.getBinding(
+                methodInvoker.getResourceClass(),
+                methodInvoker.getMethod());
+        String auditInfo = binding.getAuditInfo();
 
-        logger.debug("ACLInterceptor: " + auditInfo + "()");
+        logger.debug("ACLInterceptor: {}()", auditInfo);
         String auditSubjectID = ILogger.UNIDENTIFIED;
 
         /*
@@ -123,12 +125,8 @@ public class ACLInterceptor implements ContainerRequestFilter {
          * use authzRequired to track when aclMapping is not null for ease of following the code
          */
         boolean authzRequired = true;
-        ACLMapping aclMapping = method.getAnnotation(ACLMapping.class);
-        // If not available, get ACL mapping for the class.
-        if (aclMapping == null) {
-            aclMapping = clazz.getAnnotation(ACLMapping.class);
-        }
-        if (aclMapping == null) {
+        String name = binding.getName();
+        if (name == null) {
             logger.debug("ACLInterceptor.filter: no authorization required");
             authzRequired = false;
         }
@@ -203,16 +201,12 @@ public class ACLInterceptor implements ContainerRequestFilter {
             return;
         }
 
-        // we know aclMapping is not null now (!noAuthzRequired); authz game on...
-        String name = aclMapping.value();
-        logger.debug("ACLInterceptor: mapping: " + name);
+        // we know the mapping name is not null now (!noAuthzRequired); authz game on...
+        logger.debug("ACLInterceptor: mapping: {}", name);
 
-        String values[] = null;
-        String value = null;
+        ACLValue value = null;
         try {
-            loadProperties();
-
-            value = properties.getProperty(name);
+            value = table.getValue(servletContext, name);
 
         } catch (IOException e) {
 
@@ -239,7 +233,7 @@ public class ACLInterceptor implements ContainerRequestFilter {
             return;
         }
 
-        values = value.split(",");
+        String values[] = value.values;
 
         // If invalid mapping, reject request.
         if (values.length != 2) {
@@ -316,6 +310,24 @@ public class ACLInterceptor implements ContainerRequestFilter {
         return;
     }
 
+    /**
+     * The resource and operation of an ACL mapping.
+     */
+    static class ACLValue {
+
+        String value;
+        String[] values;
+
+        ACLValue(String value) {
+            this.value = value;
+            this.values = value.split(",");
+        }
+
+        public String toString() {
+            return value;
+        }
+    }
+
     /**
      * Signed Audit Log
      *
@@ -23,6 +23,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.util.ArrayList;
@@ -49,9 +50,12 @@ import com.netscape.certsrv.base.ResourceNotFoundException;
 import com.netscape.certsrv.logging.AuditConfig;
 import com.netscape.certsrv.logging.AuditFile;
 import com.netscape.certsrv.logging.AuditFileCollection;
+import com.netscape.certsrv.logging.AuditRecord;
+import com.netscape.certsrv.logging.AuditRecordCollection;
 import com.netscape.certsrv.logging.AuditResource;
 import com.netscape.certsrv.logging.ILogger;
 import com.netscape.certsrv.logging.event.ConfigSignedAuditEvent;
+import com.netscape.cms.logging.LogIndex;
 import com.netscape.cms.servlet.base.SubsystemService;
 import com.netscape.cmscore.apps.CMS;
 import com.netscape.cmscore.apps.CMSEngine;
@@ -419,6 +423,108 @@ public class AuditService extends SubsystemService implements AuditResource {
         return createOKResponse(so);
     }
 
+    @Override
+    public Response findAuditRecords(
+            String eventType,
+            String subjectID,
+            String outcome,
+            Long startTime,
+            Long endTime,
+            Integer start,
+            Integer size) {
+
+        start = start == null ? 0 : start;
+        size = size == null ? DEFAULT_SIZE : size;
+
+        try {
+            AuditRecordCollection response = new AuditRecordCollection();
+
+            List<File> files = getLogFiles();
+            File currentFile = files.get(files.size() - 1);
+            int i = 0;
+
+            for (File file : files) {
+
+                if (!file.isFile()) continue;
+
+                // rotated log files are searched using their indexes,
+                // the current log file is indexed on each search
+                boolean current = file.equals(currentFile);
+                LogIndex index = LogIndex.getIndex(file, current);
+
+                // skip log files outside of the time range
+                if (!index.overlaps(startTime, endTime)) continue;
+
+                // count the matching entries from the index header
+                // if none of them are in the page
+                if (subjectID == null && outcome == null && index.isWithin(startTime, endTime)) {
+                    int count = index.getAuditEventCount(eventType);
+                    if (i + count <= start || i >= start + size) {
+                        i += count;
+                        continue;
+                    }
+                }
+
+                List<LogIndex.Entry> entries = index.getEntries();
+                RandomAccessFile raf = null;
+
+                try {
+                    for (int j = 0; j < entries.size(); j++) {
+
+                        LogIndex.Entry entry = entries.get(j);
+
+                        if (entry.getEventType() == null
+                                || !entry.matches(eventType, subjectID, outcome, startTime, endTime)) {
+                            continue;
+                        }
+
+                        // read only the entries in the page
+                        if (i >= start && i < start + size) {
+
+                            if (raf == null) {
+                                raf = new RandomAccessFile(file, "r");
+                            }
+
+                            AuditRecord record = new AuditRecord();
+                            record.setFile(file.getName());
+                            record.setOffset(entry.getOffset());
+                            record.setTime(entry.getTime());
+                            record.setEventType(entry.getEventType());
+                            record.setSubjectID(entry.getSubjectID());
+                            record.setOutcome(entry.getOutcome());
+                            record.setEntry(index.read(raf, entry.getOffset(), index.getNextOffset(j)));
+
+                            response.addEntry(record);
+                        }
+
+                        i++;
+                    }
+
+                } finally {
+                    if (raf != null) raf.close();
+                }
+            }
+
+            response.setTotal(i);
+
+            if (start > 0) {
+                URI uri = uriInfo.getRequestUriBuilder().replaceQueryParam("start", Math.max(start-size, 0)).build();
+                response.addLink(new Link("prev", uri));
+            }
+
+            if (start+size < i) {
+                URI uri = uriInfo.getRequestUriBuilder().replaceQueryParam("start", start+size).build();
+                response.addLink(new Link("next", uri));
+            }
+
+            return createOKResponse(response);
+
+        } catch (IOException e) {
+            logger.error("AuditService: " + e.getMessage(), e);
+            throw new PKIException(e);
+        }
+    }
+
     /*
      * in case of failure, "info" should be in the params
      */
@@ -17,14 +17,12 @@
 //--- END COPYRIGHT BLOCK ---
 package org.dogtagpki.server.rest;
 
-import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.security.Principal;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Properties;
 
 import javax.servlet.ServletContext;
 import javax.ws.rs.container.ContainerRequestContext;
@@ -51,7 +49,7 @@ public class AuthMethodInterceptor implements ContainerRequestFilter {
 
     public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(AuthMethodInterceptor.class);
 
-    Properties properties;
+    ResourceMethodTable<Collection<String>> table;
 
     @Context
     ServletContext servletContext;
@@ -59,75 +57,63 @@ public class AuthMethodInterceptor implements ContainerRequestFilter {
     @Context
     SecurityContext securityContext;
 
-    public synchronized void loadProperties() throws IOException {
+    public AuthMethodInterceptor() {
+        this(Collections.emptySet());
+    }
 
-        if (properties != null)
-            return;
+    /**
+     * Creates an interceptor with the authentication mappings of the
+     * methods of the given resource classes resolved in advance.
+     */
+    public AuthMethodInterceptor(Collection<Class<?>> resourceClasses) {
+        table = new ResourceMethodTable<Collection<String>>("auth-method.properties", resourceClasses) {
 
-        properties = new Properties();
+            @Override
+            protected String getMappingName(Class<?> clazz, Method method) {
 
-        String context = servletContext.getContextPath();
-        String subsystem = context.startsWith("/") ? context.substring(1) : context;
+                // Get authentication mapping for the method.
+                AuthMethodMapping authMapping = method.getAnnotation(AuthMethodMapping.class);
 
-        // load default mapping
-        String defaultMapping = "/usr/share/pki/" + subsystem + "/conf/auth-method.properties";
-        logger.debug("AuthMethodInterceptor: loading " + defaultMapping);
-        try (FileReader in = new FileReader(defaultMapping)) {
-            properties.load(in);
-        }
+                // If not available, get authentication mapping for the class.
+                if (authMapping == null) {
+                    authMapping = clazz.getAnnotation(AuthMethodMapping.class);
+                }
 
-        // load custom mapping
-        File customMapping = new File(System.getProperty("catalina.base") +
-                "/" + subsystem + "/conf/auth-method.properties");
-        logger.debug("AuthMethodInterceptor: checking " + customMapping);
-        if (customMapping.exists()) {
-            logger.debug("AuthMethodInterceptor: loading " + customMapping);
-            try (FileReader in = new FileReader(customMapping)) {
-                properties.load(in);
+                // If not available, use the default mapping.
+                return authMapping == null ? "default" : authMapping.value();
             }
-        }
+
+            @Override
+            protected Collection<String> parse(String value) {
+                Collection<String> authMethods = new HashSet<String>();
+                for (String v : value.split(",")) {
+                    authMethods.add(v.trim());
+                }
+                return Collections.unmodifiableCollection(authMethods);
+            }
+        };
     }
 
     @Override
     public void filter(ContainerRequestContext requestContext) throws IOException {
         ResourceMethodInvoker methodInvoker = (ResourceMethodInvoker) requestContext
                 .getProperty("org.jboss.resteasy.core.ResourceMethodInvoker");
-        Method method = methodInvoker.getMethod();
-        Class<?> clazz = methodInvoker.getResourceClass();
+        ResourceMethodTable.Binding binding = table.getBinding(
+                methodInvoker.getResourceClass(),
+                methodInvoker.getMethod());
 
-        logger.debug("AuthMethodInterceptor: " + clazz.getSimpleName() + "." + method.getName() + "()");
+        logger.debug("AuthMethodInterceptor: {}()", binding.getAuditInfo());
 
-        // Get authentication mapping for the method.
-        AuthMethodMapping authMapping = method.getAnnotation(AuthMethodMapping.class);
-
-        // If not available, get authentication mapping for the class.
-        if (authMapping == null) {
-            authMapping = clazz.getAnnotation(AuthMethodMapping.class);
-        }
-
-        String name;
-        if (authMapping == null) {
-            // If not available, use the default mapping.
-            name = "default";
-        } else {
-            // Get the method label
-            name = authMapping.value();
-        }
-
-        logger.debug("AuthMethodInterceptor: mapping: " + name);
+        String name = binding.getName();
+        logger.debug("AuthMethodInterceptor: mapping: {}", name);
 
         try {
-            loadProperties();
-
-            String value = properties.getProperty(name);
-            Collection<String> authMethods = new HashSet<String>();
-            if (value != null) {
-                for (String v : value.split(",")) {
-                    authMethods.add(v.trim());
-                }
+            Collection<String> authMethods = table.getValue(servletContext, name);
+            if (authMethods == null) {
+                authMethods = Collections.emptySet();
             }
 
-            logger.debug("AuthMethodInterceptor: required auth methods: " + authMethods);
+            logger.debug("AuthMethodInterceptor: required auth methods: {}", authMethods);
 
             Principal principal = securityContext.getUserPrincipal();
 
@@ -0,0 +1,50 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.rest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.netscape.certsrv.metrics.MetricsResource;
+import com.netscape.cms.servlet.base.PKIService;
+import com.netscape.cmscore.metrics.MetricsRegistry;
+
+/**
+ * This service writes the metrics in MetricsRegistry in Prometheus
+ * text exposition format, e.g. GET /ca/rest/metrics.
+ */
+public class MetricsService extends PKIService implements MetricsResource {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(MetricsService.class);
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Override
+    public Response getMetrics() {
+
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+
+        StreamingOutput so = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream out) throws IOException, WebApplicationException {
+
+                Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+                registry.write(writer);
+                writer.flush();
+            }
+        };
+
+        return Response.ok(so, CONTENT_TYPE).build();
+    }
+}
@@ -0,0 +1,225 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package org.dogtagpki.server.rest;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.ServletContext;
+
+/**
+ * This class maps JAX-RS resource methods to the values configured
+ * for them in a mapping file (e.g. acl.properties).
+ *
+ * The mapping name of each method of the resource classes is resolved
+ * from its annotations when the table is created. The values in the
+ * default and custom mapping files are parsed when the table is first
+ * used, and parsed again into a new snapshot if the custom mapping file
+ * has changed, so requests never wait on a lock or see a partially
+ * loaded mapping.
+ */
+public abstract class ResourceMethodTable<T> {
+
+    public static org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ResourceMethodTable.class);
+
+    // minimum time between checks of the custom mapping file
+    public static final long CHECK_INTERVAL = 10000; // milliseconds
+
+    private String filename;
+
+    // resource class -> method -> binding, immutable after construction
+    private Map<Class<?>, Map<Method, Binding>> bindings = new HashMap<>();
+
+    // bindings of methods not known when the table was created
+    private Map<Class<?>, Map<Method, Binding>> extraBindings = new ConcurrentHashMap<>();
+
+    private volatile Snapshot<T> snapshot;
+    private volatile long nextCheck;
+
+    public ResourceMethodTable(String filename, Collection<Class<?>> resourceClasses) {
+
+        this.filename = filename;
+
+        for (Class<?> clazz : resourceClasses) {
+
+            Map<Method, Binding> map = new HashMap<>();
+
+            for (Method method : getMethods(clazz)) {
+                map.put(method, createBinding(clazz, method));
+            }
+
+            bindings.put(clazz, map);
+        }
+    }
+
+    /**
+     * Returns the public methods of the class and of the interfaces
+     * it implements, since the resource method might be reported
+     * with either of them.
+     */
+    List<Method> getMethods(Class<?> clazz) {
+
+        List<Method> methods = new ArrayList<>();
+
+        for (Method method : clazz.getMethods()) {
+            if (method.getDeclaringClass() != Object.class) {
+                methods.add(method);
+            }
+        }
+
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for (Class<?> i : c.getInterfaces()) {
+                for (Method method : i.getMethods()) {
+                    methods.add(method);
+                }
+            }
+        }
+
+        return methods;
+    }
+
+    Binding createBinding(Class<?> clazz, Method method) {
+        return new Binding(
+                getMappingName(clazz, method),
+                clazz.getSimpleName() + "." + method.getName());
+    }
+
+    /**
+     * Returns the mapping name of the resource method based on its
+     * annotations, or null if the method is not mapped.
+     */
+    protected abstract String getMappingName(Class<?> clazz, Method method);
+
+    /**
+     * Parses the value of a mapping.
+     */
+    protected abstract T parse(String value);
+
+    public Binding getBinding(Class<?> clazz, Method method) {
+
+        Map<Method, Binding> map = bindings.get(clazz);
+        Binding binding = map == null ? null : map.get(method);
+
+        if (binding != null) {
+            return binding;
+        }
+
+        return extraBindings
+                .computeIfAbsent(clazz, c -> new ConcurrentHashMap<>())
+                .computeIfAbsent(method, m -> createBinding(clazz, m));
+    }
+
+    /**
+     * Returns the parsed value of the mapping, or null if the mapping
+     * is not configured.
+     */
+    public T getValue(ServletContext servletContext, String name) throws IOException {
+
+        Snapshot<T> snapshot = this.snapshot;
+
+        if (snapshot == null || System.currentTimeMillis() >= nextCheck) {
+            snapshot = refresh(servletContext);
+        }
+
+        return snapshot.values.get(name);
+    }
+
+    synchronized Snapshot<T> refresh(ServletContext servletContext) throws IOException {
+
+        long now = System.currentTimeMillis();
+        Snapshot<T> snapshot = this.snapshot;
+
+        if (snapshot != null && now < nextCheck) {
+            return snapshot;
+        }
+
+        String context = servletContext.getContextPath();
+        String subsystem = context.startsWith("/") ? context.substring(1) : context;
+
+        File customMapping = new File(System.getProperty("catalina.base")
+                + "/" + subsystem + "/conf/" + filename);
+        long lastModified = customMapping.lastModified();
+
+        if (snapshot == null || snapshot.lastModified != lastModified) {
+            snapshot = load(subsystem, customMapping, lastModified);
+            this.snapshot = snapshot;
+        }
+
+        nextCheck = now + CHECK_INTERVAL;
+
+        return snapshot;
+    }
+
+    Snapshot<T> load(String subsystem, File customMapping, long lastModified) throws IOException {
+
+        Properties properties = new Properties();
+
+        // load default mapping
+        String defaultMapping = "/usr/share/pki/" + subsystem + "/conf/" + filename;
+        logger.debug("ResourceMethodTable: loading " + defaultMapping);
+        try (FileReader in = new FileReader(defaultMapping)) {
+            properties.load(in);
+        }
+
+        // load custom mapping
+        logger.debug("ResourceMethodTable: checking " + customMapping);
+        if (customMapping.exists()) {
+            logger.debug("ResourceMethodTable: loading " + customMapping);
+            try (FileReader in = new FileReader(customMapping)) {
+                properties.load(in);
+            }
+        }
+
+        Map<String, T> values = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            values.put(name, parse(properties.getProperty(name)));
+        }
+
+        return new Snapshot<>(values, lastModified);
+    }
+
+    /**
+     * The mapping of a resource method.
+     */
+    public static class Binding {
+
+        String name;
+        String auditInfo;
+
+        Binding(String name, String auditInfo) {
+            this.name = name;
+            this.auditInfo = auditInfo;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getAuditInfo() {
+            return auditInfo;
+        }
+    }
+
+    static class Snapshot<T> {
+
+        Map<String, T> values;
+        long lastModified;
+
+        Snapshot(Map<String, T> values, long lastModified) {
+            this.values = values;
+            this.lastModified = lastModified;
+        }
+    }
+}
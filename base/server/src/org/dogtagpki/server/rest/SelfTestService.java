@@ -24,8 +24,11 @@ import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.ws.rs.core.Response;
 
@@ -37,6 +40,7 @@ import com.netscape.certsrv.selftests.EMissingSelfTestException;
 import com.netscape.certsrv.selftests.ISelfTestSubsystem;
 import com.netscape.certsrv.selftests.SelfTestCollection;
 import com.netscape.certsrv.selftests.SelfTestData;
+import com.netscape.certsrv.selftests.SelfTestRecord;
 import com.netscape.certsrv.selftests.SelfTestResource;
 import com.netscape.certsrv.selftests.SelfTestResult;
 import com.netscape.certsrv.selftests.SelfTestResults;
@@ -192,10 +196,13 @@ public class SelfTestService extends PKIService implements SelfTestResource {
         CMSEngine engine = CMS.getCMSEngine();
         try {
             ISelfTestSubsystem subsystem = (ISelfTestSubsystem) engine.getSubsystem(ISelfTestSubsystem.ID);
-            for (String selfTestID : subsystem.listSelfTestsEnabledOnDemand()) {
-                Response response = runSelfTest(selfTestID);
-                SelfTestResult result = (SelfTestResult)response.getEntity();
-                results.addEntry(result);
+            String[] selfTestIDs = subsystem.listSelfTestsEnabledOnDemand();
+
+            if (selfTestIDs != null) {
+                // independent self tests run concurrently, recent results may be reused
+                for (SelfTestRecord record : subsystem.runSelfTests(Arrays.asList(selfTestIDs), true)) {
+                    results.addEntry(createSelfTestResult(record));
+                }
             }
 
         } catch (Exception e) {
@@ -211,24 +218,40 @@ public class SelfTestService extends PKIService implements SelfTestResource {
 
         logger.debug("SelfTestService.runSelfTest(" + selfTestID + ")");
 
-        SelfTestResult result = new SelfTestResult();
-        result.setID(selfTestID);
+        SelfTestResult result;
 
         CMSEngine engine = CMS.getCMSEngine();
         try {
             ISelfTestSubsystem subsystem = (ISelfTestSubsystem) engine.getSubsystem(ISelfTestSubsystem.ID);
-            subsystem.runSelfTest(selfTestID);
-            result.setStatus("PASSED");
+            List<SelfTestRecord> records = subsystem.runSelfTests(Collections.singletonList(selfTestID), true);
+            result = createSelfTestResult(records.get(0));
 
         } catch (Exception e) {
-            result.setStatus("FAILED");
-
-            StringWriter sw = new StringWriter();
-            PrintWriter out = new PrintWriter(sw);
-            e.printStackTrace(out);
-            result.setOutput(sw.toString());
+            result = createSelfTestResult(new SelfTestRecord(selfTestID, System.currentTimeMillis(), 0, e));
         }
 
         return createOKResponse(result);
     }
+
+    public SelfTestResult createSelfTestResult(SelfTestRecord record) {
+
+        SelfTestResult result = new SelfTestResult();
+        result.setID(record.getName());
+
+        Exception e = record.getException();
+
+        if (e == null) {
+            result.setStatus("PASSED");
+            return result;
+        }
+
+        result.setStatus("FAILED");
+
+        StringWriter sw = new StringWriter();
+        PrintWriter out = new PrintWriter(sw);
+        e.printStackTrace(out);
+        result.setOutput(sw.toString());
+
+        return result;
+    }
 }
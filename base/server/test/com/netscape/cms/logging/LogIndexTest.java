@@ -0,0 +1,211 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cms.logging;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LogIndexTest {
+
+    File dir;
+    File logFile;
+
+    // timestamps are stored with a one second precision
+    long time1 = 1600000000000L;
+    long time2 = 1600000060000L;
+
+    String entry1;
+    String entry2;
+
+    @Before
+    public void setUp() throws Exception {
+
+        dir = Files.createTempDirectory("logindex").toFile();
+        File logDir = new File(dir, "signedAudit");
+        logDir.mkdirs();
+        logFile = new File(logDir, "ca_audit.20200101000000");
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat(LogIndex.DATE_PATTERN);
+
+        entry1 = "0.main - [" + dateFormat.format(new Date(time1)) + "] [14] [6]"
+                + " [AuditEvent=CERT_REQUEST_PROCESSED][SubjectID=caadmin][Outcome=Success] processed"
+                + "\n certificate request";
+
+        entry2 = "0.main - [" + dateFormat.format(new Date(time2)) + "] [14] [6]"
+                + " [AuditEvent=ROLE_ASSUME][SubjectID=caadmin][Outcome=Success] assume role";
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        delete(dir);
+    }
+
+    void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    void write(String content, boolean append) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(logFile, append)) {
+            out.write(content.getBytes(Charset.defaultCharset()));
+        }
+    }
+
+    @Test
+    public void testScan() throws Exception {
+
+        // the last line is incomplete
+        String incomplete = " (truncated";
+        write(entry1 + "\n" + entry2 + "\n" + incomplete, false);
+
+        LogIndex index = LogIndex.scan(logFile);
+
+        Assert.assertEquals(2, index.size());
+        Assert.assertEquals(logFile.length(), index.length);
+
+        List<LogIndex.Entry> entries = index.getEntries();
+        Assert.assertEquals(2, entries.size());
+
+        LogIndex.Entry first = entries.get(0);
+        Assert.assertEquals(0, first.getOffset());
+        Assert.assertEquals(time1, first.getTime());
+        Assert.assertEquals(14, first.getSource());
+        Assert.assertEquals(6, first.getLevel());
+        Assert.assertEquals("CERT_REQUEST_PROCESSED", first.getEventType());
+        Assert.assertEquals("caadmin", first.getSubjectID());
+        Assert.assertEquals("Success", first.getOutcome());
+
+        // the continuation line belongs to the first entry
+        LogIndex.Entry second = entries.get(1);
+        Assert.assertEquals(entry1.length() + 1, second.getOffset());
+        Assert.assertEquals(time2, second.getTime());
+        Assert.assertEquals("ROLE_ASSUME", second.getEventType());
+
+        Assert.assertEquals(time1, index.minTime);
+        Assert.assertEquals(time2, index.maxTime);
+        Assert.assertEquals(2, index.getAuditEventCount(null));
+        Assert.assertEquals(1, index.getAuditEventCount("role_assume"));
+
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+            Assert.assertEquals(entry1, index.read(file, first.getOffset(), index.getNextOffset(0)));
+            Assert.assertEquals(entry2 + "\n" + incomplete,
+                    index.read(file, second.getOffset(), index.getNextOffset(1)));
+        }
+    }
+
+    @Test
+    public void testTimeRange() throws Exception {
+
+        write(entry1 + "\n" + entry2 + "\n", false);
+        LogIndex index = LogIndex.scan(logFile);
+
+        Assert.assertTrue(index.overlaps(null, null));
+        Assert.assertTrue(index.overlaps(time2, null));
+        Assert.assertFalse(index.overlaps(time2 + 1000, null));
+        Assert.assertFalse(index.overlaps(null, time1 - 1000));
+
+        Assert.assertTrue(index.isWithin(time1, time2));
+        Assert.assertFalse(index.isWithin(time1 + 1000, null));
+        Assert.assertFalse(index.isWithin(null, time2 - 1000));
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+
+        write(entry1 + "\n" + entry2 + "\n", false);
+        LogIndex.scan(logFile).store();
+
+        Assert.assertTrue(LogIndex.getIndexFile(logFile).exists());
+
+        // only the header is loaded
+        LogIndex index = LogIndex.load(logFile);
+        Assert.assertNotNull(index);
+        Assert.assertNull(index.entries);
+
+        Assert.assertEquals(2, index.size());
+        Assert.assertEquals(time1, index.minTime);
+        Assert.assertEquals(time2, index.maxTime);
+        Assert.assertEquals(1, index.getAuditEventCount("CERT_REQUEST_PROCESSED"));
+        Assert.assertEquals(2, index.getAuditEventCount(null));
+
+        // the entries are loaded when needed
+        List<LogIndex.Entry> entries = index.getEntries();
+        Assert.assertEquals(2, entries.size());
+        Assert.assertEquals(entry1.length() + 1, entries.get(1).getOffset());
+        Assert.assertEquals("ROLE_ASSUME", entries.get(1).getEventType());
+        Assert.assertEquals("caadmin", entries.get(1).getSubjectID());
+
+        try (RandomAccessFile file = new RandomAccessFile(logFile, "r")) {
+            Assert.assertEquals(entry1, index.read(file, entries.get(0).getOffset(), index.getNextOffset(0)));
+        }
+    }
+
+    @Test
+    public void testStaleIndex() throws Exception {
+
+        write(entry1 + "\n", false);
+        LogIndex.scan(logFile).store();
+
+        write(entry2 + "\n", true);
+
+        // the index is out of date
+        Assert.assertNull(LogIndex.load(logFile));
+
+        // and rebuilt when needed
+        LogIndex index = LogIndex.getIndex(logFile, false);
+        Assert.assertEquals(2, index.size());
+
+        index = LogIndex.load(logFile);
+        Assert.assertNotNull(index);
+        Assert.assertEquals(2, index.size());
+    }
+
+    @Test
+    public void testOldIndex() throws Exception {
+
+        write(entry1 + "\n", false);
+
+        File indexFile = LogIndex.getIndexFile(logFile);
+        indexFile.getParentFile().mkdirs();
+
+        try (FileOutputStream out = new FileOutputStream(indexFile)) {
+            String header = "# LogIndex 1 " + logFile.length() + " " + logFile.lastModified() + "\n";
+            out.write(header.getBytes(Charset.defaultCharset()));
+        }
+
+        Assert.assertNull(LogIndex.load(logFile));
+    }
+
+    @Test
+    public void testRemovedIndex() throws Exception {
+
+        write(entry1 + "\n" + entry2 + "\n", false);
+        LogIndex.scan(logFile).store();
+
+        LogIndex index = LogIndex.load(logFile);
+        LogIndex.getIndexFile(logFile).delete();
+
+        // the log is reindexed if the index file is gone
+        Assert.assertEquals(2, index.getEntries().size());
+    }
+}
@@ -0,0 +1,215 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.dbs;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netscape.certsrv.base.EBaseException;
+import com.netscape.cmscore.dbs.RandomSerialNumberPool.SerialNumberFilter;
+
+public class RandomSerialNumberPoolTest {
+
+    TestRepository repository;
+
+    @Before
+    public void setUp() throws Exception {
+        repository = new TestRepository();
+        repository.mMinSerialNo = BigInteger.valueOf(1);
+        repository.mMaxSerialNo = BigInteger.valueOf(1000);
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+
+        SerialNumberFilter filter = new SerialNumberFilter(1000);
+
+        for (int i = 0; i < 1000; i++) {
+            filter.add(BigInteger.valueOf(i * 2));
+        }
+
+        Assert.assertFalse(filter.isFull());
+
+        // no false negatives
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(filter.mightContain(BigInteger.valueOf(i * 2)));
+        }
+
+        // false positive rate is close to 1%
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (filter.mightContain(BigInteger.valueOf(100000 + i * 2 + 1))) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("False positives: " + falsePositives, falsePositives < 500);
+
+        filter.add(BigInteger.valueOf(-1));
+        Assert.assertTrue(filter.isFull());
+    }
+
+    @Test
+    public void testFill() throws Exception {
+
+        for (int i = 1; i <= 100; i++) {
+            repository.existing.add(BigInteger.valueOf(i * 3));
+        }
+
+        RandomSerialNumberPool pool = new RandomSerialNumberPool(repository, 50, 10, 1000);
+        pool.run();
+
+        Assert.assertEquals(1001, repository.preloadSize);
+        Assert.assertFalse(pool.filter.isFull());
+        Assert.assertTrue(pool.getAvailable() >= 50);
+
+        // known serial numbers are not checked in the database
+        for (BigInteger candidate : repository.checked) {
+            Assert.assertFalse(repository.existing.contains(candidate));
+        }
+
+        Set<BigInteger> taken = new HashSet<>();
+        BigInteger serialNumber;
+        while ((serialNumber = pool.take()) != null) {
+            Assert.assertFalse(repository.existing.contains(serialNumber));
+            Assert.assertTrue(taken.add(serialNumber));
+        }
+    }
+
+    @Test
+    public void testFullFilter() throws Exception {
+
+        for (int i = 1; i <= 100; i++) {
+            repository.existing.add(BigInteger.valueOf(i * 3));
+        }
+
+        // the range holds more serial numbers than the filter
+        RandomSerialNumberPool pool = new RandomSerialNumberPool(repository, 50, 10, 20);
+        pool.run();
+
+        Assert.assertEquals(21, repository.preloadSize);
+        Assert.assertTrue(pool.filter.isFull());
+
+        // the pool is still filled using the database check only
+        Assert.assertTrue(pool.getAvailable() >= 50);
+        Assert.assertTrue(repository.lookups > 0);
+
+        Set<BigInteger> taken = new HashSet<>();
+        for (int i = 0; i < 40; i++) {
+            taken.add(pool.take());
+        }
+
+        // serial numbers pooled before are not pooled again
+        pool.run();
+
+        BigInteger serialNumber;
+        while ((serialNumber = pool.take()) != null) {
+            Assert.assertFalse(repository.existing.contains(serialNumber));
+            Assert.assertTrue(taken.add(serialNumber));
+        }
+    }
+
+    @Test
+    public void testRangeChange() throws Exception {
+
+        RandomSerialNumberPool pool = new RandomSerialNumberPool(repository, 10, 10, 1000);
+        pool.run();
+
+        SerialNumberFilter filter = pool.filter;
+        Assert.assertEquals(1, repository.preloads);
+
+        // the filter is kept while the range is the same
+        pool.run();
+        Assert.assertSame(filter, pool.filter);
+        Assert.assertEquals(1, repository.preloads);
+
+        // the filter is rebuilt for a new range
+        repository.mMinSerialNo = BigInteger.valueOf(2001);
+        repository.mMaxSerialNo = BigInteger.valueOf(3000);
+        pool.clear();
+        pool.run();
+
+        Assert.assertNotSame(filter, pool.filter);
+        Assert.assertEquals(2, repository.preloads);
+        Assert.assertEquals(BigInteger.valueOf(2001), repository.preloadMin);
+        Assert.assertEquals(BigInteger.valueOf(3000), repository.preloadMax);
+
+        BigInteger serialNumber;
+        while ((serialNumber = pool.take()) != null) {
+            Assert.assertTrue(serialNumber.compareTo(repository.mMinSerialNo) >= 0);
+            Assert.assertTrue(serialNumber.compareTo(repository.mMaxSerialNo) <= 0);
+        }
+    }
+
+    static class TestRepository extends CertificateRepository {
+
+        Set<BigInteger> existing = new HashSet<>();
+        List<BigInteger> checked = new ArrayList<>();
+        Random random = new Random(0);
+
+        int preloads;
+        int preloadSize;
+        BigInteger preloadMin;
+        BigInteger preloadMax;
+        int lookups;
+
+        TestRepository() throws EBaseException {
+            super(new DBSubsystem(), 16);
+        }
+
+        @Override
+        Collection<BigInteger> getSerialNumbersInRange(
+                BigInteger minSerialNo,
+                BigInteger maxSerialNo,
+                int maxSize) {
+
+            preloads++;
+            preloadSize = maxSize;
+            preloadMin = minSerialNo;
+            preloadMax = maxSerialNo;
+
+            List<BigInteger> serialNumbers = new ArrayList<>();
+            for (BigInteger serialNumber : existing) {
+                if (serialNumbers.size() >= maxSize) break;
+                if (serialNumber.compareTo(minSerialNo) < 0) continue;
+                if (serialNumber.compareTo(maxSerialNo) > 0) continue;
+                serialNumbers.add(serialNumber);
+            }
+            return serialNumbers;
+        }
+
+        @Override
+        synchronized List<BigInteger> generateRandomSerialNumbers(int count) {
+
+            int size = mMaxSerialNo.subtract(mMinSerialNo).intValue() + 1;
+
+            List<BigInteger> serialNumbers = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                serialNumbers.add(mMinSerialNo.add(BigInteger.valueOf(random.nextInt(size))));
+            }
+            return serialNumbers;
+        }
+
+        @Override
+        public Set<BigInteger> findExistingSerialNumbers(Collection<BigInteger> serialNumbers) {
+
+            lookups++;
+            checked.addAll(serialNumbers);
+
+            Set<BigInteger> result = new HashSet<>(serialNumbers);
+            result.retainAll(existing);
+            return result;
+        }
+    }
+}
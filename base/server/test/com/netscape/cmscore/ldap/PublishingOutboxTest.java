@@ -0,0 +1,151 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.ldap;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.netscape.certsrv.base.EBaseException;
+
+public class PublishingOutboxTest {
+
+    static BigInteger SERIAL_NUMBER = BigInteger.valueOf(0x10);
+
+    File dir;
+    File journalFile;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("outbox").toFile();
+        journalFile = new File(dir, "journal");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    TestOutbox open() throws Exception {
+        TestOutbox outbox = new TestOutbox(journalFile);
+        outbox.replay();
+        outbox.compact();
+        outbox.running = true;
+        return outbox;
+    }
+
+    void processPending(TestOutbox outbox) throws Exception {
+        PublishingOutbox.Partition partition = outbox.getPartition(SERIAL_NUMBER);
+        while (!partition.pending.isEmpty()) {
+            outbox.process(partition.takeBatch());
+        }
+    }
+
+    @Test
+    public void testRestartAfterRevocation() throws Exception {
+
+        TestOutbox outbox = open();
+        outbox.add(PublishingOutbox.PUBLISH, SERIAL_NUMBER, null);
+        outbox.add(PublishingOutbox.UNPUBLISH, SERIAL_NUMBER, null);
+
+        // only the unpublish operation is processed
+        processPending(outbox);
+        Assert.assertEquals(1, outbox.processed.size());
+        Assert.assertEquals(PublishingOutbox.UNPUBLISH, outbox.processed.get(0).action);
+        outbox.closeJournal();
+
+        // the superseded publish operation is not replayed
+        outbox = open();
+        Assert.assertEquals(0, outbox.getPendingOperations());
+        processPending(outbox);
+        Assert.assertTrue(outbox.processed.isEmpty());
+        outbox.closeJournal();
+    }
+
+    @Test
+    public void testRestartBeforeProcessing() throws Exception {
+
+        TestOutbox outbox = open();
+        outbox.add(PublishingOutbox.PUBLISH, SERIAL_NUMBER, null);
+        outbox.add(PublishingOutbox.UNPUBLISH, SERIAL_NUMBER, null);
+        outbox.closeJournal();
+
+        // the newest operation still supersedes the older one after replay
+        outbox = open();
+        Assert.assertEquals(1, outbox.getPendingOperations());
+        processPending(outbox);
+        Assert.assertEquals(1, outbox.processed.size());
+        Assert.assertEquals(PublishingOutbox.UNPUBLISH, outbox.processed.get(0).action);
+        outbox.closeJournal();
+
+        outbox = open();
+        Assert.assertEquals(0, outbox.getPendingOperations());
+        outbox.closeJournal();
+    }
+
+    @Test
+    public void testFailedOperation() throws Exception {
+
+        TestOutbox outbox = open();
+        outbox.setMaxAttempts(1);
+        outbox.failure = true;
+        outbox.add(PublishingOutbox.PUBLISH, SERIAL_NUMBER, null);
+
+        processPending(outbox);
+        Assert.assertEquals(0, outbox.getPendingOperations());
+        Assert.assertEquals(1, outbox.getFailedOperations());
+
+        // the failed operation is kept across compactions
+        outbox.compact();
+        outbox.closeJournal();
+
+        // and restarts, but not retried
+        outbox = open();
+        Assert.assertEquals(0, outbox.getPendingOperations());
+        Assert.assertEquals(1, outbox.getFailedOperations());
+
+        // a newer operation for the same certificate retires it
+        outbox.add(PublishingOutbox.PUBLISH, SERIAL_NUMBER, null);
+        processPending(outbox);
+        Assert.assertEquals(1, outbox.processed.size());
+        Assert.assertEquals(0, outbox.getFailedOperations());
+        outbox.closeJournal();
+
+        outbox = open();
+        Assert.assertEquals(0, outbox.getPendingOperations());
+        Assert.assertEquals(0, outbox.getFailedOperations());
+        outbox.closeJournal();
+    }
+
+    static class TestOutbox extends PublishingOutbox {
+
+        List<Operation> processed = new ArrayList<>();
+        boolean failure;
+
+        TestOutbox(File journalFile) {
+            super(new PublisherProcessor("test"), journalFile, 1);
+            setSync(false);
+        }
+
+        @Override
+        void processOperation(Operation op) throws EBaseException {
+            if (failure) {
+                throw new EBaseException("Unable to publish " + op);
+            }
+            processed.add(op);
+        }
+    }
+}
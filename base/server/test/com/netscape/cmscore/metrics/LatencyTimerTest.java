@@ -0,0 +1,147 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.metrics;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyTimerTest {
+
+    @Test
+    public void testBucketBounds() throws Exception {
+
+        Assert.assertEquals(0, LatencyTimer.getBucket(-1));
+        Assert.assertEquals(0, LatencyTimer.getBucket(0));
+
+        for (int bucket = 0; bucket < LatencyTimer.BUCKETS; bucket++) {
+
+            long upperBound = LatencyTimer.getUpperBound(bucket);
+            Assert.assertEquals("Bucket " + bucket, bucket, LatencyTimer.getBucket(upperBound));
+
+            if (bucket < LatencyTimer.BUCKETS - 1) {
+                // the next value starts the next bucket
+                Assert.assertEquals("Bucket " + bucket, bucket + 1, LatencyTimer.getBucket(upperBound + 1));
+            }
+
+            if (bucket >= LatencyTimer.SUB_BUCKETS) {
+                // the bucket width is at most 1/16 of its lower bound
+                long lowerBound = LatencyTimer.getUpperBound(bucket - 1) + 1;
+                long width = upperBound - lowerBound + 1;
+                Assert.assertTrue("Bucket " + bucket, width * LatencyTimer.SUB_BUCKETS <= lowerBound);
+            }
+        }
+
+        // values beyond the largest bucket are capped
+        Assert.assertEquals(LatencyTimer.BUCKETS - 1, LatencyTimer.getBucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testEmptyTimer() throws Exception {
+
+        LatencyTimer timer = new LatencyTimer("test_seconds", "");
+
+        Assert.assertEquals(0, timer.getCount());
+        Assert.assertEquals(-1, timer.getPercentile(0.5));
+    }
+
+    @Test
+    public void testSmallValues() throws Exception {
+
+        LatencyTimer timer = new LatencyTimer("test_seconds", "");
+
+        // values below 16 microseconds are recorded exactly
+        for (int i = 1; i <= 10; i++) {
+            timer.record(i, TimeUnit.MICROSECONDS);
+        }
+
+        Assert.assertEquals(10, timer.getCount());
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(55), timer.getSum());
+
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1), timer.getPercentile(0));
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(5), timer.getPercentile(0.5));
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(9), timer.getPercentile(0.9));
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(10), timer.getPercentile(0.99));
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(10), timer.getPercentile(1));
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+
+        LatencyTimer timer = new LatencyTimer("test_seconds", "");
+
+        // 1 ms to 10 s
+        for (int i = 1; i <= 10000; i++) {
+            timer.record(i, TimeUnit.MILLISECONDS);
+        }
+
+        for (double quantile : LatencyTimer.QUANTILES) {
+
+            long expected = TimeUnit.MILLISECONDS.toNanos((long) Math.ceil(quantile * 10000));
+            long actual = timer.getPercentile(quantile);
+
+            // never below the actual value and within the bucket width
+            Assert.assertTrue("Quantile " + quantile + ": " + actual, actual >= expected);
+            Assert.assertTrue("Quantile " + quantile + ": " + actual, actual <= expected * 17 / 16);
+        }
+
+        // the percentiles do not exceed the maximum
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(10), timer.getPercentile(1));
+        Assert.assertEquals(TimeUnit.SECONDS.toNanos(10), timer.getSnapshot().getMax());
+    }
+
+    @Test
+    public void testRotation() throws Exception {
+
+        long interval = TimeUnit.HOURS.toNanos(1);
+        LatencyTimer timer = new LatencyTimer("test_seconds", "", interval);
+
+        timer.record(1, TimeUnit.MILLISECONDS);
+        long start = System.nanoTime();
+
+        // the previous interval is still in the window
+        timer.rotate(start + interval);
+        Assert.assertEquals(1, timer.getSnapshot().getCount());
+
+        timer.record(2, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(2, timer.getSnapshot().getCount());
+
+        // the first interval leaves the window
+        timer.rotate(start + 2 * interval);
+        Assert.assertEquals(1, timer.getSnapshot().getCount());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(2), timer.getPercentile(0.5));
+
+        // both intervals leave the window after an idle interval
+        timer.rotate(start + 4 * interval);
+        Assert.assertEquals(0, timer.getSnapshot().getCount());
+        Assert.assertEquals(-1, timer.getPercentile(0.5));
+
+        // the total count and sum are kept
+        Assert.assertEquals(2, timer.getCount());
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(3), timer.getSum());
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+
+        LatencyTimer timer = new LatencyTimer("test_seconds", "{op=\"sign\"}");
+        timer.record(15, TimeUnit.MICROSECONDS);
+
+        StringWriter out = new StringWriter();
+        timer.write(out);
+
+        Assert.assertEquals(
+                "test_seconds{op=\"sign\",quantile=\"0.5\"} 1.5E-5\n" +
+                "test_seconds{op=\"sign\",quantile=\"0.9\"} 1.5E-5\n" +
+                "test_seconds{op=\"sign\",quantile=\"0.99\"} 1.5E-5\n" +
+                "test_seconds{op=\"sign\",quantile=\"0.999\"} 1.5E-5\n" +
+                "test_seconds_sum{op=\"sign\"} 1.5E-5\n" +
+                "test_seconds_count{op=\"sign\"} 1\n",
+                out.toString());
+    }
+}
@@ -0,0 +1,97 @@
+//
+// Copyright Red Hat, Inc.
+//
+// SPDX-License-Identifier: GPL-2.0-or-later
+//
+package com.netscape.cmscore.metrics;
+
+import java.io.StringWriter;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+    MetricsRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new MetricsRegistry();
+    }
+
+    @Test
+    public void testFormatLabels() throws Exception {
+
+        Assert.assertEquals("", MetricsRegistry.formatLabels());
+        Assert.assertEquals("{pool=\"DBSubsystem\"}", MetricsRegistry.formatLabels("pool", "DBSubsystem"));
+        Assert.assertEquals("{a=\"1\",b=\"2\"}", MetricsRegistry.formatLabels("a", "1", "b", "2"));
+
+        // quotes, backslashes, and new lines are escaped
+        Assert.assertEquals("{a=\"x\\\"y\\\\z\\n\"}", MetricsRegistry.formatLabels("a", "x\"y\\z\n"));
+
+        // missing values are empty
+        Assert.assertEquals("{a=\"\"}", MetricsRegistry.formatLabels("a", null));
+
+        try {
+            MetricsRegistry.formatLabels("a");
+            Assert.fail("Labels without values should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGetMetric() throws Exception {
+
+        Counter counter = registry.getCounter("test_total", "Test counter", "type", "a");
+
+        Assert.assertSame(counter, registry.getCounter("test_total", "Test counter", "type", "a"));
+        Assert.assertNotSame(counter, registry.getCounter("test_total", "Test counter", "type", "b"));
+
+        try {
+            registry.getGauge("test_total", "Test gauge", "type", "a");
+            Assert.fail("Metric type mismatch should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        registry.remove("test_total", "type", "a");
+        Assert.assertNotSame(counter, registry.getCounter("test_total", "Test counter", "type", "a"));
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+
+        registry.getCounter("test_total", "Test counter", "type", "b").add(2);
+        registry.getCounter("test_total", "Test counter", "type", "a").increment();
+        registry.getGauge("test_connections", "Test gauge").set(5);
+        registry.registerGauge("test_ratio", "Test supplied gauge", () -> 0.25);
+        registry.getTimer("test_seconds", "Test timer");
+
+        StringWriter out = new StringWriter();
+        registry.write(out);
+
+        // families and metrics are sorted by name
+        Assert.assertEquals(
+                "# HELP test_connections Test gauge\n" +
+                "# TYPE test_connections gauge\n" +
+                "test_connections 5\n" +
+                "# HELP test_ratio Test supplied gauge\n" +
+                "# TYPE test_ratio gauge\n" +
+                "test_ratio 0.25\n" +
+                "# HELP test_seconds Test timer\n" +
+                "# TYPE test_seconds summary\n" +
+                "test_seconds{quantile=\"0.5\"} NaN\n" +
+                "test_seconds{quantile=\"0.9\"} NaN\n" +
+                "test_seconds{quantile=\"0.99\"} NaN\n" +
+                "test_seconds{quantile=\"0.999\"} NaN\n" +
+                "test_seconds_sum 0\n" +
+                "test_seconds_count 0\n" +
+                "# HELP test_total Test counter\n" +
+                "# TYPE test_total counter\n" +
+                "test_total{type=\"a\"} 1\n" +
+                "test_total{type=\"b\"} 2\n",
+                out.toString());
+    }
+}
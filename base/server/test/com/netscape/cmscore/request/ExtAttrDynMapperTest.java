@@ -2,6 +2,7 @@ package com.netscape.cmscore.request;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
@@ -259,6 +260,86 @@ public class ExtAttrDynMapperTest extends CMSBaseTestCase {
 
     }
 
+    public void testCompactExtData() throws EBaseException {
+        ExtAttrDynMapper compactMapper = new ExtAttrDynMapper(true, Arrays.asList("okey2"));
+
+        Hashtable<String, Object> extData = new Hashtable<String, Object>();
+        extData.put("o;key1", "val1");
+        extData.put("okey2", "val2");
+        Hashtable<String, String> innerData = new Hashtable<String, String>();
+        innerData.put("i;key31", "val31");
+        innerData.put("ikey32", "val32");
+        extData.put("okey3", innerData);
+
+        LDAPAttributeSet attrs = new LDAPAttributeSet();
+        compactMapper.mapObjectToLDAPAttributeSet(null, IRequestRecord.ATTR_EXT_DATA,
+                extData, attrs);
+
+        // only the searchable key is stored as a separate attribute
+        assertEquals(2, attrs.size());
+        assertNotNull(attrs.getAttribute(Schema.LDAP_ATTR_EXT_DATA_BLOB));
+        assertNotNull(attrs.getAttribute(ExtAttrDynMapper.extAttrPrefix + "okey2"));
+        assertNull(attrs.getAttribute(ExtAttrDynMapper.extAttrPrefix + "o--003bkey1"));
+
+        // stale attribute from the legacy form is ignored
+        attrs.add(new LDAPAttribute(
+                ExtAttrDynMapper.extAttrPrefix + "okey4", "val4"));
+
+        RequestRecordStub requestRecord = new RequestRecordStub();
+        compactMapper.mapLDAPAttributeSetToObject(attrs, IRequestRecord.ATTR_EXT_DATA,
+                requestRecord);
+
+        Hashtable<?, ?> result = (Hashtable<?, ?>) requestRecord.extAttrData.get(
+                IRequestRecord.ATTR_EXT_DATA);
+        assertEquals(3, result.size());
+        assertEquals("val1", result.get("o;key1"));
+        assertEquals("val2", result.get("okey2"));
+        assertEquals(innerData, result.get("okey3"));
+
+        // the blob is also readable when compact storage is disabled
+        requestRecord = new RequestRecordStub();
+        mapper.mapLDAPAttributeSetToObject(attrs, IRequestRecord.ATTR_EXT_DATA,
+                requestRecord);
+
+        result = (Hashtable<?, ?>) requestRecord.extAttrData.get(
+                IRequestRecord.ATTR_EXT_DATA);
+        assertEquals("val1", result.get("o;key1"));
+        assertEquals(innerData, result.get("okey3"));
+
+        // attributes written without compact storage override the blob
+        attrs.add(new LDAPAttribute(
+                ExtAttrDynMapper.extAttrPrefix + "o--003bkey1", "val1b"));
+
+        requestRecord = new RequestRecordStub();
+        mapper.mapLDAPAttributeSetToObject(attrs, IRequestRecord.ATTR_EXT_DATA,
+                requestRecord);
+
+        result = (Hashtable<?, ?>) requestRecord.extAttrData.get(
+                IRequestRecord.ATTR_EXT_DATA);
+        assertEquals("val1b", result.get("o;key1"));
+        assertEquals("val4", result.get("okey4"));
+    }
+
+    public void testNoBlobWithoutCompactExtData() throws EBaseException {
+        Hashtable<String, Object> extData = new Hashtable<String, Object>();
+        extData.put("okey1", "val1");
+
+        // neither adding nor modifying a request touches the blob
+        LDAPAttributeSet attrs = new LDAPAttributeSet();
+        mapper.mapObjectToLDAPAttributeSet(null, IRequestRecord.ATTR_EXT_DATA,
+                extData, attrs);
+
+        assertEquals(1, attrs.size());
+        assertNull(attrs.getAttribute(Schema.LDAP_ATTR_EXT_DATA_BLOB));
+
+        attrs = new LDAPAttributeSet();
+        mapper.mapObjectToLDAPAttributeSet(new RequestRecordStub(), IRequestRecord.ATTR_EXT_DATA,
+                extData, attrs);
+
+        assertEquals(1, attrs.size());
+        assertNull(attrs.getAttribute(Schema.LDAP_ATTR_EXT_DATA_BLOB));
+    }
+
     static class RequestRecordStub extends RequestRecordDefaultStub {
         private static final long serialVersionUID = 4106967075497999274L;
         Hashtable<String, Object> extAttrData = new Hashtable<String, Object>();
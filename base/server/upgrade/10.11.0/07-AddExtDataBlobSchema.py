@@ -0,0 +1,99 @@
+#
+# Copyright Red Hat, Inc.
+#
+# SPDX-License-Identifier: GPL-2.0-or-later
+#
+from __future__ import absolute_import
+import logging
+import re
+
+import ldap
+
+import pki
+
+logger = logging.getLogger(__name__)
+
+EXT_DATA_BLOB = 'extDataBlob'
+
+EXT_DATA_BLOB_ATTRIBUTE_TYPE = \
+    "( extDataBlob-oid NAME 'extDataBlob' DESC 'CMS defined attribute' " \
+    "SYNTAX 1.3.6.1.4.1.1466.115.121.1.40 SINGLE-VALUE X-ORIGIN 'user defined' )"
+
+
+class AddExtDataBlobSchema(pki.server.upgrade.PKIServerUpgradeScriptlet):
+
+    def __init__(self):
+        super(AddExtDataBlobSchema, self).__init__()
+        self.message = 'Add extDataBlob attribute into request schema'
+
+    def upgrade_subsystem(self, instance, subsystem):
+
+        try:
+            con = subsystem.open_database()
+
+        except ldap.LDAPError as e:
+            logger.warning('Unable to connect to %s database: %s', subsystem.name, e)
+            logger.warning('Run pki-server db-schema-upgrade to update the schema')
+            return
+
+        try:
+            self.update_schema(con)
+
+        except ldap.LDAPError as e:
+            logger.warning('Unable to update %s database schema: %s', subsystem.name, e)
+            logger.warning('Run pki-server db-schema-upgrade to update the schema')
+
+        finally:
+            con.close()
+
+    def update_schema(self, con):
+
+        entries = con.ldap.search_s(
+            'cn=schema',
+            ldap.SCOPE_BASE,
+            '(objectClass=*)',
+            ['attributeTypes', 'objectClasses'])
+
+        attrs = entries[0][1]
+
+        attribute_types = [v.decode('utf-8') for v in attrs.get('attributeTypes', [])]
+        object_classes = [v.decode('utf-8') for v in attrs.get('objectClasses', [])]
+
+        changes = []
+
+        if not any("NAME 'extDataBlob'" in v for v in attribute_types):
+            logger.info('Adding extDataBlob attribute type')
+            changes.append((
+                ldap.MOD_ADD,
+                'attributeTypes',
+                [EXT_DATA_BLOB_ATTRIBUTE_TYPE.encode('utf-8')]))
+
+        request = next((v for v in object_classes if "NAME 'request'" in v), None)
+
+        if request is None:
+            logger.warning('Missing request object class')
+            return
+
+        match = re.search(r'MAY \(([^)]*)\)', request)
+
+        if match is None:
+            logger.warning('Invalid request object class: %s', request)
+            return
+
+        names = [name.strip() for name in match.group(1).split('$')]
+
+        if EXT_DATA_BLOB not in names:
+            logger.info('Adding extDataBlob into request object class')
+
+            names.append(EXT_DATA_BLOB)
+            new_request = '%sMAY ( %s )%s' % (
+                request[:match.start()],
+                ' $ '.join(names),
+                request[match.end():])
+
+            # replace the object class definition
+            changes.append((ldap.MOD_DELETE, 'objectClasses', [request.encode('utf-8')]))
+            changes.append((ldap.MOD_ADD, 'objectClasses', [new_request.encode('utf-8')]))
+
+        if changes:
+            con.ldap.modify_s('cn=schema', changes)
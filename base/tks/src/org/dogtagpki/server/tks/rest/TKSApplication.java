@@ -11,6 +11,7 @@ import org.dogtagpki.server.rest.AuditService;
 import org.dogtagpki.server.rest.AuthMethodInterceptor;
 import org.dogtagpki.server.rest.GroupService;
 import org.dogtagpki.server.rest.MessageFormatInterceptor;
+import org.dogtagpki.server.rest.MetricsService;
 import org.dogtagpki.server.rest.PKIExceptionMapper;
 import org.dogtagpki.server.rest.SelfTestService;
 import org.dogtagpki.server.rest.SessionContextInterceptor;
@@ -32,6 +33,9 @@ public class TKSApplication extends Application {
         // installer
         classes.add(TKSInstallerService.class);
 
+        // metrics
+        classes.add(MetricsService.class);
+
         // selftests
         classes.add(SelfTestService.class);
 
@@ -47,8 +51,8 @@ public class TKSApplication extends Application {
 
         // interceptors
         singletons.add(new SessionContextInterceptor());
-        singletons.add(new AuthMethodInterceptor());
-        singletons.add(new ACLInterceptor());
+        singletons.add(new AuthMethodInterceptor(classes));
+        singletons.add(new ACLInterceptor(classes));
         singletons.add(new MessageFormatInterceptor());
     }
 
@@ -17,18 +17,36 @@
 // --- END COPYRIGHT BLOCK ---
 package com.netscape.cmstools;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
 import java.security.PublicKey;
 import java.security.Signature;
 import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
+import java.util.Properties;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.InitializationValues;
@@ -54,8 +72,15 @@ public class AuditVerify {
     // signature verification be platform-independent.
     private static final byte LINE_SEP_BYTE = 0x0a;
 
+    // Signatures of audit logs signed in hash chain mode cover the
+    // SHA-256 hash chain of the entries instead of the entries.
+    private static final String CHAIN_SIGNATURE = "signature of audit log hash chain";
+    private static final int CHAIN_LENGTH = 32;
+
     boolean verbose;
     X509Certificate signingCert;
+    int threads = Runtime.getRuntime().availableProcessors();
+    Properties checkpoint;
 
     public AuditVerify() {
     }
@@ -64,6 +89,10 @@ public class AuditVerify {
         this.verbose = verbose;
     }
 
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
     public void setSigningCert(X509Certificate signingCert) throws Exception {
 
         // verify audit signing certificate
@@ -93,7 +122,7 @@ public class AuditVerify {
 
     private static void usage() {
         System.out
-                .println("Usage: AuditVerify -d <dbdir> -n <signing certificate nickname> -a <log list file> [-P <cert/key db prefix>] [-v]");
+                .println("Usage: AuditVerify -d <dbdir> -n <signing certificate nickname> -a <log list file> [-P <cert/key db prefix>] [-t <threads>] [-c <checkpoint file>] [-v]");
         System.exit(1);
     }
 
@@ -151,6 +180,8 @@ public class AuditVerify {
         public String sigStartFile;
         public String sigStopFile;
         public int signedLines;
+        public long bytes;
+        public long lines;
     }
 
     public Result verify(List<String> logFiles) throws Exception {
@@ -170,131 +201,531 @@ public class AuditVerify {
             System.out.println("AuditVerify: Signing algorithm: " + sigAlgorithm);
         }
 
-        Signature sig = Signature.getInstance(sigAlgorithm, CRYPTO_PROVIDER);
+        final String algorithm = sigAlgorithm;
+
+        // each verifier thread uses its own signature and digest objects
+        ThreadLocal<Verifier> verifiers = new ThreadLocal<Verifier>() {
+            protected Verifier initialValue() {
+                try {
+                    return new Verifier(algorithm, pubk);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            int counter;
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AuditVerify-" + (++counter));
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // events in log order, bounded to limit the number of pending segments
+        BlockingQueue<Event> events = new ArrayBlockingQueue<>(threads * 16);
+
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        Future<Result> scan = reader.submit(() -> scan(logFiles, events, executor, verifiers));
+
+        long startTime = System.currentTimeMillis();
 
         int goodSigCount = 0;
         int badSigCount = 0;
-
         int lastFileWritten = -1;
 
+        // the checkpoint only advances until the first failure
+        boolean failed = false;
+
+        try {
+            while (true) {
+
+                Event event = events.take();
+
+                if (event.type == EventType.END) {
+                    break;
+                }
+
+                if (event.type == EventType.FILE) {
+                    if (verbose) {
+                        writeFile(event.fileName);
+                        lastFileWritten = event.fileIndex;
+                    }
+                    continue;
+                }
+
+                if (event.type == EventType.IGNORE) {
+                    if (verbose) {
+                        output(event.linenum, "Ignoring first signature of log series");
+                    }
+                    continue;
+                }
+
+                if (event.type == EventType.RESUME) {
+                    if (verbose) {
+                        output(event.linenum, "Resuming after verified signature from checkpoint");
+                    }
+                    continue;
+                }
+
+                if (event.type == EventType.INVALID) {
+                    output(event.linenum, "INVALID SIGNATURE");
+                    ++badSigCount;
+                    failed = true;
+                    continue;
+                }
+
+                // EventType.CHECK
+                if (verbose) {
+                    System.out.println("AuditVerify: Signature: " + event.signature);
+                }
+
+                if (event.result.get()) {
+
+                    // signature verifies correctly
+                    if (verbose) {
+                        writeSigStatus(event.linenum, event.sigStartFile,
+                                event.sigStartLine, event.sigStopFile, event.sigStopLine,
+                                "verification succeeded");
+                    }
+
+                    ++goodSigCount;
+
+                    if (!failed && checkpoint != null) {
+                        checkpoint.setProperty(event.fileName + ".offset", Long.toString(event.offset));
+                        checkpoint.setProperty(event.fileName + ".line", Integer.toString(event.linenum));
+                        checkpoint.setProperty(event.fileName + ".hash", event.hash);
+                    }
+
+                } else {
+
+                    if (lastFileWritten < event.fileIndex) {
+                        writeFile(event.fileName);
+                        lastFileWritten = event.fileIndex;
+                    }
+
+                    writeSigStatus(event.linenum, event.sigStartFile,
+                            event.sigStartLine, event.sigStopFile, event.sigStopLine,
+                            "VERIFICATION FAILED");
+
+                    ++badSigCount;
+                    failed = true;
+                }
+            }
+
+            Result result;
+            try {
+                result = scan.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+
+            result.goodSigCount = goodSigCount;
+            result.badSigCount = badSigCount;
+
+            if (verbose) {
+                long time = Math.max(1, System.currentTimeMillis() - startTime);
+                System.out.println("AuditVerify: Verified " + result.bytes + " bytes in "
+                        + result.lines + " lines in " + time + " ms ("
+                        + (result.bytes * 1000 / time / 1024) + " KB/s, "
+                        + (result.lines * 1000 / time) + " lines/s) using "
+                        + threads + " thread(s)");
+            }
+
+            return result;
+
+        } finally {
+            scan.cancel(true);
+            reader.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Reads the log files sequentially and splits them into segments at
+     * signature boundaries. Each segment is verified by the executor, and
+     * the results are reported through the events in log order.
+     */
+    Result scan(
+            List<String> logFiles,
+            BlockingQueue<Event> events,
+            ExecutorService executor,
+            ThreadLocal<Verifier> verifiers) throws Exception {
+
         int sigStartLine = 1;
         int sigStopLine = 1;
         String sigStartFile = logFiles.get(0);
         String sigStopFile = null;
         int signedLines = 1;
 
+        long bytes = 0;
+        long lines = 0;
+
         // don't start verification before the first signature
         boolean verifySignature = false;
 
-        for (int curfile = 0; curfile < logFiles.size(); ++curfile) {
-
-            String curfileName = logFiles.get(curfile);
-            BufferedReader br = new BufferedReader(new FileReader(curfileName));
+        List<String> segment = new ArrayList<>();
 
-            if (verbose) {
-                writeFile(curfileName);
-                lastFileWritten = curfile;
-            }
+        // skip files verified up to a checkpoint
+        int firstFile = 0;
+        long startOffset = 0;
+        int startLine = 0;
 
-            String curLine;
-            int linenum = 0;
+        Position position = findCheckpoint(logFiles);
+        if (position != null) {
+            firstFile = position.fileIndex;
+            startOffset = position.offset;
+            startLine = position.line - 1;
+        }
 
-            while ((curLine = br.readLine()) != null) {
+        try {
+            for (int curfile = firstFile; curfile < logFiles.size(); ++curfile) {
 
-                ++linenum;
+                String curfileName = logFiles.get(curfile);
+                events.put(Event.file(curfile, curfileName));
 
-                if (curLine.indexOf("AUDIT_LOG_SIGNING") != -1) { // found signature
+                long offset = curfile == firstFile ? startOffset : 0;
+                int linenum = curfile == firstFile ? startLine : 0;
 
-                    if (!verifySignature) { // found first signature
+                try (LineReader br = new LineReader(curfileName, offset)) {
 
-                        // Ignore the first signature of the first file,
-                        // since it signs data we don't have access to.
-                        if (verbose) {
-                            output(linenum, "Ignoring first signature of log series");
-                        }
+                    String curLine;
 
-                        // start verification after the first signature
-                        verifySignature = true;
+                    while ((curLine = br.readLine()) != null) {
 
-                    } else { // found another signature
+                        ++linenum;
+                        ++lines;
+                        bytes += br.getOffset() - br.getLineOffset();
 
-                        int sigStart = curLine.indexOf("sig: ");
+                        if (curLine.indexOf("AUDIT_LOG_SIGNING") != -1) { // found signature
 
-                        if (sigStart < 0) {
-                            output(linenum, "INVALID SIGNATURE");
-                            ++badSigCount;
+                            if (!verifySignature) { // found first signature
 
-                        } else {
+                                if (position != null) {
+                                    // this signature was verified in a previous run
+                                    events.put(Event.resume(linenum));
 
-                            String signature = curLine.substring(sigStart + 5);
+                                } else {
+                                    // Ignore the first signature of the first file,
+                                    // since it signs data we don't have access to.
+                                    events.put(Event.ignore(linenum));
+                                }
 
-                            if (verbose) {
-                                System.out.println("AuditVerify: Signature: " + signature);
-                            }
+                                // start verification after the first signature
+                                verifySignature = true;
 
-                            byte[] logSig = base64decode(signature);
+                            } else { // found another signature
 
-                            // verify the signature
-                            if (sig.verify(logSig)) {
+                                int sigStart = curLine.indexOf("sig: ");
 
-                                // signature verifies correctly
-                                if (verbose) {
-                                    writeSigStatus(linenum, sigStartFile,
-                                            sigStartLine, sigStopFile, sigStopLine,
-                                            "verification succeeded");
-                                }
+                                if (sigStart < 0) {
+                                    events.put(Event.invalid(linenum));
 
-                                ++goodSigCount;
+                                } else {
 
-                            } else {
+                                    String signature = curLine.substring(sigStart + 5);
 
-                                if (lastFileWritten < curfile) {
-                                    writeFile(curfileName);
-                                    lastFileWritten = curfile;
-                                }
+                                    byte[] logSig = base64decode(signature);
+                                    boolean chain = curLine.indexOf(CHAIN_SIGNATURE) != -1;
+                                    List<String> segmentLines = segment;
 
-                                writeSigStatus(linenum, sigStartFile,
-                                        sigStartLine, sigStopFile, sigStopLine,
-                                        "VERIFICATION FAILED");
+                                    Event event = new Event(EventType.CHECK);
+                                    event.fileIndex = curfile;
+                                    event.fileName = curfileName;
+                                    event.linenum = linenum;
+                                    event.signature = signature;
+                                    event.offset = br.getLineOffset();
+                                    event.hash = hash(curLine);
+                                    event.sigStartFile = sigStartFile;
+                                    event.sigStartLine = sigStartLine;
+                                    event.sigStopFile = sigStopFile;
+                                    event.sigStopLine = sigStopLine;
+                                    event.result = executor.submit(
+                                            () -> verifiers.get().verify(segmentLines, logSig, chain));
 
-                                ++badSigCount;
+                                    events.put(event);
+                                }
                             }
-                        }
-                    }
 
-                    // initialize verifier for the next signature
-                    sig.initVerify(pubk);
-                    signedLines = 0;
-                    sigStartLine = linenum;
-                    sigStartFile = curfileName;
-                }
+                            // initialize verifier for the next signature
+                            segment = new ArrayList<>();
+                            signedLines = 0;
+                            sigStartLine = linenum;
+                            sigStartFile = curfileName;
+                        }
 
-                if (verifySignature) { // update verifier only after the first signature
+                        if (verifySignature) { // update verifier only after the first signature
 
-                    byte[] lineBytes = curLine.getBytes("UTF-8");
-                    sig.update(lineBytes);
-                    sig.update(LINE_SEP_BYTE);
-                    ++signedLines;
-                    sigStopLine = linenum;
-                    sigStopFile = curfileName;
+                            segment.add(curLine);
+                            ++signedLines;
+                            sigStopLine = linenum;
+                            sigStopFile = curfileName;
+                        }
+                    }
                 }
             }
 
-            br.close();
+        } finally {
+            events.put(new Event(EventType.END));
         }
 
         Result result = new Result();
-        result.goodSigCount = goodSigCount;
-        result.badSigCount = badSigCount;
         result.sigStartLine = sigStartLine;
         result.sigStopLine = sigStopLine;
         result.sigStartFile = sigStartFile;
         result.sigStopFile = sigStopFile;
         result.signedLines = signedLines;
+        result.bytes = bytes;
+        result.lines = lines;
 
         return result;
     }
 
+    /**
+     * Returns the last signature verified in a previous run, or null
+     * to verify all files. The checkpoint is only used if all preceding
+     * files were verified as well and the signature is still there.
+     */
+    Position findCheckpoint(List<String> logFiles) throws Exception {
+
+        if (checkpoint == null) {
+            return null;
+        }
+
+        int index = -1;
+        for (int i = 0; i < logFiles.size(); i++) {
+            if (checkpoint.getProperty(logFiles.get(i) + ".offset") == null) {
+                break;
+            }
+            index = i;
+        }
+
+        if (index < 0) {
+            return null;
+        }
+
+        String fileName = logFiles.get(index);
+
+        Position position = new Position();
+        position.fileIndex = index;
+        position.offset = Long.parseLong(checkpoint.getProperty(fileName + ".offset"));
+        position.line = Integer.parseInt(checkpoint.getProperty(fileName + ".line"));
+
+        try (LineReader reader = new LineReader(fileName, position.offset)) {
+            String line = reader.readLine();
+            if (line == null || !hash(line).equals(checkpoint.getProperty(fileName + ".hash"))) {
+                System.out.println("WARNING: checkpoint for " + fileName + " does not match, verifying all files");
+                return null;
+            }
+        }
+
+        if (verbose) {
+            System.out.println("AuditVerify: Resuming from " + fileName + ":" + position.line);
+        }
+
+        return position;
+    }
+
+    static String hash(String line) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return Base64.getEncoder().encodeToString(digest.digest(line.getBytes("UTF-8")));
+    }
+
+    public void loadCheckpoint(String filename) throws IOException {
+
+        checkpoint = new Properties();
+
+        File file = new File(filename);
+        if (!file.exists()) {
+            return;
+        }
+
+        try (FileReader in = new FileReader(file)) {
+            checkpoint.load(in);
+        }
+    }
+
+    public void storeCheckpoint(String filename) throws IOException {
+        try (FileWriter out = new FileWriter(filename)) {
+            checkpoint.store(out, "AuditVerify checkpoint");
+        }
+    }
+
+    /**
+     * Verifies the signatures of log segments.
+     */
+    static class Verifier {
+
+        PublicKey pubk;
+        Signature sig;
+        MessageDigest digest;
+
+        Verifier(String sigAlgorithm, PublicKey pubk) throws Exception {
+            this.pubk = pubk;
+            sig = Signature.getInstance(sigAlgorithm, CRYPTO_PROVIDER);
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+
+        boolean verify(List<String> lines, byte[] logSig, boolean chain) throws Exception {
+
+            sig.initVerify(pubk);
+
+            if (chain) {
+                // verify the signature of the hash chain
+                byte[] value = new byte[CHAIN_LENGTH];
+                for (String line : lines) {
+                    digest.update(value);
+                    digest.update(line.getBytes("UTF-8"));
+                    digest.update(LINE_SEP_BYTE);
+                    value = digest.digest();
+                }
+                sig.update(value);
+
+            } else {
+                for (String line : lines) {
+                    sig.update(line.getBytes("UTF-8"));
+                    sig.update(LINE_SEP_BYTE);
+                }
+            }
+
+            return sig.verify(logSig);
+        }
+    }
+
+    enum EventType { FILE, IGNORE, RESUME, INVALID, CHECK, END };
+
+    /**
+     * An event in log order, to be reported sequentially.
+     */
+    static class Event {
+
+        EventType type;
+        int fileIndex;
+        String fileName;
+        int linenum;
+        String signature;
+        long offset;
+        String hash;
+        String sigStartFile;
+        int sigStartLine;
+        String sigStopFile;
+        int sigStopLine;
+        Future<Boolean> result;
+
+        Event(EventType type) {
+            this.type = type;
+        }
+
+        static Event file(int fileIndex, String fileName) {
+            Event event = new Event(EventType.FILE);
+            event.fileIndex = fileIndex;
+            event.fileName = fileName;
+            return event;
+        }
+
+        static Event ignore(int linenum) {
+            Event event = new Event(EventType.IGNORE);
+            event.linenum = linenum;
+            return event;
+        }
+
+        static Event resume(int linenum) {
+            Event event = new Event(EventType.RESUME);
+            event.linenum = linenum;
+            return event;
+        }
+
+        static Event invalid(int linenum) {
+            Event event = new Event(EventType.INVALID);
+            event.linenum = linenum;
+            return event;
+        }
+    }
+
+    static class Position {
+        int fileIndex;
+        long offset;
+        int line;
+    }
+
+    /**
+     * Reads lines like BufferedReader while keeping track of the
+     * byte offset of each line so verification can resume there.
+     */
+    static class LineReader implements Closeable {
+
+        InputStream in;
+        Charset charset = Charset.defaultCharset();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        long offset;
+        long lineOffset;
+        int pushback = -1;
+
+        LineReader(String fileName, long offset) throws IOException {
+            FileInputStream fis = new FileInputStream(fileName);
+            fis.getChannel().position(offset);
+            in = new BufferedInputStream(fis, 65536);
+            this.offset = offset;
+        }
+
+        int read() throws IOException {
+
+            int b;
+            if (pushback >= 0) {
+                b = pushback;
+                pushback = -1;
+            } else {
+                b = in.read();
+            }
+
+            if (b >= 0) {
+                offset++;
+            }
+
+            return b;
+        }
+
+        String readLine() throws IOException {
+
+            buffer.reset();
+            lineOffset = offset;
+
+            int b = read();
+            if (b < 0) {
+                return null;
+            }
+
+            while (b >= 0 && b != '\n' && b != '\r') {
+                buffer.write(b);
+                b = read();
+            }
+
+            if (b == '\r') {
+                int next = read();
+                if (next >= 0 && next != '\n') {
+                    pushback = next;
+                    offset--;
+                }
+            }
+
+            return new String(buffer.toByteArray(), charset);
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        long getLineOffset() {
+            return lineOffset;
+        }
+
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
     public static void main(String args[]) {
         try {
 
@@ -302,6 +733,8 @@ public class AuditVerify {
             String logListFile = null;
             String signerNick = null;
             String prefix = null;
+            int threads = Runtime.getRuntime().availableProcessors();
+            String checkpointFile = null;
             boolean verbose = false;
 
             for (int i = 0; i < args.length; ++i) {
@@ -321,6 +754,14 @@ public class AuditVerify {
                     if (++i >= args.length)
                         usage();
                     prefix = args[i];
+                } else if (args[i].equals("-t")) {
+                    if (++i >= args.length)
+                        usage();
+                    threads = Integer.parseInt(args[i]);
+                } else if (args[i].equals("-c")) {
+                    if (++i >= args.length)
+                        usage();
+                    checkpointFile = args[i];
                 } else if (args[i].equals("-v")) {
                     verbose = true;
                 } else {
@@ -379,10 +820,19 @@ public class AuditVerify {
 
             AuditVerify verifier = new AuditVerify();
             verifier.setVerbose(verbose);
+            verifier.setThreads(threads);
             verifier.setSigningCert(signerCert);
 
+            if (checkpointFile != null) {
+                verifier.loadCheckpoint(checkpointFile);
+            }
+
             Result result = verifier.verify(logFiles);
 
+            if (checkpointFile != null) {
+                verifier.storeCheckpoint(checkpointFile);
+            }
+
             // Make sure there were no unsigned log entries at the end.
             // The first signed line is the previous signature, but anything
             // more than that is data.
@@ -27,6 +27,7 @@ import org.dogtagpki.server.rest.AuditService;
 import org.dogtagpki.server.rest.AuthMethodInterceptor;
 import org.dogtagpki.server.rest.GroupService;
 import org.dogtagpki.server.rest.MessageFormatInterceptor;
+import org.dogtagpki.server.rest.MetricsService;
 import org.dogtagpki.server.rest.PKIExceptionMapper;
 import org.dogtagpki.server.rest.SelfTestService;
 import org.dogtagpki.server.rest.SessionContextInterceptor;
@@ -76,6 +77,9 @@ public class TPSApplication extends Application {
         classes.add(TPSProfileService.class);
         classes.add(ProfileMappingService.class);
 
+        // metrics
+        classes.add(MetricsService.class);
+
         // selftests
         classes.add(SelfTestService.class);
 
@@ -87,8 +91,8 @@ public class TPSApplication extends Application {
 
         // interceptors
         singletons.add(new SessionContextInterceptor());
-        singletons.add(new AuthMethodInterceptor());
-        singletons.add(new ACLInterceptor());
+        singletons.add(new AuthMethodInterceptor(classes));
+        singletons.add(new ACLInterceptor(classes));
         singletons.add(new MessageFormatInterceptor());
     }
 
@@ -135,6 +135,15 @@ public class TPSPresence extends ASelfTest {
                 "CMS_SELFTESTS_TPS_PRESENCE_DESCRIPTION");
     }
 
+    /**
+     * This self test only reads the TPS subsystem certificate, so it can run
+     * concurrently with other self tests.
+     */
+    @Override
+    protected boolean isSelfTestIndependentByDefault() {
+        return true;
+    }
+
     /**
      * Execute an individual self test.
      * <P>
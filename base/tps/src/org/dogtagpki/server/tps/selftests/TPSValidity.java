@@ -138,6 +138,15 @@ public class TPSValidity extends ASelfTest {
                 "CMS_SELFTESTS_TPS_VALIDITY_DESCRIPTION");
     }
 
+    /**
+     * This self test only checks the validity of the TPS subsystem certificate, so it can run
+     * concurrently with other self tests.
+     */
+    @Override
+    protected boolean isSelfTestIndependentByDefault() {
+        return true;
+    }
+
     /**
      * Execute an individual self test.
      * <P>